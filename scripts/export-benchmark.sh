@@ -0,0 +1,38 @@
+#!/usr/bin/env bash
+#
+# Compara la exportación Arrow IPC contra la paginación JSON de /prescriptions (tiempo y tamaño).
+#
+# Uso: scripts/export-benchmark.sh [base-url] [page-size]
+# Requiere la aplicación corriendo con datos cargados.
+
+set -euo pipefail
+
+BASE_URL="${1:-http://localhost:8080}"
+PAGE_SIZE="${2:-100}"
+OUT_DIR="$(mktemp -d)"
+
+now_ms() { date +%s%3N; }
+
+start=$(now_ms)
+curl -sf -o "$OUT_DIR/prescriptions.arrows" "$BASE_URL/export/prescriptions"
+curl -sf -o "$OUT_DIR/prescription-medications.arrows" "$BASE_URL/export/prescription-medications"
+arrow_ms=$(( $(now_ms) - start ))
+arrow_bytes=$(cat "$OUT_DIR"/*.arrows | wc -c)
+
+start=$(now_ms)
+page=0
+total_pages=1
+: > "$OUT_DIR/prescriptions.json"
+while (( page < total_pages )); do
+    body="$(curl -sf "$BASE_URL/prescriptions?page=$page&size=$PAGE_SIZE")"
+    echo "$body" >> "$OUT_DIR/prescriptions.json"
+    total_pages="$(echo "$body" | grep -o '"totalPages":[0-9]*' | grep -o '[0-9]*$')"
+    page=$((page + 1))
+done
+json_ms=$(( $(now_ms) - start ))
+json_bytes=$(wc -c < "$OUT_DIR/prescriptions.json")
+
+printf '%-12s %10s %14s\n' "formato" "ms" "bytes"
+printf '%-12s %10d %14d\n' "arrow" "$arrow_ms" "$arrow_bytes"
+printf '%-12s %10d %14d\n' "json" "$json_ms" "$json_bytes"
+rm -rf "$OUT_DIR"
@@ -0,0 +1,33 @@
+#!/usr/bin/env bash
+#
+# Ráfaga de surtidos contra POST /prescriptions/fill-events: CONCURRENCY clientes en paralelo,
+# cada uno con requests de EVENTS_PER_REQUEST eventos. Comparar corriendo la aplicación con distintos
+# patients.prescription-fills.batch-size (y el histograma patients.prescription.fill.batch.size).
+#
+# Uso: scripts/fill-benchmark.sh [base-url] [first-id] [last-id] [concurrency] [events-per-request]
+# Requiere la aplicación corriendo con prescripciones activas en el rango de ids.
+
+set -euo pipefail
+
+BASE_URL="${1:-http://localhost:8080}"
+FIRST_ID="${2:-1}"
+LAST_ID="${3:-1000}"
+CONCURRENCY="${4:-32}"
+EVENTS_PER_REQUEST="${5:-1}"
+
+now_ms() { date +%s%3N; }
+
+bodies="$(mktemp)"
+seq "$FIRST_ID" "$LAST_ID" | xargs -n "$EVENTS_PER_REQUEST" | while read -r ids; do
+    printf '[%s]\n' "$(printf '{"prescriptionId":%s,"filled":true},' $ids | sed 's/,$//')"
+done > "$bodies"
+
+start=$(now_ms)
+failures=$(xargs -P "$CONCURRENCY" -d '\n' -I{} curl -s -o /dev/null -w '%{http_code}\n' \
+    -H 'Content-Type: application/json' -d '{}' "$BASE_URL/prescriptions/fill-events" < "$bodies" | grep -vc '^200$' || true)
+elapsed_ms=$(( $(now_ms) - start ))
+events=$(( LAST_ID - FIRST_ID + 1 ))
+
+printf '%-10s %10s %12s %10s\n' "eventos" "ms" "eventos/s" "fallos"
+printf '%-10d %10d %12d %10d\n' "$events" "$elapsed_ms" $(( events * 1000 / (elapsed_ms > 0 ? elapsed_ms : 1) )) "$failures"
+rm -f "$bodies"
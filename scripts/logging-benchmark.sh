@@ -0,0 +1,94 @@
+#!/usr/bin/env bash
+#
+# Benchmark del costo de logging por request en los caminos de lectura (listado y detalle de prescripciones).
+#
+# Requisitos: mvn package y la base configurada en application.properties (o variables SPRING_DATASOURCE_*)
+# accesible, con prescripciones activas en el rango de ids.
+#
+# Uso: scripts/logging-benchmark.sh [requests] [concurrency] [first-id] [last-id]
+#
+# Arranca la aplicación en cada configuración con la salida a un archivo y manda la misma carga:
+# - off:              logging de la aplicación apagado (referencia)
+# - sync text:        appender de consola síncrono con patrón de texto (configuración anterior, base.xml de Spring Boot)
+# - async json:       logback-spring.xml sin muestreo
+# - async json 1/10:  logback-spring.xml con el muestreo de application.properties (eventos de lectura)
+# El costo por request es (tiempo del modo - tiempo de off) / requests; también se reportan los bytes de log por request.
+
+set -euo pipefail
+
+REQUESTS="${1:-20000}"
+CONCURRENCY="${2:-32}"
+FIRST_ID="${3:-1}"
+LAST_ID="${4:-1000}"
+ROOT_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+TARGET="$ROOT_DIR/target"
+JAR="$(ls "$TARGET"/patients-microservice-*.jar | grep -v -E 'entities|dtos|openapi|plain' | head -n 1)"
+PORT=18080
+BASE_URL="http://localhost:$PORT"
+TIMEOUT_SECONDS=120
+
+# Eureka no forma parte de la medición; sin TTL de coalescing cada request llega al service (y loguea)
+COMMON_ARGS=(--eureka.client.enabled=false --server.port="$PORT" --patients.coalescing.result-ttl-ms=0)
+
+now_ms() { date +%s%3N; }
+
+# Mitad listados, mitad detalles, intercalados
+urls="$(mktemp)"
+for ((i = 0; i < REQUESTS; i++)); do
+    if (( i % 2 == 0 )); then
+        echo "$BASE_URL/prescriptions?page=$(( i % 50 ))&size=20"
+    else
+        echo "$BASE_URL/prescriptions/$(( FIRST_ID + i % (LAST_ID - FIRST_ID + 1) ))"
+    fi
+done > "$urls"
+
+baseline_ms=""
+
+run_mode() {
+    local name="$1"; shift
+    local log
+    log="$(mktemp)"
+    java -jar "$JAR" "${COMMON_ARGS[@]}" "$@" >"$log" 2>&1 &
+    local pid=$!
+    # Listo cuando responde el health de actuator: no depende de ninguna línea de log (el modo off las apaga)
+    for ((t = 0; t < TIMEOUT_SECONDS * 10; t++)); do
+        if curl -sf -o /dev/null "$BASE_URL/actuator/health" || ! kill -0 "$pid" 2>/dev/null; then
+            break
+        fi
+        sleep 0.1
+    done
+    if ! kill -0 "$pid" 2>/dev/null || ! curl -sf -o /dev/null "$BASE_URL/actuator/health"; then
+        echo "$name: did not start (see $log)" >&2
+        kill "$pid" 2>/dev/null || true
+        return 1
+    fi
+
+    # Calentamiento (JIT, pool, caches) fuera de la medición
+    head -n 2000 "$urls" | xargs -P "$CONCURRENCY" -n 1 curl -s -o /dev/null
+    local bytes_before elapsed_ms failures
+    bytes_before=$(wc -c < "$log")
+    local start
+    start=$(now_ms)
+    failures=$(xargs -P "$CONCURRENCY" -n 1 curl -s -o /dev/null -w '%{http_code}\n' < "$urls" | grep -vc '^200$' || true)
+    elapsed_ms=$(( $(now_ms) - start ))
+    sleep 1
+    local log_bytes=$(( $(wc -c < "$log") - bytes_before ))
+
+    kill "$pid" 2>/dev/null || true
+    wait "$pid" 2>/dev/null || true
+    rm -f "$log"
+
+    if [[ -z "$baseline_ms" ]]; then
+        baseline_ms=$elapsed_ms
+    fi
+    printf '%-18s %10d %10d %14d %14d %8d\n' "$name" "$elapsed_ms" $(( REQUESTS * 1000 / (elapsed_ms > 0 ? elapsed_ms : 1) )) \
+        $(( (elapsed_ms - baseline_ms) * 1000 / REQUESTS )) $(( log_bytes / REQUESTS )) "$failures"
+}
+
+echo "$REQUESTS requests, concurrency $CONCURRENCY"
+printf '%-18s %10s %10s %14s %14s %8s\n' "modo" "ms" "req/s" "overhead us/req" "log bytes/req" "fallos"
+run_mode "off" --logging.level.com.fiuni.patients=OFF
+run_mode "sync text" --logging.config=classpath:org/springframework/boot/logging/logback/base.xml
+run_mode "async json" --patients.logging.sampling=
+run_mode "async json 1/10"
+rm -f "$urls"
@@ -0,0 +1,122 @@
+#!/usr/bin/env bash
+#
+# Smoke test de la imagen nativa: levanta el binario contra un Postgres local y recorre todos los controllers.
+#
+# Requisitos: mvn -Pnative native:compile (genera target/patients-microservice), curl y un Postgres local.
+# Si no se indica DB_URL se levanta un contenedor postgres:16 descartable con docker.
+#
+# Uso: scripts/native-smoke-test.sh
+#   DB_URL=jdbc:postgresql://localhost:5432/patients_db DB_USER=postgres DB_PASSWORD=postgres scripts/native-smoke-test.sh
+
+set -euo pipefail
+
+ROOT_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+BINARY="$ROOT_DIR/target/patients-microservice"
+PORT="${PORT:-18081}"
+BASE="http://localhost:$PORT"
+CONTAINER=""
+APP_PID=""
+LOG="$(mktemp)"
+
+cleanup() {
+    [[ -n "$APP_PID" ]] && kill "$APP_PID" 2>/dev/null || true
+    [[ -n "$CONTAINER" ]] && docker rm -f "$CONTAINER" >/dev/null 2>&1 || true
+}
+trap cleanup EXIT
+
+fail() {
+    echo "FAIL: $*" >&2
+    echo "--- application log ($LOG) ---" >&2
+    tail -n 50 "$LOG" >&2
+    exit 1
+}
+
+[[ -x "$BINARY" ]] || { echo "Native binary not found at $BINARY (build with mvn -Pnative native:compile)" >&2; exit 1; }
+
+if [[ -z "${DB_URL:-}" ]]; then
+    CONTAINER="patients-native-smoke-$$"
+    docker run -d --name "$CONTAINER" -e POSTGRES_PASSWORD=postgres -p 15432:5432 postgres:16 >/dev/null
+    until docker exec "$CONTAINER" pg_isready -U postgres >/dev/null 2>&1; do sleep 0.5; done
+    DB_URL="jdbc:postgresql://localhost:15432/postgres"
+    DB_USER=postgres
+    DB_PASSWORD=postgres
+fi
+
+# El esquema de entidades pertenece a Clinica: en la base descartable lo crea Hibernate
+"$BINARY" \
+    --spring.profiles.active=native \
+    --server.port="$PORT" \
+    --spring.datasource.url="$DB_URL" \
+    --spring.datasource.username="${DB_USER:-postgres}" \
+    --spring.datasource.password="${DB_PASSWORD:-postgres}" \
+    --spring.jpa.hibernate.ddl-auto=update \
+    --eureka.client.enabled=false >"$LOG" 2>&1 &
+APP_PID=$!
+
+for ((t = 0; t < 300; t++)); do
+    grep -q -E 'Application ready in [0-9]+ ms' "$LOG" && break
+    kill -0 "$APP_PID" 2>/dev/null || fail "application exited during startup"
+    sleep 0.1
+done
+grep -o -E 'Application ready in [0-9]+ ms.*' "$LOG" || fail "application did not become ready"
+
+# request METHOD PATH EXPECTED_STATUS [BODY] -> imprime el cuerpo de la respuesta
+request() {
+    local method="$1" path="$2" expected="$3" body="${4:-}"
+    local out status
+    out="$(mktemp)"
+    if [[ -n "$body" ]]; then
+        status="$(curl -s -o "$out" -w '%{http_code}' -X "$method" -H 'Content-Type: application/json' -d "$body" "$BASE$path")"
+    else
+        status="$(curl -s -o "$out" -w '%{http_code}' -X "$method" "$BASE$path")"
+    fi
+    [[ "$status" == "$expected" ]] || fail "$method $path returned $status (expected $expected): $(cat "$out")"
+    echo "ok   $method $path -> $status" >&2
+    cat "$out"
+    rm -f "$out"
+}
+
+json_id() {
+    grep -o -E '"id" *: *[0-9]+' | head -n 1 | grep -o -E '[0-9]+$'
+}
+
+# Pacientes
+PATIENT_ID="$(request POST /patients 201 '{"firstName":"Ana","lastName":"Benítez","documentNumber":"SMOKE-1","birthDate":"1990-05-01","gender":"FEMALE","bloodType":"O_POSITIVE"}' | json_id)"
+request GET "/patients/$PATIENT_ID" 200 >/dev/null
+request GET "/patients?page=1&size=5" 200 >/dev/null
+request GET "/patients?page=1&size=5&paginationMode=slice" 200 >/dev/null
+request POST /patients/batch 200 "{\"ids\":[$PATIENT_ID,999999]}" >/dev/null
+request PUT "/patients/$PATIENT_ID" 200 '{"firstName":"Ana María"}' >/dev/null
+
+# Medicamentos
+MEDICATION_ID="$(request POST /medications 201 '{"medicationName":"Ibuprofeno","genericName":"ibuprofeno","medicationType":"TABLET","manufacturer":"Smoke"}' | json_id)"
+request GET "/medications/$MEDICATION_ID" 200 >/dev/null
+request GET "/medications?page=1&size=5" 200 >/dev/null
+request POST /medications/batch 200 "{\"ids\":[$MEDICATION_ID]}" >/dev/null
+request PUT "/medications/$MEDICATION_ID" 200 '{"description":"Antiinflamatorio"}' >/dev/null
+
+# Prescripciones
+PRESCRIPTION_ID="$(request POST /prescriptions 201 "{\"patientId\":$PATIENT_ID,\"prescriptionDate\":\"$(date +%F)\",\"doctorName\":\"Dr. Smoke\",\"doctorLicense\":\"L-1\",\"medications\":[{\"medicationId\":$MEDICATION_ID,\"dosage\":\"400 mg\",\"frequency\":\"cada 8 horas\",\"duration\":\"5 días\",\"quantity\":15}]}" | json_id)"
+request GET "/prescriptions/$PRESCRIPTION_ID" 200 >/dev/null
+request GET "/prescriptions?page=1&size=5" 200 >/dev/null
+request POST /prescriptions/batch 200 "{\"ids\":[$PRESCRIPTION_ID]}" >/dev/null
+request GET "/prescriptions/$PRESCRIPTION_ID/medications" 200 >/dev/null
+request GET "/patients/$PATIENT_ID/prescriptions" 200 >/dev/null
+request GET "/patients/$PATIENT_ID/prescriptions/history?page=0&size=10" 200 >/dev/null
+request GET "/patients/$PATIENT_ID/prescriptions/summary" 200 >/dev/null
+
+# Change feed y sincronización
+request GET "/changes?after=0&limit=10" 200 >/dev/null
+curl -s -N --max-time 2 "$BASE/changes/stream?cursor=0" | grep -q 'event:change' || fail "change stream returned no events"
+echo "ok   GET /changes/stream" >&2
+request GET "/sync/patients?limit=10" 200 >/dev/null
+request GET "/sync/medications?limit=10" 200 >/dev/null
+request GET "/sync/prescriptions?limit=10" 200 >/dev/null
+
+# Bajas
+request DELETE "/prescriptions/$PRESCRIPTION_ID" 204 >/dev/null
+request DELETE "/medications/$MEDICATION_ID" 204 >/dev/null
+request DELETE "/patients/$PATIENT_ID" 204 >/dev/null
+request GET "/patients/$PATIENT_ID" 404 >/dev/null
+
+echo "Native smoke test passed (RSS: $(ps -o rss= -p "$APP_PID" | tr -d ' ') KB)"
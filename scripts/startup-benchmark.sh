@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+#
+# Benchmark de arranque: mide el tiempo hasta "ready" en cada modo de ejecución.
+#
+# Requisitos: mvn -Pfast-startup package (genera AOT, target/cds/ y el archivo AppCDS)
+# y la base configurada en application.properties (o variables SPRING_DATASOURCE_*) accesible.
+#
+# Uso: scripts/startup-benchmark.sh [repeticiones]
+#
+# Cada modo arranca la aplicación, espera la línea "Application ready in N ms" que publica
+# StartupTimeReporter, detiene el proceso y reporta el promedio.
+
+set -euo pipefail
+
+RUNS="${1:-3}"
+ROOT_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+TARGET="$ROOT_DIR/target"
+JAR="$(ls "$TARGET"/patients-microservice-*.jar | grep -v -E 'entities|dtos|openapi|plain' | head -n 1)"
+CDS_JAR="$TARGET/cds/$(basename "$JAR")"
+CDS_ARCHIVE="$TARGET/cds/application.jsa"
+TIMEOUT_SECONDS=120
+
+# Eureka no forma parte de la medición
+COMMON_ARGS=(--eureka.client.enabled=false --server.port=0)
+
+run_mode() {
+    local name="$1"; shift
+    local total=0
+    for ((i = 1; i <= RUNS; i++)); do
+        local log
+        log="$(mktemp)"
+        "$@" "${COMMON_ARGS[@]}" >"$log" 2>&1 &
+        local pid=$!
+        local ready=""
+        for ((t = 0; t < TIMEOUT_SECONDS * 10; t++)); do
+            ready="$(grep -o -E 'Application ready in [0-9]+ ms' "$log" | grep -o -E '[0-9]+' || true)"
+            if [[ -n "$ready" ]] || ! kill -0 "$pid" 2>/dev/null; then
+                break
+            fi
+            sleep 0.1
+        done
+        kill "$pid" 2>/dev/null || true
+        wait "$pid" 2>/dev/null || true
+        if [[ -z "$ready" ]]; then
+            echo "$name: did not become ready (see $log)" >&2
+            return 1
+        fi
+        rm -f "$log"
+        total=$((total + ready))
+    done
+    printf '%-28s %8d ms\n' "$name" $((total / RUNS))
+}
+
+echo "Time to ready (average of $RUNS runs)"
+run_mode "default" java -jar "$JAR"
+run_mode "fast-startup" java -jar "$JAR" --spring.profiles.active=fast-startup
+run_mode "fast-startup + AOT" java -Dspring.aot.enabled=true -jar "$JAR" --spring.profiles.active=fast-startup
+if [[ -f "$CDS_ARCHIVE" ]]; then
+    # El jar extraído puede no conservar el Add-Opens del manifest: flag explícito (igual que en la corrida de entrenamiento)
+    run_mode "fast-startup + AOT + AppCDS" java -XX:SharedArchiveFile="$CDS_ARCHIVE" -Dspring.aot.enabled=true \
+        --add-opens=java.base/java.nio=ALL-UNNAMED -jar "$CDS_JAR" --spring.profiles.active=fast-startup
+else
+    echo "AppCDS archive not found at $CDS_ARCHIVE (build with -Pfast-startup)" >&2
+fi
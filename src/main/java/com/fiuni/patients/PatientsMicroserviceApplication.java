@@ -1,9 +1,12 @@
 package com.fiuni.patients;
 
+import com.fiuni.patients.config.ClinicaRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Microservicio de gestión de pacientes usando JARs de Clinica Commons
@@ -12,6 +15,8 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
  * - EntityScan: Escanea entidades del JAR externo com.fiuni.clinica.entity
  * - EnableJpaRepositories: Habilita repositorios JPA en com.fiuni.patients.repository
  * - EnableTransactionManagement: Habilita manejo de transacciones
+ * - EnableScheduling: Habilita tareas periódicas (poller del change feed)
+ * - ImportRuntimeHints: Hints de reflexión/recursos para la imagen nativa (JARs de Clinica)
  */
 @SpringBootApplication(
     scanBasePackages = {
@@ -25,6 +30,8 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 @EnableJpaRepositories(basePackages = {
     "com.fiuni.patients.repository"
 })
+@EnableScheduling
+@ImportRuntimeHints(ClinicaRuntimeHints.class)
 public class PatientsMicroserviceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,44 @@
+package com.fiuni.patients.config;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ocupación de la cola del appender async de logback-spring.xml (patients.logging.async.queue.*):
+ * una cola que se acerca al límite indica que se están descartando eventos.
+ */
+@Component
+@Slf4j
+public class AsyncLogMetrics {
+
+    /** Nombre del appender en logback-spring.xml */
+    static final String ASYNC_APPENDER = "ASYNC";
+
+    private final MeterRegistry meterRegistry;
+
+    public AsyncLogMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void bind() {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context)
+                || !(context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).getAppender(ASYNC_APPENDER) instanceof AsyncAppender async)) {
+            log.info("Async log appender not configured, queue metrics disabled");
+            return;
+        }
+        Gauge.builder("patients.logging.async.queue.size", async, AsyncAppender::getNumberOfElementsInQueue)
+                .description("Eventos de log esperando al appender de consola")
+                .register(meterRegistry);
+        Gauge.builder("patients.logging.async.queue.remaining", async, AsyncAppender::getRemainingCapacity)
+                .description("Lugares libres en la cola del appender async")
+                .register(meterRegistry);
+    }
+}
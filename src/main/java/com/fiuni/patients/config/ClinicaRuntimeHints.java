@@ -0,0 +1,82 @@
+package com.fiuni.patients.config;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.util.ClassUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Hints de reflexión y recursos para la imagen nativa (perfil Maven native).
+ *
+ * Las entidades y DTOs vienen del JAR externo de Clinica, así que se descubren escaneando sus paquetes
+ * durante el procesamiento AOT (en la JVM) en lugar de listarlos a mano:
+ * - DTOs (generados y propios): hints de binding para Jackson (constructores, getters/setters, records)
+ * - Dominio: constructores y campos declarados para Hibernate (acceso por campo y enums)
+ * - Recursos: changelogs de Liquibase y spec OpenAPI incluida en el JAR de Clinica
+ * - Logging: filtro de muestreo declarado en logback-spring.xml
+ */
+public class ClinicaRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final String[] DTO_PACKAGES = {
+            "com.fiuni.clinica.dto.generated",
+            "com.fiuni.patients.dto"
+    };
+
+    private static final String[] DOMAIN_PACKAGES = {
+            "com.fiuni.clinica.domain"
+    };
+
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> type : scan(classLoader, DTO_PACKAGES)) {
+            bindingRegistrar.registerReflectionHints(hints.reflection(), type);
+        }
+        for (Class<?> type : scan(classLoader, DOMAIN_PACKAGES)) {
+            hints.reflection().registerType(type,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_DECLARED_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+        }
+
+        // Clases que instancia logback-spring.xml por reflexión
+        hints.reflection().registerType(LogSamplingTurboFilter.class,
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+
+        hints.resources()
+                .registerPattern("logback-spring.xml")
+                .registerPattern("db/*.xml")
+                .registerPattern("db/changelog/*.xml")
+                .registerPattern("openapi/*.yaml")
+                .registerPattern("openapi/*.yml");
+    }
+
+    /**
+     * Todas las clases de primer nivel de los paquetes (incluye abstractas como BaseDomain y enums)
+     */
+    private Set<Class<?>> scan(ClassLoader classLoader, String... basePackages) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                return beanDefinition.getMetadata().isIndependent();
+            }
+        };
+        scanner.addIncludeFilter((metadataReader, metadataReaderFactory) -> true);
+
+        Set<Class<?>> types = new LinkedHashSet<>();
+        for (String basePackage : basePackages) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+                types.add(ClassUtils.resolveClassName(candidate.getBeanClassName(), classLoader));
+            }
+        }
+        return types;
+    }
+}
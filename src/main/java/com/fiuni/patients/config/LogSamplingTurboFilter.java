@@ -0,0 +1,73 @@
+package com.fiuni.patients.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Muestreo por logger de los caminos exitosos de alta frecuencia (logback-spring.xml).
+ *
+ * rules: "prefijo=N,prefijo=N" conserva en promedio 1 de cada N eventos INFO o menores de los loggers bajo
+ * ese prefijo (gana el prefijo más largo; N <= 1 no muestrea). WARN y ERROR no se muestrean nunca.
+ * Corre antes de crear el evento: lo descartado no formatea el mensaje ni ocupa la cola del appender async.
+ */
+public class LogSamplingTurboFilter extends TurboFilter {
+
+    /** Sin muestreo para el logger */
+    private static final int KEEP_ALL = 1;
+
+    private volatile Map<String, Integer> rules = Map.of();
+    private final Map<String, Integer> rateByLogger = new ConcurrentHashMap<>();
+
+    public void setRules(String rules) {
+        Map<String, Integer> parsed = new ConcurrentHashMap<>();
+        if (rules != null) {
+            for (String rule : rules.split(",")) {
+                int separator = rule.lastIndexOf('=');
+                if (separator <= 0) {
+                    continue;
+                }
+                try {
+                    parsed.put(rule.substring(0, separator).trim(), Integer.parseInt(rule.substring(separator + 1).trim()));
+                } catch (NumberFormatException e) {
+                    addWarn("Ignoring log sampling rule '" + rule + "'");
+                }
+            }
+        }
+        this.rules = Map.copyOf(parsed);
+        rateByLogger.clear();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format null: chequeo isXxxEnabled() (o el atInfo() del API fluido), que no debe consumir la muestra
+        if (!isStarted() || format == null || level == null || level.isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        int rate = rateByLogger.computeIfAbsent(logger.getName(), this::rateFor);
+        if (rate <= KEEP_ALL || ThreadLocalRandom.current().nextInt(rate) == 0) {
+            return FilterReply.NEUTRAL;
+        }
+        return FilterReply.DENY;
+    }
+
+    private int rateFor(String loggerName) {
+        int rate = KEEP_ALL;
+        int longest = -1;
+        for (Map.Entry<String, Integer> rule : rules.entrySet()) {
+            String prefix = rule.getKey();
+            boolean matches = loggerName.equals(prefix) || loggerName.startsWith(prefix + ".");
+            if (matches && prefix.length() > longest) {
+                longest = prefix.length();
+                rate = rule.getValue();
+            }
+        }
+        return rate;
+    }
+}
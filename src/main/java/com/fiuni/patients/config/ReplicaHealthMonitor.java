@@ -0,0 +1,56 @@
+package com.fiuni.patients.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Verifica periódicamente que la réplica responda y que su lag de replicación esté bajo el umbral
+ */
+@Slf4j
+public class ReplicaHealthMonitor {
+
+    /** Lag en segundos; 0 si la base no está en recovery (p. ej. dos bases locales sin replicación) */
+    private static final String LAG_QUERY =
+            "SELECT CASE WHEN pg_is_in_recovery() " +
+            "THEN COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())), 0) " +
+            "ELSE 0 END";
+
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final double maxLagSeconds;
+    private volatile boolean replicaHealthy = false;
+    private volatile double lastLagSeconds = -1;
+
+    public ReplicaHealthMonitor(DataSource replicaDataSource, double maxLagSeconds) {
+        this.replicaJdbcTemplate = new JdbcTemplate(replicaDataSource);
+        this.replicaJdbcTemplate.setQueryTimeout(2);
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    @Scheduled(fixedDelayString = "${patients.datasource.replica.health-check-interval-ms:5000}")
+    public void checkReplica() {
+        boolean healthy;
+        try {
+            Double lag = replicaJdbcTemplate.queryForObject(LAG_QUERY, Double.class);
+            lastLagSeconds = lag != null ? lag : 0;
+            healthy = lastLagSeconds <= maxLagSeconds;
+        } catch (Exception e) {
+            log.debug("Replica health check failed: {}", e.getMessage());
+            healthy = false;
+        }
+        if (healthy != replicaHealthy) {
+            log.warn("Read replica is now {} (lag={}s, max={}s)", healthy ? "UP" : "DOWN", lastLagSeconds, maxLagSeconds);
+        }
+        replicaHealthy = healthy;
+    }
+
+    public boolean isReplicaHealthy() {
+        return replicaHealthy;
+    }
+
+    public double getLastLagSeconds() {
+        return lastLagSeconds;
+    }
+}
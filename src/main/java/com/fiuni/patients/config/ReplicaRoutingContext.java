@@ -0,0 +1,28 @@
+package com.fiuni.patients.config;
+
+/**
+ * Estado de ruteo por hilo de request: indica si las lecturas deben ir al primario
+ * (read-your-writes tras una escritura en la misma sesión o en la misma request)
+ */
+public final class ReplicaRoutingContext {
+
+    private static final ThreadLocal<Boolean> PIN_PRIMARY = new ThreadLocal<>();
+
+    private ReplicaRoutingContext() {
+    }
+
+    /**
+     * Forzar el primario para el resto de la request actual
+     */
+    public static void pinPrimary() {
+        PIN_PRIMARY.set(Boolean.TRUE);
+    }
+
+    public static boolean isPrimaryPinned() {
+        return Boolean.TRUE.equals(PIN_PRIMARY.get());
+    }
+
+    public static void clear() {
+        PIN_PRIMARY.remove();
+    }
+}
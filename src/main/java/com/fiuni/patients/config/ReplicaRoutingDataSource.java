@@ -0,0 +1,42 @@
+package com.fiuni.patients.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource que envía las transacciones readOnly a la réplica y todo lo demás al primario.
+ * Cae al primario si la réplica no está sana (caída o con lag mayor al umbral)
+ * o si la sesión acaba de escribir (read-your-writes).
+ * Debe envolverse en un LazyConnectionDataSourceProxy para que la conexión se obtenga
+ * cuando el flag readOnly de la transacción ya está establecido.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY,
+        REPLICA
+    }
+
+    private final ReplicaHealthMonitor healthMonitor;
+
+    public ReplicaRoutingDataSource(ReplicaHealthMonitor healthMonitor) {
+        this.healthMonitor = healthMonitor;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean readOnly = TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (!readOnly) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                // Una escritura en esta request: las lecturas siguientes deben ver su resultado
+                ReplicaRoutingContext.pinPrimary();
+            }
+            return Route.PRIMARY;
+        }
+        if (ReplicaRoutingContext.isPrimaryPinned() || !healthMonitor.isReplicaHealthy()) {
+            return Route.PRIMARY;
+        }
+        return Route.REPLICA;
+    }
+}
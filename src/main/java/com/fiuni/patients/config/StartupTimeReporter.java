@@ -0,0 +1,39 @@
+package com.fiuni.patients.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.AotDetector;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.Arrays;
+
+/**
+ * Reporta el tiempo hasta "ready" (uptime de la JVM al publicarse ApplicationReadyEvent) junto con el modo de arranque.
+ * El script scripts/startup-benchmark.sh toma esta línea para comparar los modos.
+ */
+@Component
+@Slf4j
+public class StartupTimeReporter {
+
+    private final Environment environment;
+
+    public StartupTimeReporter(Environment environment) {
+        this.environment = environment;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportStartupTime() {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        boolean cds = runtime.getInputArguments().stream().anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile"));
+        log.info("Application ready in {} ms (aot={}, cds={}, lazyInit={}, profiles={})",
+                runtime.getUptime(),
+                AotDetector.useGeneratedArtifacts(),
+                cds,
+                environment.getProperty("spring.main.lazy-initialization", "false"),
+                Arrays.toString(environment.getActiveProfiles()));
+    }
+}
@@ -0,0 +1,55 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.patients.dto.ArchivedEntityType;
+import com.fiuni.patients.service.ArchivalService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * REST Controller del archivo frío: restauración de filas archivadas y ejecución manual del job
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
+            methods = {RequestMethod.POST, RequestMethod.OPTIONS},
+            allowedHeaders = "*")
+public class ArchiveController {
+
+    private final ArchivalService archivalService;
+
+    @PostMapping("/archive/{entityType}/{id}/restore")
+    public ResponseEntity<Void> restore(@PathVariable("entityType") String entityType, @PathVariable("id") Integer id) {
+        log.info("Request to restore archived {} with ID: {}", entityType, id);
+
+        ArchivedEntityType type;
+        try {
+            type = ArchivedEntityType.fromPath(entityType);
+        } catch (IllegalArgumentException e) {
+            log.warn("Cannot restore - unknown archived entity type: {}", entityType);
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (!archivalService.restore(type, id)) {
+            log.warn("Cannot restore - {} {} is not archived", type, id);
+            return ResponseEntity.notFound().build();
+        }
+
+        log.info("{} {} restored from archive", type, id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/archive/run")
+    public ResponseEntity<Map<ArchivedEntityType, Integer>> run() {
+        log.info("Request to run archival job");
+        return ResponseEntity.ok(archivalService.archiveExpired());
+    }
+}
@@ -0,0 +1,63 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.patients.dto.AuditEntry;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.service.AuditTrail;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * REST Controller de consulta de la auditoría (quién cambió qué y cuándo) de pacientes, prescripciones y
+ * medicamentos
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"},
+            methods = {RequestMethod.GET, RequestMethod.OPTIONS},
+            allowedHeaders = "*")
+public class AuditController {
+
+    /** Ventana por defecto cuando no se indica from */
+    private static final int DEFAULT_WINDOW_DAYS = 30;
+
+    private final AuditTrail auditTrail;
+
+    @GetMapping("/audit/{entityType}/{entityId}")
+    public ResponseEntity<List<AuditEntry>> getHistory(
+            @PathVariable("entityType") String entityType,
+            @PathVariable("entityId") Integer entityId,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("Request to get audit history of {} {} - from: {}, to: {}", entityType, entityId, from, to);
+
+        ChangeEntityType type;
+        LocalDateTime start;
+        LocalDateTime end;
+        try {
+            type = ChangeEntityType.valueOf(entityType.toUpperCase(Locale.ROOT));
+            end = to == null || to.isBlank() ? LocalDateTime.now() : LocalDateTime.parse(to);
+            start = from == null || from.isBlank() ? end.minusDays(DEFAULT_WINDOW_DAYS) : LocalDateTime.parse(from);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            log.warn("Invalid audit query: {} ({} - {})", entityType, from, to);
+            return ResponseEntity.badRequest().build();
+        }
+        if (!end.isAfter(start)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(auditTrail.getHistory(type, entityId, start, end, limit));
+    }
+}
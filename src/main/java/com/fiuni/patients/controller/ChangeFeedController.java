@@ -0,0 +1,61 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.service.ChangeFeedService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+/**
+ * REST Controller del change feed de pacientes, medicamentos y prescripciones
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
+            methods = {RequestMethod.GET, RequestMethod.OPTIONS},
+            allowedHeaders = "*")
+public class ChangeFeedController {
+
+    private final ChangeFeedService changeFeedService;
+
+    /**
+     * Stream SSE de cambios. Reanudable con ?cursor= o con el header Last-Event-ID.
+     */
+    @GetMapping(path = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Long start = cursor;
+        if (start == null && lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                start = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid Last-Event-ID: {}", lastEventId);
+            }
+        }
+        log.info("Request to stream changes from cursor: {}", start);
+        return changeFeedService.subscribe(start);
+    }
+
+    /**
+     * Lectura paginada de cambios posteriores a un cursor
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<List<ChangeEvent>> getChanges(
+            @RequestParam(value = "after", defaultValue = "0") long after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("Request to get changes after cursor: {}, limit: {}", after, limit);
+        return ResponseEntity.ok(changeFeedService.getChanges(after, limit));
+    }
+}
@@ -0,0 +1,85 @@
+package com.fiuni.patients.controller;
+
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Utilidades de ETag fuertes derivados de (id, version)
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * ETag (sin comillas) para una entidad; ResponseEntity.eTag() agrega las comillas
+     */
+    static String of(Integer id, Object version) {
+        return id + "-" + version;
+    }
+
+    /**
+     * Verifica si un header If-None-Match / If-Match contiene el ETag indicado
+     */
+    static boolean matches(String header, String etag) {
+        if (header == null || etag == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*")) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            if (value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Versión esperada según un If-Match (uno o varios ETags "id-version" separados por comas) para la entidad
+     * indicada. Vacío sin precondición (sin header o "*"). If-Match usa comparación fuerte: los ETags débiles
+     * (W/) y los de otra entidad nunca coinciden; sin ningún candidato válido devuelve -1 (412). Con varios
+     * candidatos se elige el que coincide con la versión actual, y el service la vuelve a verificar al escribir.
+     */
+    static Optional<Long> expectedVersion(String ifMatch, Integer id, Supplier<Optional<Long>> currentVersion) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return Optional.empty();
+        }
+        String prefix = id + "-";
+        Set<Long> candidates = new LinkedHashSet<>();
+        for (String member : ifMatch.split(",")) {
+            String value = member.trim();
+            if (value.startsWith("W/")) {
+                continue;
+            }
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            if (!value.startsWith(prefix)) {
+                continue;
+            }
+            try {
+                candidates.add(Long.parseLong(value.substring(prefix.length())));
+            } catch (NumberFormatException e) {
+                // ETag mal formado: no es candidato
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Optional.of(-1L);
+        }
+        if (candidates.size() == 1) {
+            return Optional.of(candidates.iterator().next());
+        }
+        return Optional.of(currentVersion.get().filter(candidates::contains).orElse(-1L));
+    }
+}
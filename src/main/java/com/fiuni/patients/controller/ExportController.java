@@ -0,0 +1,61 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.patients.service.PrescriptionExportService;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * REST Controller de exportación columnar (Arrow IPC) para el equipo de datos.
+ *
+ * El header X-Export-Watermark trae el valor a usar como since en la siguiente exportación incremental;
+ * se solapa un minuto con esta para no perder filas confirmadas con last_modified apenas anterior al inicio.
+ * Las filas se identifican por id: el consumidor debe aplicar upsert.
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
+            methods = {RequestMethod.GET, RequestMethod.OPTIONS},
+            allowedHeaders = "*",
+            exposedHeaders = {"X-Export-Watermark"})
+public class ExportController {
+
+    private static final String WATERMARK_HEADER = "X-Export-Watermark";
+
+    private final PrescriptionExportService exportService;
+
+    @GetMapping("/export/prescriptions")
+    public void exportPrescriptions(
+            @RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            HttpServletResponse response) throws IOException {
+        log.info("Request to export prescriptions modified since: {}", since);
+        prepare(response, "prescriptions.arrows");
+        exportService.exportPrescriptions(since, response.getOutputStream());
+    }
+
+    @GetMapping("/export/prescription-medications")
+    public void exportPrescriptionMedications(
+            @RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            HttpServletResponse response) throws IOException {
+        log.info("Request to export prescription medications modified since: {}", since);
+        prepare(response, "prescription-medications.arrows");
+        exportService.exportPrescriptionMedications(since, response.getOutputStream());
+    }
+
+    private void prepare(HttpServletResponse response, String fileName) {
+        response.setContentType(PrescriptionExportService.ARROW_STREAM_MEDIA_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        response.setHeader(WATERMARK_HEADER, LocalDateTime.now().minusMinutes(1).toString());
+    }
+}
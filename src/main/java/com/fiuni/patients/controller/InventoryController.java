@@ -0,0 +1,65 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.patients.dto.MedicationStock;
+import com.fiuni.patients.dto.RestockRequest;
+import com.fiuni.patients.service.MedicationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * REST Controller del inventario de medicamentos: consulta de stock e ingresos
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
+            methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.OPTIONS},
+            allowedHeaders = "*")
+public class InventoryController {
+
+    private final MedicationService medicationService;
+
+    @GetMapping("/inventory/medications")
+    public ResponseEntity<List<MedicationStock>> getAllStock() {
+        log.info("Request to get stock of all tracked medications");
+        return ResponseEntity.ok(medicationService.getAllMedicationStock());
+    }
+
+    @GetMapping("/inventory/medications/{id}")
+    public ResponseEntity<MedicationStock> getStock(@PathVariable("id") Integer id) {
+        log.info("Request to get stock of medication ID: {}", id);
+        return medicationService.getMedicationStock(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/inventory/medications/{id}/restock")
+    public ResponseEntity<MedicationStock> restock(@PathVariable("id") Integer id, @RequestBody RestockRequest request) {
+        log.info("Request to restock medication ID: {}", id);
+        
+        if (request == null || request.quantity() == null || request.quantity() <= 0) {
+            log.warn("Invalid restock quantity for medication ID: {}", id);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            return medicationService.restockMedication(id, request.quantity())
+                    .map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            log.warn("Cannot restock medication {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+}
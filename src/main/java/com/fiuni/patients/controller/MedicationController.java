@@ -5,13 +5,27 @@ import com.fiuni.clinica.dto.generated.MedicationRequest;
 import com.fiuni.clinica.dto.generated.MedicationResponse;
 import com.fiuni.clinica.dto.generated.MedicationSearchRequest;
 import com.fiuni.clinica.dto.generated.PaginatedMedicationResponse;
+import com.fiuni.patients.dto.BatchGetRequest;
+import com.fiuni.patients.dto.BatchGetResponse;
+import com.fiuni.patients.dto.MedicationSearchHit;
+import com.fiuni.patients.dto.PaginationMode;
+import com.fiuni.patients.exception.VersionConflictException;
+import com.fiuni.patients.service.AbstractBaseService;
 import com.fiuni.patients.service.MedicationService;
+import com.fiuni.patients.service.ReadCoalescer;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -20,9 +34,12 @@ import java.util.List;
 @RequiredArgsConstructor
 @CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
             methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS},
-            allowedHeaders = "*")
+            allowedHeaders = "*",
+            exposedHeaders = {"ETag", "X-Pagination-Mode"})
 public class MedicationController implements MedicationsApi {
     private final MedicationService medicationService;
+    private final HttpServletRequest httpRequest;
+    private final ReadCoalescer readCoalescer;
     private static final Logger logger = LoggerFactory.getLogger(MedicationController.class);
 
     @Override
@@ -39,7 +56,15 @@ public class MedicationController implements MedicationsApi {
     public ResponseEntity<Void> deleteMedication(Integer id) {
         logger.info("Request to delete medication with ID: {}", id);
         
-        boolean deleted = medicationService.deleteMedication(id);
+        boolean deleted;
+        try {
+            Long expectedVersion = EntityTags.expectedVersion(httpRequest.getHeader(HttpHeaders.IF_MATCH), id,
+                    () -> medicationService.getMedicationVersion(id)).orElse(null);
+            deleted = medicationService.deleteMedication(id, expectedVersion);
+        } catch (VersionConflictException e) {
+            logger.warn("Cannot delete - Medication {} version conflict: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
         
         if (deleted) {
             logger.info("Medication with ID: {} soft deleted", id);
@@ -61,7 +86,8 @@ public class MedicationController implements MedicationsApi {
                 size != null ? size : 20,
                 org.springframework.data.domain.Sort.by("id")
         );
-        org.springframework.data.domain.Page<MedicationResponse> medicationsPage = medicationService.getAllMedications(pageable);
+        PaginationMode mode = PaginationModes.from(httpRequest);
+        org.springframework.data.domain.Page<MedicationResponse> medicationsPage = medicationService.getAllMedications(pageable, mode);
         
         // Convert to PaginatedMedicationResponse
         PaginatedMedicationResponse response = new PaginatedMedicationResponse();
@@ -72,6 +98,25 @@ public class MedicationController implements MedicationsApi {
         response.setSize(medicationsPage.getSize());
         
         logger.info("Page of medications returned");
+        return ResponseEntity.ok().header(PaginationModes.HEADER, mode.name()).body(response);
+    }
+
+    /**
+     * Lectura por lote de medications (una consulta IN), preservando el orden pedido
+     */
+    @PostMapping("/medications/batch")
+    public ResponseEntity<BatchGetResponse<MedicationResponse>> getMedicationsByIds(@RequestBody BatchGetRequest batchRequest) {
+        int requested = batchRequest != null && batchRequest.ids() != null ? batchRequest.ids().size() : 0;
+        logger.info("Request to get medications by IDs - count: {}", requested);
+        
+        if (requested == 0 || requested > AbstractBaseService.MAX_BATCH_IDS) {
+            logger.warn("Invalid batch size: {} (max {})", requested, AbstractBaseService.MAX_BATCH_IDS);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        BatchGetResponse<MedicationResponse> response = medicationService.getByIds(batchRequest.ids());
+        
+        logger.info("Batch returned {} medications, {} missing", response.items().size(), response.missingIds().size());
         return ResponseEntity.ok(response);
     }
 
@@ -79,11 +124,21 @@ public class MedicationController implements MedicationsApi {
     public ResponseEntity<MedicationResponse> getMedicationById(Integer id) {
         logger.info("Request to get medication with ID: {}", id);
         
-        java.util.Optional<MedicationResponse> medication = medicationService.getMedicationById(id);
+        // Conditional GET: responder 304 con una consulta de versión, sin cargar ni mapear la entidad
+        String ifNoneMatch = httpRequest.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            java.util.Optional<Long> version = medicationService.getMedicationVersion(id);
+            if (version.isPresent() && EntityTags.matches(ifNoneMatch, EntityTags.of(id, version.get()))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(EntityTags.of(id, version.get())).build();
+            }
+        }
+        
+        java.util.Optional<MedicationResponse> medication = readCoalescer.execute("medication", id,
+                () -> medicationService.getMedicationById(id));
         
         if (medication.isPresent()) {
             logger.info("Medication with ID: {} returned", id);
-            return ResponseEntity.ok(medication.get());
+            return ResponseEntity.ok().eTag(EntityTags.of(id, medication.get().getVersion())).body(medication.get());
         } else {
             logger.warn("Medication not found with ID: {}", id);
             return ResponseEntity.notFound().build();
@@ -100,24 +155,55 @@ public class MedicationController implements MedicationsApi {
         String medicationType = medicationSearchRequest != null ? medicationSearchRequest.getMedicationType() : null;
         String manufacturer = medicationSearchRequest != null ? medicationSearchRequest.getManufacturer() : null;
         
-        List<MedicationResponse> medications = medicationService.searchMedications(name, genericName, medicationType, manufacturer);
+        List<MedicationResponse> medications = readCoalescer.execute("medication-search",
+                java.util.Arrays.asList(name, genericName, medicationType, manufacturer),
+                () -> medicationService.searchMedications(name, genericName, medicationType, manufacturer));
         
         logger.info("Search returned {} medications", medications.size());
         return ResponseEntity.ok(medications);
     }
 
+    /**
+     * Búsqueda rankeada por síntoma, efecto secundario o contraindicación (top-k por relevancia)
+     */
+    @GetMapping("/medications/search/ranked")
+    public ResponseEntity<List<MedicationSearchHit>> rankedSearchMedications(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        logger.info("Request to ranked search medications - q: {}, limit: {}", query, limit);
+        
+        if (query == null || query.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        List<MedicationSearchHit> hits = readCoalescer.execute("medication-ranked-search",
+                java.util.Arrays.asList(query, limit),
+                () -> medicationService.rankedSearch(query, limit));
+        
+        logger.info("Ranked search returned {} medications", hits.size());
+        return ResponseEntity.ok(hits);
+    }
+
     @Override
     public ResponseEntity<MedicationResponse> updateMedication(Integer id, MedicationRequest medicationRequest) {
         logger.info("Request to update medication with ID: {}", id);
         
-        java.util.Optional<MedicationResponse> updated = medicationService.updateMedication(id, medicationRequest);
+        java.util.Optional<MedicationResponse> updated;
+        try {
+            Long expectedVersion = EntityTags.expectedVersion(httpRequest.getHeader(HttpHeaders.IF_MATCH), id,
+                    () -> medicationService.getMedicationVersion(id)).orElse(null);
+            updated = medicationService.updateMedication(id, medicationRequest, expectedVersion);
+        } catch (VersionConflictException e) {
+            logger.warn("Cannot update - Medication {} version conflict: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
         
         if (updated.isPresent()) {
             logger.info("Medication with ID: {} updated", id);
-            return ResponseEntity.ok(updated.get());
+            return ResponseEntity.ok().eTag(EntityTags.of(id, updated.get().getVersion())).body(updated.get());
         } else {
             logger.warn("Cannot update - Medication not found with ID: {}", id);
             return ResponseEntity.notFound().build();
         }
     }
-}
\ No newline at end of file
+}
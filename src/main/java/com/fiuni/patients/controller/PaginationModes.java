@@ -0,0 +1,26 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.patients.dto.PaginationMode;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Lectura del modo de paginación pedido por el cliente.
+ * Se acepta como parámetro ?paginationMode= o como header X-Pagination-Mode, ya que los
+ * contratos generados de la API no lo incluyen.
+ */
+final class PaginationModes {
+
+    static final String PARAMETER = "paginationMode";
+    static final String HEADER = "X-Pagination-Mode";
+
+    private PaginationModes() {
+    }
+
+    static PaginationMode from(HttpServletRequest request) {
+        String value = request.getParameter(PARAMETER);
+        if (value == null) {
+            value = request.getHeader(HEADER);
+        }
+        return PaginationMode.from(value);
+    }
+}
@@ -5,14 +5,32 @@ import com.fiuni.clinica.dto.generated.PaginatedPatientResponse;
 import com.fiuni.clinica.dto.generated.PatientRequest;
 import com.fiuni.clinica.dto.generated.PatientResponse;
 import com.fiuni.clinica.dto.generated.PatientSearchRequest;
+import com.fiuni.clinica.dto.generated.PaginatedPrescriptionResponse;
 import com.fiuni.clinica.dto.generated.PrescriptionResponse;
+import com.fiuni.patients.dto.BatchGetRequest;
+import com.fiuni.patients.dto.BatchGetResponse;
+import com.fiuni.patients.dto.DuplicateMatch;
+import com.fiuni.patients.dto.PaginationMode;
+import com.fiuni.patients.dto.PatientMergeRequest;
+import com.fiuni.patients.dto.PatientMergeResult;
+import com.fiuni.patients.dto.PatientPrescriptionSummary;
+import com.fiuni.patients.service.AbstractBaseService;
+import com.fiuni.patients.service.PatientDedupeService;
 import com.fiuni.patients.service.PatientService;
+import com.fiuni.patients.service.PrescriptionService;
+import com.fiuni.patients.service.ReadCoalescer;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -20,9 +38,18 @@ import java.util.List;
 @RequiredArgsConstructor
 @CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
             methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS},
-            allowedHeaders = "*")
+            allowedHeaders = "*",
+            exposedHeaders = {"X-Pagination-Mode", PatientController.POSSIBLE_DUPLICATES_HEADER})
 public class PatientController implements PatientsApi {
+    /** Ids de pacientes existentes probablemente iguales al recién creado, de mayor a menor score */
+    public static final String POSSIBLE_DUPLICATES_HEADER = "X-Possible-Duplicates";
+    private static final int CREATE_DUPLICATE_MATCHES = 5;
+
     private final PatientService patientService;
+    private final PatientDedupeService patientDedupeService;
+    private final PrescriptionService prescriptionService;
+    private final ReadCoalescer readCoalescer;
+    private final HttpServletRequest httpRequest;
     private static final Logger logger = LoggerFactory.getLogger(PatientController.class);
 
     @Override
@@ -33,7 +60,20 @@ public class PatientController implements PatientsApi {
         PatientResponse response = patientService.createPatient(request);
         
         logger.info("Patient created with ID: {}", response.getId());
-        return ResponseEntity.status(201).body(response);
+        ResponseEntity.BodyBuilder created = ResponseEntity.status(201);
+        try {
+            List<DuplicateMatch> matches = patientDedupeService.findMatches(request, response.getId(), CREATE_DUPLICATE_MATCHES);
+            if (!matches.isEmpty()) {
+                logger.info("Patient {} has {} possible duplicates", response.getId(), matches.size());
+                created.header(POSSIBLE_DUPLICATES_HEADER, matches.stream()
+                        .map(match -> String.valueOf(match.patientId()))
+                        .collect(java.util.stream.Collectors.joining(",")));
+            }
+        } catch (RuntimeException e) {
+            // El paciente ya está creado: la detección de duplicados no debe hacer fallar el alta
+            logger.warn("Duplicate check failed for patient {}: {}", response.getId(), e.getMessage());
+        }
+        return created.body(response);
     }
 
     @Override
@@ -51,6 +91,30 @@ public class PatientController implements PatientsApi {
         }
     }
 
+    /**
+     * Fusionar otro paciente (duplicado) en este: sus prescripciones pasan a este paciente y el otro queda inactivo
+     */
+    @PostMapping("/patients/{patientId}/merge")
+    public ResponseEntity<PatientMergeResult> mergePatient(@PathVariable("patientId") Integer patientId,
+                                                           @RequestBody PatientMergeRequest mergeRequest) {
+        Integer sourceId = mergeRequest != null ? mergeRequest.sourcePatientId() : null;
+        logger.info("Request to merge patient {} into patient {}", sourceId, patientId);
+        
+        if (sourceId == null || sourceId.equals(patientId)) {
+            logger.warn("Invalid merge source: {}", sourceId);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        java.util.Optional<PatientMergeResult> result = patientService.mergePatients(patientId, sourceId);
+        if (result.isEmpty()) {
+            logger.warn("Cannot merge - patient {} or {} not found", sourceId, patientId);
+            return ResponseEntity.notFound().build();
+        }
+        
+        logger.info("Patient {} merged into {}", sourceId, patientId);
+        return ResponseEntity.ok(result.get());
+    }
+
     @Override
     public ResponseEntity<PaginatedPatientResponse> getAllPatients(Integer page, Integer size, String sort) {
         logger.info("Request to get all patients - page: {}, size: {}, sort: {}", page, size, sort);
@@ -61,7 +125,8 @@ public class PatientController implements PatientsApi {
                 size != null ? size : 20,
                 org.springframework.data.domain.Sort.by(sort != null ? sort : "id")
         );
-        org.springframework.data.domain.Page<PatientResponse> patientsPage = patientService.getAllPatients(pageable);
+        PaginationMode mode = PaginationModes.from(httpRequest);
+        org.springframework.data.domain.Page<PatientResponse> patientsPage = patientService.getAllPatients(pageable, mode);
         
         // Convert to PaginatedPatientResponse
         PaginatedPatientResponse response = new PaginatedPatientResponse();
@@ -72,6 +137,25 @@ public class PatientController implements PatientsApi {
         response.setSize(patientsPage.getSize());
         
         logger.info("Page of patients returned");
+        return ResponseEntity.ok().header(PaginationModes.HEADER, mode.name()).body(response);
+    }
+
+    /**
+     * Lectura por lote de patients (una consulta IN), preservando el orden pedido
+     */
+    @PostMapping("/patients/batch")
+    public ResponseEntity<BatchGetResponse<PatientResponse>> getPatientsByIds(@RequestBody BatchGetRequest batchRequest) {
+        int requested = batchRequest != null && batchRequest.ids() != null ? batchRequest.ids().size() : 0;
+        logger.info("Request to get patients by IDs - count: {}", requested);
+        
+        if (requested == 0 || requested > AbstractBaseService.MAX_BATCH_IDS) {
+            logger.warn("Invalid batch size: {} (max {})", requested, AbstractBaseService.MAX_BATCH_IDS);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        BatchGetResponse<PatientResponse> response = patientService.getByIds(batchRequest.ids());
+        
+        logger.info("Batch returned {} patients, {} missing", response.items().size(), response.missingIds().size());
         return ResponseEntity.ok(response);
     }
 
@@ -79,7 +163,8 @@ public class PatientController implements PatientsApi {
     public ResponseEntity<PatientResponse> getPatientById(Integer patientId) {
         logger.info("Request to get patient with ID: {}", patientId);
         
-        java.util.Optional<PatientResponse> patient = patientService.getPatientById(patientId);
+        java.util.Optional<PatientResponse> patient = readCoalescer.execute("patient", patientId,
+                () -> patientService.getPatientById(patientId));
         
         if (patient.isPresent()) {
             logger.info("Patient with ID: {} returned", patientId);
@@ -94,13 +179,50 @@ public class PatientController implements PatientsApi {
     public ResponseEntity<List<PrescriptionResponse>> getPatientPrescriptions(Integer patientId) {
         logger.info("Request to get prescriptions for patient ID: {}", patientId);
         
-        // This would normally call a prescription service or use inter-service communication
-        List<PrescriptionResponse> prescriptions = List.of();
+        List<PrescriptionResponse> prescriptions = prescriptionService.getPrescriptionsByPatient(patientId);
         
         logger.info("Returning {} prescriptions for patient {}", prescriptions.size(), patientId);
         return ResponseEntity.ok(prescriptions);
     }
 
+    /**
+     * Historial paginado de prescripciones del paciente (más recientes primero)
+     */
+    @GetMapping("/patients/{patientId}/prescriptions/history")
+    public ResponseEntity<PaginatedPrescriptionResponse> getPatientPrescriptionHistory(
+            @PathVariable("patientId") Integer patientId,
+            @RequestParam(value = "page", required = false) Integer page,
+            @RequestParam(value = "size", required = false) Integer size) {
+        logger.info("Request to get prescription history for patient ID: {} - page: {}, size: {}", patientId, page, size);
+        
+        org.springframework.data.domain.Page<PrescriptionResponse> history = prescriptionService.getPatientPrescriptionHistory(
+                patientId,
+                page != null ? page : 0,
+                size != null ? size : 20);
+        
+        PaginatedPrescriptionResponse response = new PaginatedPrescriptionResponse();
+        response.setContent(history.getContent());
+        response.setTotalElements((int) history.getTotalElements());
+        response.setTotalPages(history.getTotalPages());
+        response.setPage(history.getNumber());
+        response.setSize(history.getSize());
+        
+        logger.info("Page of prescription history returned for patient {}", patientId);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Resumen de prescripciones del paciente (solo conteos, para dashboards)
+     */
+    @GetMapping("/patients/{patientId}/prescriptions/summary")
+    public ResponseEntity<PatientPrescriptionSummary> getPatientPrescriptionSummary(@PathVariable("patientId") Integer patientId) {
+        logger.info("Request to get prescription summary for patient ID: {}", patientId);
+        
+        PatientPrescriptionSummary summary = prescriptionService.getPatientPrescriptionSummary(patientId);
+        
+        return ResponseEntity.ok(summary);
+    }
+
     @Override
     public ResponseEntity<PaginatedPatientResponse> searchPatients(com.fiuni.clinica.dto.generated.PatientSearchRequest searchRequest, Integer page, String sort) {
         logger.info("Request to search patients - searchRequest: {}, page: {}, sort: {}", 
@@ -112,7 +234,9 @@ public class PatientController implements PatientsApi {
         String document = searchRequest != null ? searchRequest.getDocumentNumber() : null;
         String bloodType = searchRequest != null && searchRequest.getBloodType() != null ? searchRequest.getBloodType().name() : null;
         
-        List<PatientResponse> patients = patientService.searchPatients(firstName, lastName, document, bloodType);
+        List<PatientResponse> patients = readCoalescer.execute("patient-search",
+                java.util.Arrays.asList(firstName, lastName, document, bloodType),
+                () -> patientService.searchPatients(firstName, lastName, document, bloodType));
         
         // Convertir List a PaginatedPatientResponse para compatibilidad con la interfaz
         PaginatedPatientResponse response = new PaginatedPatientResponse();
@@ -140,4 +264,4 @@ public class PatientController implements PatientsApi {
             return ResponseEntity.notFound().build();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.clinica.dto.generated.PatientRequest;
+import com.fiuni.patients.dto.DuplicateMatch;
+import com.fiuni.patients.dto.DuplicatePair;
+import com.fiuni.patients.dto.DuplicateScanReport;
+import com.fiuni.patients.service.PatientDedupeService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * REST Controller de detección de pacientes duplicados: verificación previa al alta, parecidos de un paciente
+ * y pares detectados por el escaneo completo
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"},
+            methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.OPTIONS},
+            allowedHeaders = "*")
+public class PatientDuplicateController {
+
+    private final PatientDedupeService patientDedupeService;
+
+    @PostMapping("/patients/duplicates/check")
+    public ResponseEntity<List<DuplicateMatch>> check(@RequestBody PatientRequest request,
+                                                      @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        log.info("Request to check duplicates for: {} {}", request.getFirstName(), request.getLastName());
+        return ResponseEntity.ok(patientDedupeService.findMatches(request, null, limit));
+    }
+
+    @GetMapping("/patients/{patientId}/duplicates")
+    public ResponseEntity<List<DuplicateMatch>> getPatientDuplicates(@PathVariable("patientId") Integer patientId,
+                                                                     @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        log.info("Request to get duplicates of patient ID: {}", patientId);
+        return patientDedupeService.findMatches(patientId, limit)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/patients/duplicates")
+    public ResponseEntity<List<DuplicatePair>> getDetectedPairs(
+            @RequestParam(value = "minScore", required = false) Double minScore,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("Request to get detected duplicate pairs - minScore: {}, limit: {}", minScore, limit);
+        return ResponseEntity.ok(patientDedupeService.getDetectedPairs(minScore, limit));
+    }
+
+    @PostMapping("/patients/duplicates/scan")
+    public ResponseEntity<DuplicateScanReport> scan() {
+        log.info("Request to scan the patient registry for duplicates");
+        return patientDedupeService.scan()
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+}
@@ -7,10 +7,23 @@ import com.fiuni.clinica.api.PrescriptionsApi;
 import com.fiuni.clinica.dto.generated.PaginatedPrescriptionResponse;
 import com.fiuni.clinica.dto.generated.PrescriptionMedicationRequest;
 import com.fiuni.clinica.dto.generated.PrescriptionMedicationResponse;
+import com.fiuni.patients.dto.BatchGetRequest;
+import com.fiuni.patients.dto.BatchGetResponse;
+import com.fiuni.patients.dto.PaginationMode;
+import com.fiuni.patients.dto.PrescriptionAnalyticsReport;
+import com.fiuni.patients.dto.PrescriptionFillEvent;
+import com.fiuni.patients.dto.PrescriptionFillResult;
+import com.fiuni.patients.exception.DuplicatePrescriptionLineException;
+import com.fiuni.patients.exception.InsufficientStockException;
+import com.fiuni.patients.exception.VersionConflictException;
+import com.fiuni.patients.service.AbstractBaseService;
 import com.fiuni.patients.service.PrescriptionService;
+import com.fiuni.patients.service.ReadCoalescer;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -32,10 +45,13 @@ import java.util.Optional;
 @Slf4j
 @CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
             methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS},
-            allowedHeaders = "*")
+            allowedHeaders = "*",
+            exposedHeaders = {"ETag", "X-Pagination-Mode"})
 public class PrescriptionController implements PrescriptionsApi {
 
     private final PrescriptionService prescriptionService;
+    private final HttpServletRequest httpRequest;
+    private final ReadCoalescer readCoalescer;
 
     // ========================================
     // PRESCRIPTION CRUD OPERATIONS
@@ -51,6 +67,12 @@ public class PrescriptionController implements PrescriptionsApi {
             log.info("Prescription created with ID: {}", prescription.getId());
 
             return ResponseEntity.status(HttpStatus.CREATED).body(prescription);
+        } catch (InsufficientStockException e) {
+            log.warn("Cannot create filled prescription - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalStateException e) {
+            log.warn("Cannot create prescription: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             log.error("Error creating prescription", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -64,15 +86,20 @@ public class PrescriptionController implements PrescriptionsApi {
             @Valid Integer patientId, 
             @Valid Boolean isFilled) {
         
-        log.info("Request to get all prescriptions - page: {}, size: {}, patientId: {}, isFilled: {}", 
-                page, size, patientId, isFilled);
-        
+        // El service registra la página leída (evento estructurado prescriptions.page)
         try {
+            PaginationMode mode = PaginationModes.from(httpRequest);
+            // fromDate/toDate (ISO, opcionales) no están en el contrato generado: se leen del request
+            java.time.LocalDate fromDate = parseDateParam("fromDate");
+            java.time.LocalDate toDate = parseDateParam("toDate");
             Page<PrescriptionResponse> prescriptionPage = prescriptionService.getAllPrescriptions(
                     page != null ? page : 0, 
                     size != null ? size : 20, 
                     patientId, 
-                    isFilled);
+                    isFilled,
+                    mode,
+                    fromDate,
+                    toDate);
 
             PaginatedPrescriptionResponse response = new PaginatedPrescriptionResponse();
             response.setContent(prescriptionPage.getContent());
@@ -81,24 +108,136 @@ public class PrescriptionController implements PrescriptionsApi {
             response.setSize(prescriptionPage.getSize());
             response.setPage(prescriptionPage.getNumber());
 
-            log.info("Page of prescriptions returned");
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().header(PaginationModes.HEADER, mode.name()).body(response);
+        } catch (java.time.format.DateTimeParseException e) {
+            log.warn("Invalid date range parameter: {}", e.getParsedString());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error getting prescriptions", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Búsqueda full-text en médico, matrícula y notas, ordenada por relevancia.
+     * q acepta sintaxis web (frases entre comillas, OR, -exclusión); filtros opcionales por paciente y fechas.
+     */
+    @GetMapping("/prescriptions/search")
+    public ResponseEntity<PaginatedPrescriptionResponse> searchPrescriptions(
+            @RequestParam("q") String query,
+            @RequestParam(value = "patientId", required = false) Integer patientId,
+            @RequestParam(value = "fromDate", required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate fromDate,
+            @RequestParam(value = "toDate", required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate toDate,
+            @RequestParam(value = "page", required = false) Integer page,
+            @RequestParam(value = "size", required = false) Integer size) {
+        if (query == null || query.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        PaginationMode mode = PrescriptionService.searchMode(PaginationModes.from(httpRequest));
+        Page<PrescriptionResponse> results = prescriptionService.searchPrescriptions(query, patientId, fromDate, toDate,
+                page != null ? page : 0,
+                size != null ? size : 20,
+                mode);
+        
+        PaginatedPrescriptionResponse response = new PaginatedPrescriptionResponse();
+        response.setContent(results.getContent());
+        response.setTotalPages(results.getTotalPages());
+        response.setTotalElements((int) results.getTotalElements());
+        response.setSize(results.getSize());
+        response.setPage(results.getNumber());
+        
+        return ResponseEntity.ok().header(PaginationModes.HEADER, mode.name()).body(response);
+    }
+
+    /**
+     * Eventos de surtido (isFilled) por lote: se confirman con group commit y la respuesta llega tras el commit
+     */
+    @PostMapping("/prescriptions/fill-events")
+    public ResponseEntity<List<PrescriptionFillResult>> fillPrescriptions(@RequestBody List<PrescriptionFillEvent> events) {
+        int requested = events != null ? events.size() : 0;
+        log.info("Request to fill prescriptions - events: {}", requested);
+        
+        if (requested == 0 || requested > PrescriptionService.MAX_FILL_EVENTS
+                || events.stream().anyMatch(e -> e == null || e.prescriptionId() == null)) {
+            log.warn("Invalid fill events request: {} events (max {})", requested, PrescriptionService.MAX_FILL_EVENTS);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            List<PrescriptionFillResult> results = prescriptionService.fillPrescriptions(events);
+            return ResponseEntity.ok(results);
+        } catch (IllegalStateException e) {
+            log.warn("Prescription fills not accepted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+    }
+
+    /**
+     * Lectura por lote de prescriptions (una consulta IN), preservando el orden pedido
+     */
+    @PostMapping("/prescriptions/batch")
+    public ResponseEntity<BatchGetResponse<PrescriptionResponse>> getPrescriptionsByIds(@RequestBody BatchGetRequest batchRequest) {
+        int requested = batchRequest != null && batchRequest.ids() != null ? batchRequest.ids().size() : 0;
+        log.info("Request to get prescriptions by IDs - count: {}", requested);
+        
+        if (requested == 0 || requested > AbstractBaseService.MAX_BATCH_IDS) {
+            log.warn("Invalid batch size: {} (max {})", requested, AbstractBaseService.MAX_BATCH_IDS);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        BatchGetResponse<PrescriptionResponse> response = prescriptionService.getByIds(batchRequest.ids());
+        
+        log.info("Batch returned {} prescriptions, {} missing", response.items().size(), response.missingIds().size());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Analíticas de prescripciones por rango de meses (yyyy-MM, opcionales) desde los agregados en memoria;
+     * 503 mientras se cargan
+     */
+    @GetMapping("/prescriptions/analytics")
+    public ResponseEntity<PrescriptionAnalyticsReport> getPrescriptionAnalytics(
+            @RequestParam(value = "fromMonth", required = false) String fromMonth,
+            @RequestParam(value = "toMonth", required = false) String toMonth,
+            @RequestParam(value = "top", defaultValue = "10") int top) {
+        log.info("Request to get prescription analytics - fromMonth: {}, toMonth: {}, top: {}", fromMonth, toMonth, top);
+        
+        java.time.YearMonth from;
+        java.time.YearMonth to;
+        try {
+            from = fromMonth == null || fromMonth.isBlank() ? null : java.time.YearMonth.parse(fromMonth);
+            to = toMonth == null || toMonth.isBlank() ? null : java.time.YearMonth.parse(toMonth);
+        } catch (java.time.format.DateTimeParseException e) {
+            log.warn("Invalid month range for analytics: {} - {}", fromMonth, toMonth);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            return ResponseEntity.ok(prescriptionService.getPrescriptionAnalytics(from, to, top));
+        } catch (IllegalStateException e) {
+            log.warn("Prescription analytics not available yet: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
     @Override
     public ResponseEntity<PrescriptionResponse> getPrescriptionById(Integer id) {
-        log.info("Request to get prescription with ID: {}", id);
-        
         try {
-            Optional<PrescriptionResponse> prescription = prescriptionService.getPrescriptionById(id);
+            // Conditional GET: responder 304 con una consulta de versión, sin cargar ni mapear la entidad
+            String ifNoneMatch = httpRequest.getHeader(HttpHeaders.IF_NONE_MATCH);
+            if (ifNoneMatch != null) {
+                Optional<Long> version = prescriptionService.getPrescriptionVersion(id);
+                if (version.isPresent() && EntityTags.matches(ifNoneMatch, EntityTags.of(id, version.get()))) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(EntityTags.of(id, version.get())).build();
+                }
+            }
+            
+            Optional<PrescriptionResponse> prescription = readCoalescer.execute("prescription", id,
+                    () -> prescriptionService.getPrescriptionById(id));
             
             if (prescription.isPresent()) {
-                log.info("Prescription with ID: {} found", id);
-                return ResponseEntity.ok(prescription.get());
+                return ResponseEntity.ok().eTag(EntityTags.of(id, prescription.get().getVersion())).body(prescription.get());
             } else {
                 log.warn("Prescription not found with ID: {}", id);
                 return ResponseEntity.notFound().build();
@@ -114,15 +253,26 @@ public class PrescriptionController implements PrescriptionsApi {
         log.info("Request to update prescription with ID: {}", id);
         
         try {
-            Optional<PrescriptionResponse> updatedPrescription = prescriptionService.updatePrescription(id, prescriptionRequest);
+            Long expectedVersion = EntityTags.expectedVersion(httpRequest.getHeader(HttpHeaders.IF_MATCH), id,
+                    () -> prescriptionService.getPrescriptionVersion(id)).orElse(null);
+            Optional<PrescriptionResponse> updatedPrescription = prescriptionService.updatePrescription(id, prescriptionRequest, expectedVersion);
             
             if (updatedPrescription.isPresent()) {
                 log.info("Prescription with ID: {} updated", id);
-                return ResponseEntity.ok(updatedPrescription.get());
+                return ResponseEntity.ok().eTag(EntityTags.of(id, updatedPrescription.get().getVersion())).body(updatedPrescription.get());
             } else {
                 log.warn("Prescription not found for update with ID: {}", id);
                 return ResponseEntity.notFound().build();
             }
+        } catch (VersionConflictException e) {
+            log.warn("Cannot update - Prescription {} version conflict: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (InsufficientStockException e) {
+            log.warn("Cannot update - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalStateException e) {
+            log.warn("Cannot update prescription {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             log.error("Error updating prescription with ID: {}", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -134,7 +284,9 @@ public class PrescriptionController implements PrescriptionsApi {
         log.info("Request to delete prescription with ID: {}", id);
         
         try {
-            boolean deleted = prescriptionService.deletePrescription(id);
+            Long expectedVersion = EntityTags.expectedVersion(httpRequest.getHeader(HttpHeaders.IF_MATCH), id,
+                    () -> prescriptionService.getPrescriptionVersion(id)).orElse(null);
+            boolean deleted = prescriptionService.deletePrescription(id, expectedVersion);
             
             if (deleted) {
                 log.info("Prescription with ID: {} deleted", id);
@@ -143,6 +295,9 @@ public class PrescriptionController implements PrescriptionsApi {
                 log.warn("Prescription not found for deletion with ID: {}", id);
                 return ResponseEntity.notFound().build();
             }
+        } catch (VersionConflictException e) {
+            log.warn("Cannot delete - Prescription {} version conflict: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
         } catch (Exception e) {
             log.error("Error deleting prescription with ID: {}", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -177,9 +332,20 @@ public class PrescriptionController implements PrescriptionsApi {
         try {
             PrescriptionMedicationResponse response = prescriptionService.addMedicationToPrescriptionByIds(
                     prescriptionId, prescriptionMedicationRequest.getMedicationId(), prescriptionMedicationRequest);
-            
             log.info("Medication added to prescription ID: {}", prescriptionId);
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (DuplicatePrescriptionLineException e) {
+            log.warn("Cannot add - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (VersionConflictException e) {
+            log.warn("Cannot add medication - Prescription {} kept changing concurrently", prescriptionId);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (InsufficientStockException e) {
+            log.warn("Cannot add medication - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalStateException e) {
+            log.warn("Cannot add medication to prescription {}: {}", prescriptionId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             log.error("Error adding medication to prescription ID: {}", prescriptionId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -243,6 +409,15 @@ public class PrescriptionController implements PrescriptionsApi {
                 log.warn("Prescription-medication relationship not found for update");
                 return ResponseEntity.notFound().build();
             }
+        } catch (VersionConflictException e) {
+            log.warn("Cannot update line - Prescription {} kept changing concurrently", prescriptionId);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (InsufficientStockException e) {
+            log.warn("Cannot update line - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalStateException e) {
+            log.warn("Cannot update line of prescription {}: {}", prescriptionId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             log.error("Error updating prescription-medication relationship", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -263,10 +438,20 @@ public class PrescriptionController implements PrescriptionsApi {
                 log.warn("Prescription-medication relationship not found");
                 return ResponseEntity.notFound().build();
             }
+        } catch (VersionConflictException e) {
+            log.warn("Cannot remove line - Prescription {} kept changing concurrently", prescriptionId);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalStateException e) {
+            log.warn("Cannot remove line of prescription {}: {}", prescriptionId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             log.error("Error removing medication from prescription", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
-}
 
+    private java.time.LocalDate parseDateParam(String name) {
+        String value = httpRequest.getParameter(name);
+        return value == null || value.isBlank() ? null : java.time.LocalDate.parse(value);
+    }
+}
@@ -0,0 +1,76 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.patients.dto.DoseEventType;
+import com.fiuni.patients.dto.DueDoseEvent;
+import com.fiuni.patients.service.DoseScheduleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * REST Controller de la agenda precalculada de tomas y reposiciones (para el sistema de recordatorios)
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
+            methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.OPTIONS},
+            allowedHeaders = "*",
+            exposedHeaders = {ScheduleController.HORIZON_HEADER})
+public class ScheduleController {
+
+    /** Hasta dónde hay eventos generados: una ventana que lo supera vuelve incompleta */
+    public static final String HORIZON_HEADER = "X-Schedule-Horizon";
+
+    private final DoseScheduleService doseScheduleService;
+
+    @GetMapping("/schedules/due")
+    public ResponseEntity<List<DueDoseEvent>> getDue(
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "patientId", required = false) Integer patientId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("Request to get due dose events - from: {}, to: {}, type: {}, patientId: {}", from, to, type, patientId);
+
+        LocalDateTime start;
+        LocalDateTime end;
+        DoseEventType eventType;
+        try {
+            start = from == null || from.isBlank() ? LocalDateTime.now() : LocalDateTime.parse(from);
+            end = to == null || to.isBlank() ? start.plusHours(24) : LocalDateTime.parse(to);
+            eventType = type == null || type.isBlank() ? null : DoseEventType.valueOf(type.toUpperCase(Locale.ROOT));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            log.warn("Invalid due window or type: {} - {} ({})", from, to, type);
+            return ResponseEntity.badRequest().build();
+        }
+        if (!end.isAfter(start)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<DueDoseEvent> events = doseScheduleService.getDueEvents(start, end, eventType, patientId, limit);
+        Optional<LocalDateTime> horizonEnd = doseScheduleService.getHorizonEnd();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        horizonEnd.ifPresent(h -> response.header(HORIZON_HEADER, h.toString()));
+        return response.body(events);
+    }
+
+    @PostMapping("/schedules/refresh")
+    public ResponseEntity<Void> refresh() {
+        log.info("Request to refresh dose schedules");
+        doseScheduleService.refresh();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,59 @@
+package com.fiuni.patients.controller;
+
+import com.fiuni.clinica.dto.generated.MedicationResponse;
+import com.fiuni.clinica.dto.generated.PatientResponse;
+import com.fiuni.clinica.dto.generated.PrescriptionResponse;
+import com.fiuni.patients.dto.SyncResponse;
+import com.fiuni.patients.service.SyncService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+/**
+ * REST Controller de sincronización incremental (changedSince) para clientes offline
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"}, 
+            methods = {RequestMethod.GET, RequestMethod.OPTIONS},
+            allowedHeaders = "*")
+public class SyncController {
+
+    private final SyncService syncService;
+
+    @GetMapping("/sync/patients")
+    public ResponseEntity<SyncResponse<PatientResponse>> syncPatients(
+            @RequestParam(value = "changedSince", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime changedSince,
+            @RequestParam(value = "afterId", required = false) Integer afterId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("Request to sync patients changed since: {}, afterId: {}", changedSince, afterId);
+        return ResponseEntity.ok(syncService.getPatientsChangedSince(changedSince, afterId, limit));
+    }
+
+    @GetMapping("/sync/medications")
+    public ResponseEntity<SyncResponse<MedicationResponse>> syncMedications(
+            @RequestParam(value = "changedSince", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime changedSince,
+            @RequestParam(value = "afterId", required = false) Integer afterId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("Request to sync medications changed since: {}, afterId: {}", changedSince, afterId);
+        return ResponseEntity.ok(syncService.getMedicationsChangedSince(changedSince, afterId, limit));
+    }
+
+    @GetMapping("/sync/prescriptions")
+    public ResponseEntity<SyncResponse<PrescriptionResponse>> syncPrescriptions(
+            @RequestParam(value = "changedSince", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime changedSince,
+            @RequestParam(value = "afterId", required = false) Integer afterId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("Request to sync prescriptions changed since: {}, afterId: {}", changedSince, afterId);
+        return ResponseEntity.ok(syncService.getPrescriptionsChangedSince(changedSince, afterId, limit));
+    }
+}
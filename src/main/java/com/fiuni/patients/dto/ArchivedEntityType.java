@@ -0,0 +1,34 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Tipos de fila que maneja el archivo frío, en el orden en que se archivan
+ * (primero las dependientes, para no violar referencias).
+ */
+public enum ArchivedEntityType {
+    PRESCRIPTION_MEDICATION("prescription-medications"),
+    PRESCRIPTION("prescriptions"),
+    MEDICATION("medications"),
+    PATIENT("patients");
+
+    private final String path;
+
+    ArchivedEntityType(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Tipo a partir del segmento de URL (patients, medications, prescriptions, prescription-medications)
+     */
+    public static ArchivedEntityType fromPath(String path) {
+        for (ArchivedEntityType type : values()) {
+            if (type.path.equalsIgnoreCase(path)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown archived entity type: " + path);
+    }
+}
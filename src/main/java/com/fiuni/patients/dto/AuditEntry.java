@@ -0,0 +1,12 @@
+package com.fiuni.patients.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registro de auditoría de una escritura; changes es el JSON {campo: {before, after}} tal como se guardó
+ */
+public record AuditEntry(Long id, ChangeEntityType entityType, Integer entityId, ChangeOperation operation,
+                         String actor, @JsonRawValue String changes, LocalDateTime recordedAt) {
+}
@@ -0,0 +1,9 @@
+package com.fiuni.patients.dto;
+
+import java.util.List;
+
+/**
+ * Request de lectura por lote de IDs
+ */
+public record BatchGetRequest(List<Integer> ids) {
+}
@@ -0,0 +1,9 @@
+package com.fiuni.patients.dto;
+
+import java.util.List;
+
+/**
+ * Respuesta de lectura por lote: items en el orden pedido y los IDs no encontrados (o inactivos)
+ */
+public record BatchGetResponse<T>(List<T> items, List<Integer> missingIds) {
+}
@@ -0,0 +1,10 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Tipos de entidad publicados en el change feed
+ */
+public enum ChangeEntityType {
+    PATIENT,
+    MEDICATION,
+    PRESCRIPTION
+}
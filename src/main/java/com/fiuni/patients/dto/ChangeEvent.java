@@ -0,0 +1,21 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento del outbox de cambios. El id es el cursor monotónico del feed.
+ */
+public record ChangeEvent(
+        Long id,
+        ChangeEntityType entityType,
+        Integer entityId,
+        ChangeOperation operation,
+        LocalDateTime createdAt) {
+
+    /**
+     * Evento aún no persistido (sin id asignado)
+     */
+    public static ChangeEvent pending(ChangeEntityType entityType, Integer entityId, ChangeOperation operation) {
+        return new ChangeEvent(null, entityType, entityId, operation, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,10 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Operaciones de escritura publicadas en el change feed
+ */
+public enum ChangeOperation {
+    CREATE,
+    UPDATE,
+    DELETE
+}
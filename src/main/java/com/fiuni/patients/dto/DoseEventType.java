@@ -0,0 +1,9 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Tipo de evento de un esquema de dosis: toma o reposición (la cantidad dispensada se agota)
+ */
+public enum DoseEventType {
+    DOSE,
+    REFILL
+}
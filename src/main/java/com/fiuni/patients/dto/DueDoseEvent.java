@@ -0,0 +1,10 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Toma o reposición precalculada que vence en la ventana consultada
+ */
+public record DueDoseEvent(Integer prescriptionMedicationId, Integer prescriptionId, Integer patientId,
+                           Integer medicationId, DoseEventType type, LocalDateTime dueAt) {
+}
@@ -0,0 +1,10 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Paciente existente que probablemente es el mismo que el consultado (score en [0, 1])
+ */
+public record DuplicateMatch(Integer patientId, String firstName, String lastName, LocalDate birthDate,
+                             String documentNumber, double score) {
+}
@@ -0,0 +1,9 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Par candidato a duplicado detectado por el escaneo completo del padrón (patientIdA < patientIdB)
+ */
+public record DuplicatePair(Integer patientIdA, Integer patientIdB, double score, LocalDateTime detectedAt) {
+}
@@ -0,0 +1,9 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Resultado de un escaneo de duplicados: pacientes reindexados, bloques comparados / omitidos por tamaño,
+ * comparaciones realizadas y pares por encima del umbral
+ */
+public record DuplicateScanReport(int reindexedPatients, long blocks, long oversizedBlocks, long comparisons,
+                                  int pairs, long elapsedMs) {
+}
@@ -0,0 +1,17 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Respuesta guardada para un Idempotency-Key: se reenvía tal cual ante reintentos del mismo request.
+ * requestHash identifica método, URI y cuerpo del request original.
+ */
+public record IdempotentResponse(
+        String requestHash,
+        int statusCode,
+        String contentType,
+        String location,
+        String etag,
+        byte[] body,
+        LocalDateTime expiresAt) {
+}
@@ -0,0 +1,15 @@
+package com.fiuni.patients.dto;
+
+import com.fiuni.clinica.dto.generated.MedicationResponse;
+
+import java.util.List;
+
+/**
+ * Resultado de la búsqueda rankeada de medicamentos.
+ * matchedFields indica dónde coincidió la consulta (p. ej. "contraindications" o "sideEffects").
+ */
+public record MedicationSearchHit(
+        MedicationResponse medication,
+        double score,
+        List<String> matchedFields) {
+}
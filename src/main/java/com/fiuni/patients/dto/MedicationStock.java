@@ -0,0 +1,7 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Stock disponible de un medicamento en esta instancia (unflushedDelta: cambios aún no volcados a la base)
+ */
+public record MedicationStock(Integer medicationId, long available, long unflushedDelta) {
+}
@@ -0,0 +1,27 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Modo de paginación de los listados.
+ * EXACT: página con count(*) exacto (comportamiento por defecto).
+ * SLICE: sin count; se pide size+1 filas para saber si hay página siguiente.
+ * APPROXIMATE: sin count en la request; total tomado de un conteo cacheado que se refresca en segundo plano.
+ */
+public enum PaginationMode {
+    EXACT,
+    SLICE,
+    APPROXIMATE;
+
+    /**
+     * Interpretar el parámetro/header de la request (null o desconocido = EXACT)
+     */
+    public static PaginationMode from(String value) {
+        if (value == null || value.isBlank()) {
+            return EXACT;
+        }
+        try {
+            return PaginationMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return EXACT;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Paciente a absorber por el paciente de la URL (queda inactivo, sin prescripciones)
+ */
+public record PatientMergeRequest(Integer sourcePatientId) {
+}
@@ -0,0 +1,13 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Resultado de una fusión: prescripciones re-apuntadas (activas e históricas, y archivadas) y campos
+ * demográficos del destino completados desde el origen
+ */
+public record PatientMergeResult(Long mergeId, Integer targetPatientId, Integer sourcePatientId,
+                                 int movedPrescriptions, int movedArchivedPrescriptions,
+                                 List<String> mergedFields, LocalDateTime mergedAt) {
+}
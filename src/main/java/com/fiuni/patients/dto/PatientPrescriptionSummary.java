@@ -0,0 +1,15 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Resumen de prescripciones de un paciente (solo conteos) para dashboards
+ */
+public record PatientPrescriptionSummary(
+        Integer patientId,
+        long totalPrescriptions,
+        long filledPrescriptions,
+        long pendingPrescriptions,
+        long activeMedicationLines,
+        LocalDate lastPrescriptionDate) {
+}
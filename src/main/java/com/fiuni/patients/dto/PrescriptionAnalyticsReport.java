@@ -0,0 +1,27 @@
+package com.fiuni.patients.dto;
+
+import java.util.List;
+
+/**
+ * Analíticas de prescripciones activas en un rango de meses (inclusive), calculadas en memoria.
+ * fillRate = surtidas / total (0 si no hay prescripciones).
+ */
+public record PrescriptionAnalyticsReport(
+        String fromMonth,
+        String toMonth,
+        long totalPrescriptions,
+        long filledPrescriptions,
+        double fillRate,
+        List<MonthStat> byMonth,
+        List<MedicationStat> byMedication,
+        List<DoctorStat> byDoctor) {
+
+    public record MonthStat(String month, long prescriptions, long filled, double fillRate) {
+    }
+
+    public record MedicationStat(Integer medicationId, long prescriptions, long filled, double fillRate) {
+    }
+
+    public record DoctorStat(String doctorLicense, long prescriptions, long filled, double fillRate) {
+    }
+}
@@ -0,0 +1,11 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Evento de surtido de una prescripción (filled null = surtida)
+ */
+public record PrescriptionFillEvent(Integer prescriptionId, Boolean filled) {
+
+    public boolean filledOrDefault() {
+        return filled == null || filled;
+    }
+}
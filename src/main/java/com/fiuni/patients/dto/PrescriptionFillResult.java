@@ -0,0 +1,11 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Resultado de un evento de surtido ya confirmado
+ */
+public record PrescriptionFillResult(Integer prescriptionId, boolean filled, PrescriptionFillStatus status) {
+
+    public boolean applied() {
+        return status == PrescriptionFillStatus.APPLIED;
+    }
+}
@@ -0,0 +1,10 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Resultado de un evento de surtido
+ */
+public enum PrescriptionFillStatus {
+    APPLIED,
+    NOT_FOUND,
+    INSUFFICIENT_STOCK
+}
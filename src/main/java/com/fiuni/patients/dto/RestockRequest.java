@@ -0,0 +1,7 @@
+package com.fiuni.patients.dto;
+
+/**
+ * Ingreso de unidades al stock de un medicamento
+ */
+public record RestockRequest(Long quantity) {
+}
@@ -0,0 +1,18 @@
+package com.fiuni.patients.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Página de sincronización incremental.
+ * upserts: entidades activas creadas/modificadas desde el watermark.
+ * deletedIds: entidades dadas de baja (isActive = false) desde el watermark.
+ * nextSince/nextAfterId: continuación keyset para pedir la página siguiente (o watermark de la próxima sync).
+ */
+public record SyncResponse<T>(
+        List<T> upserts,
+        List<Integer> deletedIds,
+        LocalDateTime nextSince,
+        Integer nextAfterId,
+        boolean hasMore) {
+}
@@ -0,0 +1,24 @@
+package com.fiuni.patients.exception;
+
+/**
+ * El medicamento ya tiene una línea activa en la prescripción
+ */
+public class DuplicatePrescriptionLineException extends RuntimeException {
+
+    private final Integer prescriptionId;
+    private final Integer medicationId;
+
+    public DuplicatePrescriptionLineException(Integer prescriptionId, Integer medicationId) {
+        super("Medication " + medicationId + " is already associated with prescription " + prescriptionId);
+        this.prescriptionId = prescriptionId;
+        this.medicationId = medicationId;
+    }
+
+    public Integer getPrescriptionId() {
+        return prescriptionId;
+    }
+
+    public Integer getMedicationId() {
+        return medicationId;
+    }
+}
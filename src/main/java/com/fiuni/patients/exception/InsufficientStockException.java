@@ -0,0 +1,18 @@
+package com.fiuni.patients.exception;
+
+/**
+ * Surtir la prescripción dejaría el stock de algún medicamento por debajo de cero
+ */
+public class InsufficientStockException extends RuntimeException {
+
+    private final Integer prescriptionId;
+
+    public InsufficientStockException(Integer prescriptionId) {
+        super("Insufficient stock to fill prescription " + prescriptionId);
+        this.prescriptionId = prescriptionId;
+    }
+
+    public Integer getPrescriptionId() {
+        return prescriptionId;
+    }
+}
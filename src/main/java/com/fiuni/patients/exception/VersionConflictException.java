@@ -0,0 +1,33 @@
+package com.fiuni.patients.exception;
+
+/**
+ * La versión esperada por el cliente (If-Match) no coincide con la versión actual de la entidad
+ */
+public class VersionConflictException extends RuntimeException {
+
+    private final Integer entityId;
+    private final Long currentVersion;
+
+    public VersionConflictException(Integer entityId, Long expectedVersion, Long currentVersion) {
+        super("Version conflict for ID " + entityId + ": expected " + expectedVersion + " but was " + currentVersion);
+        this.entityId = entityId;
+        this.currentVersion = currentVersion;
+    }
+
+    /**
+     * Conflicto de versión entre escrituras concurrentes que persistió tras los reintentos
+     */
+    public VersionConflictException(Integer entityId, Throwable cause) {
+        super("Concurrent modification of ID " + entityId, cause);
+        this.entityId = entityId;
+        this.currentVersion = null;
+    }
+
+    public Integer getEntityId() {
+        return entityId;
+    }
+
+    public Long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -38,6 +38,8 @@ public class MedicationMapper implements GenericMapper<MedicationDomain, Medicat
         
         // Configurar valores por defecto para nueva entidad
         entity.setIsActive(true);
+        entity.setCreatedDate(java.time.LocalDateTime.now());
+        entity.setLastModified(java.time.LocalDateTime.now());
         
         return entity;
     }
@@ -48,8 +50,6 @@ public class MedicationMapper implements GenericMapper<MedicationDomain, Medicat
             return null;
         }
         
-        log.debug("Converting MedicationDomain to MedicationResponse for ID: {}", entity.getId());
-        
         MedicationResponse dto = new MedicationResponse();
         
         // Mapear campos básicos
@@ -138,6 +138,9 @@ public class MedicationMapper implements GenericMapper<MedicationDomain, Medicat
             entity.setContraindications(dto.getContraindications());
         }
         
+        // Actualizar timestamp de modificación (watermark de sincronización)
+        entity.setLastModified(java.time.LocalDateTime.now());
+        
         log.debug("Medication {} updated successfully", entity.getId());
     }
 
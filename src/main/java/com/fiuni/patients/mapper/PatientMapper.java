@@ -91,8 +91,6 @@ public class PatientMapper implements GenericMapper<PatientDomain, PatientReques
             return null;
         }
 
-        log.debug("Converting PatientDomain to PatientResponse for ID: {}", entity.getId());
-
         PatientResponse dto = new PatientResponse();
         dto.setId(entity.getId());
         dto.setActive(entity.isActive());
@@ -175,6 +173,65 @@ public class PatientMapper implements GenericMapper<PatientDomain, PatientReques
         log.debug("Patient {} updated successfully", entity.getId());
     }
 
+    /**
+     * Completar el paciente destino de una fusión con los datos no nulos del origen (mismo criterio que
+     * updateEntity: un valor nulo nunca pisa). Los datos que el destino ya tiene se conservan, salvo alergias
+     * y condiciones crónicas, que se concatenan si difieren. El documento no se copia: identifica al
+     * registro origen. Devuelve los campos modificados.
+     */
+    public List<String> mergeMissingFields(PatientDomain target, PatientDomain source) {
+        List<String> merged = new java.util.ArrayList<>();
+        if (target == null || source == null)
+            return merged;
+
+        log.debug("Merging PatientDomain ID: {} into ID: {}", source.getId(), target.getId());
+
+        if (target.getEmail() == null && source.getEmail() != null) {
+            target.setEmail(source.getEmail());
+            merged.add("email");
+        }
+        if (target.getPhone() == null && source.getPhone() != null) {
+            target.setPhone(source.getPhone());
+            merged.add("phone");
+        }
+        if (target.getBirthDate() == null && source.getBirthDate() != null) {
+            target.setBirthDate(source.getBirthDate());
+            merged.add("birthDate");
+        }
+        if (target.getGender() == null && source.getGender() != null) {
+            target.setGender(source.getGender());
+            merged.add("gender");
+        }
+        if (target.getBloodType() == null && source.getBloodType() != null) {
+            target.setBloodType(source.getBloodType());
+            merged.add("bloodType");
+        }
+
+        String allergyNotes = concatNotes(target.getAllergyNotes(), source.getAllergyNotes());
+        if (!java.util.Objects.equals(allergyNotes, target.getAllergyNotes())) {
+            target.setAllergyNotes(allergyNotes);
+            merged.add("allergyNotes");
+        }
+        String chronicConditions = concatNotes(target.getChronicConditions(), source.getChronicConditions());
+        if (!java.util.Objects.equals(chronicConditions, target.getChronicConditions())) {
+            target.setChronicConditions(chronicConditions);
+            merged.add("chronicConditions");
+        }
+
+        if (!merged.isEmpty())
+            target.setUpdatedAt(java.time.LocalDateTime.now());
+
+        return merged;
+    }
+
+    private String concatNotes(String target, String source) {
+        if (source == null || source.isBlank())
+            return target;
+        if (target == null || target.isBlank())
+            return source;
+        return target.contains(source) ? target : target + "; " + source;
+    }
+
     /**
      * Método compatible con versión anterior
      * 
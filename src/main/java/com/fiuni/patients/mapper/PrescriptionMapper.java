@@ -64,8 +64,6 @@ public class PrescriptionMapper implements GenericMapper<PrescriptionDomain, Pre
             return null;
         }
         
-        log.debug("Converting PrescriptionDomain to PrescriptionResponse for ID: {}", entity.getId());
-        
         PrescriptionResponse dto = new PrescriptionResponse();
         
         // Mapear campos básicos
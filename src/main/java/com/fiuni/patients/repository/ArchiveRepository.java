@@ -0,0 +1,162 @@
+package com.fiuni.patients.repository;
+
+import com.fiuni.patients.dto.ArchivedEntityType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Repository JDBC del archivo frío (tabla archived_record, changelog 006).
+ *
+ * Cada movimiento es una única sentencia (DELETE ... RETURNING dentro de un CTE + INSERT en archived_record),
+ * así una fila nunca queda en ambos lados ni en ninguno. Las candidatas se toman con FOR UPDATE SKIP LOCKED
+ * para que varias instancias puedan archivar en paralelo sin bloquearse.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ArchiveRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Columnas insertables (no generadas) por tabla, resueltas una vez desde information_schema */
+    private final Map<String, String> insertableColumns = new ConcurrentHashMap<>();
+
+    /**
+     * Archivar un lote de filas inactivas modificadas antes del corte con id mayor que afterId;
+     * devuelve cuántas se movieron
+     */
+    public int archiveBatch(ArchivedEntityType type, LocalDateTime cutoff, int afterId, int limit) {
+        String picked = "SELECT t.id FROM " + table(type) + " t WHERE " + candidateCondition(type) +
+                " AND t.id > ? ORDER BY t.id LIMIT ? FOR UPDATE SKIP LOCKED";
+        return jdbcTemplate.update(moveSql(type, picked), Timestamp.valueOf(cutoff), afterId, limit);
+    }
+
+    /**
+     * IDs candidatos a archivar con id mayor que afterId (sin bloquear), para reintentar fila por fila
+     */
+    public List<Integer> findCandidateIds(ArchivedEntityType type, LocalDateTime cutoff, int afterId, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT t.id FROM " + table(type) + " t WHERE " + candidateCondition(type) +
+                " AND t.id > ? ORDER BY t.id LIMIT ?",
+                Integer.class, Timestamp.valueOf(cutoff), afterId, limit);
+    }
+
+    /**
+     * Archivar una fila puntual si sigue siendo candidata
+     */
+    public int archiveOne(ArchivedEntityType type, Integer id, LocalDateTime cutoff) {
+        String picked = "SELECT t.id FROM " + table(type) + " t WHERE " + candidateCondition(type) +
+                " AND t.id = ? FOR UPDATE SKIP LOCKED";
+        return jdbcTemplate.update(moveSql(type, picked), Timestamp.valueOf(cutoff), id);
+    }
+
+    /**
+     * true si la fila está en el archivo
+     */
+    public boolean isArchived(ArchivedEntityType type, Integer id) {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM archived_record WHERE entity_type = ? AND entity_id = ?)",
+                Boolean.class, type.name(), id);
+        return Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * Valor entero de un campo del payload archivado (p. ej. patient_id de una prescripción)
+     */
+    public Optional<Integer> findPayloadInt(ArchivedEntityType type, Integer id, String field) {
+        List<Integer> values = jdbcTemplate.queryForList(
+                "SELECT (payload ->> ?)::integer FROM archived_record WHERE entity_type = ? AND entity_id = ?",
+                Integer.class, field, type.name(), id);
+        return values.isEmpty() ? Optional.empty() : Optional.ofNullable(values.get(0));
+    }
+
+    /**
+     * Líneas archivadas de una prescripción
+     */
+    public List<Integer> findArchivedLineIds(Integer prescriptionId) {
+        return jdbcTemplate.queryForList(
+                "SELECT entity_id FROM archived_record WHERE entity_type = ? AND parent_id = ? ORDER BY entity_id",
+                Integer.class, ArchivedEntityType.PRESCRIPTION_MEDICATION.name(), prescriptionId);
+    }
+
+    /**
+     * Devolver una fila archivada a su tabla (tal como se archivó); devuelve false si no estaba archivada
+     */
+    public boolean restore(ArchivedEntityType type, Integer id) {
+        String table = table(type);
+        String columns = insertableColumns.computeIfAbsent(table, this::loadInsertableColumns);
+        String selectColumns = "r." + columns.replace(", ", ", r.");
+        int restored = jdbcTemplate.update(
+                "WITH rec AS (DELETE FROM archived_record WHERE entity_type = ? AND entity_id = ? RETURNING payload) " +
+                "INSERT INTO " + table + " (" + columns + ") OVERRIDING SYSTEM VALUE " +
+                "SELECT " + selectColumns + " FROM rec, jsonb_populate_record(NULL::" + table + ", rec.payload) r",
+                type.name(), id);
+        return restored > 0;
+    }
+
+    /**
+     * Reactivar una fila restaurada y marcarla como modificada (para sync y change feed)
+     */
+    public void reactivate(ArchivedEntityType type, Integer id) {
+        jdbcTemplate.update("UPDATE " + table(type) + " SET is_active = true, " + timestampColumn(type) + " = now() WHERE id = ?", id);
+    }
+
+    private String moveSql(ArchivedEntityType type, String pickedSql) {
+        String table = table(type);
+        String archiveRows = "INSERT INTO archived_record (entity_type, entity_id, parent_id, payload) ";
+        if (type == ArchivedEntityType.PRESCRIPTION) {
+            // La prescripción se archiva junto con todas sus líneas, en la misma sentencia
+            return "WITH picked AS (" + pickedSql + "), " +
+                    "lines AS (DELETE FROM prescription_medication pm USING picked WHERE pm.prescription_id = picked.id RETURNING pm.*), " +
+                    "archived_lines AS (" + archiveRows +
+                    "SELECT '" + ArchivedEntityType.PRESCRIPTION_MEDICATION.name() + "', lines.id, lines.prescription_id, to_jsonb(lines) FROM lines), " +
+                    "moved AS (DELETE FROM prescription p USING picked WHERE p.id = picked.id RETURNING p.*) " +
+                    archiveRows + "SELECT '" + type.name() + "', moved.id, NULL, to_jsonb(moved) - 'search_vector' FROM moved";
+        }
+        String parent = type == ArchivedEntityType.PRESCRIPTION_MEDICATION ? "moved.prescription_id" : "NULL";
+        return "WITH picked AS (" + pickedSql + "), " +
+                "moved AS (DELETE FROM " + table + " x USING picked WHERE x.id = picked.id RETURNING x.*) " +
+                archiveRows + "SELECT '" + type.name() + "', moved.id, " + parent + ", to_jsonb(moved) FROM moved";
+    }
+
+    /**
+     * Inactiva desde antes del corte y sin referencias activas en las tablas calientes
+     */
+    private String candidateCondition(ArchivedEntityType type) {
+        String base = "t.is_active = false AND t." + timestampColumn(type) + " < ?";
+        return switch (type) {
+            case PRESCRIPTION_MEDICATION, PRESCRIPTION -> base;
+            case MEDICATION -> base + " AND NOT EXISTS (SELECT 1 FROM prescription_medication pm WHERE pm.medication_id = t.id)";
+            case PATIENT -> base + " AND NOT EXISTS (SELECT 1 FROM prescription p WHERE p.patient_id = t.id)";
+        };
+    }
+
+    private String table(ArchivedEntityType type) {
+        return switch (type) {
+            case PATIENT -> "patient";
+            case MEDICATION -> "medication";
+            case PRESCRIPTION -> "prescription";
+            case PRESCRIPTION_MEDICATION -> "prescription_medication";
+        };
+    }
+
+    private String timestampColumn(ArchivedEntityType type) {
+        return type == ArchivedEntityType.PATIENT ? "updated_at" : "last_modified";
+    }
+
+    private String loadInsertableColumns(String table) {
+        List<String> columns = jdbcTemplate.queryForList(
+                "SELECT quote_ident(column_name) FROM information_schema.columns " +
+                "WHERE table_schema = current_schema() AND table_name = ? AND is_generated = 'NEVER' " +
+                "ORDER BY ordinal_position",
+                String.class, table);
+        return String.join(", ", columns);
+    }
+}
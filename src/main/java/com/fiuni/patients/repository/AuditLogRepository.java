@@ -0,0 +1,83 @@
+package com.fiuni.patients.repository;
+
+import com.fiuni.patients.dto.AuditEntry;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository JDBC de la tabla append-only audit_log (changelog 013).
+ * Un lote se inserta con un único INSERT multi-fila desde unnest (una sentencia y un round trip por lote).
+ */
+@Repository
+@RequiredArgsConstructor
+public class AuditLogRepository {
+
+    private static final String INSERT_ROWS =
+            "INSERT INTO audit_log (entity_type, entity_id, operation, actor, changes, recorded_at) " +
+            "SELECT v.entity_type, v.entity_id, v.operation, v.actor, v.changes::jsonb, v.recorded_at::timestamp " +
+            "FROM unnest(?::varchar[], ?::int[], ?::varchar[], ?::varchar[], ?::text[], ?::text[]) " +
+            "AS v(entity_type, entity_id, operation, actor, changes, recorded_at)";
+
+    private static final RowMapper<AuditEntry> ROW_MAPPER = (rs, rowNum) -> new AuditEntry(
+            rs.getLong("id"),
+            ChangeEntityType.valueOf(rs.getString("entity_type")),
+            rs.getInt("entity_id"),
+            ChangeOperation.valueOf(rs.getString("operation")),
+            rs.getString("actor"),
+            rs.getString("changes"),
+            rs.getTimestamp("recorded_at").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insertar un lote (usa la conexión de la transacción actual, si la hay)
+     */
+    public void insertBatch(List<AuditRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int n = rows.size();
+        String[] entityTypes = new String[n];
+        Integer[] entityIds = new Integer[n];
+        String[] operations = new String[n];
+        String[] actors = new String[n];
+        String[] changes = new String[n];
+        String[] recordedAt = new String[n];
+        for (int i = 0; i < n; i++) {
+            AuditRow row = rows.get(i);
+            entityTypes[i] = row.entityType().name();
+            entityIds[i] = row.entityId();
+            operations[i] = row.operation().name();
+            actors[i] = row.actor();
+            changes[i] = row.changes();
+            recordedAt[i] = row.recordedAt().toString();
+        }
+        jdbcTemplate.update(INSERT_ROWS, entityTypes, entityIds, operations, actors, changes, recordedAt);
+    }
+
+    /**
+     * Registros de una entidad en [from, to), más recientes primero (índice entity_type, entity_id, recorded_at)
+     */
+    public List<AuditEntry> findByEntity(ChangeEntityType entityType, Integer entityId, LocalDateTime from,
+                                         LocalDateTime to, int limit) {
+        return jdbcTemplate.query("SELECT id, entity_type, entity_id, operation, actor, changes, recorded_at " +
+                        "FROM audit_log WHERE entity_type = ? AND entity_id = ? AND recorded_at >= ? AND recorded_at < ? " +
+                        "ORDER BY recorded_at DESC, id DESC LIMIT ?",
+                ROW_MAPPER, entityType.name(), entityId, Timestamp.valueOf(from), Timestamp.valueOf(to), limit);
+    }
+
+    /**
+     * Fila de auditoría con el diff ya serializado
+     */
+    public record AuditRow(ChangeEntityType entityType, Integer entityId, ChangeOperation operation, String actor,
+                           String changes, LocalDateTime recordedAt) {
+    }
+}
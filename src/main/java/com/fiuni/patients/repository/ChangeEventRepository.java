@@ -0,0 +1,72 @@
+package com.fiuni.patients.repository;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.dto.ChangeOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository JDBC para la tabla outbox change_event.
+ * La tabla es propia de este microservicio (no es una entidad de Clinica), por eso se accede con JdbcTemplate.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChangeEventRepository {
+
+    private static final RowMapper<ChangeEvent> ROW_MAPPER = (rs, rowNum) -> new ChangeEvent(
+            rs.getLong("id"),
+            ChangeEntityType.valueOf(rs.getString("entity_type")),
+            rs.getInt("entity_id"),
+            ChangeOperation.valueOf(rs.getString("operation")),
+            rs.getTimestamp("created_at").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insertar eventos en un único batch JDBC (usa la conexión de la transacción actual)
+     */
+    public void insertBatch(List<ChangeEvent> events) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO change_event (entity_type, entity_id, operation, created_at) VALUES (?, ?, ?, ?)",
+                events, events.size(), (ps, event) -> {
+                    ps.setString(1, event.entityType().name());
+                    ps.setInt(2, event.entityId());
+                    ps.setString(3, event.operation().name());
+                    ps.setTimestamp(4, Timestamp.valueOf(event.createdAt()));
+                });
+    }
+
+    /**
+     * Eventos con id mayor al cursor, en orden de id
+     */
+    public List<ChangeEvent> findAfter(long cursor, int limit) {
+        return jdbcTemplate.query(
+                "SELECT id, entity_type, entity_id, operation, created_at FROM change_event WHERE id > ? ORDER BY id LIMIT ?",
+                ROW_MAPPER, cursor, limit);
+    }
+
+    /**
+     * Último id con created_at anterior al instante dado (0 si no hay); recorre la pk desde el final
+     */
+    public long findLastIdCreatedBefore(LocalDateTime before) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM change_event WHERE created_at < ? ORDER BY id DESC LIMIT 1",
+                Long.class, Timestamp.valueOf(before));
+        return ids.isEmpty() ? 0L : ids.get(0);
+    }
+
+    /**
+     * Último id del outbox (0 si está vacío)
+     */
+    public long findMaxId() {
+        Long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM change_event", Long.class);
+        return max != null ? max : 0L;
+    }
+}
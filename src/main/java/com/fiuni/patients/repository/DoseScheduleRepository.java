@@ -0,0 +1,263 @@
+package com.fiuni.patients.repository;
+
+import com.fiuni.patients.dto.DoseEventType;
+import com.fiuni.patients.dto.DueDoseEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Repository JDBC de los esquemas de dosis y eventos precalculados (changelog 010).
+ *
+ * Los eventos se generan en SQL con generate_series sobre los esquemas ya normalizados, así extender la
+ * ventana no vuelve a interpretar textos. Los INSERT usan ON CONFLICT DO NOTHING: regenerar es idempotente.
+ */
+@Repository
+public class DoseScheduleRepository {
+
+    private static final long REFRESH_LOCK_KEY = 0x646f7365L;
+    private static final int FETCH_SIZE = 1_000;
+
+    private static final String SELECT_LINES =
+            "SELECT pm.id, pm.prescription_id, p.patient_id, pm.medication_id, pm.frequency, pm.duration, pm.quantity, " +
+            "pm.created_date, p.prescription_date, p.valid_until, (pm.is_active AND p.is_active) AS active " +
+            "FROM prescription_medication pm JOIN prescription p ON p.id = pm.prescription_id ";
+
+    /**
+     * Líneas modificadas o creadas (last_modified NULL: nunca modificadas, cuenta el alta): range scan sobre
+     * idx_prescription_medication_sync_watermark (changelog 010)
+     */
+    private static final String CHANGED_LINES = SELECT_LINES +
+            "WHERE COALESCE(pm.last_modified, pm.created_date) > ?";
+
+    /**
+     * Líneas sin cambios de prescripciones modificadas o creadas (vigencia, baja): range scan sobre
+     * idx_prescription_sync_watermark (changelog 003) y las líneas por prescription_id; excluye las que ya trajo
+     * CHANGED_LINES
+     */
+    private static final String LINES_OF_CHANGED_PRESCRIPTIONS = SELECT_LINES +
+            "WHERE COALESCE(p.last_modified, p.created_date) > ? AND COALESCE(pm.last_modified, pm.created_date) <= ?";
+
+    private static final String UPSERT_SCHEDULE =
+            "INSERT INTO dose_schedule (prescription_medication_id, prescription_id, patient_id, medication_id, " +
+            "parse_status, interval_minutes, anchor_at, course_end, refill_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (prescription_medication_id) DO UPDATE SET prescription_id = EXCLUDED.prescription_id, " +
+            "patient_id = EXCLUDED.patient_id, medication_id = EXCLUDED.medication_id, " +
+            "parse_status = EXCLUDED.parse_status, interval_minutes = EXCLUDED.interval_minutes, " +
+            "anchor_at = EXCLUDED.anchor_at, course_end = EXCLUDED.course_end, refill_at = EXCLUDED.refill_at, " +
+            "updated_at = EXCLUDED.updated_at";
+
+    /**
+     * Tomas k = ceil((from - anchor) / interval) .. min(floor((to - anchor) / interval), ceil((course_end - anchor) / interval) - 1):
+     * to es inclusivo y course_end exclusivo (7 días cada 8 h = 21 tomas). LEAST ignora el NULL de un esquema sin fin.
+     */
+    private static final String GENERATE_DOSES =
+            "INSERT INTO dose_schedule_event (prescription_medication_id, event_type, due_at, prescription_id, patient_id, medication_id) " +
+            "SELECT s.prescription_medication_id, 'DOSE', s.anchor_at + k * make_interval(mins => s.interval_minutes), " +
+            "s.prescription_id, s.patient_id, s.medication_id " +
+            "FROM dose_schedule s CROSS JOIN LATERAL generate_series(" +
+            "GREATEST(0, CEIL(EXTRACT(EPOCH FROM (CAST(? AS timestamp) - s.anchor_at)) / (s.interval_minutes * 60)))::bigint, " +
+            "LEAST(FLOOR(EXTRACT(EPOCH FROM (CAST(? AS timestamp) - s.anchor_at)) / (s.interval_minutes * 60)), " +
+            "CEIL(EXTRACT(EPOCH FROM (s.course_end - s.anchor_at)) / (s.interval_minutes * 60)) - 1)::bigint) AS k " +
+            "WHERE s.parse_status = 'PARSED' AND (s.course_end IS NULL OR s.course_end > ?) ";
+
+    private static final String GENERATE_REFILLS =
+            "INSERT INTO dose_schedule_event (prescription_medication_id, event_type, due_at, prescription_id, patient_id, medication_id) " +
+            "SELECT s.prescription_medication_id, 'REFILL', s.refill_at, s.prescription_id, s.patient_id, s.medication_id " +
+            "FROM dose_schedule s WHERE s.refill_at >= ? AND s.refill_at <= ? ";
+
+    private static final String ONLY_IDS = "AND s.prescription_medication_id = ANY (?) ";
+    private static final String ON_CONFLICT = "ON CONFLICT DO NOTHING";
+
+    private static final RowMapper<DueDoseEvent> EVENT_ROW_MAPPER = (rs, rowNum) -> new DueDoseEvent(
+            rs.getInt("prescription_medication_id"),
+            rs.getInt("prescription_id"),
+            rs.getInt("patient_id"),
+            rs.getInt("medication_id"),
+            DoseEventType.valueOf(rs.getString("event_type")),
+            rs.getTimestamp("due_at").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+
+    public DoseScheduleRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Lock de la transacción actual para que una sola instancia recalcule a la vez
+     */
+    public boolean tryRefreshLock() {
+        Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, REFRESH_LOCK_KEY);
+        return Boolean.TRUE.equals(locked);
+    }
+
+    /**
+     * Estado del último recálculo (vacío antes del primero)
+     */
+    public Optional<ScheduleState> findState() {
+        return jdbcTemplate.query("SELECT source_watermark, horizon_end FROM dose_schedule_state WHERE id = 1",
+                (rs, rowNum) -> new ScheduleState(rs.getTimestamp("source_watermark").toLocalDateTime(),
+                        rs.getTimestamp("horizon_end").toLocalDateTime())).stream().findFirst();
+    }
+
+    /**
+     * Guardar el estado del recálculo
+     */
+    public void saveState(ScheduleState state) {
+        jdbcTemplate.update("INSERT INTO dose_schedule_state (id, source_watermark, horizon_end) VALUES (1, ?, ?) " +
+                        "ON CONFLICT (id) DO UPDATE SET source_watermark = EXCLUDED.source_watermark, horizon_end = EXCLUDED.horizon_end",
+                Timestamp.valueOf(state.sourceWatermark()), Timestamp.valueOf(state.horizonEnd()));
+    }
+
+    /**
+     * Recorrer en bloques las líneas (o sus prescripciones) modificadas o creadas después de since, con cursor
+     * del lado del servidor (debe llamarse dentro de una transacción). Dos consultas indexadas en lugar
+     * de un OR entre las dos tablas del join, que no puede usar ningún índice.
+     */
+    public void forEachChangedLine(LocalDateTime since, int chunkSize, Consumer<List<ScheduleSource>> chunkHandler) {
+        List<ScheduleSource> chunk = new ArrayList<>(chunkSize);
+        Timestamp from = Timestamp.valueOf(since);
+        readLines(CHANGED_LINES, chunk, chunkSize, chunkHandler, from);
+        readLines(LINES_OF_CHANGED_PRESCRIPTIONS, chunk, chunkSize, chunkHandler, from, from);
+        if (!chunk.isEmpty()) {
+            chunkHandler.accept(List.copyOf(chunk));
+        }
+    }
+
+    private void readLines(String sql, List<ScheduleSource> chunk, int chunkSize,
+                           Consumer<List<ScheduleSource>> chunkHandler, Object... args) {
+        cursorTemplate.query(sql, rs -> {
+            Timestamp created = rs.getTimestamp("created_date");
+            Date prescribed = rs.getDate("prescription_date");
+            Date validUntil = rs.getDate("valid_until");
+            int rawQuantity = rs.getInt("quantity");
+            Integer quantity = rs.wasNull() ? null : rawQuantity;
+            chunk.add(new ScheduleSource(
+                    rs.getInt("id"), rs.getInt("prescription_id"), rs.getInt("patient_id"), rs.getInt("medication_id"),
+                    rs.getString("frequency"), rs.getString("duration"), quantity,
+                    created != null ? created.toLocalDateTime() : null,
+                    prescribed != null ? prescribed.toLocalDate() : null,
+                    validUntil != null ? validUntil.toLocalDate() : null,
+                    rs.getBoolean("active")));
+            if (chunk.size() == chunkSize) {
+                chunkHandler.accept(List.copyOf(chunk));
+                chunk.clear();
+            }
+        }, args);
+    }
+
+    /**
+     * Insertar o reemplazar esquemas en un batch JDBC
+     */
+    public void upsertSchedules(List<ScheduleRow> rows, LocalDateTime updatedAt) {
+        jdbcTemplate.batchUpdate(UPSERT_SCHEDULE, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.prescriptionMedicationId());
+            ps.setInt(2, row.prescriptionId());
+            ps.setInt(3, row.patientId());
+            ps.setInt(4, row.medicationId());
+            ps.setString(5, row.parseStatus());
+            ps.setObject(6, row.intervalMinutes(), Types.INTEGER);
+            ps.setTimestamp(7, row.anchorAt() != null ? Timestamp.valueOf(row.anchorAt()) : null);
+            ps.setTimestamp(8, row.courseEnd() != null ? Timestamp.valueOf(row.courseEnd()) : null);
+            ps.setTimestamp(9, row.refillAt() != null ? Timestamp.valueOf(row.refillAt()) : null);
+            ps.setTimestamp(10, Timestamp.valueOf(updatedAt));
+        });
+    }
+
+    /**
+     * Borrar esquemas (y por cascada sus eventos) de líneas inactivas
+     */
+    public void deleteSchedules(Integer[] prescriptionMedicationIds) {
+        jdbcTemplate.update("DELETE FROM dose_schedule WHERE prescription_medication_id = ANY (?)",
+                (Object) prescriptionMedicationIds);
+    }
+
+    /**
+     * Borrar los eventos futuros de esquemas que cambiaron (se regeneran con el esquema nuevo)
+     */
+    public void deleteEventsFrom(Integer[] prescriptionMedicationIds, LocalDateTime from) {
+        jdbcTemplate.update("DELETE FROM dose_schedule_event WHERE prescription_medication_id = ANY (?) AND due_at >= ?",
+                prescriptionMedicationIds, Timestamp.valueOf(from));
+    }
+
+    /**
+     * Generar tomas y reposiciones en [from, to] para todos los esquemas o solo para los ids indicados
+     */
+    public int generateEvents(LocalDateTime from, LocalDateTime to, Integer[] onlyIds) {
+        Timestamp start = Timestamp.valueOf(from);
+        Timestamp end = Timestamp.valueOf(to);
+        int doses;
+        int refills;
+        if (onlyIds == null) {
+            doses = jdbcTemplate.update(GENERATE_DOSES + ON_CONFLICT, start, end, start);
+            refills = jdbcTemplate.update(GENERATE_REFILLS + ON_CONFLICT, start, end);
+        } else {
+            doses = jdbcTemplate.update(GENERATE_DOSES + ONLY_IDS + ON_CONFLICT, start, end, start, onlyIds);
+            refills = jdbcTemplate.update(GENERATE_REFILLS + ONLY_IDS + ON_CONFLICT, start, end, onlyIds);
+        }
+        return doses + refills;
+    }
+
+    /**
+     * Borrar eventos anteriores a before
+     */
+    public int purgeEventsBefore(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM dose_schedule_event WHERE due_at < ?", Timestamp.valueOf(before));
+    }
+
+    /**
+     * Eventos que vencen en [from, to), en orden de vencimiento (range scan sobre due_at o patient_id + due_at)
+     */
+    public List<DueDoseEvent> findDue(LocalDateTime from, LocalDateTime to, DoseEventType type, Integer patientId, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT prescription_medication_id, prescription_id, patient_id, medication_id, " +
+                "event_type, due_at FROM dose_schedule_event WHERE due_at >= ? AND due_at < ?");
+        List<Object> args = new ArrayList<>(List.of(Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        if (type != null) {
+            sql.append(" AND event_type = ?");
+            args.add(type.name());
+        }
+        if (patientId != null) {
+            sql.append(" AND patient_id = ?");
+            args.add(patientId);
+        }
+        sql.append(" ORDER BY due_at, prescription_medication_id LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), EVENT_ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * Marca de agua de las líneas interpretadas y fin de la ventana generada
+     */
+    public record ScheduleState(LocalDateTime sourceWatermark, LocalDateTime horizonEnd) {
+    }
+
+    /**
+     * Línea de prescripción tal como se lee para interpretar su esquema
+     */
+    public record ScheduleSource(int prescriptionMedicationId, int prescriptionId, int patientId, int medicationId,
+                                 String frequency, String duration, Integer quantity, LocalDateTime createdDate,
+                                 LocalDate prescriptionDate, LocalDate validUntil, boolean active) {
+    }
+
+    /**
+     * Esquema normalizado a persistir
+     */
+    public record ScheduleRow(int prescriptionMedicationId, int prescriptionId, int patientId, int medicationId,
+                              String parseStatus, Integer intervalMinutes, LocalDateTime anchorAt,
+                              LocalDateTime courseEnd, LocalDateTime refillAt) {
+    }
+}
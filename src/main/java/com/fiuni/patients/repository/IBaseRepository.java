@@ -3,9 +3,11 @@ package com.fiuni.patients.repository;
 import com.fiuni.clinica.domain.base.BaseDomain;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.repository.NoRepositoryBean;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,4 +37,24 @@ public interface IBaseRepository<E extends BaseDomain> extends JpaRepository<E,
      * @return List of active entities
      */
     List<E> findByIsActiveTrue();
+
+    /**
+     * Find active entities as a Slice (fetches size + 1 rows, no count query)
+     * @param pageable Pagination parameters
+     * @return Slice of active entities
+     */
+    Slice<E> findSliceByIsActiveTrue(Pageable pageable);
+
+    /**
+     * Count active entities
+     * @return Number of active entities
+     */
+    long countByIsActiveTrue();
+
+    /**
+     * Find active entities by a set of IDs in a single IN query
+     * @param ids Entity IDs
+     * @return Active entities found (in no particular order)
+     */
+    List<E> findByIdInAndIsActiveTrue(Collection<Integer> ids);
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.fiuni.patients.repository;
+
+import com.fiuni.patients.dto.IdempotentResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository JDBC de la tabla idempotency_record (changelog 007), propia de este microservicio.
+ * Una fila con status_code NULL es una clave tomada por una ejecución en curso; expires_at es el fin de esa toma.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IdempotencyRepository {
+
+    private static final RowMapper<IdempotentResponse> ROW_MAPPER = (rs, rowNum) -> new IdempotentResponse(
+            rs.getString("request_hash"),
+            rs.getInt("status_code"),
+            rs.getString("content_type"),
+            rs.getString("location"),
+            rs.getString("etag"),
+            rs.getBytes("response_body"),
+            rs.getTimestamp("expires_at").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Respuesta guardada y vigente para la clave (las claves tomadas sin respuesta todavía no cuentan)
+     */
+    public Optional<IdempotentResponse> findValid(String key, LocalDateTime now) {
+        List<IdempotentResponse> found = jdbcTemplate.query(
+                "SELECT request_hash, status_code, content_type, location, etag, response_body, expires_at " +
+                "FROM idempotency_record WHERE idempotency_key = ? AND status_code IS NOT NULL AND expires_at > ?",
+                ROW_MAPPER, key, Timestamp.valueOf(now));
+        return found.stream().findFirst();
+    }
+
+    /**
+     * Tomar la clave con una fila pendiente (status_code NULL) vigente hasta leaseExpiresAt; false si otra ejecución
+     * ya la tiene o ya guardó su respuesta. Un registro vencido de la clave se descarta antes.
+     */
+    public boolean claim(String key, String requestHash, LocalDateTime now, LocalDateTime leaseExpiresAt) {
+        jdbcTemplate.update("DELETE FROM idempotency_record WHERE idempotency_key = ? AND expires_at <= ?",
+                key, Timestamp.valueOf(now));
+        return jdbcTemplate.update(
+                "INSERT INTO idempotency_record (idempotency_key, request_hash, status_code, created_at, expires_at) " +
+                "VALUES (?, ?, NULL, ?, ?) ON CONFLICT (idempotency_key) DO NOTHING",
+                key, requestHash, Timestamp.valueOf(now), Timestamp.valueOf(leaseExpiresAt)) == 1;
+    }
+
+    /**
+     * true si la clave está tomada por una ejecución en curso (fila pendiente vigente)
+     */
+    public boolean isClaimed(String key, LocalDateTime now) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM idempotency_record WHERE idempotency_key = ? AND status_code IS NULL AND expires_at > ?",
+                Integer.class, key, Timestamp.valueOf(now));
+        return count != null && count > 0;
+    }
+
+    /**
+     * Guardar la respuesta sobre la fila pendiente de la clave (o crearla si no está); false si la clave ya tiene
+     * una respuesta guardada, que nunca se pisa
+     */
+    public boolean save(String key, IdempotentResponse response, LocalDateTime now) {
+        return jdbcTemplate.update(
+                "INSERT INTO idempotency_record (idempotency_key, request_hash, status_code, content_type, location, etag, " +
+                "response_body, created_at, expires_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (idempotency_key) DO UPDATE SET request_hash = EXCLUDED.request_hash, " +
+                "status_code = EXCLUDED.status_code, content_type = EXCLUDED.content_type, location = EXCLUDED.location, " +
+                "etag = EXCLUDED.etag, response_body = EXCLUDED.response_body, created_at = EXCLUDED.created_at, " +
+                "expires_at = EXCLUDED.expires_at WHERE idempotency_record.status_code IS NULL",
+                key, response.requestHash(), response.statusCode(), response.contentType(), response.location(),
+                response.etag(), response.body(), Timestamp.valueOf(now), Timestamp.valueOf(response.expiresAt())) == 1;
+    }
+
+    /**
+     * Soltar la fila pendiente de la clave (la ejecución terminó sin respuesta guardable)
+     */
+    public void release(String key) {
+        jdbcTemplate.update("DELETE FROM idempotency_record WHERE idempotency_key = ? AND status_code IS NULL", key);
+    }
+
+    /**
+     * Borrar hasta limit registros vencidos; devuelve cuántos se borraron
+     */
+    public int deleteExpired(LocalDateTime now, int limit) {
+        return jdbcTemplate.update(
+                "DELETE FROM idempotency_record WHERE idempotency_key IN " +
+                "(SELECT idempotency_key FROM idempotency_record WHERE expires_at <= ? LIMIT ?)",
+                Timestamp.valueOf(now), limit);
+    }
+}
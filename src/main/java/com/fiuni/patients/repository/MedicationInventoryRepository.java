@@ -0,0 +1,50 @@
+package com.fiuni.patients.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Repository JDBC para la tabla medication_inventory (propia de este microservicio).
+ * El stock se escribe siempre como delta (on_hand + delta), nunca como valor absoluto, para que los volcados
+ * de distintas instancias se sumen en lugar de pisarse.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MedicationInventoryRepository {
+
+    private static final String APPLY_DELTAS =
+            "INSERT INTO medication_inventory (medication_id, on_hand, updated_at) " +
+            "SELECT v.medication_id, v.delta, ? FROM unnest(?::int[], ?::bigint[]) AS v(medication_id, delta) " +
+            "ON CONFLICT (medication_id) DO UPDATE " +
+            "SET on_hand = medication_inventory.on_hand + EXCLUDED.on_hand, updated_at = EXCLUDED.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Stock persistido de todos los medicamentos con inventario
+     */
+    public Map<Integer, Long> findAllOnHand() {
+        Map<Integer, Long> onHand = new HashMap<>();
+        jdbcTemplate.query("SELECT medication_id, on_hand FROM medication_inventory",
+                rs -> {
+                    onHand.put(rs.getInt("medication_id"), rs.getLong("on_hand"));
+                });
+        return onHand;
+    }
+
+    /**
+     * Sumar deltas al stock (crea la fila si el medicamento no tenía inventario); los ids no deben repetirse
+     */
+    public void applyDeltas(Integer[] medicationIds, Long[] deltas, LocalDateTime updatedAt) {
+        if (medicationIds.length == 0) {
+            return;
+        }
+        jdbcTemplate.update(APPLY_DELTAS, Timestamp.valueOf(updatedAt), medicationIds, deltas);
+    }
+}
@@ -3,11 +3,14 @@ package com.fiuni.patients.repository;
 import com.fiuni.clinica.domain.patient.MedicationDomain;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository para MedicationDomain usando entidades del JAR externo
@@ -25,4 +28,33 @@ public interface MedicationRepository extends IBaseRepository<MedicationDomain>
            "UPPER(m.medicationType) LIKE UPPER(CONCAT('%', :searchTerm, '%')) OR " +
            "UPPER(m.manufacturer) LIKE UPPER(CONCAT('%', :searchTerm, '%')))")
     Page<MedicationDomain> searchByTerm(@Param("searchTerm") String searchTerm, Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Buscar medicamentos por término general sin count (Slice)
+     */
+    @Query("SELECT m FROM MedicationDomain m WHERE m.isActive = true AND " +
+           "(:searchTerm IS NULL OR :searchTerm = '' OR " +
+           "UPPER(m.medicationName) LIKE UPPER(CONCAT('%', :searchTerm, '%')) OR " +
+           "UPPER(m.genericName) LIKE UPPER(CONCAT('%', :searchTerm, '%')) OR " +
+           "UPPER(m.medicationType) LIKE UPPER(CONCAT('%', :searchTerm, '%')) OR " +
+           "UPPER(m.manufacturer) LIKE UPPER(CONCAT('%', :searchTerm, '%')))")
+    Slice<MedicationDomain> searchSliceByTerm(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    /**
+     * Medicamentos (activos o dados de baja) modificados después del watermark (COALESCE(last_modified, created_date), id),
+     * en orden keyset; sin last_modified cuenta la fecha de alta. Comparación de filas nativa: un solo range scan
+     * sobre idx_medication_sync_watermark.
+     */
+    @Query(value = "SELECT * FROM medication m " +
+                   "WHERE (COALESCE(m.last_modified, m.created_date), m.id) > (:since, :afterId) " +
+                   "ORDER BY COALESCE(m.last_modified, m.created_date), m.id LIMIT :limit",
+           nativeQuery = true)
+    List<MedicationDomain> findChangedSince(@Param("since") LocalDateTime since, @Param("afterId") Integer afterId,
+                                            @Param("limit") int limit);
+
+    /**
+     * Versión actual de una entidad activa (consulta liviana para ETag / If-Match)
+     */
+    @Query("SELECT m.version FROM MedicationDomain m WHERE m.id = :id AND m.isActive = true")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+}
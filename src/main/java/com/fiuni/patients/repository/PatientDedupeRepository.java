@@ -0,0 +1,250 @@
+package com.fiuni.patients.repository;
+
+import com.fiuni.patients.dto.DuplicatePair;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Repository JDBC de las claves de bloqueo y los pares candidatos a duplicado (changelog 011).
+ *
+ * Las claves de un paciente se reemplazan completas (DELETE + INSERT desde unnest); los candidatos de una
+ * consulta salen del índice (key_type, key_value), nunca de un recorrido del padrón.
+ */
+@Repository
+public class PatientDedupeRepository {
+
+    private static final long SCAN_LOCK_KEY = 0x64656475L;
+    private static final int FETCH_SIZE = 1_000;
+
+    private static final String PATIENT_COLUMNS = "p.id, p.first_name, p.last_name, p.birth_date, p.document_number";
+
+    private static final String INSERT_KEYS =
+            "INSERT INTO patient_blocking_key (patient_id, key_type, key_value, indexed_at) " +
+            "SELECT v.patient_id, v.key_type, v.key_value, ? " +
+            "FROM unnest(?::int[], ?::varchar[], ?::varchar[]) AS v(patient_id, key_type, key_value) " +
+            "ON CONFLICT DO NOTHING";
+
+    /**
+     * Pacientes que comparten claves, los que comparten más primero: con un bloque grande (un apellido y
+     * nombre comunes) el límite corta los de una sola clave y no los más parecidos
+     */
+    private static final String CANDIDATES =
+            "SELECT " + PATIENT_COLUMNS + " FROM (" +
+            "SELECT k.patient_id, count(*) AS shared_keys FROM patient_blocking_key k " +
+            "JOIN unnest(?::varchar[], ?::varchar[]) AS q(key_type, key_value) " +
+            "ON k.key_type = q.key_type AND k.key_value = q.key_value " +
+            "WHERE k.patient_id <> ? GROUP BY k.patient_id) c " +
+            "JOIN patient p ON p.id = c.patient_id AND p.is_active = true " +
+            "ORDER BY c.shared_keys DESC, p.id " +
+            "LIMIT ?";
+
+    /** Activos sin claves o modificados (también fuera de este servicio) después de indexarse */
+    private static final String STALE_PATIENTS =
+            "SELECT " + PATIENT_COLUMNS + " FROM patient p " +
+            "WHERE p.is_active = true AND NOT EXISTS (SELECT 1 FROM patient_blocking_key k " +
+            "WHERE k.patient_id = p.id AND k.indexed_at >= COALESCE(p.updated_at, p.created_at, k.indexed_at))";
+
+    /** Miembros activos de los bloques con 2..max pacientes, agrupados por bloque */
+    private static final String BLOCK_MEMBERS =
+            "SELECT k.key_type, k.key_value, " + PATIENT_COLUMNS + " " +
+            "FROM (SELECT key_type, key_value, patient_id, " +
+            "count(*) OVER (PARTITION BY key_type, key_value) AS block_size FROM patient_blocking_key) k " +
+            "JOIN patient p ON p.id = k.patient_id AND p.is_active = true " +
+            "WHERE k.block_size BETWEEN 2 AND ? " +
+            "ORDER BY k.key_type, k.key_value";
+
+    private static final String UPSERT_PAIRS =
+            "INSERT INTO patient_duplicate_candidate (patient_id_a, patient_id_b, score, detected_at) " +
+            "SELECT v.a, v.b, v.score, ? FROM unnest(?::int[], ?::int[], ?::float8[]) AS v(a, b, score) " +
+            "ON CONFLICT (patient_id_a, patient_id_b) DO UPDATE " +
+            "SET score = EXCLUDED.score, detected_at = EXCLUDED.detected_at";
+
+    private static final RowMapper<PatientFields> PATIENT_ROW_MAPPER = (rs, rowNum) -> readPatient(rs);
+
+    private static final RowMapper<DuplicatePair> PAIR_ROW_MAPPER = (rs, rowNum) -> new DuplicatePair(
+            rs.getInt("patient_id_a"),
+            rs.getInt("patient_id_b"),
+            rs.getDouble("score"),
+            rs.getTimestamp("detected_at").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+
+    public PatientDedupeRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Lock de la transacción actual para que una sola instancia escanee a la vez
+     */
+    public boolean tryScanLock() {
+        Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, SCAN_LOCK_KEY);
+        return Boolean.TRUE.equals(locked);
+    }
+
+    /**
+     * Reemplazar las claves de los pacientes indicados (un paciente sin claves queda sin filas)
+     */
+    public void replaceKeys(Map<Integer, Set<BlockingKey>> keysByPatient, LocalDateTime indexedAt) {
+        if (keysByPatient.isEmpty()) {
+            return;
+        }
+        List<Integer> patientIds = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        keysByPatient.forEach((patientId, keys) -> keys.forEach(key -> {
+            patientIds.add(patientId);
+            types.add(key.type());
+            values.add(key.value());
+        }));
+        jdbcTemplate.update("DELETE FROM patient_blocking_key WHERE patient_id = ANY (?)",
+                (Object) keysByPatient.keySet().toArray(new Integer[0]));
+        jdbcTemplate.update(INSERT_KEYS, Timestamp.valueOf(indexedAt), patientIds.toArray(new Integer[0]),
+                types.toArray(new String[0]), values.toArray(new String[0]));
+    }
+
+    /**
+     * Pacientes activos (salvo excludeId) que comparten alguna de las claves, ordenados por claves compartidas
+     */
+    public List<PatientFields> findCandidates(List<BlockingKey> keys, Integer excludeId, int limit) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        String[] types = keys.stream().map(BlockingKey::type).toArray(String[]::new);
+        String[] values = keys.stream().map(BlockingKey::value).toArray(String[]::new);
+        return jdbcTemplate.query(CANDIDATES, PATIENT_ROW_MAPPER, types, values, excludeId != null ? excludeId : -1, limit);
+    }
+
+    /**
+     * Datos de comparación de un paciente activo
+     */
+    public Optional<PatientFields> findPatient(Integer patientId) {
+        return jdbcTemplate.query("SELECT " + PATIENT_COLUMNS + " FROM patient p WHERE p.id = ? AND p.is_active = true",
+                PATIENT_ROW_MAPPER, patientId).stream().findFirst();
+    }
+
+    /**
+     * Recorrer en bloques los pacientes sin claves vigentes, con cursor del lado del servidor
+     * (debe llamarse dentro de una transacción)
+     */
+    public void forEachStalePatient(int chunkSize, Consumer<List<PatientFields>> chunkHandler) {
+        List<PatientFields> chunk = new ArrayList<>(chunkSize);
+        cursorTemplate.query(STALE_PATIENTS, rs -> {
+            chunk.add(readPatient(rs));
+            if (chunk.size() == chunkSize) {
+                chunkHandler.accept(List.copyOf(chunk));
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty()) {
+            chunkHandler.accept(List.copyOf(chunk));
+        }
+    }
+
+    /**
+     * Recorrer los bloques de 2..maxBlockSize pacientes activos, entregados de a blocksPerChunk, con cursor
+     * del lado del servidor (debe llamarse dentro de una transacción)
+     */
+    public void forEachBlock(int maxBlockSize, int blocksPerChunk, Consumer<List<List<PatientFields>>> chunkHandler) {
+        List<List<PatientFields>> chunk = new ArrayList<>(blocksPerChunk);
+        List<PatientFields> block = new ArrayList<>();
+        String[] currentKey = new String[2];
+        cursorTemplate.query(BLOCK_MEMBERS, rs -> {
+            String type = rs.getString("key_type");
+            String value = rs.getString("key_value");
+            if (!type.equals(currentKey[0]) || !value.equals(currentKey[1])) {
+                if (block.size() > 1) {
+                    chunk.add(List.copyOf(block));
+                }
+                block.clear();
+                currentKey[0] = type;
+                currentKey[1] = value;
+                if (chunk.size() == blocksPerChunk) {
+                    chunkHandler.accept(List.copyOf(chunk));
+                    chunk.clear();
+                }
+            }
+            block.add(readPatient(rs));
+        }, maxBlockSize);
+        if (block.size() > 1) {
+            chunk.add(List.copyOf(block));
+        }
+        if (!chunk.isEmpty()) {
+            chunkHandler.accept(List.copyOf(chunk));
+        }
+    }
+
+    /**
+     * Bloques con más de maxBlockSize claves (demasiado comunes para comparar todos contra todos)
+     */
+    public long countOversizedBlocks(int maxBlockSize) {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM (SELECT 1 FROM patient_blocking_key " +
+                "GROUP BY key_type, key_value HAVING count(*) > ?) b", Long.class, maxBlockSize);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Insertar o actualizar pares candidatos (a < b)
+     */
+    public void upsertPairs(Integer[] patientIdsA, Integer[] patientIdsB, Double[] scores, LocalDateTime detectedAt) {
+        if (patientIdsA.length == 0) {
+            return;
+        }
+        jdbcTemplate.update(UPSERT_PAIRS, Timestamp.valueOf(detectedAt), patientIdsA, patientIdsB, scores);
+    }
+
+    /**
+     * Borrar los pares no confirmados por el escaneo que empezó en scanStart
+     */
+    public int deletePairsDetectedBefore(LocalDateTime scanStart) {
+        return jdbcTemplate.update("DELETE FROM patient_duplicate_candidate WHERE detected_at < ?",
+                Timestamp.valueOf(scanStart));
+    }
+
+    /**
+     * Pares candidatos con score >= minScore entre pacientes activos, de mayor a menor score
+     */
+    public List<DuplicatePair> findPairs(double minScore, int limit) {
+        return jdbcTemplate.query("SELECT c.patient_id_a, c.patient_id_b, c.score, c.detected_at " +
+                        "FROM patient_duplicate_candidate c " +
+                        "JOIN patient a ON a.id = c.patient_id_a AND a.is_active = true " +
+                        "JOIN patient b ON b.id = c.patient_id_b AND b.is_active = true " +
+                        "WHERE c.score >= ? ORDER BY c.score DESC, c.patient_id_a, c.patient_id_b LIMIT ?",
+                PAIR_ROW_MAPPER, minScore, limit);
+    }
+
+    private static PatientFields readPatient(ResultSet rs) throws SQLException {
+        Date birthDate = rs.getDate("birth_date");
+        return new PatientFields(rs.getInt("id"), rs.getString("first_name"), rs.getString("last_name"),
+                birthDate != null ? birthDate.toLocalDate() : null, rs.getString("document_number"));
+    }
+
+    /**
+     * Datos de un paciente que intervienen en las claves y el score
+     */
+    public record PatientFields(Integer id, String firstName, String lastName, LocalDate birthDate,
+                                String documentNumber) {
+    }
+
+    /**
+     * Clave de bloqueo: solo se comparan pacientes con el mismo (type, value)
+     */
+    public record BlockingKey(String type, String value) {
+    }
+}
@@ -0,0 +1,95 @@
+package com.fiuni.patients.repository;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository JDBC de la fusión de pacientes: una sentencia set-based por tabla que referencia al paciente,
+ * sin cargar las prescripciones en memoria, y el registro de auditoría patient_merge (changelog 012).
+ */
+@Repository
+@RequiredArgsConstructor
+public class PatientMergeRepository {
+
+    /**
+     * Re-apunta las prescripciones (activas e históricas) y deja por cada una un evento UPDATE en el outbox
+     * y una fila en audit_log; el conteo devuelto es el de filas auditadas (una por prescripción movida)
+     */
+    private static final String MOVE_PRESCRIPTIONS =
+            "WITH moved AS (UPDATE prescription SET patient_id = ?, version = version + 1, last_modified = ? " +
+            "WHERE patient_id = ? RETURNING id), " +
+            "events AS (INSERT INTO change_event (entity_type, entity_id, operation, created_at) " +
+            "SELECT '" + ChangeEntityType.PRESCRIPTION.name() + "', moved.id, '" + ChangeOperation.UPDATE.name() + "', ? " +
+            "FROM moved) " +
+            "INSERT INTO audit_log (entity_type, entity_id, operation, actor, changes, recorded_at) " +
+            "SELECT '" + ChangeEntityType.PRESCRIPTION.name() + "', moved.id, '" + ChangeOperation.UPDATE.name() + "', ?, " +
+            "jsonb_build_object('patientId', jsonb_build_object('before', ?::integer, 'after', ?::integer)), ? " +
+            "FROM moved";
+
+    private static final String MOVE_ARCHIVED_PRESCRIPTIONS =
+            "UPDATE archived_record SET payload = jsonb_set(payload, '{patient_id}', to_jsonb(?::integer)) " +
+            "WHERE entity_type = 'PRESCRIPTION' AND (payload ->> 'patient_id')::integer = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Bloquear hasta el fin de la transacción los pacientes activos indicados, en orden de id (dos fusiones
+     * cruzadas no se bloquean mutuamente); devuelve los ids bloqueados
+     */
+    public List<Integer> lockActivePatients(Integer firstId, Integer secondId) {
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM patient WHERE id IN (?, ?) AND is_active = true ORDER BY id FOR UPDATE",
+                Integer.class, firstId, secondId);
+    }
+
+    /**
+     * Mover todas las prescripciones de source a target (registra el outbox y la auditoría en la misma sentencia)
+     */
+    public int movePrescriptions(Integer sourceId, Integer targetId, LocalDateTime now, String actor) {
+        Timestamp ts = Timestamp.valueOf(now);
+        return jdbcTemplate.update(MOVE_PRESCRIPTIONS, targetId, ts, sourceId, ts, actor, sourceId, targetId, ts);
+    }
+
+    /**
+     * Re-apuntar las prescripciones archivadas (patient_id dentro del payload) para que se restauren en target
+     */
+    public int moveArchivedPrescriptions(Integer sourceId, Integer targetId) {
+        return jdbcTemplate.update(MOVE_ARCHIVED_PRESCRIPTIONS, targetId, sourceId);
+    }
+
+    /**
+     * Mover esquemas y eventos de dosis precalculados (patient_id desnormalizado)
+     */
+    public void moveDoseSchedules(Integer sourceId, Integer targetId) {
+        jdbcTemplate.update("UPDATE dose_schedule SET patient_id = ? WHERE patient_id = ?", targetId, sourceId);
+        jdbcTemplate.update("UPDATE dose_schedule_event SET patient_id = ? WHERE patient_id = ?", targetId, sourceId);
+    }
+
+    /**
+     * Quitar al paciente absorbido de la detección de duplicados (claves y pares candidatos)
+     */
+    public void removeFromDedupe(Integer sourceId) {
+        jdbcTemplate.update("DELETE FROM patient_blocking_key WHERE patient_id = ?", sourceId);
+        jdbcTemplate.update("DELETE FROM patient_duplicate_candidate WHERE patient_id_a = ? OR patient_id_b = ?",
+                sourceId, sourceId);
+    }
+
+    /**
+     * Registrar la fusión; devuelve su id
+     */
+    public Long insertMerge(Integer sourceId, Integer targetId, int movedPrescriptions, int movedArchived,
+                            List<String> mergedFields, LocalDateTime mergedAt) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO patient_merge (source_patient_id, target_patient_id, moved_prescriptions, " +
+                "moved_archived_prescriptions, merged_fields, merged_at) VALUES (?, ?, ?, ?, ?, ?) RETURNING id",
+                Long.class, sourceId, targetId, movedPrescriptions, movedArchived,
+                mergedFields.isEmpty() ? null : String.join(",", mergedFields), Timestamp.valueOf(mergedAt));
+    }
+}
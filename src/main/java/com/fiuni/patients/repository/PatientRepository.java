@@ -3,10 +3,13 @@ package com.fiuni.patients.repository;
 import com.fiuni.clinica.domain.patient.PatientDomain;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -29,4 +32,25 @@ public interface PatientRepository extends IBaseRepository<PatientDomain> {
            "LOWER(p.lastName) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
            "p.documentNumber LIKE CONCAT('%', :searchTerm, '%'))")
     Page<PatientDomain> searchByTerm(@Param("searchTerm") String searchTerm, Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Buscar pacientes por término general sin count (Slice)
+     */
+    @Query("SELECT p FROM PatientDomain p WHERE p.isActive = true AND " +
+           "(LOWER(p.firstName) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+           "LOWER(p.lastName) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+           "p.documentNumber LIKE CONCAT('%', :searchTerm, '%'))")
+    Slice<PatientDomain> searchSliceByTerm(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    /**
+     * Pacientes (activos o dados de baja) modificados después del watermark (COALESCE(updated_at, created_at), id),
+     * en orden keyset; sin updated_at cuenta la fecha de alta. Comparación de filas nativa: un solo range scan
+     * sobre idx_patient_sync_watermark.
+     */
+    @Query(value = "SELECT * FROM patient p " +
+                   "WHERE (COALESCE(p.updated_at, p.created_at), p.id) > (:since, :afterId) " +
+                   "ORDER BY COALESCE(p.updated_at, p.created_at), p.id LIMIT :limit",
+           nativeQuery = true)
+    List<PatientDomain> findChangedSince(@Param("since") LocalDateTime since, @Param("afterId") Integer afterId,
+                                         @Param("limit") int limit);
+}
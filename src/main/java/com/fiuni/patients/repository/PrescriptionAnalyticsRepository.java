@@ -0,0 +1,70 @@
+package com.fiuni.patients.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository JDBC de lectura para las analíticas de prescripciones: una fila compacta por prescripción activa
+ * (fecha, matrícula, surtida y medicamentos activos) sin hidratar entidades.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PrescriptionAnalyticsRepository {
+
+    /**
+     * Hecho analítico de una prescripción activa
+     */
+    public record PrescriptionFact(int id, LocalDate prescriptionDate, String doctorLicense, boolean filled, int[] medicationIds) {
+    }
+
+    private static final String SELECT_FACTS =
+            "SELECT p.id, p.prescription_date, p.doctor_license, COALESCE(p.is_filled, false) AS is_filled, " +
+            "COALESCE(array_agg(DISTINCT pm.medication_id) FILTER (WHERE pm.is_active), '{}') AS medication_ids " +
+            "FROM prescription p " +
+            "LEFT JOIN prescription_medication pm ON pm.prescription_id = p.id ";
+
+    private static final String GROUP_BY = "GROUP BY p.id, p.prescription_date, p.doctor_license, p.is_filled ";
+
+    private static final RowMapper<PrescriptionFact> ROW_MAPPER = (rs, rowNum) -> {
+        Date date = rs.getDate("prescription_date");
+        Array array = rs.getArray("medication_ids");
+        Integer[] medicationIds = (Integer[]) array.getArray();
+        int[] ids = new int[medicationIds.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = medicationIds[i];
+        }
+        return new PrescriptionFact(rs.getInt("id"), date != null ? date.toLocalDate() : null,
+                rs.getString("doctor_license"), rs.getBoolean("is_filled"), ids);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Prescripciones activas con id mayor al cursor, en orden de id (scan por keyset)
+     */
+    public List<PrescriptionFact> findFactsAfter(int afterId, int limit) {
+        return jdbcTemplate.query(
+                SELECT_FACTS + "WHERE p.is_active = true AND p.id > ? " + GROUP_BY + "ORDER BY p.id LIMIT ?",
+                ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * Hechos de las prescripciones activas indicadas (las inactivas o inexistentes no vuelven)
+     */
+    public List<PrescriptionFact> findFactsByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(
+                SELECT_FACTS + "WHERE p.is_active = true AND p.id = ANY (?) " + GROUP_BY,
+                ROW_MAPPER, (Object) ids.toArray(new Integer[0]));
+    }
+}
@@ -0,0 +1,78 @@
+package com.fiuni.patients.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository JDBC de la exportación masiva de prescripciones y líneas.
+ *
+ * Las consultas se recorren con fetch size: dentro de una transacción PostgreSQL usa un cursor del lado
+ * del servidor y la memoria queda acotada a un bloque de filas. Deben llamarse dentro de una transacción.
+ * Incluye filas inactivas para que las exportaciones incrementales propaguen las bajas. Las filas que Clinica
+ * nunca modificó (last_modified NULL) se filtran por created_date.
+ */
+@Repository
+public class PrescriptionExportRepository {
+
+    private static final int FETCH_SIZE = 5_000;
+
+    private static final String PRESCRIPTIONS =
+            "SELECT p.id, p.patient_id, p.prescription_date, p.valid_until, p.doctor_name, p.doctor_license, " +
+            "p.notes, p.is_filled, p.is_active, p.created_date, p.last_modified " +
+            "FROM prescription p WHERE COALESCE(p.last_modified, p.created_date) >= ?";
+
+    private static final String PRESCRIPTION_MEDICATIONS =
+            "SELECT pm.id, pm.prescription_id, pm.medication_id, m.medication_name, pm.dosage, pm.frequency, " +
+            "pm.duration, pm.quantity, pm.instructions, pm.is_active, pm.created_date, pm.last_modified " +
+            "FROM prescription_medication pm JOIN medication m ON m.id = pm.medication_id " +
+            "WHERE COALESCE(pm.last_modified, pm.created_date) >= ?";
+
+    private final JdbcTemplate cursorTemplate;
+
+    public PrescriptionExportRepository(JdbcTemplate jdbcTemplate) {
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Recorrer las prescripciones modificadas desde since (inclusive)
+     */
+    public void streamPrescriptions(LocalDateTime since, RowCallbackHandler handler) {
+        cursorTemplate.query(PRESCRIPTIONS, handler, Timestamp.valueOf(since));
+    }
+
+    /**
+     * Recorrer las líneas prescripción-medicamento modificadas desde since (inclusive), con el nombre del medicamento
+     */
+    public void streamPrescriptionMedications(LocalDateTime since, RowCallbackHandler handler) {
+        cursorTemplate.query(PRESCRIPTION_MEDICATIONS, handler, Timestamp.valueOf(since));
+    }
+
+    /**
+     * Valores distintos de doctor_name / doctor_license en las prescripciones a exportar (diccionarios)
+     */
+    public List<String> findDistinctDoctorValues(String column, LocalDateTime since) {
+        if (!"doctor_name".equals(column) && !"doctor_license".equals(column)) {
+            throw new IllegalArgumentException("Unsupported dictionary column: " + column);
+        }
+        return cursorTemplate.queryForList(
+                "SELECT DISTINCT " + column + " FROM prescription WHERE COALESCE(last_modified, created_date) >= ? AND " + column + " IS NOT NULL",
+                String.class, Timestamp.valueOf(since));
+    }
+
+    /**
+     * Nombres distintos de los medicamentos referenciados por las líneas a exportar (diccionario)
+     */
+    public List<String> findDistinctMedicationNames(LocalDateTime since) {
+        return cursorTemplate.queryForList(
+                "SELECT DISTINCT m.medication_name FROM medication m " +
+                "WHERE m.medication_name IS NOT NULL AND EXISTS (SELECT 1 FROM prescription_medication pm " +
+                "WHERE pm.medication_id = m.id AND COALESCE(pm.last_modified, pm.created_date) >= ?)",
+                String.class, Timestamp.valueOf(since));
+    }
+}
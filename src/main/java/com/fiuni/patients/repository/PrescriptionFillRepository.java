@@ -0,0 +1,74 @@
+package com.fiuni.patients.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository JDBC de escritura para el surtido de prescripciones por lote.
+ * Un único UPDATE set-based por lote (unnest de ids y valores); incrementa version igual que el
+ * versionado optimista de JPA para que los ETags y los If-Match sigan siendo válidos.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PrescriptionFillRepository {
+
+    private static final String APPLY_FILLS =
+            "UPDATE prescription p SET is_filled = v.filled, version = p.version + 1, last_modified = ? " +
+            "FROM unnest(?::int[], ?::boolean[]) AS v(id, filled) " +
+            "WHERE p.id = v.id AND p.is_active = true " +
+            "RETURNING p.id";
+
+    private static final String LOCK_FILL_STATES =
+            "SELECT p.id, p.is_filled, pm.medication_id, pm.quantity " +
+            "FROM prescription p " +
+            "LEFT JOIN prescription_medication pm ON pm.prescription_id = p.id AND pm.is_active = true " +
+            "WHERE p.id = ANY (?) AND p.is_active = true " +
+            "FOR UPDATE OF p";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Estado actual de surtido y unidades por medicamento de las prescripciones activas, bloqueando sus filas
+     * hasta el fin de la transacción (para decidir reservas de stock sin carreras con otros surtidos)
+     */
+    public Map<Integer, FillState> lockFillStates(Integer[] ids) {
+        Map<Integer, FillState> states = new HashMap<>();
+        if (ids.length == 0) {
+            return states;
+        }
+        jdbcTemplate.query(LOCK_FILL_STATES, rs -> {
+            boolean filled = rs.getBoolean("is_filled");
+            FillState state = states.computeIfAbsent(rs.getInt("id"), id -> new FillState(filled, new HashMap<>()));
+            int medicationId = rs.getInt("medication_id");
+            if (!rs.wasNull()) {
+                state.unitsByMedication().merge(medicationId, (long) rs.getInt("quantity"), Long::sum);
+            }
+        }, (Object) ids);
+        return states;
+    }
+
+    /**
+     * Aplicar el estado de surtido a las prescripciones activas; los ids no deben repetirse.
+     * Devuelve los ids actualizados (debe llamarse dentro de una transacción).
+     */
+    public List<Integer> applyFills(Integer[] ids, Boolean[] filled, LocalDateTime modifiedAt) {
+        if (ids.length == 0) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList(APPLY_FILLS, Integer.class,
+                Timestamp.valueOf(modifiedAt), ids, filled);
+    }
+
+    /**
+     * Surtida o no, y unidades por medicamento de las líneas activas
+     */
+    public record FillState(boolean filled, Map<Integer, Long> unitsByMedication) {
+    }
+}
@@ -3,10 +3,17 @@ package com.fiuni.patients.repository;
 import com.fiuni.clinica.domain.patient.PrescriptionDomain;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Repository para PrescriptionDomain usando entidades del JAR externo
  */
@@ -20,12 +27,162 @@ public interface PrescriptionRepository extends IBaseRepository<PrescriptionDoma
     Page<PrescriptionDomain> findByPatientIdAndIsActiveTrue(@Param("patientId") Integer patientId, Pageable pageable);
 
     /**
-     * Buscar prescripciones por término general con paginación
+     * Buscar prescripciones por paciente sin count (Slice)
+     */
+    @Query("SELECT p FROM PrescriptionDomain p WHERE p.patient.id = :patientId AND p.isActive = true")
+    Slice<PrescriptionDomain> findSliceByPatientId(@Param("patientId") Integer patientId, Pageable pageable);
+
+    /**
+     * Contar prescripciones activas de un paciente
+     */
+    @Query("SELECT COUNT(p) FROM PrescriptionDomain p WHERE p.patient.id = :patientId AND p.isActive = true")
+    long countActiveByPatientId(@Param("patientId") Integer patientId);
+
+    /**
+     * Prescripciones activas en un rango de fechas [fromDate, toDate], opcionalmente de un paciente y por
+     * estado de surtido (isFilled null = todas).
+     * Sin paciente usa idx_prescription_date_id (changelog 005); con paciente, idx_prescription_patient_date.
+     */
+    @Query("SELECT p FROM PrescriptionDomain p WHERE p.isActive = true " +
+           "AND (:patientId IS NULL OR p.patient.id = :patientId) " +
+           "AND (:isFilled IS NULL OR p.isFilled = :isFilled) " +
+           "AND p.prescriptionDate >= :fromDate AND p.prescriptionDate <= :toDate")
+    Page<PrescriptionDomain> findByDateRange(@Param("patientId") Integer patientId,
+                                             @Param("isFilled") Boolean isFilled,
+                                             @Param("fromDate") LocalDate fromDate,
+                                             @Param("toDate") LocalDate toDate,
+                                             Pageable pageable);
+
+    /**
+     * Igual que {@link #findByDateRange} sin count (Slice)
+     */
+    @Query("SELECT p FROM PrescriptionDomain p WHERE p.isActive = true " +
+           "AND (:patientId IS NULL OR p.patient.id = :patientId) " +
+           "AND (:isFilled IS NULL OR p.isFilled = :isFilled) " +
+           "AND p.prescriptionDate >= :fromDate AND p.prescriptionDate <= :toDate")
+    Slice<PrescriptionDomain> findSliceByDateRange(@Param("patientId") Integer patientId,
+                                                   @Param("isFilled") Boolean isFilled,
+                                                   @Param("fromDate") LocalDate fromDate,
+                                                   @Param("toDate") LocalDate toDate,
+                                                   Pageable pageable);
+
+    /**
+     * Total de prescripciones activas en el rango de fechas (mismos filtros que findByDateRange)
+     */
+    @Query("SELECT COUNT(p) FROM PrescriptionDomain p WHERE p.isActive = true " +
+           "AND (:patientId IS NULL OR p.patient.id = :patientId) " +
+           "AND (:isFilled IS NULL OR p.isFilled = :isFilled) " +
+           "AND p.prescriptionDate >= :fromDate AND p.prescriptionDate <= :toDate")
+    long countByDateRange(@Param("patientId") Integer patientId,
+                          @Param("isFilled") Boolean isFilled,
+                          @Param("fromDate") LocalDate fromDate,
+                          @Param("toDate") LocalDate toDate);
+
+    /**
+     * Filtro full-text sobre la columna generada search_vector (índice GIN), opcionalmente por paciente,
+     * dentro del rango de fechas [fromDate, toDate]
+     */
+    String FULL_TEXT_FILTER = "FROM prescription p " +
+           "WHERE p.is_active = true " +
+           "AND p.search_vector @@ websearch_to_tsquery('spanish', :query) " +
+           "AND (CAST(:patientId AS integer) IS NULL OR p.patient_id = :patientId) " +
+           "AND p.prescription_date >= :fromDate AND p.prescription_date <= :toDate ";
+
+    /**
+     * Orden por relevancia (ts_rank_cd) y, a igual relevancia, más recientes primero
+     */
+    String FULL_TEXT_ORDER = "ORDER BY ts_rank_cd(p.search_vector, websearch_to_tsquery('spanish', :query)) DESC, " +
+           "p.prescription_date DESC, p.id DESC";
+
+    /**
+     * Página de IDs de prescripciones que coinciden con la búsqueda full-text, ordenadas por relevancia
+     */
+    @Query(value = "SELECT p.id " + FULL_TEXT_FILTER + FULL_TEXT_ORDER,
+           countQuery = "SELECT COUNT(*) " + FULL_TEXT_FILTER,
+           nativeQuery = true)
+    Page<Integer> searchIdsByText(@Param("query") String query,
+                                  @Param("patientId") Integer patientId,
+                                  @Param("fromDate") LocalDate fromDate,
+                                  @Param("toDate") LocalDate toDate,
+                                  Pageable pageable);
+
+    /**
+     * Igual que {@link #searchIdsByText} sin count (Slice)
+     */
+    @Query(value = "SELECT p.id " + FULL_TEXT_FILTER + FULL_TEXT_ORDER, nativeQuery = true)
+    Slice<Integer> searchIdSliceByText(@Param("query") String query,
+                                       @Param("patientId") Integer patientId,
+                                       @Param("fromDate") LocalDate fromDate,
+                                       @Param("toDate") LocalDate toDate,
+                                       Pageable pageable);
+
+    /**
+     * Página de IDs de prescripciones activas de un paciente.
+     * Se pagina sobre IDs para no paginar en memoria un JOIN FETCH de colecciones;
+     * el orden lo define el Pageable (prescriptionDate DESC, id DESC en el historial).
+     */
+    @Query(value = "SELECT p.id FROM PrescriptionDomain p WHERE p.patient.id = :patientId AND p.isActive = true",
+           countQuery = "SELECT COUNT(p) FROM PrescriptionDomain p WHERE p.patient.id = :patientId AND p.isActive = true")
+    Page<Integer> findIdsByPatientId(@Param("patientId") Integer patientId, Pageable pageable);
+
+    /**
+     * Cargar prescripciones con paciente, líneas y medicamentos en una sola consulta
+     */
+    @Query("SELECT DISTINCT p FROM PrescriptionDomain p " +
+           "LEFT JOIN FETCH p.patient " +
+           "LEFT JOIN FETCH p.medications pm " +
+           "LEFT JOIN FETCH pm.medication " +
+           "WHERE p.id IN :ids")
+    List<PrescriptionDomain> findAllWithMedicationsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Conteos agregados de prescripciones de un paciente (sin cargar entidades)
+     */
+    @Query("SELECT COUNT(p) AS totalPrescriptions, " +
+           "COALESCE(SUM(CASE WHEN p.isFilled = true THEN 1 ELSE 0 END), 0) AS filledPrescriptions, " +
+           "MAX(p.prescriptionDate) AS lastPrescriptionDate, " +
+           "(SELECT COUNT(pm) FROM PrescriptionMedicationDomain pm " +
+           " WHERE pm.prescription.patient.id = :patientId AND pm.prescription.isActive = true " +
+           " AND pm.isActive = true) AS activeMedicationLines " +
+           "FROM PrescriptionDomain p WHERE p.patient.id = :patientId AND p.isActive = true")
+    PrescriptionSummaryView summarizeByPatientId(@Param("patientId") Integer patientId);
+
+    /**
+     * Proyección de conteos usada por {@link #summarizeByPatientId(Integer)}
+     */
+    interface PrescriptionSummaryView {
+        Long getTotalPrescriptions();
+        Long getFilledPrescriptions();
+        LocalDate getLastPrescriptionDate();
+        Long getActiveMedicationLines();
+    }
+
+    /**
+     * Watermarks (id, lastModified, isActive) de prescripciones modificadas después de (lastModified, id), en orden keyset.
+     * El watermark es COALESCE(last_modified, created_date); comparación de filas nativa: un solo range scan sobre
+     * idx_prescription_sync_watermark.
+     * Las prescripciones activas se cargan luego con {@link #findAllWithMedicationsByIdIn(Collection)}.
+     */
+    @Query(value = "SELECT p.id AS \"id\", COALESCE(p.last_modified, p.created_date) AS \"lastModified\", " +
+                   "p.is_active AS \"active\" FROM prescription p " +
+                   "WHERE (COALESCE(p.last_modified, p.created_date), p.id) > (:since, :afterId) " +
+                   "ORDER BY COALESCE(p.last_modified, p.created_date), p.id LIMIT :limit",
+           nativeQuery = true)
+    List<ChangeWatermarkView> findChangedSince(@Param("since") LocalDateTime since, @Param("afterId") Integer afterId,
+                                               @Param("limit") int limit);
+
+    /**
+     * Proyección de watermark usada por la sincronización incremental
+     */
+    interface ChangeWatermarkView {
+        Integer getId();
+        LocalDateTime getLastModified();
+        Boolean getActive();
+    }
+
+    /**
+     * Versión actual de una entidad activa (consulta liviana para ETag / If-Match)
      */
-    @Query("SELECT p FROM PrescriptionDomain p WHERE p.isActive = true AND " +
-        "(:searchTerm IS NULL OR :searchTerm = '' OR " +
-        "UPPER(p.doctorName) LIKE UPPER(CONCAT('%', :searchTerm, '%')) OR " +
-        "UPPER(p.doctorLicense) LIKE UPPER(CONCAT('%', :searchTerm, '%')) OR " +
-        "UPPER(p.notes) LIKE UPPER(CONCAT('%', :searchTerm, '%')))")
-    Page<PrescriptionDomain> searchByTerm(@Param("searchTerm") String searchTerm, Pageable pageable);
-}
\ No newline at end of file
+    @Query("SELECT p.version FROM PrescriptionDomain p WHERE p.id = :id AND p.isActive = true")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+}
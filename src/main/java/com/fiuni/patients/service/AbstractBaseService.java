@@ -1,14 +1,23 @@
 package com.fiuni.patients.service;
 
 import com.fiuni.clinica.domain.base.BaseDomain;
+import com.fiuni.patients.dto.BatchGetResponse;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.dto.PaginationMode;
+import com.fiuni.patients.exception.VersionConflictException;
 import com.fiuni.patients.mapper.GenericMapper;
 import com.fiuni.patients.repository.IBaseRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
  * Generic base service that provides common CRUD operations for entities
@@ -18,12 +27,25 @@ import java.util.Optional;
  */
 public abstract class AbstractBaseService<E extends BaseDomain, Req, Res> {
 
+    /** Maximum number of IDs accepted by a batch read */
+    public static final int MAX_BATCH_IDS = 200;
+
     protected final IBaseRepository<E> repository;
     protected final GenericMapper<E, Req, Res> mapper;
+    protected final ChangeEventRecorder changeEventRecorder;
+    protected final ChangeEntityType entityType;
+    protected final ApproximateCountCache approximateCountCache;
+    protected final AuditTrail auditTrail;
 
-    protected AbstractBaseService(IBaseRepository<E> repository, GenericMapper<E, Req, Res> mapper) {
+    protected AbstractBaseService(IBaseRepository<E> repository, GenericMapper<E, Req, Res> mapper,
+                                  ChangeEventRecorder changeEventRecorder, ChangeEntityType entityType,
+                                  ApproximateCountCache approximateCountCache, AuditTrail auditTrail) {
         this.repository = repository;
         this.mapper = mapper;
+        this.changeEventRecorder = changeEventRecorder;
+        this.entityType = entityType;
+        this.approximateCountCache = approximateCountCache;
+        this.auditTrail = auditTrail;
     }
 
     @Transactional(readOnly = true)
@@ -31,16 +53,88 @@ public abstract class AbstractBaseService<E extends BaseDomain, Req, Res> {
         return repository.findByIsActiveTrue(pageable).map(mapper::toDto);
     }
 
+    @Transactional(readOnly = true)
+    public Page<Res> getAll(Pageable pageable, PaginationMode mode) {
+        return findPage(pageable, mode, repository::findByIsActiveTrue, repository::findSliceByIsActiveTrue,
+                entityType.name(), repository::countByIsActiveTrue).map(mapper::toDto);
+    }
+
+    /**
+     * Run a paginated query in the requested mode.
+     * EXACT runs the Page query (content + count). SLICE and APPROXIMATE run only the Slice query (size + 1 rows);
+     * their total is a lower bound or the cached approximate count, and is exact on the last page.
+     */
+    protected <T> Page<T> findPage(Pageable pageable, PaginationMode mode,
+                                   Function<Pageable, Page<T>> pageQuery,
+                                   Function<Pageable, Slice<T>> sliceQuery,
+                                   String countKey, LongSupplier counter) {
+        if (mode == null || mode == PaginationMode.EXACT) {
+            return pageQuery.apply(pageable);
+        }
+        Slice<T> slice = sliceQuery.apply(pageable);
+        long seen = pageable.getOffset() + slice.getNumberOfElements();
+        long lowerBound = slice.hasNext() ? seen + 1 : seen;
+        long total = lowerBound;
+        if (mode == PaginationMode.APPROXIMATE && slice.hasNext()) {
+            total = Math.max(lowerBound, approximateCountCache.get(countKey, counter));
+        }
+        return new PageImpl<>(slice.getContent(), pageable, total);
+    }
+
     @Transactional(readOnly = true)
     public Optional<Res> getById(Integer id) {
         return repository.findByIdAndIsActiveTrue(id).map(mapper::toDto);
     }
 
+    /**
+     * Get active entities by IDs with a single IN query, preserving the requested order
+     * and reporting IDs that were not found
+     */
+    @Transactional(readOnly = true)
+    public BatchGetResponse<Res> getByIds(List<Integer> ids) {
+        List<Integer> distinctIds = ids.stream()
+                .filter(java.util.Objects::nonNull)
+                .distinct()
+                .collect(java.util.stream.Collectors.toList());
+        if (distinctIds.isEmpty()) {
+            return new BatchGetResponse<>(new java.util.ArrayList<>(), new java.util.ArrayList<>());
+        }
+        return toBatchResponse(distinctIds, findActiveByIds(distinctIds));
+    }
+
+    /**
+     * Load active entities for a batch read; subclasses may override to fetch associations eagerly
+     */
+    protected List<E> findActiveByIds(List<Integer> ids) {
+        return repository.findByIdInAndIsActiveTrue(ids);
+    }
+
+    private BatchGetResponse<Res> toBatchResponse(List<Integer> ids, List<E> entities) {
+        java.util.Map<Integer, E> byId = new java.util.HashMap<>();
+        for (E entity : entities) {
+            byId.put(entity.getId(), entity);
+        }
+        List<Res> items = new java.util.ArrayList<>();
+        List<Integer> missingIds = new java.util.ArrayList<>();
+        for (Integer id : ids) {
+            E entity = byId.get(id);
+            if (entity != null) {
+                items.add(mapper.toDto(entity));
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new BatchGetResponse<>(items, missingIds);
+    }
+
     @Transactional
     public Res create(Req request) {
         E entity = mapper.toEntity(request);
         E saved = repository.save(entity);
-        return mapper.toDto(saved);
+        changeEventRecorder.record(entityType, saved.getId(), ChangeOperation.CREATE);
+        Res created = mapper.toDto(saved);
+        auditTrail.record(entityType, saved.getId(), ChangeOperation.CREATE, null, created);
+        return created;
     }
 
     @Transactional
@@ -50,9 +144,13 @@ public abstract class AbstractBaseService<E extends BaseDomain, Req, Res> {
             return Optional.empty();
         }
         E entity = existing.get();
+        Res before = mapper.toDto(entity);
         mapper.updateEntity(entity, request);
         E saved = repository.save(entity);
-        return Optional.of(mapper.toDto(saved));
+        changeEventRecorder.record(entityType, saved.getId(), ChangeOperation.UPDATE);
+        Res after = mapper.toDto(saved);
+        auditTrail.record(entityType, saved.getId(), ChangeOperation.UPDATE, before, after);
+        return Optional.of(after);
     }
 
     @Transactional
@@ -62,50 +160,35 @@ public abstract class AbstractBaseService<E extends BaseDomain, Req, Res> {
             return false;
         }
         E entity = existing.get();
-        // Use reflection to set active flag in a best-effort way. Different domain classes may
-        // expose either setActive(boolean) or setIsActive(boolean) or a field named 'active'/'isActive'.
-        try {
-            java.lang.reflect.Method m = null;
-            try {
-                m = entity.getClass().getMethod("setActive", boolean.class);
-            } catch (NoSuchMethodException ignored) {
-                try {
-                    m = entity.getClass().getMethod("setIsActive", boolean.class);
-                } catch (NoSuchMethodException ignored2) {
-                    m = null;
-                }
-            }
-
-            if (m != null) {
-                m.invoke(entity, false);
-            } else {
-                // try fields
-                try {
-                    java.lang.reflect.Field f = null;
-                    try {
-                        f = entity.getClass().getDeclaredField("active");
-                    } catch (NoSuchFieldException ignored) {
-                        try {
-                            f = entity.getClass().getDeclaredField("isActive");
-                        } catch (NoSuchFieldException ignored2) {
-                            f = null;
-                        }
-                    }
-                    if (f != null) {
-                        f.setAccessible(true);
-                        f.set(entity, false);
-                    }
-                } catch (Exception ex) {
-                    // ignore
-                }
-            }
-        } catch (Exception e) {
-            // ignore any reflection issues
-        }
+        Res before = mapper.toDto(entity);
+        markDeleted(entity);
         repository.save(entity);
+        changeEventRecorder.record(entityType, entity.getId(), ChangeOperation.DELETE);
+        auditTrail.record(entityType, entity.getId(), ChangeOperation.DELETE, before, mapper.toDto(entity));
         return true;
     }
 
+    /**
+     * Soft delete: mark the entity inactive and bump its modification timestamp.
+     * Each domain class names its flag differently (setActive / setIsActive), so subclasses
+     * set it with a direct call instead of reflective probing (required for native images).
+     */
+    protected abstract void markDeleted(E entity);
+
+    /**
+     * Verifica la versión esperada por el cliente (If-Match); null significa sin precondición.
+     * El @Version de la entidad cubre además las escrituras concurrentes posteriores a esta verificación.
+     */
+    protected void checkVersion(Integer id, Number currentVersion, Long expectedVersion) {
+        if (expectedVersion == null) {
+            return;
+        }
+        Long current = currentVersion != null ? currentVersion.longValue() : null;
+        if (!expectedVersion.equals(current)) {
+            throw new VersionConflictException(id, expectedVersion, current);
+        }
+    }
+
     @Transactional(readOnly = true)
     public List<Res> getAllAsList() {
         java.util.List<E> entities = repository.findByIsActiveTrue();
@@ -0,0 +1,71 @@
+package com.fiuni.patients.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * Conteos aproximados para paginación sin count(*) por request.
+ * Devuelve el último conteo conocido y, si venció el TTL, lo refresca en segundo plano
+ * (stale-while-revalidate) con un único hilo, para no competir por el pool de conexiones.
+ */
+@Component
+@Slf4j
+public class ApproximateCountCache implements DisposableBean {
+
+    private static final int MAX_KEYS = 1_000;
+
+    private final ConcurrentHashMap<String, CachedCount> counts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "approximate-count-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long ttlMs;
+
+    public ApproximateCountCache(@Value("${patients.pagination.approximate-count-ttl-ms:30000}") long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Conteo aproximado para la clave; solo la primera vez se calcula en la request
+     */
+    public long get(String key, LongSupplier counter) {
+        CachedCount cached = counts.get(key);
+        if (cached == null) {
+            long value = counter.getAsLong();
+            if (counts.size() >= MAX_KEYS) {
+                counts.clear();
+            }
+            counts.put(key, new CachedCount(value, System.currentTimeMillis()));
+            return value;
+        }
+        if (System.currentTimeMillis() - cached.computedAt() > ttlMs && refreshing.putIfAbsent(key, Boolean.TRUE) == null) {
+            refreshExecutor.execute(() -> {
+                try {
+                    counts.put(key, new CachedCount(counter.getAsLong(), System.currentTimeMillis()));
+                } catch (Exception e) {
+                    log.warn("Could not refresh approximate count for {}: {}", key, e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        }
+        return cached.value();
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private record CachedCount(long value, long computedAt) {
+    }
+}
@@ -0,0 +1,204 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ArchivedEntityType;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.ArchiveRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Archivo frío de filas dadas de baja (soft delete).
+ *
+ * - El job mueve a archived_record las filas inactivas desde hace más de retention-days, en lotes de
+ *   batch-size con una transacción por lote: si se interrumpe, la siguiente corrida retoma donde quedó.
+ * - Orden: líneas, prescripciones (con sus líneas), medicamentos sin líneas y pacientes sin prescripciones.
+ * - Si un lote choca con una referencia externa (tablas de otros servicios), se reintenta fila por fila
+ *   y se dejan en caliente solo las referenciadas; los lotes siguientes arrancan después del último id
+ *   revisado (keyset), así las filas referenciadas no vuelven a trabar la corrida.
+ * - restore() devuelve una fila (y lo que necesite para ser válida) a las tablas calientes.
+ */
+@Service
+@Slf4j
+public class ArchivalService {
+
+    private final ArchiveRepository archiveRepository;
+    private final ChangeEventRecorder changeEventRecorder;
+    private final AuditTrail auditTrail;
+    private final TransactionTemplate transactionTemplate;
+    private final int retentionDays;
+    private final int batchSize;
+
+    public ArchivalService(ArchiveRepository archiveRepository,
+                           ChangeEventRecorder changeEventRecorder,
+                           AuditTrail auditTrail,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${patients.archival.retention-days:180}") int retentionDays,
+                           @Value("${patients.archival.batch-size:500}") int batchSize) {
+        this.archiveRepository = archiveRepository;
+        this.changeEventRecorder = changeEventRecorder;
+        this.auditTrail = auditTrail;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archivar todas las filas vencidas, lote por lote
+     */
+    @Scheduled(cron = "${patients.archival.cron:0 30 2 * * *}")
+    public Map<ArchivedEntityType, Integer> archiveExpired() {
+        Map<ArchivedEntityType, Integer> archived = new EnumMap<>(ArchivedEntityType.class);
+        if (retentionDays <= 0) {
+            log.debug("Archival disabled (retention-days <= 0)");
+            return archived;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        log.info("Archiving rows inactive since before {}", cutoff);
+
+        for (ArchivedEntityType type : ArchivedEntityType.values()) {
+            int total = 0;
+            // Todo lo que quedó en caliente por debajo de afterId está referenciado
+            int afterId = 0;
+            while (true) {
+                int from = afterId;
+                try {
+                    int moved = inTransaction(() -> archiveRepository.archiveBatch(type, cutoff, from, batchSize));
+                    total += moved;
+                    if (moved < batchSize) {
+                        break;
+                    }
+                } catch (DataIntegrityViolationException e) {
+                    log.warn("Archival batch of {} hit an external reference, retrying row by row: {}", type, e.getMessage());
+                    RowByRowResult result = archiveRowByRow(type, cutoff, from);
+                    total += result.moved();
+                    if (result.candidates() < batchSize) {
+                        break;
+                    }
+                    afterId = result.lastId();
+                }
+            }
+            archived.put(type, total);
+        }
+
+        log.info("Archival finished: {}", archived);
+        return archived;
+    }
+
+    private RowByRowResult archiveRowByRow(ArchivedEntityType type, LocalDateTime cutoff, int afterId) {
+        int moved = 0;
+        int skipped = 0;
+        List<Integer> candidates = archiveRepository.findCandidateIds(type, cutoff, afterId, batchSize);
+        for (Integer id : candidates) {
+            try {
+                moved += inTransaction(() -> archiveRepository.archiveOne(type, id, cutoff));
+            } catch (DataIntegrityViolationException e) {
+                skipped++;
+                log.debug("{} {} is still referenced, keeping it in the hot table", type, id);
+            }
+        }
+        if (skipped > 0) {
+            log.warn("{} {} rows could not be archived because they are still referenced", skipped, type);
+        }
+        int lastId = candidates.isEmpty() ? afterId : candidates.get(candidates.size() - 1);
+        return new RowByRowResult(moved, candidates.size(), lastId);
+    }
+
+    /**
+     * Resultado de un lote fila por fila: candidatas revisadas y la última (punto de partida del siguiente lote)
+     */
+    private record RowByRowResult(int moved, int candidates, int lastId) {
+    }
+
+    private int inTransaction(java.util.function.IntSupplier work) {
+        Integer result = transactionTemplate.execute(status -> work.getAsInt());
+        return result != null ? result : 0;
+    }
+
+    /**
+     * Restaurar una fila archivada y reactivarla. Las filas de las que depende (paciente y medicamentos
+     * de una prescripción, prescripción de una línea) se restauran tal como estaban, sin reactivarlas.
+     *
+     * @return false si la fila no está en el archivo
+     */
+    @Transactional
+    public boolean restore(ArchivedEntityType type, Integer id) {
+        if (!archiveRepository.isArchived(type, id)) {
+            return false;
+        }
+        log.info("Restoring archived {} {}", type, id);
+
+        // Una línea restaurada se publica como cambio de su prescripción (leer antes de sacarla del archivo)
+        Integer changedId = type == ArchivedEntityType.PRESCRIPTION_MEDICATION
+                ? archiveRepository.findPayloadInt(type, id, "prescription_id").orElse(null)
+                : id;
+        ChangeEntityType changeType = switch (type) {
+            case PATIENT -> ChangeEntityType.PATIENT;
+            case MEDICATION -> ChangeEntityType.MEDICATION;
+            case PRESCRIPTION, PRESCRIPTION_MEDICATION -> ChangeEntityType.PRESCRIPTION;
+        };
+
+        restoreWithDependencies(type, id);
+        archiveRepository.reactivate(type, id);
+        ChangeOperation operation = type == ArchivedEntityType.PRESCRIPTION_MEDICATION
+                ? ChangeOperation.UPDATE : ChangeOperation.CREATE;
+        changeEventRecorder.record(changeType, changedId, operation);
+        auditTrail.record(changeType, changedId, operation, restoreState(type, id, true), restoreState(type, id, false));
+        return true;
+    }
+
+    /**
+     * Estado auditado de una restauración; una línea se audita dentro de su prescripción ("lines.<id>.archived")
+     */
+    private static Map<String, Object> restoreState(ArchivedEntityType type, Integer id, boolean archived) {
+        Map<String, Object> state = Map.of("archived", archived, "isActive", !archived);
+        return type == ArchivedEntityType.PRESCRIPTION_MEDICATION ? Map.of("lines", Map.of(String.valueOf(id), state)) : state;
+    }
+
+    private void restoreWithDependencies(ArchivedEntityType type, Integer id) {
+        switch (type) {
+            case PRESCRIPTION -> {
+                archiveRepository.findPayloadInt(type, id, "patient_id")
+                        .ifPresent(patientId -> restoreIfArchived(ArchivedEntityType.PATIENT, patientId));
+                List<Integer> lineIds = archiveRepository.findArchivedLineIds(id);
+                for (Integer lineId : lineIds) {
+                    archiveRepository.findPayloadInt(ArchivedEntityType.PRESCRIPTION_MEDICATION, lineId, "medication_id")
+                            .ifPresent(medicationId -> restoreIfArchived(ArchivedEntityType.MEDICATION, medicationId));
+                }
+                archiveRepository.restore(type, id);
+                for (Integer lineId : lineIds) {
+                    archiveRepository.restore(ArchivedEntityType.PRESCRIPTION_MEDICATION, lineId);
+                }
+            }
+            case PRESCRIPTION_MEDICATION -> {
+                archiveRepository.findPayloadInt(type, id, "prescription_id").ifPresent(prescriptionId -> {
+                    if (archiveRepository.isArchived(ArchivedEntityType.PRESCRIPTION, prescriptionId)) {
+                        // La prescripción vuelve con todas sus líneas archivadas, incluida esta
+                        restoreWithDependencies(ArchivedEntityType.PRESCRIPTION, prescriptionId);
+                    }
+                });
+                archiveRepository.findPayloadInt(type, id, "medication_id")
+                        .ifPresent(medicationId -> restoreIfArchived(ArchivedEntityType.MEDICATION, medicationId));
+                restoreIfArchived(type, id);
+            }
+            default -> archiveRepository.restore(type, id);
+        }
+    }
+
+    private void restoreIfArchived(ArchivedEntityType type, Integer id) {
+        if (archiveRepository.isArchived(type, id)) {
+            restoreWithDependencies(type, id);
+        }
+    }
+}
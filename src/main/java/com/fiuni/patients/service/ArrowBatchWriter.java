@@ -0,0 +1,241 @@
+package com.fiuni.patients.service;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Escritor Arrow IPC (formato stream) que copia filas de un ResultSet columna por columna
+ * y emite un record batch cada batchRows filas.
+ *
+ * Las columnas de texto repetitivo se codifican con diccionario: los valores se conocen antes de empezar
+ * (el formato stream escribe los diccionarios al inicio) y cada fila guarda solo el índice int32.
+ */
+final class ArrowBatchWriter implements AutoCloseable {
+
+    enum Kind { INT, TEXT, DICTIONARY, DATE, TIMESTAMP, BOOL }
+
+    /**
+     * Columna exportada: nombre (igual a la columna SQL), tipo y, para DICTIONARY, sus valores
+     */
+    record Column(String name, Kind kind, List<String> dictionaryValues) {
+
+        static Column of(String name, Kind kind) {
+            return new Column(name, kind, List.of());
+        }
+
+        static Column dictionary(String name, List<String> values) {
+            return new Column(name, Kind.DICTIONARY, values);
+        }
+    }
+
+    private final List<Column> columns;
+    private final int batchRows;
+    private final DictionaryProvider.MapDictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+    private final List<Map<String, Integer>> dictionaryCodes = new ArrayList<>();
+    private final List<FieldVector> dictionaryVectors = new ArrayList<>();
+    private final VectorSchemaRoot root;
+    private final FieldVector[] vectors;
+    private final ArrowStreamWriter writer;
+
+    private int rowInBatch = 0;
+    private long rowCount = 0;
+    private long unknownDictionaryValues = 0;
+
+    ArrowBatchWriter(BufferAllocator allocator, List<Column> columns, int batchRows,
+                     CompressionUtil.CodecType codec, OutputStream out) {
+        this.columns = columns;
+        this.batchRows = batchRows;
+
+        List<Field> fields = new ArrayList<>(columns.size());
+        long dictionaryId = 0;
+        for (Column column : columns) {
+            Map<String, Integer> codes = null;
+            if (column.kind() == Kind.DICTIONARY) {
+                DictionaryEncoding encoding = new DictionaryEncoding(dictionaryId++, false, new ArrowType.Int(32, true));
+                codes = new HashMap<>();
+                VarCharVector values = new VarCharVector(column.name() + "_dictionary", allocator);
+                values.allocateNew();
+                for (String value : column.dictionaryValues()) {
+                    if (value != null && !codes.containsKey(value)) {
+                        int code = codes.size();
+                        values.setSafe(code, value.getBytes(StandardCharsets.UTF_8));
+                        codes.put(value, code);
+                    }
+                }
+                values.setValueCount(codes.size());
+                dictionaryVectors.add(values);
+                dictionaries.put(new Dictionary(values, encoding));
+                fields.add(new Field(column.name(), new FieldType(true, new ArrowType.Int(32, true), encoding), null));
+            } else {
+                fields.add(new Field(column.name(), FieldType.nullable(arrowType(column.kind())), null));
+            }
+            dictionaryCodes.add(codes);
+        }
+
+        this.root = VectorSchemaRoot.create(new Schema(fields), allocator);
+        this.vectors = root.getFieldVectors().toArray(new FieldVector[0]);
+        this.writer = new ArrowStreamWriter(root, dictionaries, Channels.newChannel(out), IpcOption.DEFAULT,
+                CommonsCompressionFactory.INSTANCE, codec);
+        try {
+            writer.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        root.allocateNew();
+    }
+
+    /**
+     * Copiar la fila actual del ResultSet
+     */
+    void append(ResultSet rs) throws SQLException {
+        int row = rowInBatch;
+        for (int c = 0; c < vectors.length; c++) {
+            String name = columns.get(c).name();
+            switch (columns.get(c).kind()) {
+                case INT -> {
+                    int value = rs.getInt(name);
+                    if (rs.wasNull()) {
+                        ((IntVector) vectors[c]).setNull(row);
+                    } else {
+                        ((IntVector) vectors[c]).setSafe(row, value);
+                    }
+                }
+                case TEXT -> {
+                    String value = rs.getString(name);
+                    if (value == null) {
+                        ((VarCharVector) vectors[c]).setNull(row);
+                    } else {
+                        ((VarCharVector) vectors[c]).setSafe(row, value.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                case DICTIONARY -> {
+                    String value = rs.getString(name);
+                    Integer code = value != null ? dictionaryCodes.get(c).get(value) : null;
+                    if (code == null) {
+                        if (value != null) {
+                            unknownDictionaryValues++;
+                        }
+                        ((IntVector) vectors[c]).setNull(row);
+                    } else {
+                        ((IntVector) vectors[c]).setSafe(row, code);
+                    }
+                }
+                case DATE -> {
+                    Date value = rs.getDate(name);
+                    if (value == null) {
+                        ((DateDayVector) vectors[c]).setNull(row);
+                    } else {
+                        ((DateDayVector) vectors[c]).setSafe(row, (int) value.toLocalDate().toEpochDay());
+                    }
+                }
+                case TIMESTAMP -> {
+                    Timestamp value = rs.getTimestamp(name);
+                    if (value == null) {
+                        ((TimeStampMilliVector) vectors[c]).setNull(row);
+                    } else {
+                        ((TimeStampMilliVector) vectors[c]).setSafe(row,
+                                value.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+                    }
+                }
+                case BOOL -> {
+                    boolean value = rs.getBoolean(name);
+                    if (rs.wasNull()) {
+                        ((BitVector) vectors[c]).setNull(row);
+                    } else {
+                        ((BitVector) vectors[c]).setSafe(row, value ? 1 : 0);
+                    }
+                }
+            }
+        }
+        rowCount++;
+        if (++rowInBatch == batchRows) {
+            flush();
+        }
+    }
+
+    /**
+     * Escribir el último batch y el fin de stream; devuelve las filas exportadas
+     */
+    long finish() {
+        if (rowInBatch > 0) {
+            flush();
+        }
+        try {
+            writer.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rowCount;
+    }
+
+    /**
+     * Valores de texto que no estaban en su diccionario (se exportan como null)
+     */
+    long getUnknownDictionaryValues() {
+        return unknownDictionaryValues;
+    }
+
+    private void flush() {
+        root.setRowCount(rowInBatch);
+        try {
+            writer.writeBatch();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rowInBatch = 0;
+        root.allocateNew();
+    }
+
+    private static ArrowType arrowType(Kind kind) {
+        return switch (kind) {
+            case INT -> new ArrowType.Int(32, true);
+            case TEXT -> ArrowType.Utf8.INSTANCE;
+            case DATE -> new ArrowType.Date(DateUnit.DAY);
+            // Sin zona: misma semántica que LocalDateTime en la base
+            case TIMESTAMP -> new ArrowType.Timestamp(TimeUnit.MILLISECOND, null);
+            case BOOL -> ArrowType.Bool.INSTANCE;
+            case DICTIONARY -> throw new IllegalArgumentException("Dictionary columns use an index type");
+        };
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+        root.close();
+        dictionaryVectors.forEach(FieldVector::close);
+    }
+}
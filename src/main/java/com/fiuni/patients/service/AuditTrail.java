@@ -0,0 +1,349 @@
+package com.fiuni.patients.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fiuni.patients.dto.AuditEntry;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.AuditLogRepository;
+import com.fiuni.patients.repository.AuditLogRepository.AuditRow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Auditoría de escrituras de pacientes, prescripciones y medicamentos.
+ *
+ * Los servicios pasan el estado anterior y posterior (DTOs o mapas); el diff {campo: {before, after}} se
+ * calcula fuera del request. Según patients.audit.durability:
+ * - ASYNC: al confirmar la transacción la entrada va a un ring buffer acotado sin locks; un único escritor
+ *   la inserta por lotes (batch-size o flush-interval-ms). Un crash puede perder lo que esté en el buffer.
+ *   Con el buffer lleno, el productor espera hasta overflow-wait-ms y luego descarta (métrica dropped).
+ * - SYNC: las entradas se insertan en la misma transacción, en un lote justo antes del commit (igual que el
+ *   outbox): se confirman o revierten con los datos.
+ * El actor sale del header X-User del request ("system" fuera de un request).
+ */
+@Component
+@Slf4j
+public class AuditTrail {
+
+    public static final String ACTOR_HEADER = "X-User";
+    public static final String SYSTEM_ACTOR = "system";
+
+    /** Máximo de registros por consulta */
+    public static final int MAX_RESULTS = 1000;
+
+    private static final int MAX_ACTOR_LENGTH = 128;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final long OVERFLOW_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final Object PENDING_ENTRIES_KEY = new Object();
+
+    public enum Durability {
+        ASYNC,
+        SYNC
+    }
+
+    private final AuditLogRepository auditLogRepository;
+    private final ObjectMapper objectMapper;
+    private final Durability durability;
+    private final MpscRingBuffer<PendingAudit> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long overflowWaitNanos;
+    private final Counter dropped;
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running = true;
+    private volatile Thread writer;
+
+    public AuditTrail(AuditLogRepository auditLogRepository,
+                      ObjectMapper objectMapper,
+                      MeterRegistry meterRegistry,
+                      @Value("${patients.audit.durability:ASYNC}") Durability durability,
+                      @Value("${patients.audit.buffer-capacity:16384}") int bufferCapacity,
+                      @Value("${patients.audit.batch-size:500}") int batchSize,
+                      @Value("${patients.audit.flush-interval-ms:200}") long flushIntervalMs,
+                      @Value("${patients.audit.overflow-wait-ms:1000}") long overflowWaitMs) {
+        this.auditLogRepository = auditLogRepository;
+        this.objectMapper = objectMapper;
+        this.durability = durability;
+        this.buffer = new MpscRingBuffer<>(bufferCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMs));
+        this.overflowWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, overflowWaitMs));
+        this.dropped = Counter.builder("patients.audit.dropped")
+                .description("Entradas de auditoría descartadas (buffer lleno o lote fallido)")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("patients.audit.batch.size")
+                .description("Entradas de auditoría insertadas por lote")
+                .register(meterRegistry);
+        Gauge.builder("patients.audit.pending", buffer, MpscRingBuffer::size)
+                .description("Entradas de auditoría esperando su lote")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Arrancar el escritor en segundo plano (solo en modo ASYNC)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (durability == Durability.ASYNC) {
+            writer = Thread.ofVirtual().name("audit-writer").start(this::runWriter);
+        }
+    }
+
+    /**
+     * Auditar una escritura; before es null en un alta. Dentro de una transacción se registra al confirmarla
+     * (ASYNC) o antes del commit (SYNC); si la transacción se revierte, no queda registro.
+     */
+    public void record(ChangeEntityType entityType, Integer entityId, ChangeOperation operation, Object before, Object after) {
+        record(entityType, entityId, operation, currentActor(), before, after);
+    }
+
+    /**
+     * Auditar una escritura con un actor explícito (escrituras diferidas, fuera del hilo del request)
+     */
+    public void record(ChangeEntityType entityType, Integer entityId, ChangeOperation operation, String actor,
+                       Object before, Object after) {
+        if (entityId == null) {
+            return;
+        }
+        PendingAudit entry = new PendingAudit(entityType, entityId, operation, actor, before, after,
+                LocalDateTime.now());
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (durability == Durability.SYNC) {
+                auditLogRepository.insertBatch(List.of(toRow(entry)));
+            } else {
+                enqueue(entry);
+            }
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<PendingAudit> pending = (List<PendingAudit>) TransactionSynchronizationManager.getResource(PENDING_ENTRIES_KEY);
+        if (pending == null) {
+            List<PendingAudit> entries = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(PENDING_ENTRIES_KEY, entries);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    if (durability == Durability.SYNC && !entries.isEmpty()) {
+                        auditLogRepository.insertBatch(entries.stream().map(AuditTrail.this::toRow).toList());
+                    }
+                }
+
+                @Override
+                public void afterCommit() {
+                    if (durability == Durability.ASYNC) {
+                        entries.forEach(AuditTrail.this::enqueue);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_ENTRIES_KEY);
+                }
+            });
+            pending = entries;
+        }
+        pending.add(entry);
+    }
+
+    /**
+     * Actor del request actual (header X-User) o "system"
+     */
+    public String currentActor() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletRequest request = attributes.getRequest();
+            String actor = request.getHeader(ACTOR_HEADER);
+            if (actor != null && !actor.isBlank()) {
+                String trimmed = actor.trim();
+                return trimmed.length() > MAX_ACTOR_LENGTH ? trimmed.substring(0, MAX_ACTOR_LENGTH) : trimmed;
+            }
+        }
+        return SYSTEM_ACTOR;
+    }
+
+    /**
+     * Historial de una entidad en [from, to), más recientes primero. En modo ASYNC lo confirmado en los
+     * últimos flush-interval-ms puede no aparecer todavía.
+     */
+    @Transactional(readOnly = true)
+    public List<AuditEntry> getHistory(ChangeEntityType entityType, Integer entityId, LocalDateTime from,
+                                       LocalDateTime to, int limit) {
+        return auditLogRepository.findByEntity(entityType, entityId, from, to, Math.max(1, Math.min(limit, MAX_RESULTS)));
+    }
+
+    /**
+     * Entradas esperando su lote
+     */
+    public int getPendingCount() {
+        return buffer.size();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        Thread current = writer;
+        if (current != null) {
+            current.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        // Lo que quedó en el buffer (sin escritor o tras el timeout) se inserta en este hilo
+        List<PendingAudit> remaining = new ArrayList<>();
+        while (buffer.drainTo(remaining, batchSize) > 0) {
+            write(remaining);
+            remaining.clear();
+        }
+    }
+
+    private void enqueue(PendingAudit entry) {
+        if (buffer.offer(entry)) {
+            return;
+        }
+        long deadline = System.nanoTime() + overflowWaitNanos;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(OVERFLOW_PARK_NANOS);
+            if (buffer.offer(entry)) {
+                return;
+            }
+        }
+        dropped.increment();
+        log.error("Audit buffer full, dropped {} {} {} by {}", entry.operation(), entry.entityType(), entry.entityId(),
+                entry.actor());
+    }
+
+    private void runWriter() {
+        List<PendingAudit> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.nanoTime();
+        while (running) {
+            buffer.drainTo(batch, batchSize - batch.size());
+            if (batch.size() >= batchSize
+                    || (!batch.isEmpty() && System.nanoTime() - lastFlush >= flushIntervalNanos)) {
+                write(batch);
+                batch.clear();
+                lastFlush = System.nanoTime();
+            } else {
+                // Sin interrupciones: stop() solo baja running y el escritor sale en la siguiente vuelta
+                LockSupport.parkNanos(Math.min(flushIntervalNanos, OVERFLOW_PARK_NANOS * 10));
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+        log.info("Audit writer stopped");
+    }
+
+    private void write(List<PendingAudit> batch) {
+        List<AuditRow> rows = batch.stream().map(this::toRow).toList();
+        for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+            try {
+                auditLogRepository.insertBatch(rows);
+                batchSizes.record(rows.size());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == MAX_WRITE_ATTEMPTS) {
+                    dropped.increment(rows.size());
+                    log.error("Audit batch of {} entries failed after {} attempts", rows.size(), attempt, e);
+                    return;
+                }
+                log.warn("Audit batch of {} entries failed (attempt {}): {}", rows.size(), attempt, e.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100L * attempt));
+            }
+        }
+    }
+
+    private AuditRow toRow(PendingAudit entry) {
+        String changes;
+        try {
+            changes = objectMapper.writeValueAsString(diff(entry.before(), entry.after()));
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.warn("Could not serialize audit diff of {} {}: {}", entry.entityType(), entry.entityId(), e.getMessage());
+            changes = "{}";
+        }
+        return new AuditRow(entry.entityType(), entry.entityId(), entry.operation(), entry.actor(), changes,
+                entry.recordedAt());
+    }
+
+    /**
+     * {ruta.del.campo: {before, after}} para los valores que difieren; los objetos se comparan campo a campo
+     * y las listas completas
+     */
+    private ObjectNode diff(Object before, Object after) {
+        ObjectNode changes = objectMapper.createObjectNode();
+        diff("", toTree(before), toTree(after), changes);
+        return changes;
+    }
+
+    private void diff(String path, JsonNode before, JsonNode after, ObjectNode changes) {
+        if ((before == null || before.isObject()) && (after == null || after.isObject()) && (before != null || after != null)) {
+            Set<String> fields = new LinkedHashSet<>();
+            if (before != null) {
+                before.fieldNames().forEachRemaining(fields::add);
+            }
+            if (after != null) {
+                after.fieldNames().forEachRemaining(fields::add);
+            }
+            for (String field : fields) {
+                diff(path.isEmpty() ? field : path + "." + field,
+                        before != null ? before.get(field) : null,
+                        after != null ? after.get(field) : null,
+                        changes);
+            }
+            return;
+        }
+        JsonNode b = before == null || before.isNull() ? null : before;
+        JsonNode a = after == null || after.isNull() ? null : after;
+        if (b == null ? a != null : !b.equals(a)) {
+            ObjectNode change = changes.putObject(path.isEmpty() ? "value" : path);
+            change.set("before", b != null ? b : NullNode.getInstance());
+            change.set("after", a != null ? a : NullNode.getInstance());
+        }
+    }
+
+    private JsonNode toTree(Object value) {
+        if (value == null) {
+            return null;
+        }
+        JsonNode tree = objectMapper.valueToTree(value);
+        if (tree.isObject()) {
+            // Los campos nulos equivalen a ausentes
+            Iterator<JsonNode> values = tree.elements();
+            while (values.hasNext()) {
+                if (values.next().isNull()) {
+                    values.remove();
+                }
+            }
+        }
+        return tree;
+    }
+
+    private record PendingAudit(ChangeEntityType entityType, Integer entityId, ChangeOperation operation, String actor,
+                                Object before, Object after, LocalDateTime recordedAt) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registra escrituras en el outbox change_event dentro de la transacción de negocio.
+ * Los eventos de una transacción se acumulan y se insertan en un solo batch justo antes del commit,
+ * de modo que el outbox queda consistente con los datos (se confirman o revierten juntos).
+ * Después del commit los resultados afectados de ReadCoalescer se invalidan en esta instancia.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChangeEventRecorder {
+
+    private static final Object PENDING_EVENTS_KEY = new Object();
+
+    private final ChangeEventRepository changeEventRepository;
+    private final ReadCacheInvalidator readCacheInvalidator;
+
+    /**
+     * Registrar un cambio de entidad
+     */
+    public void record(ChangeEntityType entityType, Integer entityId, ChangeOperation operation) {
+        if (entityId == null) {
+            return;
+        }
+        ChangeEvent event = ChangeEvent.pending(entityType, entityId, operation);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changeEventRepository.insertBatch(List.of(event));
+            readCacheInvalidator.invalidate(entityType, entityId, operation);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<ChangeEvent> pending = (List<ChangeEvent>) TransactionSynchronizationManager.getResource(PENDING_EVENTS_KEY);
+        if (pending == null) {
+            List<ChangeEvent> events = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(PENDING_EVENTS_KEY, events);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    if (!events.isEmpty()) {
+                        changeEventRepository.insertBatch(events);
+                    }
+                }
+
+                @Override
+                public void afterCommit() {
+                    for (ChangeEvent committed : events) {
+                        readCacheInvalidator.invalidate(committed.entityType(), committed.entityId(), committed.operation());
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_EVENTS_KEY);
+                }
+            });
+            pending = events;
+        }
+        pending.add(event);
+    }
+}
@@ -0,0 +1,222 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Change feed: un único poller lee el outbox change_event y reparte los eventos a los suscriptores SSE.
+ *
+ * - El cursor es el id del outbox; un cliente reanuda con ?cursor= o con el header Last-Event-ID.
+ * - Cada suscriptor tiene un buffer acotado y su propio hilo virtual de envío, así un cliente lento
+ *   no frena al poller ni a los demás. Si el buffer se llena, se le envía un evento "resync" con su
+ *   último cursor y se cierra la conexión; al reconectar se pone al día desde la base.
+ * - Los ids de una secuencia pueden confirmarse fuera de orden; ante un hueco el poller espera hasta
+ *   gap-timeout-ms antes de saltarlo, para no perder eventos de transacciones aún abiertas.
+ */
+@Service
+@Slf4j
+public class ChangeFeedService {
+
+    private final ChangeEventRepository changeEventRepository;
+    private final int batchSize;
+    private final int subscriberBufferSize;
+    private final long gapTimeoutMs;
+    private final long emitterTimeoutMs;
+    private final long heartbeatSeconds;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /** Último id publicado por el poller (-1 mientras no se inicializa) */
+    private volatile long headCursor = -1;
+    private long gapDetectedAt = 0;
+
+    public ChangeFeedService(ChangeEventRepository changeEventRepository,
+                             @Value("${patients.change-feed.batch-size:500}") int batchSize,
+                             @Value("${patients.change-feed.subscriber-buffer-size:1000}") int subscriberBufferSize,
+                             @Value("${patients.change-feed.gap-timeout-ms:2000}") long gapTimeoutMs,
+                             @Value("${patients.change-feed.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+                             @Value("${patients.change-feed.heartbeat-seconds:15}") long heartbeatSeconds) {
+        this.changeEventRepository = changeEventRepository;
+        this.batchSize = batchSize;
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.gapTimeoutMs = gapTimeoutMs;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.heartbeatSeconds = heartbeatSeconds;
+    }
+
+    /**
+     * Suscribirse al feed desde un cursor (null = solo cambios nuevos)
+     */
+    public SseEmitter subscribe(Long cursor) {
+        long head = ensureHeadInitialized();
+        long start = cursor != null ? Math.max(cursor, 0L) : head;
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, start, subscriberBufferSize);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        // Registrar antes del catch-up para no perder eventos publicados mientras tanto
+        subscribers.add(subscriber);
+        Thread.ofVirtual().name("change-feed-subscriber").start(subscriber);
+
+        log.info("Change feed subscriber registered from cursor {} ({} active)", start, subscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Lectura paginada del outbox para clientes que prefieren pull
+     */
+    public List<ChangeEvent> getChanges(long after, int limit) {
+        return changeEventRepository.findAfter(after, Math.min(limit, batchSize));
+    }
+
+    /**
+     * Leer eventos nuevos del outbox y repartirlos a los suscriptores. Sin suscriptores el head igual avanza
+     * (con la misma espera ante huecos): un suscriptor nuevo sin cursor arranca desde el último evento, no
+     * desde donde quedó el feed cuando se fue el anterior.
+     */
+    @Scheduled(fixedDelayString = "${patients.change-feed.poll-interval-ms:500}")
+    public void poll() {
+        long head = ensureHeadInitialized();
+        List<ChangeEvent> batch = changeEventRepository.findAfter(head, batchSize);
+
+        long expected = head + 1;
+        for (ChangeEvent event : batch) {
+            if (event.id() != expected) {
+                long now = System.currentTimeMillis();
+                if (gapDetectedAt == 0) {
+                    gapDetectedAt = now;
+                }
+                if (now - gapDetectedAt < gapTimeoutMs) {
+                    break;
+                }
+                log.debug("Skipping change feed gap {}..{}", expected, event.id() - 1);
+            }
+            gapDetectedAt = 0;
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+            headCursor = event.id();
+            expected = event.id() + 1;
+        }
+    }
+
+    /**
+     * Cantidad de suscriptores activos
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Último id publicado por el poller (-1 mientras no se inicializa)
+     */
+    public long getHeadCursor() {
+        return headCursor;
+    }
+
+    private synchronized long ensureHeadInitialized() {
+        if (headCursor < 0) {
+            headCursor = changeEventRepository.findMaxId();
+        }
+        return headCursor;
+    }
+
+    /**
+     * Suscriptor SSE con buffer acotado y hilo de envío propio
+     */
+    private final class Subscriber implements Runnable {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<ChangeEvent> queue;
+        private volatile boolean overflowed = false;
+        private volatile boolean closed = false;
+        private long lastSent;
+
+        Subscriber(SseEmitter emitter, long cursor, int bufferSize) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+            this.lastSent = cursor;
+        }
+
+        void offer(ChangeEvent event) {
+            if (!closed && !queue.offer(event)) {
+                overflowed = true;
+            }
+        }
+
+        void close() {
+            closed = true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                catchUp(headCursor);
+                while (!closed) {
+                    if (overflowed) {
+                        log.warn("Change feed subscriber buffer full, asking client to resync from {}", lastSent);
+                        emitter.send(SseEmitter.event().name("resync").id(String.valueOf(lastSent)).data(lastSent));
+                        emitter.complete();
+                        return;
+                    }
+                    ChangeEvent event = queue.poll(heartbeatSeconds, TimeUnit.SECONDS);
+                    if (event == null) {
+                        emitter.send(SseEmitter.event().comment("keepalive"));
+                    } else if (event.id() > lastSent) {
+                        send(event);
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Change feed subscriber disconnected: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closed = true;
+                subscribers.remove(this);
+            }
+        }
+
+        /**
+         * Ponerse al día desde la base hasta el head que ya publicó el poller
+         */
+        private void catchUp(long target) throws IOException {
+            while (!closed && lastSent < target) {
+                List<ChangeEvent> page = changeEventRepository.findAfter(lastSent, batchSize);
+                if (page.isEmpty()) {
+                    return;
+                }
+                for (ChangeEvent event : page) {
+                    if (event.id() > target) {
+                        return;
+                    }
+                    send(event);
+                }
+            }
+        }
+
+        private void send(ChangeEvent event) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(event.id()))
+                    .name("change")
+                    .data(event, MediaType.APPLICATION_JSON));
+            lastSent = event.id();
+        }
+    }
+}
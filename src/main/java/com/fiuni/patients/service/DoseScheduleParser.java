@@ -0,0 +1,198 @@
+package com.fiuni.patients.service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Interpreta los textos libres frequency y duration de una línea de prescripción como un esquema de dosis
+ * (intervalo entre tomas y duración del tratamiento).
+ *
+ * Acepta las formas habituales en español e inglés: "cada 8 horas", "c/8h", "3 veces al día", "dos veces por
+ * semana", "diario", "every 12 hours", "twice daily", abreviaturas (QD, BID, TID, QID, q6h), "7 días",
+ * "2 semanas", "1 mes", "dosis única", "crónico". Lo que no reconoce queda UNPARSED; "según necesidad" / PRN
+ * queda AS_NEEDED (no se agenda).
+ */
+public final class DoseScheduleParser {
+
+    /** Intervalo mínimo aceptado: evita agendas de miles de tomas por errores de carga */
+    static final Duration MIN_INTERVAL = Duration.ofMinutes(30);
+
+    private static final String NUMBER = "(\\d+(?:[.,]\\d+)?|un|una|uno|one|a|dos|two|tres|three|cuatro|four|cinco|five|"
+            + "seis|six|siete|seven|ocho|eight|nueve|nine|diez|ten|once|eleven|doce|twelve)";
+
+    private static final Map<String, Integer> NUMBER_WORDS = Map.ofEntries(
+            Map.entry("un", 1), Map.entry("una", 1), Map.entry("uno", 1), Map.entry("one", 1), Map.entry("a", 1),
+            Map.entry("dos", 2), Map.entry("two", 2), Map.entry("tres", 3), Map.entry("three", 3),
+            Map.entry("cuatro", 4), Map.entry("four", 4), Map.entry("cinco", 5), Map.entry("five", 5),
+            Map.entry("seis", 6), Map.entry("six", 6), Map.entry("siete", 7), Map.entry("seven", 7),
+            Map.entry("ocho", 8), Map.entry("eight", 8), Map.entry("nueve", 9), Map.entry("nine", 9),
+            Map.entry("diez", 10), Map.entry("ten", 10), Map.entry("once", 11), Map.entry("eleven", 11),
+            Map.entry("doce", 12), Map.entry("twelve", 12));
+
+    private static final String HOUR_UNIT = "(?:horas?|hrs?|hs|h|hours?)";
+    private static final String MINUTE_UNIT = "(?:minutos?|mins?|minutes?)";
+    private static final String DAY_UNIT = "(?:dias?|d|days?)";
+    private static final String WEEK_UNIT = "(?:semanas?|sem|weeks?|wks?)";
+    private static final String MONTH_UNIT = "(?:meses|mes|months?)";
+
+    private static final Pattern AS_NEEDED = Pattern.compile(
+            "\\b(prn|sos|segun necesidad|si necesita|si es necesario|en caso de|si dolor|as needed|when needed|if needed)\\b");
+    private static final Pattern EVERY = Pattern.compile(
+            "(?:\\bcada|\\bevery|\\bc/|\\bq)\\s*" + NUMBER + "?\\s*(" + HOUR_UNIT + "|" + MINUTE_UNIT + "|"
+                    + DAY_UNIT + "|" + WEEK_UNIT + "|" + MONTH_UNIT + ")\\b");
+    private static final Pattern TIMES_PER = Pattern.compile(
+            NUMBER + "\\s*(?:veces|vez|times|x)\\s*(?:al|por|a|per|/|each|every)?\\s*(dia|day|daily|semana|week|weekly)\\b");
+    private static final Pattern COURSE = Pattern.compile(
+            NUMBER + "\\s*(" + DAY_UNIT + "|" + WEEK_UNIT + "|" + MONTH_UNIT + "|" + HOUR_UNIT + ")\\b");
+
+    private static final Map<String, Duration> FIXED_FREQUENCIES = Map.ofEntries(
+            Map.entry("qd", Duration.ofHours(24)), Map.entry("od", Duration.ofHours(24)),
+            Map.entry("diario", Duration.ofHours(24)), Map.entry("diaria", Duration.ofHours(24)),
+            Map.entry("diariamente", Duration.ofHours(24)), Map.entry("daily", Duration.ofHours(24)),
+            Map.entry("once daily", Duration.ofHours(24)), Map.entry("once a day", Duration.ofHours(24)),
+            Map.entry("al acostarse", Duration.ofHours(24)), Map.entry("antes de dormir", Duration.ofHours(24)),
+            Map.entry("por la noche", Duration.ofHours(24)), Map.entry("en ayunas", Duration.ofHours(24)),
+            Map.entry("bid", Duration.ofHours(12)), Map.entry("twice daily", Duration.ofHours(12)),
+            Map.entry("twice a day", Duration.ofHours(12)), Map.entry("manana y noche", Duration.ofHours(12)),
+            Map.entry("tid", Duration.ofHours(8)), Map.entry("tds", Duration.ofHours(8)),
+            Map.entry("qid", Duration.ofHours(6)),
+            Map.entry("semanal", Duration.ofDays(7)), Map.entry("semanalmente", Duration.ofDays(7)),
+            Map.entry("weekly", Duration.ofDays(7)), Map.entry("mensual", Duration.ofDays(30)),
+            Map.entry("monthly", Duration.ofDays(30)));
+
+    private static final List<Map.Entry<Pattern, Duration>> FIXED_PATTERNS = FIXED_FREQUENCIES.entrySet().stream()
+            // Las frases más largas primero: "twice daily" antes que "daily"
+            .sorted((a, b) -> Integer.compare(b.getKey().length(), a.getKey().length()))
+            .map(e -> Map.entry(Pattern.compile("\\b" + Pattern.quote(e.getKey()) + "\\b"), e.getValue()))
+            .toList();
+
+    private static final Pattern INDEFINITE = Pattern.compile(
+            "\\b(indefinid[oa]|cronico|permanente|continuo|de por vida|sin fecha|indefinite|ongoing|chronic|long term)\\b");
+    private static final Pattern UNTIL_FINISHED = Pattern.compile(
+            "\\b(hasta terminar|hasta agotar|hasta finalizar|hasta acabar|until finished|until gone|until complete)\\b");
+    private static final Pattern SINGLE_DOSE = Pattern.compile("\\b(dosis unica|unica dosis|unica vez|single dose|once only|stat)\\b");
+
+    private DoseScheduleParser() {
+    }
+
+    public enum Status {
+        PARSED,
+        AS_NEEDED,
+        UNPARSED
+    }
+
+    /**
+     * Esquema normalizado; course null = sin fin (acotado por la vigencia de la prescripción), ZERO = dosis única.
+     * untilFinished: el tratamiento dura lo que la cantidad dispensada ("hasta terminar").
+     */
+    public record DoseSchedule(Status status, Duration interval, Duration course, boolean untilFinished) {
+
+        static DoseSchedule of(Status status) {
+            return new DoseSchedule(status, null, null, false);
+        }
+    }
+
+    /**
+     * Interpretar frecuencia y duración; duration vacía = sin fin
+     */
+    public static DoseSchedule parse(String frequency, String duration) {
+        String freq = normalize(frequency);
+        String dur = normalize(duration);
+        if (AS_NEEDED.matcher(freq).find()) {
+            return DoseSchedule.of(Status.AS_NEEDED);
+        }
+
+        boolean singleDose = SINGLE_DOSE.matcher(freq).find() || SINGLE_DOSE.matcher(dur).find();
+        Duration interval = parseInterval(freq);
+        if (interval == null && singleDose) {
+            interval = Duration.ofHours(24);
+        }
+        if (interval == null || interval.compareTo(MIN_INTERVAL) < 0) {
+            return DoseSchedule.of(Status.UNPARSED);
+        }
+
+        Duration course;
+        if (singleDose) {
+            course = Duration.ZERO;
+        } else if (UNTIL_FINISHED.matcher(dur).find()) {
+            return new DoseSchedule(Status.PARSED, interval, null, true);
+        } else if (dur.isEmpty() || INDEFINITE.matcher(dur).find()) {
+            course = null;
+        } else {
+            Matcher matcher = COURSE.matcher(dur);
+            if (!matcher.find()) {
+                return DoseSchedule.of(Status.UNPARSED);
+            }
+            course = toDuration(number(matcher.group(1)), matcher.group(2));
+            if (course == null) {
+                return DoseSchedule.of(Status.UNPARSED);
+            }
+        }
+        return new DoseSchedule(Status.PARSED, interval, course, false);
+    }
+
+    private static Duration parseInterval(String freq) {
+        if (freq.isEmpty()) {
+            return null;
+        }
+        Matcher every = EVERY.matcher(freq);
+        if (every.find()) {
+            double amount = every.group(1) != null ? number(every.group(1)) : 1;
+            return toDuration(amount, every.group(2));
+        }
+        Matcher times = TIMES_PER.matcher(freq);
+        if (times.find()) {
+            double count = number(times.group(1));
+            if (count <= 0) {
+                return null;
+            }
+            Duration period = times.group(2).startsWith("d") ? Duration.ofDays(1) : Duration.ofDays(7);
+            return Duration.ofMinutes(Math.round(period.toMinutes() / count));
+        }
+        for (Map.Entry<Pattern, Duration> fixed : FIXED_PATTERNS) {
+            if (fixed.getKey().matcher(freq).find()) {
+                return fixed.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Duration toDuration(double amount, String unit) {
+        if (amount <= 0) {
+            return null;
+        }
+        long minutes;
+        if (unit.matches(MINUTE_UNIT)) {
+            minutes = Math.round(amount);
+        } else if (unit.matches(HOUR_UNIT)) {
+            minutes = Math.round(amount * 60);
+        } else if (unit.matches(DAY_UNIT)) {
+            minutes = Math.round(amount * 24 * 60);
+        } else if (unit.matches(WEEK_UNIT)) {
+            minutes = Math.round(amount * 7 * 24 * 60);
+        } else if (unit.matches(MONTH_UNIT)) {
+            minutes = Math.round(amount * 30 * 24 * 60);
+        } else {
+            return null;
+        }
+        return Duration.ofMinutes(minutes);
+    }
+
+    private static double number(String token) {
+        Integer word = NUMBER_WORDS.get(token);
+        return word != null ? word : Double.parseDouble(token.replace(',', '.'));
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+    }
+}
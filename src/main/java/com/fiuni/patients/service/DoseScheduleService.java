@@ -0,0 +1,179 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.DoseEventType;
+import com.fiuni.patients.dto.DueDoseEvent;
+import com.fiuni.patients.repository.DoseScheduleRepository;
+import com.fiuni.patients.repository.DoseScheduleRepository.ScheduleRow;
+import com.fiuni.patients.repository.DoseScheduleRepository.ScheduleSource;
+import com.fiuni.patients.repository.DoseScheduleRepository.ScheduleState;
+import com.fiuni.patients.service.DoseScheduleParser.DoseSchedule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Agenda de tomas y reposiciones precalculada a partir de frequency / duration de las líneas activas.
+ *
+ * - Las líneas modificadas desde la última corrida (marca de agua) se interpretan una sola vez y su esquema
+ *   normalizado queda en dose_schedule; las inactivas pierden esquema y eventos.
+ * - Cada corrida extiende la ventana de eventos hasta now + horizon-hours con SQL (sin volver a interpretar)
+ *   y purga los eventos vencidos hace más de retention-hours.
+ * - La primera toma es created_date de la línea; se asume una unidad por toma, así la reposición vence cuando
+ *   la cantidad dispensada se agota antes del fin del tratamiento. valid_until acota el tratamiento.
+ * - course_end es exclusivo: "cada 8 horas" por "7 días" son 21 tomas; una dosis única es una toma.
+ * - Una sola instancia recalcula a la vez (advisory lock de la transacción).
+ */
+@Service
+@Slf4j
+public class DoseScheduleService {
+
+    /** Máximo de eventos por consulta de vencimientos */
+    public static final int MAX_DUE_RESULTS = 1000;
+
+    private static final int CHUNK_SIZE = 500;
+
+    /** Margen de la marca de agua para transacciones que confirmaron con last_modified anterior a la corrida */
+    private static final Duration SOURCE_LAG = Duration.ofMinutes(1);
+
+    private static final LocalDateTime NEVER = LocalDateTime.of(1900, 1, 1, 0, 0);
+    private static final LocalTime DEFAULT_FIRST_DOSE = LocalTime.of(8, 0);
+
+    private final DoseScheduleRepository scheduleRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration horizon;
+    private final Duration retention;
+
+    public DoseScheduleService(DoseScheduleRepository scheduleRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${patients.schedules.horizon-hours:48}") long horizonHours,
+                               @Value("${patients.schedules.retention-hours:24}") long retentionHours) {
+        this.scheduleRepository = scheduleRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.horizon = Duration.ofHours(horizonHours);
+        this.retention = Duration.ofHours(retentionHours);
+    }
+
+    /**
+     * Interpretar las líneas modificadas, extender la ventana de eventos y purgar los vencidos
+     */
+    @Scheduled(initialDelayString = "${patients.schedules.initial-delay-ms:10000}",
+               fixedDelayString = "${patients.schedules.refresh-interval-ms:300000}")
+    public void refresh() {
+        long started = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!scheduleRepository.tryRefreshLock()) {
+                log.debug("Dose schedule refresh already running on another instance");
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime horizonEnd = now.plus(horizon);
+            ScheduleState state = scheduleRepository.findState().orElse(new ScheduleState(NEVER, now));
+
+            AtomicInteger lines = new AtomicInteger();
+            scheduleRepository.forEachChangedLine(state.sourceWatermark(), CHUNK_SIZE, chunk -> {
+                applyChunk(chunk, now, horizonEnd);
+                lines.addAndGet(chunk.size());
+            });
+
+            LocalDateTime extendFrom = state.horizonEnd().isAfter(now) ? state.horizonEnd() : now;
+            int generated = scheduleRepository.generateEvents(extendFrom, horizonEnd, null);
+            int purged = scheduleRepository.purgeEventsBefore(now.minus(retention));
+            scheduleRepository.saveState(new ScheduleState(now.minus(SOURCE_LAG), horizonEnd));
+
+            log.info("Dose schedules refreshed in {} ms: {} changed lines, {} events added through {}, {} purged",
+                    (System.nanoTime() - started) / 1_000_000, lines.get(), generated, horizonEnd, purged);
+        });
+    }
+
+    /**
+     * Tomas / reposiciones que vencen en [from, to), en orden de vencimiento
+     */
+    @Transactional(readOnly = true)
+    public List<DueDoseEvent> getDueEvents(LocalDateTime from, LocalDateTime to, DoseEventType type, Integer patientId, int limit) {
+        int max = Math.max(1, Math.min(limit, MAX_DUE_RESULTS));
+        return scheduleRepository.findDue(from, to, type, patientId, max);
+    }
+
+    /**
+     * Hasta dónde están generados los eventos (vacío antes de la primera corrida)
+     */
+    @Transactional(readOnly = true)
+    public Optional<LocalDateTime> getHorizonEnd() {
+        return scheduleRepository.findState().map(ScheduleState::horizonEnd);
+    }
+
+    private void applyChunk(List<ScheduleSource> chunk, LocalDateTime now, LocalDateTime horizonEnd) {
+        List<ScheduleRow> rows = new ArrayList<>();
+        List<Integer> inactive = new ArrayList<>();
+        for (ScheduleSource source : chunk) {
+            if (source.active()) {
+                rows.add(toRow(source));
+            } else {
+                inactive.add(source.prescriptionMedicationId());
+            }
+        }
+        if (!inactive.isEmpty()) {
+            scheduleRepository.deleteSchedules(inactive.toArray(new Integer[0]));
+        }
+        if (!rows.isEmpty()) {
+            Integer[] changed = rows.stream().map(ScheduleRow::prescriptionMedicationId).toArray(Integer[]::new);
+            scheduleRepository.upsertSchedules(rows, now);
+            scheduleRepository.deleteEventsFrom(changed, now);
+            scheduleRepository.generateEvents(now, horizonEnd, changed);
+        }
+    }
+
+    private static ScheduleRow toRow(ScheduleSource source) {
+        DoseSchedule schedule = DoseScheduleParser.parse(source.frequency(), source.duration());
+        if (schedule.status() != DoseScheduleParser.Status.PARSED) {
+            return new ScheduleRow(source.prescriptionMedicationId(), source.prescriptionId(), source.patientId(),
+                    source.medicationId(), schedule.status().name(), null, null, null, null);
+        }
+
+        Duration interval = schedule.interval();
+        LocalDateTime anchor = source.createdDate() != null ? source.createdDate()
+                : source.prescriptionDate() != null ? source.prescriptionDate().atTime(DEFAULT_FIRST_DOSE)
+                : LocalDateTime.now();
+        boolean hasQuantity = source.quantity() != null && source.quantity() > 0;
+
+        // Fin exclusivo del tratamiento: toma k si anchor + k * interval < courseEnd
+        Duration course = schedule.course();
+        if (course != null && course.isZero()) {
+            course = interval;
+        } else if (schedule.untilFinished() && hasQuantity) {
+            course = interval.multipliedBy(source.quantity());
+        }
+        LocalDateTime courseEnd = course != null ? anchor.plus(course) : null;
+        if (source.validUntil() != null) {
+            // Vigente todo el día valid_until
+            LocalDateTime validEnd = source.validUntil().plusDays(1).atStartOfDay();
+            if (courseEnd == null || validEnd.isBefore(courseEnd)) {
+                courseEnd = validEnd;
+            }
+        }
+
+        // Reposición solo si la cantidad se agota con tomas pendientes
+        LocalDateTime refillAt = null;
+        if (hasQuantity && !schedule.untilFinished()) {
+            LocalDateTime supplyEnd = anchor.plus(interval.multipliedBy(source.quantity()));
+            if (courseEnd == null || supplyEnd.isBefore(courseEnd)) {
+                refillAt = supplyEnd;
+            }
+        }
+
+        return new ScheduleRow(source.prescriptionMedicationId(), source.prescriptionId(), source.patientId(),
+                source.medicationId(), schedule.status().name(), (int) interval.toMinutes(), anchor, courseEnd, refillAt);
+    }
+}
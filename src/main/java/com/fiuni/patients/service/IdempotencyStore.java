@@ -0,0 +1,207 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.IdempotentResponse;
+import com.fiuni.patients.repository.IdempotencyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Almacén de respuestas por Idempotency-Key.
+ *
+ * - Memoria: LRU acotado a max-entries con TTL; resuelve los reintentos sin tocar la base.
+ * - Base (idempotency_record): durabilidad ante reinicios y para reintentos que llegan a otra instancia.
+ * - En curso: el primer request con una clave la toma en la instancia y en la base (fila pendiente, vigente
+ *   claim-lease-ms). Los duplicados de la misma instancia esperan su resultado; los de otras instancias
+ *   consultan la base cada REMOTE_POLL_INTERVAL_MS hasta wait-timeout-ms.
+ * - La respuesta se guarda solo sobre la fila pendiente: nunca pisa una respuesta ya guardada por otra instancia.
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+
+    private static final int PURGE_BATCH_SIZE = 1000;
+    private static final long REMOTE_POLL_INTERVAL_MS = 100;
+
+    private final IdempotencyRepository idempotencyRepository;
+    private final Duration ttl;
+    private final Duration claimLease;
+    private final long waitTimeoutMs;
+    private final int maxEntries;
+    private final Map<String, IdempotentResponse> recent;
+    private final ConcurrentHashMap<String, CompletableFuture<IdempotentResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyStore(IdempotencyRepository idempotencyRepository,
+                            @Value("${patients.idempotency.ttl-hours:24}") long ttlHours,
+                            @Value("${patients.idempotency.max-entries:10000}") int maxEntries,
+                            @Value("${patients.idempotency.claim-lease-ms:120000}") long claimLeaseMs,
+                            @Value("${patients.idempotency.wait-timeout-ms:35000}") long waitTimeoutMs) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.claimLease = Duration.ofMillis(claimLeaseMs);
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.maxEntries = maxEntries;
+        this.recent = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotentResponse> eldest) {
+                return size() > IdempotencyStore.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Respuesta guardada y vigente para la clave (memoria y luego base)
+     */
+    public Optional<IdempotentResponse> find(String key) {
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (recent) {
+            IdempotentResponse cached = recent.get(key);
+            if (cached != null) {
+                if (cached.expiresAt().isAfter(now)) {
+                    return Optional.of(cached);
+                }
+                recent.remove(key);
+            }
+        }
+        Optional<IdempotentResponse> stored = idempotencyRepository.findValid(key, now);
+        stored.ifPresent(response -> remember(key, response));
+        return stored;
+    }
+
+    /**
+     * Tomar la clave para ejecutar el request: null si este request la tomó; si no, el resultado en curso a esperar.
+     * Completa con null si la ejecución original no dejó respuesta guardable, y con TimeoutException si otra
+     * instancia sigue ejecutando después de wait-timeout-ms.
+     */
+    public CompletableFuture<IdempotentResponse> tryAcquire(String key, String requestHash) {
+        CompletableFuture<IdempotentResponse> local = new CompletableFuture<>();
+        CompletableFuture<IdempotentResponse> running = inFlight.putIfAbsent(key, local);
+        if (running != null) {
+            return running;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            if (idempotencyRepository.claim(key, requestHash, now, now.plus(claimLease))) {
+                return null;
+            }
+        } catch (DataAccessException e) {
+            // Sin base la clave queda tomada solo en esta instancia
+            log.warn("Could not claim idempotency key {} in the database: {}", key, e.getMessage());
+            return null;
+        }
+        // Otra instancia tiene la clave o ya guardó la respuesta; los duplicados locales esperan a este request
+        try {
+            release(key, awaitRemote(key));
+        } catch (TimeoutException | RuntimeException e) {
+            inFlight.remove(key, local);
+            local.completeExceptionally(e);
+        }
+        return local;
+    }
+
+    /**
+     * Guardar la respuesta del request que tomó la clave y liberar a los que esperaban
+     */
+    public void complete(String key, String requestHash, int statusCode, String contentType,
+                         String location, String etag, byte[] body) {
+        LocalDateTime now = LocalDateTime.now();
+        IdempotentResponse response = new IdempotentResponse(requestHash, statusCode, contentType, location, etag,
+                body, now.plus(ttl));
+        try {
+            if (!idempotencyRepository.save(key, response, now)) {
+                // La toma venció y otra instancia ya guardó su respuesta: los reintentos reciben esa
+                log.warn("Idempotency key {} already has a stored response from another execution", key);
+                response = idempotencyRepository.findValid(key, now).orElse(response);
+            }
+        } catch (DataAccessException e) {
+            // La respuesta sigue disponible en memoria; solo se pierde la durabilidad de esta clave
+            log.warn("Could not persist idempotency key {}: {}", key, e.getMessage());
+        }
+        remember(key, response);
+        release(key, response);
+    }
+
+    /**
+     * Liberar la clave sin guardar respuesta (error del servidor): un reintento vuelve a ejecutar
+     */
+    public void abandon(String key) {
+        try {
+            idempotencyRepository.release(key);
+        } catch (DataAccessException e) {
+            // La fila pendiente vence con claim-lease-ms
+            log.warn("Could not release idempotency key {}: {}", key, e.getMessage());
+        }
+        release(key, null);
+    }
+
+    /**
+     * Purgar registros vencidos de la base
+     */
+    @Scheduled(fixedDelayString = "${patients.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        int total = 0;
+        int deleted;
+        do {
+            deleted = idempotencyRepository.deleteExpired(now, PURGE_BATCH_SIZE);
+            total += deleted;
+        } while (deleted == PURGE_BATCH_SIZE);
+        synchronized (recent) {
+            recent.values().removeIf(response -> !response.expiresAt().isAfter(now));
+        }
+        if (total > 0) {
+            log.info("Purged {} expired idempotency records", total);
+        }
+    }
+
+    /**
+     * Esperar la respuesta de la ejecución que tiene la clave en otra instancia: null si la soltó sin respuesta
+     */
+    private IdempotentResponse awaitRemote(String key) throws TimeoutException {
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            Optional<IdempotentResponse> stored = idempotencyRepository.findValid(key, now);
+            if (stored.isPresent()) {
+                remember(key, stored.get());
+                return stored.get();
+            }
+            if (!idempotencyRepository.isClaimed(key, now)) {
+                return null;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new TimeoutException("Idempotency key " + key + " is still claimed by another instance");
+            }
+            try {
+                Thread.sleep(REMOTE_POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for idempotency key " + key, e);
+            }
+        }
+    }
+
+    private void remember(String key, IdempotentResponse response) {
+        synchronized (recent) {
+            recent.put(key, response);
+        }
+    }
+
+    private void release(String key, IdempotentResponse response) {
+        CompletableFuture<IdempotentResponse> future = inFlight.remove(key);
+        if (future != null) {
+            future.complete(response);
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.MedicationStock;
+import com.fiuni.patients.repository.MedicationInventoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Stock por medicamento con contadores en memoria por franjas y volcado periódico de deltas a la base.
+ *
+ * - Cada medicamento reparte su stock en N franjas (como LongAdder); un surtido descuenta de la franja de su
+ *   hilo con CAS y solo si no alcanza toma de las demás, así un medicamento popular no es una fila caliente.
+ * - Reservar es todo o nada y nunca deja el stock por debajo de cero; la reserva se confirma o se devuelve
+ *   con la transacción del surtido.
+ * - Los deltas confirmados se vuelcan cada flush-interval-ms en un único upsert; la reconciliación recarga
+ *   on_hand (incluye los volcados de otras instancias) y corrige la deriva de los contadores. Cada contador
+ *   se corrige con su lock exclusivo: reservas, confirmaciones y devoluciones (lock compartido) no quedan a
+ *   medias mientras se compara; los ingresos y volcados se excluyen con flushLock.
+ * - Si la carga inicial falla se reintenta con backoff; hasta entonces las reservas fallan.
+ * - Las lecturas suman franjas sin locks: nunca bloquean surtidos.
+ * - Los medicamentos sin fila en medication_inventory no tienen inventario controlado.
+ */
+@Component
+@Slf4j
+public class MedicationInventory {
+
+    /** Separación entre franjas dentro del AtomicLongArray (64 bytes) para evitar false sharing */
+    private static final int PADDING = 8;
+    private static final long LOAD_RETRY_INITIAL_MS = 1_000;
+    private static final long LOAD_RETRY_MAX_MS = 60_000;
+
+    private final MedicationInventoryRepository inventoryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int stripeCount;
+    private final ConcurrentHashMap<Integer, StockCounter> counters = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile boolean ready = false;
+
+    public MedicationInventory(MedicationInventoryRepository inventoryRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${patients.inventory.stripes:0}") int stripes) {
+        this.inventoryRepository = inventoryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stripeCount = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Carga inicial en segundo plano, reintentada con backoff exponencial hasta que la base responda
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread.ofVirtual().name("medication-inventory-loader").start(() -> {
+            long backoffMs = LOAD_RETRY_INITIAL_MS;
+            while (!ready) {
+                try {
+                    load();
+                } catch (RuntimeException e) {
+                    log.error("Medication inventory load failed, retrying in {} ms", backoffMs, e);
+                    try {
+                        Thread.sleep(backoffMs);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    backoffMs = Math.min(backoffMs * 2, LOAD_RETRY_MAX_MS);
+                }
+            }
+        });
+    }
+
+    private void load() {
+        flushLock.lock();
+        try {
+            Map<Integer, Long> onHand = inventoryRepository.findAllOnHand();
+            onHand.forEach((medicationId, units) -> counter(medicationId).reset(units));
+            ready = true;
+            log.info("Medication inventory loaded: {} tracked medications", onHand.size());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * true cuando la carga inicial terminó
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Stock de un medicamento con inventario (vacío si no está controlado)
+     */
+    public Optional<MedicationStock> getStock(Integer medicationId) {
+        StockCounter counter = counters.get(medicationId);
+        if (counter == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new MedicationStock(medicationId, counter.available(), counter.unflushed.get()));
+    }
+
+    /**
+     * Stock de todos los medicamentos con inventario
+     */
+    public List<MedicationStock> getAllStock() {
+        List<MedicationStock> stock = new ArrayList<>(counters.size());
+        counters.forEach((id, counter) -> stock.add(new MedicationStock(id, counter.available(), counter.unflushed.get())));
+        stock.sort((a, b) -> Integer.compare(a.medicationId(), b.medicationId()));
+        return stock;
+    }
+
+    /**
+     * Reservar unidades por medicamento para un surtido (todo o nada). La reserva se confirma con la
+     * transacción actual y se devuelve si revierte. false si algún medicamento no tiene stock suficiente.
+     *
+     * @throws IllegalStateException si el inventario todavía se está cargando
+     */
+    public boolean reserve(Map<Integer, Long> unitsByMedication) {
+        checkReady();
+        List<Reservation> taken = new ArrayList<>(unitsByMedication.size());
+        for (Map.Entry<Integer, Long> entry : unitsByMedication.entrySet()) {
+            StockCounter counter = counters.get(entry.getKey());
+            long units = entry.getValue();
+            if (counter == null || units <= 0) {
+                continue;
+            }
+            if (!counter.tryTake(units)) {
+                taken.forEach(r -> r.counter().cancelTaken(r.units()));
+                log.debug("Insufficient stock for medication {}: requested {}, available {}",
+                        entry.getKey(), units, counter.available());
+                return false;
+            }
+            taken.add(new Reservation(counter, units));
+        }
+        if (!taken.isEmpty()) {
+            onCompletion(
+                    () -> taken.forEach(r -> r.counter().commitTaken(r.units())),
+                    () -> taken.forEach(r -> r.counter().cancelTaken(r.units())));
+        }
+        return true;
+    }
+
+    /**
+     * Devolver al stock las unidades de un surtido revertido, al confirmar la transacción actual
+     *
+     * @throws IllegalStateException si el inventario todavía se está cargando
+     */
+    public void restore(Map<Integer, Long> unitsByMedication) {
+        checkReady();
+        List<Reservation> returned = new ArrayList<>(unitsByMedication.size());
+        unitsByMedication.forEach((medicationId, units) -> {
+            StockCounter counter = counters.get(medicationId);
+            if (counter != null && units > 0) {
+                returned.add(new Reservation(counter, units));
+            }
+        });
+        if (!returned.isEmpty()) {
+            onCompletion(() -> returned.forEach(r -> r.counter().commitReturned(r.units())), () -> { });
+        }
+    }
+
+    /**
+     * Ingresar unidades al stock: se persisten de inmediato (no esperan al volcado). Un medicamento sin
+     * inventario pasa a estar controlado. Con flushLock: la reconciliación no ve la base con el ingreso y
+     * el contador sin él.
+     */
+    public MedicationStock restock(Integer medicationId, long units) {
+        checkReady();
+        StockCounter counter;
+        flushLock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> inventoryRepository.applyDeltas(
+                    new Integer[]{medicationId}, new Long[]{units}, LocalDateTime.now()));
+            counter = counter(medicationId);
+            counter.restocked(units);
+        } finally {
+            flushLock.unlock();
+        }
+        log.info("Restocked medication {} with {} units", medicationId, units);
+        return new MedicationStock(medicationId, counter.available(), counter.unflushed.get());
+    }
+
+    /**
+     * Volcar a la base los deltas confirmados desde el último volcado (un solo upsert)
+     */
+    @Scheduled(fixedDelayString = "${patients.inventory.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Integer> ids = new ArrayList<>();
+            List<Long> deltas = new ArrayList<>();
+            counters.forEach((id, counter) -> {
+                long delta = counter.unflushed.getAndSet(0);
+                if (delta != 0) {
+                    ids.add(id);
+                    deltas.add(delta);
+                }
+            });
+            if (ids.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> inventoryRepository.applyDeltas(
+                        ids.toArray(new Integer[0]), deltas.toArray(new Long[0]), LocalDateTime.now()));
+                log.debug("Flushed inventory deltas for {} medications", ids.size());
+            } catch (DataAccessException e) {
+                // Devolver los deltas para el próximo volcado
+                for (int i = 0; i < ids.size(); i++) {
+                    counters.get(ids.get(i)).unflushed.addAndGet(deltas.get(i));
+                }
+                log.warn("Inventory flush failed, will retry: {}", e.getMessage());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Reconciliar los contadores con on_hand de la base (cambios de otras instancias y deriva)
+     */
+    @Scheduled(fixedDelayString = "${patients.inventory.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (!ready) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            flush();
+            Map<Integer, Long> onHand = inventoryRepository.findAllOnHand();
+            int corrected = 0;
+            for (Map.Entry<Integer, Long> entry : onHand.entrySet()) {
+                if (counter(entry.getKey()).reconcile(entry.getValue()) != 0) {
+                    corrected++;
+                }
+                if (entry.getValue() < 0) {
+                    log.warn("Medication {} is oversold by {} units across instances", entry.getKey(), -entry.getValue());
+                }
+            }
+            if (corrected > 0) {
+                log.info("Inventory reconciled: {} medications corrected", corrected);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Inventory reconciliation failed: {}", e.getMessage());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private StockCounter counter(Integer medicationId) {
+        return counters.computeIfAbsent(medicationId, id -> new StockCounter(stripeCount));
+    }
+
+    private void checkReady() {
+        if (!ready) {
+            throw new IllegalStateException("Medication inventory is still loading");
+        }
+    }
+
+    private static void onCompletion(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    onCommit.run();
+                } else {
+                    onRollback.run();
+                }
+            }
+        });
+    }
+
+    private record Reservation(StockCounter counter, long units) {
+    }
+
+    /**
+     * Stock de un medicamento repartido en franjas; reserved y unflushed llevan la contabilidad de
+     * reservas abiertas y deltas confirmados sin volcar.
+     *
+     * Invariante entre operaciones: available + reserved - unflushed = on_hand de la base. Cada operación
+     * toca varios contadores con el lock compartido (las operaciones corren en paralelo entre sí);
+     * reconcile toma el lock exclusivo y nunca ve una operación a medias.
+     */
+    static final class StockCounter {
+
+        private final AtomicLongArray stripes;
+        private final int stripeCount;
+        private final StampedLock guard = new StampedLock();
+        final AtomicLong reserved = new AtomicLong();
+        final AtomicLong unflushed = new AtomicLong();
+
+        StockCounter(int stripeCount) {
+            this.stripeCount = stripeCount;
+            this.stripes = new AtomicLongArray(stripeCount * PADDING);
+        }
+
+        long available() {
+            long sum = 0;
+            for (int i = 0; i < stripeCount; i++) {
+                sum += stripes.get(i * PADDING);
+            }
+            return sum;
+        }
+
+        /**
+         * Tomar units de la franja propia y, si no alcanza, de las demás; todo o nada, sin bajar de cero
+         */
+        boolean tryTake(long units) {
+            long stamp = guard.readLock();
+            try {
+                return take(units);
+            } finally {
+                guard.unlockRead(stamp);
+            }
+        }
+
+        private boolean take(long units) {
+            int home = home();
+            long taken = 0;
+            for (int i = 0; i < stripeCount && taken < units; i++) {
+                int index = ((home + i) % stripeCount) * PADDING;
+                long current;
+                long take;
+                do {
+                    current = stripes.get(index);
+                    if (current <= 0) {
+                        take = 0;
+                        break;
+                    }
+                    take = Math.min(current, units - taken);
+                } while (!stripes.compareAndSet(index, current, current - take));
+                taken += take;
+            }
+            if (taken < units) {
+                if (taken > 0) {
+                    stripes.addAndGet(home * PADDING, taken);
+                }
+                return false;
+            }
+            reserved.addAndGet(units);
+            return true;
+        }
+
+        /**
+         * Reserva revertida
+         */
+        void cancelTaken(long units) {
+            long stamp = guard.readLock();
+            try {
+                reserved.addAndGet(-units);
+                giveBack(units);
+            } finally {
+                guard.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Reserva confirmada: queda como delta sin volcar
+         */
+        void commitTaken(long units) {
+            long stamp = guard.readLock();
+            try {
+                reserved.addAndGet(-units);
+                unflushed.addAndGet(-units);
+            } finally {
+                guard.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Devolución confirmada de un surtido revertido
+         */
+        void commitReturned(long units) {
+            long stamp = guard.readLock();
+            try {
+                giveBack(units);
+                unflushed.addAndGet(units);
+            } finally {
+                guard.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Ingreso ya persistido en la base
+         */
+        void restocked(long units) {
+            long stamp = guard.readLock();
+            try {
+                giveBack(units);
+            } finally {
+                guard.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Corregir la deriva contra on_hand de la base; devuelve la corrección aplicada
+         */
+        long reconcile(long onHand) {
+            long stamp = guard.writeLock();
+            try {
+                // Esperado en memoria: base + deltas locales sin volcar - reservas en transacciones abiertas
+                long drift = onHand + unflushed.get() - reserved.get() - available();
+                if (drift != 0) {
+                    giveBack(drift);
+                }
+                return drift;
+            } finally {
+                guard.unlockWrite(stamp);
+            }
+        }
+
+        private void giveBack(long units) {
+            stripes.addAndGet(home() * PADDING, units);
+        }
+
+        void reset(long units) {
+            long stamp = guard.writeLock();
+            try {
+                for (int i = 0; i < stripeCount; i++) {
+                    long share = units <= 0
+                            ? (i == 0 ? units : 0)
+                            : units / stripeCount + (i < units % stripeCount ? 1 : 0);
+                    stripes.set(i * PADDING, share);
+                }
+            } finally {
+                guard.unlockWrite(stamp);
+            }
+        }
+
+        private int home() {
+            return (int) Math.floorMod(Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L, (long) stripeCount);
+        }
+    }
+}
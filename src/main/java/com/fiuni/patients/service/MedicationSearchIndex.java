@@ -0,0 +1,469 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.clinica.domain.patient.MedicationDomain;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import com.fiuni.patients.repository.MedicationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria para la búsqueda rankeada de medicamentos (BM25 por campo con pesos).
+ *
+ * - Campos: nombre, nombre genérico, descripción, efectos secundarios y contraindicaciones,
+ *   analizados con {@link SpanishTextAnalyzer}.
+ * - Se carga al arrancar en lotes por id; mientras tanto {@link #isReady()} es false y la búsqueda usa LIKE.
+ * - Escrituras locales: se aplican al confirmar la transacción. Escrituras de otras instancias: se leen del
+ *   outbox change_event cada sync-interval-ms con {@link OutboxTail} (sin saltar ids de transacciones todavía
+ *   abiertas) y se recargan esos medicamentos.
+ * - Consultas con lock de lectura y acumuladores por hilo reutilizables (sin asignar arrays por consulta).
+ */
+@Component
+@Slf4j
+public class MedicationSearchIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final int OUTBOX_BATCH_SIZE = 500;
+
+    /**
+     * Campos indexados
+     */
+    public enum Field {
+        MEDICATION_NAME("medicationName"),
+        GENERIC_NAME("genericName"),
+        DESCRIPTION("description"),
+        SIDE_EFFECTS("sideEffects"),
+        CONTRAINDICATIONS("contraindications");
+
+        private final String propertyName;
+
+        Field(String propertyName) {
+            this.propertyName = propertyName;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+    }
+
+    /**
+     * Resultado de búsqueda: id del medicamento, score y campos donde hubo coincidencia
+     */
+    public record Hit(Integer medicationId, double score, Set<Field> matchedFields) {
+    }
+
+    private static final Field[] FIELDS = Field.values();
+
+    private final MedicationRepository medicationRepository;
+    private final OutboxTail outbox;
+    private final float[] weights = new float[FIELDS.length];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Postings por campo: término -> (slot, tf) */
+    private final List<Map<String, Postings>> postings = new ArrayList<>();
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final long[] totalFieldLength = new long[FIELDS.length];
+    private int[] idBySlot = new int[1024];
+    private Document[] documentBySlot = new Document[1024];
+    private int slotCount = 0;
+    private int documentCount = 0;
+
+    private final ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(Accumulator::new);
+
+    private volatile boolean ready = false;
+
+    public MedicationSearchIndex(MedicationRepository medicationRepository,
+                                 ChangeEventRepository changeEventRepository,
+                                 @Value("${patients.medication-search.weights.medication-name:3.0}") float medicationNameWeight,
+                                 @Value("${patients.medication-search.weights.generic-name:2.5}") float genericNameWeight,
+                                 @Value("${patients.medication-search.weights.description:1.0}") float descriptionWeight,
+                                 @Value("${patients.medication-search.weights.side-effects:1.5}") float sideEffectsWeight,
+                                 @Value("${patients.medication-search.weights.contraindications:1.5}") float contraindicationsWeight,
+                                 @Value("${patients.change-feed.gap-timeout-ms:2000}") long gapTimeoutMs) {
+        this.medicationRepository = medicationRepository;
+        this.outbox = new OutboxTail(changeEventRepository, OUTBOX_BATCH_SIZE, gapTimeoutMs);
+        weights[Field.MEDICATION_NAME.ordinal()] = medicationNameWeight;
+        weights[Field.GENERIC_NAME.ordinal()] = genericNameWeight;
+        weights[Field.DESCRIPTION.ordinal()] = descriptionWeight;
+        weights[Field.SIDE_EFFECTS.ordinal()] = sideEffectsWeight;
+        weights[Field.CONTRAINDICATIONS.ordinal()] = contraindicationsWeight;
+        for (int f = 0; f < FIELDS.length; f++) {
+            postings.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Carga inicial del catálogo en segundo plano
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread.ofVirtual().name("medication-search-index-loader").start(this::rebuild);
+    }
+
+    /**
+     * Reconstruir el índice completo desde la base
+     */
+    public void rebuild() {
+        long started = System.nanoTime();
+        try {
+            // Ubicar el cursor antes de leer: los cambios concurrentes con la carga se reaplican desde el outbox
+            outbox.seekBeforeLoad();
+            int page = 0;
+            Slice<MedicationDomain> slice;
+            do {
+                slice = medicationRepository.findSliceByIsActiveTrue(PageRequest.of(page++, LOAD_BATCH_SIZE, Sort.by("id")));
+                List<Document> documents = slice.getContent().stream().map(MedicationSearchIndex::toDocument).toList();
+                lock.writeLock().lock();
+                try {
+                    documents.forEach(this::upsertLocked);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } while (slice.hasNext());
+            ready = true;
+            log.info("Medication search index loaded: {} medications in {} ms",
+                    documentCount, (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Medication search index load failed, ranked search falls back to LIKE", e);
+        }
+    }
+
+    /**
+     * true cuando la carga inicial terminó
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Cantidad de medicamentos indexados
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexar (o quitar, si está inactivo) un medicamento cuando confirme la transacción actual
+     */
+    public void indexAfterCommit(MedicationDomain medication) {
+        if (medication == null || medication.getId() == null) {
+            return;
+        }
+        Integer id = medication.getId();
+        Document document = Boolean.TRUE.equals(medication.getIsActive()) ? toDocument(medication) : null;
+        Runnable apply = () -> {
+            if (document != null) {
+                upsert(document);
+            } else {
+                remove(id);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    /**
+     * Aplicar cambios de medicamentos registrados en el outbox (incluye los de otras instancias)
+     */
+    @Scheduled(fixedDelayString = "${patients.medication-search.sync-interval-ms:2000}")
+    public void syncFromOutbox() {
+        if (!ready) {
+            return;
+        }
+        List<ChangeEvent> events;
+        do {
+            events = outbox.next();
+            Set<Integer> changedIds = new LinkedHashSet<>();
+            for (ChangeEvent event : events) {
+                if (event.entityType() == ChangeEntityType.MEDICATION) {
+                    changedIds.add(event.entityId());
+                }
+            }
+            if (!changedIds.isEmpty()) {
+                reload(changedIds);
+            }
+        } while (outbox.isFull(events));
+    }
+
+    private void reload(Set<Integer> ids) {
+        Map<Integer, Document> active = new HashMap<>();
+        for (MedicationDomain medication : medicationRepository.findByIdInAndIsActiveTrue(ids)) {
+            active.put(medication.getId(), toDocument(medication));
+        }
+        lock.writeLock().lock();
+        try {
+            for (Integer id : ids) {
+                Document document = active.get(id);
+                if (document != null) {
+                    upsertLocked(document);
+                } else {
+                    removeLocked(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Medication search index synced {} medications from outbox", ids.size());
+    }
+
+    /**
+     * Top-k medicamentos para la consulta, ordenados por score descendente
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> terms = SpanishTextAnalyzer.analyze(query).stream().distinct().toList();
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (documentCount == 0) {
+                return List.of();
+            }
+            Accumulator acc = accumulators.get();
+            acc.ensureCapacity(slotCount);
+            try {
+                for (int f = 0; f < FIELDS.length; f++) {
+                    float avgLength = Math.max(1f, (float) totalFieldLength[f] / documentCount);
+                    Map<String, Postings> fieldPostings = postings.get(f);
+                    for (String term : terms) {
+                        Postings p = fieldPostings.get(term);
+                        if (p == null) {
+                            continue;
+                        }
+                        float idf = (float) Math.log(1 + (documentCount - p.size + 0.5) / (p.size + 0.5));
+                        float fieldWeight = weights[f] * idf;
+                        for (int i = 0; i < p.size; i++) {
+                            int slot = p.slots[i];
+                            int tf = p.frequencies[i];
+                            float norm = K1 * (1 - B + B * documentBySlot[slot].lengths[f] / avgLength);
+                            acc.add(slot, fieldWeight * (tf * (K1 + 1)) / (tf + norm), f);
+                        }
+                    }
+                }
+                return topK(acc, limit);
+            } finally {
+                acc.reset();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Hit> topK(Accumulator acc, int limit) {
+        // Min-heap de tamaño k: en la cabeza queda el peor (menor score; a igual score, mayor id)
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, (a, b) -> {
+            int byScore = Float.compare(acc.scores[a], acc.scores[b]);
+            return byScore != 0 ? byScore : Integer.compare(idBySlot[b], idBySlot[a]);
+        });
+        for (int i = 0; i < acc.touchedCount; i++) {
+            heap.offer(acc.touched[i]);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        Hit[] hits = new Hit[heap.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            int slot = heap.poll();
+            EnumSet<Field> matched = EnumSet.noneOf(Field.class);
+            for (Field field : FIELDS) {
+                if ((acc.fieldMasks[slot] & (1 << field.ordinal())) != 0) {
+                    matched.add(field);
+                }
+            }
+            hits[i] = new Hit(idBySlot[slot], acc.scores[slot], matched);
+        }
+        return Arrays.asList(hits);
+    }
+
+    private void upsert(Document document) {
+        lock.writeLock().lock();
+        try {
+            upsertLocked(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void upsertLocked(Document document) {
+        removeLocked(document.id);
+        int slot = freeSlots.isEmpty() ? slotCount++ : freeSlots.pop();
+        if (slot >= idBySlot.length) {
+            idBySlot = Arrays.copyOf(idBySlot, idBySlot.length * 2);
+            documentBySlot = Arrays.copyOf(documentBySlot, documentBySlot.length * 2);
+        }
+        idBySlot[slot] = document.id;
+        documentBySlot[slot] = document;
+        slotById.put(document.id, slot);
+        for (int f = 0; f < FIELDS.length; f++) {
+            totalFieldLength[f] += document.lengths[f];
+            Map<String, Postings> fieldPostings = postings.get(f);
+            for (Map.Entry<String, Integer> entry : document.termFrequencies.get(f).entrySet()) {
+                fieldPostings.computeIfAbsent(entry.getKey(), k -> new Postings()).add(slot, entry.getValue());
+            }
+        }
+        documentCount++;
+    }
+
+    private void removeLocked(Integer id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        Document document = documentBySlot[slot];
+        for (int f = 0; f < FIELDS.length; f++) {
+            totalFieldLength[f] -= document.lengths[f];
+            Map<String, Postings> fieldPostings = postings.get(f);
+            for (String term : document.termFrequencies.get(f).keySet()) {
+                Postings p = fieldPostings.get(term);
+                if (p != null && p.remove(slot) && p.size == 0) {
+                    fieldPostings.remove(term);
+                }
+            }
+        }
+        documentBySlot[slot] = null;
+        freeSlots.push(slot);
+        documentCount--;
+    }
+
+    private static Document toDocument(MedicationDomain medication) {
+        String[] values = {
+                medication.getMedicationName(),
+                medication.getGenericName(),
+                medication.getDescription(),
+                medication.getSideEffects(),
+                medication.getContraindications()
+        };
+        List<Map<String, Integer>> termFrequencies = new ArrayList<>(FIELDS.length);
+        int[] lengths = new int[FIELDS.length];
+        for (int f = 0; f < FIELDS.length; f++) {
+            List<String> tokens = SpanishTextAnalyzer.analyze(values[f]);
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            termFrequencies.add(frequencies);
+            lengths[f] = tokens.size();
+        }
+        return new Document(medication.getId(), termFrequencies, lengths);
+    }
+
+    /**
+     * Medicamento analizado: frecuencias de términos y longitud por campo
+     */
+    private record Document(Integer id, List<Map<String, Integer>> termFrequencies, int[] lengths) {
+    }
+
+    /**
+     * Lista de postings de un término en un campo (orden no significativo)
+     */
+    private static final class Postings {
+        int[] slots = new int[4];
+        int[] frequencies = new int[4];
+        int size = 0;
+
+        void add(int slot, int frequency) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            slots[size] = slot;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        boolean remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    size--;
+                    slots[i] = slots[size];
+                    frequencies[i] = frequencies[size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Acumulador de scores por slot, reutilizado entre consultas del mismo hilo
+     */
+    private static final class Accumulator {
+        float[] scores = new float[0];
+        int[] fieldMasks = new int[0];
+        int[] touched = new int[0];
+        int touchedCount = 0;
+
+        void ensureCapacity(int capacity) {
+            if (scores.length < capacity) {
+                int newCapacity = Math.max(capacity, scores.length * 2);
+                scores = new float[newCapacity];
+                fieldMasks = new int[newCapacity];
+                touched = new int[newCapacity];
+            }
+        }
+
+        void add(int slot, float score, int field) {
+            if (fieldMasks[slot] == 0) {
+                touched[touchedCount++] = slot;
+            }
+            scores[slot] += score;
+            fieldMasks[slot] |= 1 << field;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                scores[touched[i]] = 0f;
+                fieldMasks[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+}
@@ -3,15 +3,24 @@ package com.fiuni.patients.service;
 import com.fiuni.clinica.domain.patient.MedicationDomain;
 import com.fiuni.clinica.dto.generated.MedicationRequest;
 import com.fiuni.clinica.dto.generated.MedicationResponse;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.dto.MedicationSearchHit;
+import com.fiuni.patients.dto.MedicationStock;
+import com.fiuni.patients.dto.PaginationMode;
 import com.fiuni.patients.mapper.MedicationMapper;
 import com.fiuni.patients.repository.MedicationRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -21,13 +30,29 @@ import java.util.Optional;
 @Slf4j
 public class MedicationService extends AbstractBaseService<MedicationDomain, MedicationRequest, MedicationResponse> {
 
+    /** Eventos estructurados de lectura: logger propio, muestreado con patients.logging.sampling */
+    private static final Logger READ_LOG = LoggerFactory.getLogger("com.fiuni.patients.reads.medications");
+
     private final MedicationRepository medicationRepository; // keep for specialized queries
     private final MedicationMapper medicationMapper;
+    private final MedicationSearchIndex medicationSearchIndex;
+    private final MedicationInventory medicationInventory;
+
+    /** Máximo de resultados de la búsqueda rankeada */
+    public static final int MAX_RANKED_SEARCH_RESULTS = 100;
 
-    public MedicationService(MedicationRepository medicationRepository, MedicationMapper medicationMapper) {
-        super(medicationRepository, medicationMapper);
+    public MedicationService(MedicationRepository medicationRepository, MedicationMapper medicationMapper,
+                             ChangeEventRecorder changeEventRecorder,
+                             ApproximateCountCache approximateCountCache,
+                             MedicationSearchIndex medicationSearchIndex,
+                             MedicationInventory medicationInventory,
+                             AuditTrail auditTrail) {
+        super(medicationRepository, medicationMapper, changeEventRecorder, ChangeEntityType.MEDICATION, approximateCountCache,
+                auditTrail);
         this.medicationRepository = medicationRepository;
         this.medicationMapper = medicationMapper;
+        this.medicationSearchIndex = medicationSearchIndex;
+        this.medicationInventory = medicationInventory;
     }
 
     /**
@@ -35,26 +60,36 @@ public class MedicationService extends AbstractBaseService<MedicationDomain, Med
      */
     @Transactional(readOnly = true)
     public Page<MedicationResponse> getAllMedications(Pageable pageable) {
-        log.info("Getting all medications with pagination: page={}, size={}", pageable.getPageNumber(), pageable.getPageSize());
-        
     Page<MedicationDomain> medications = medicationRepository.findByIsActiveTrue(pageable);
         
-        log.info("Found {} medications", medications.getTotalElements());
+        READ_LOG.atInfo().addKeyValue("page", pageable.getPageNumber()).addKeyValue("size", pageable.getPageSize())
+                .addKeyValue("returned", medications.getNumberOfElements()).log("medications.page");
         
         return medications.map(medicationMapper::toDto);
     }
 
+    /**
+     * Obtener medicamentos paginados en el modo indicado (EXACT, SLICE o APPROXIMATE)
+     */
+    @Transactional(readOnly = true)
+    public Page<MedicationResponse> getAllMedications(Pageable pageable, PaginationMode mode) {
+        Page<MedicationDomain> medications = findPage(pageable, mode, medicationRepository::findByIsActiveTrue, medicationRepository::findSliceByIsActiveTrue,
+                "medication", medicationRepository::countByIsActiveTrue);
+        
+        READ_LOG.atInfo().addKeyValue("page", pageable.getPageNumber()).addKeyValue("size", pageable.getPageSize())
+                .addKeyValue("mode", mode).addKeyValue("returned", medications.getNumberOfElements()).log("medications.page");
+        return medications.map(medicationMapper::toDto);
+    }
+
     /**
      * Obtener medicamento por ID
      */
     @Transactional(readOnly = true)
     public Optional<MedicationResponse> getMedicationById(Integer id) {
-        log.info("Getting medication by ID: {}", id);
-        
     Optional<MedicationDomain> medication = medicationRepository.findByIdAndIsActiveTrue(id);
         
         if (medication.isPresent()) {
-            log.info("Found medication with ID: {}", id);
+            READ_LOG.atInfo().addKeyValue("medicationId", id).log("medication.read");
             return Optional.of(medicationMapper.toDto(medication.get()));
         } else {
             log.warn("Medication not found with ID: {}", id);
@@ -65,15 +100,28 @@ public class MedicationService extends AbstractBaseService<MedicationDomain, Med
     /**
      * Crear nuevo medicamento
      */
+    @Transactional
     public MedicationResponse createMedication(MedicationRequest request) {
         log.info("Creating new medication with request data");
         
     MedicationDomain medication = medicationMapper.toEntity(request);
     MedicationDomain savedMedication = medicationRepository.save(medication);
+        changeEventRecorder.record(ChangeEntityType.MEDICATION, savedMedication.getId(), ChangeOperation.CREATE);
+        medicationSearchIndex.indexAfterCommit(savedMedication);
+        MedicationResponse created = medicationMapper.toDto(savedMedication);
+        auditTrail.record(ChangeEntityType.MEDICATION, savedMedication.getId(), ChangeOperation.CREATE, null, created);
         
         log.info("Medication created successfully with ID: {}", savedMedication.getId());
         
-        return medicationMapper.toDto(savedMedication);
+        return created;
+    }
+
+    /**
+     * Obtener versión actual de un medicamento (sin cargar la entidad)
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> getMedicationVersion(Integer id) {
+        return medicationRepository.findVersionById(id);
     }
 
     /**
@@ -81,6 +129,14 @@ public class MedicationService extends AbstractBaseService<MedicationDomain, Med
      */
     @Transactional
     public Optional<MedicationResponse> updateMedication(Integer id, MedicationRequest request) {
+        return updateMedication(id, request, null);
+    }
+
+    /**
+     * Actualizar medicamento existente verificando la versión esperada (If-Match)
+     */
+    @Transactional
+    public Optional<MedicationResponse> updateMedication(Integer id, MedicationRequest request, Long expectedVersion) {
         log.info("Updating medication with ID: {}", id);
         
     Optional<MedicationDomain> existingMedication = medicationRepository.findByIdAndIsActiveTrue(id);
@@ -91,13 +147,20 @@ public class MedicationService extends AbstractBaseService<MedicationDomain, Med
         }
         
         MedicationDomain medication = existingMedication.get();
+        checkVersion(id, medication.getVersion(), expectedVersion);
+        MedicationResponse before = medicationMapper.toDto(medication);
         medicationMapper.updateEntity(medication, request);
         
-        MedicationDomain savedMedication = medicationRepository.save(medication);
+        // Flush para que la respuesta (y su ETag) lleve la versión ya incrementada
+        MedicationDomain savedMedication = medicationRepository.saveAndFlush(medication);
+        changeEventRecorder.record(ChangeEntityType.MEDICATION, id, ChangeOperation.UPDATE);
+        medicationSearchIndex.indexAfterCommit(savedMedication);
+        MedicationResponse after = medicationMapper.toDto(savedMedication);
+        auditTrail.record(ChangeEntityType.MEDICATION, id, ChangeOperation.UPDATE, before, after);
         
         log.info("Medication updated successfully with ID: {}", id);
         
-        return Optional.of(medicationMapper.toDto(savedMedication));
+        return Optional.of(after);
     }
 
     /**
@@ -105,14 +168,28 @@ public class MedicationService extends AbstractBaseService<MedicationDomain, Med
      */
     @Transactional
     public boolean deleteMedication(Integer id) {
+        return deleteMedication(id, null);
+    }
+
+    /**
+     * Eliminar medicamento (soft delete) verificando la versión esperada (If-Match)
+     */
+    @Transactional
+    public boolean deleteMedication(Integer id, Long expectedVersion) {
         log.info("Deleting medication with ID: {}", id);
         
     Optional<MedicationDomain> medication = medicationRepository.findByIdAndIsActiveTrue(id);
         
         if (medication.isPresent()) {
             MedicationDomain medicationEntity = medication.get();
-            medicationEntity.setIsActive(false);
+            checkVersion(id, medicationEntity.getVersion(), expectedVersion);
+            MedicationResponse before = medicationMapper.toDto(medicationEntity);
+            markDeleted(medicationEntity);
             medicationRepository.save(medicationEntity);
+            changeEventRecorder.record(ChangeEntityType.MEDICATION, id, ChangeOperation.DELETE);
+            auditTrail.record(ChangeEntityType.MEDICATION, id, ChangeOperation.DELETE, before,
+                    medicationMapper.toDto(medicationEntity));
+            medicationSearchIndex.indexAfterCommit(medicationEntity);
             
             log.info("Medication deleted successfully with ID: {}", id);
             return true;
@@ -122,20 +199,68 @@ public class MedicationService extends AbstractBaseService<MedicationDomain, Med
         }
     }
 
+    @Override
+    protected void markDeleted(MedicationDomain medication) {
+        medication.setIsActive(false);
+        medication.setLastModified(java.time.LocalDateTime.now());
+    }
+
     /**
      * Buscar medicamentos por término de búsqueda
      */
     @Transactional(readOnly = true)
     public List<MedicationResponse> searchMedications(String searchTerm) {
-        log.info("Searching medications with search term: {}", searchTerm);
-        
         // Usar paginación con límite alto para simular lista completa
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 1000);
-        org.springframework.data.domain.Page<MedicationDomain> medicationsPage = medicationRepository.searchByTerm(searchTerm, pageable);
+        // Slice: solo se usa el contenido, no hace falta el count(*) de la página
+        org.springframework.data.domain.Slice<MedicationDomain> medicationsSlice = medicationRepository.searchSliceByTerm(searchTerm, pageable);
         
-        log.info("Search found {} medications", medicationsPage.getTotalElements());
+        READ_LOG.atInfo().addKeyValue("term", searchTerm)
+                .addKeyValue("returned", medicationsSlice.getNumberOfElements()).log("medications.search");
         
-        return medicationMapper.toResponseList(medicationsPage.getContent());
+        return medicationMapper.toResponseList(medicationsSlice.getContent());
+    }
+
+    /**
+     * Búsqueda rankeada (BM25 con pesos por campo) sobre nombre, genérico, descripción,
+     * efectos secundarios y contraindicaciones. Usa el índice en memoria; mientras carga, cae a la búsqueda LIKE.
+     */
+    @Transactional(readOnly = true)
+    public List<MedicationSearchHit> rankedSearch(String query, int limit) {
+        int k = Math.max(1, Math.min(limit, MAX_RANKED_SEARCH_RESULTS));
+
+        if (!medicationSearchIndex.isReady()) {
+            log.warn("Medication search index not ready, falling back to LIKE search");
+            return searchMedications(query).stream()
+                    .limit(k)
+                    .map(medication -> new MedicationSearchHit(medication, 0.0, List.of()))
+                    .toList();
+        }
+
+        List<MedicationSearchIndex.Hit> hits = medicationSearchIndex.search(query, k);
+        if (hits.isEmpty()) {
+            READ_LOG.atInfo().addKeyValue("query", query).addKeyValue("limit", k)
+                    .addKeyValue("returned", 0).log("medications.ranked_search");
+            return List.of();
+        }
+
+        Map<Integer, MedicationDomain> byId = new HashMap<>();
+        for (MedicationDomain medication : medicationRepository.findByIdInAndIsActiveTrue(
+                hits.stream().map(MedicationSearchIndex.Hit::medicationId).toList())) {
+            byId.put(medication.getId(), medication);
+        }
+
+        List<MedicationSearchHit> results = new java.util.ArrayList<>(hits.size());
+        for (MedicationSearchIndex.Hit hit : hits) {
+            MedicationDomain medication = byId.get(hit.medicationId());
+            if (medication != null) {
+                results.add(new MedicationSearchHit(medicationMapper.toDto(medication), hit.score(),
+                        hit.matchedFields().stream().map(MedicationSearchIndex.Field::getPropertyName).toList()));
+            }
+        }
+        READ_LOG.atInfo().addKeyValue("query", query).addKeyValue("limit", k)
+                .addKeyValue("returned", results.size()).log("medications.ranked_search");
+        return results;
     }
 
     /**
@@ -164,4 +289,34 @@ public class MedicationService extends AbstractBaseService<MedicationDomain, Med
         return medicationRepository.count();
     }
 
-}
\ No newline at end of file
+    // ================== INVENTARIO ==================
+
+    /**
+     * Stock del medicamento (vacío si no tiene inventario controlado); se lee de memoria sin bloquear surtidos
+     */
+    public Optional<MedicationStock> getMedicationStock(Integer id) {
+        return medicationInventory.getStock(id);
+    }
+
+    /**
+     * Stock de todos los medicamentos con inventario controlado
+     */
+    public List<MedicationStock> getAllMedicationStock() {
+        return medicationInventory.getAllStock();
+    }
+
+    /**
+     * Ingresar unidades al stock de un medicamento activo (vacío si el medicamento no existe)
+     *
+     * @throws IllegalStateException si el inventario todavía se está cargando
+     */
+    public Optional<MedicationStock> restockMedication(Integer id, long units) {
+        log.info("Restocking medication ID: {} with {} units", id, units);
+        
+        if (medicationRepository.findByIdAndIsActiveTrue(id).isEmpty()) {
+            log.warn("Cannot restock - Medication not found with ID: {}", id);
+            return Optional.empty();
+        }
+        return Optional.of(medicationInventory.restock(id, units));
+    }
+}
@@ -0,0 +1,84 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Lectura del outbox change_event con cursor propio, para los índices en memoria que reaplican cambios de
+ * otras instancias.
+ *
+ * - Los ids se asignan al insertar pero se ven al confirmar: un id menor al último leído puede aparecer
+ *   después. Ante un hueco el cursor no avanza hasta que aparezca el id o pasen gap-timeout-ms (transacción
+ *   revertida), igual que el poller de {@link ChangeFeedService}.
+ * - Antes de una carga completa el cursor se ubica en el último evento con más de gap-timeout-ms: los eventos
+ *   de transacciones abiertas durante la carga se reaplican después (los consumidores recargan por id).
+ */
+@Slf4j
+final class OutboxTail {
+
+    private final ChangeEventRepository changeEventRepository;
+    private final int batchSize;
+    private final long gapTimeoutMs;
+
+    private long cursor = -1;
+    private long gapDetectedAt = 0;
+
+    OutboxTail(ChangeEventRepository changeEventRepository, int batchSize, long gapTimeoutMs) {
+        this.changeEventRepository = changeEventRepository;
+        this.batchSize = batchSize;
+        this.gapTimeoutMs = Math.max(0, gapTimeoutMs);
+    }
+
+    /**
+     * Ubicar el cursor antes de leer el estado completo de la base
+     */
+    synchronized void seekBeforeLoad() {
+        cursor = changeEventRepository.findLastIdCreatedBefore(LocalDateTime.now().minus(gapTimeoutMs, ChronoUnit.MILLIS));
+        gapDetectedAt = 0;
+    }
+
+    /**
+     * Siguientes eventos contiguos después del cursor (hasta batch-size; corta en un hueco que todavía espera)
+     * y avanzar el cursor hasta el último devuelto
+     */
+    synchronized List<ChangeEvent> next() {
+        if (cursor < 0) {
+            throw new IllegalStateException("Outbox cursor not positioned");
+        }
+        List<ChangeEvent> batch = changeEventRepository.findAfter(cursor, batchSize);
+        long expected = cursor + 1;
+        int accepted = 0;
+        for (ChangeEvent event : batch) {
+            if (event.id() != expected) {
+                long now = System.currentTimeMillis();
+                if (gapDetectedAt == 0) {
+                    gapDetectedAt = now;
+                }
+                if (now - gapDetectedAt < gapTimeoutMs) {
+                    break;
+                }
+                log.debug("Skipping outbox gap {}..{}", expected, event.id() - 1);
+            }
+            gapDetectedAt = 0;
+            accepted++;
+            expected = event.id() + 1;
+        }
+        List<ChangeEvent> events = batch.subList(0, accepted);
+        if (accepted > 0) {
+            cursor = events.get(accepted - 1).id();
+        }
+        return events;
+    }
+
+    /**
+     * true si un lote de next() vino completo (puede haber más eventos listos)
+     */
+    boolean isFull(List<ChangeEvent> events) {
+        return events.size() == batchSize;
+    }
+}
@@ -0,0 +1,262 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.clinica.domain.patient.PatientDomain;
+import com.fiuni.clinica.dto.generated.PatientRequest;
+import com.fiuni.patients.dto.DuplicateMatch;
+import com.fiuni.patients.dto.DuplicatePair;
+import com.fiuni.patients.dto.DuplicateScanReport;
+import com.fiuni.patients.repository.PatientDedupeRepository;
+import com.fiuni.patients.repository.PatientDedupeRepository.BlockingKey;
+import com.fiuni.patients.repository.PatientDedupeRepository.PatientFields;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detección de pacientes duplicados con bloqueo fonético (PatientMatcher).
+ *
+ * - Al crear / modificar un paciente se reemplazan sus claves en patient_blocking_key (misma transacción).
+ * - findMatches compara el paciente solo contra los que comparten alguna clave (búsqueda por índice,
+ *   a lo sumo max-candidates) y devuelve los de score >= min-score.
+ * - El escaneo completo reindexa los pacientes sin claves vigentes, recorre los bloques con cursor y los
+ *   compara todos contra todos en un ForkJoinPool; los bloques de más de max-block-size (nombres muy comunes)
+ *   se omiten. Los pares quedan en patient_duplicate_candidate. Una sola instancia escanea a la vez.
+ */
+@Service
+@Slf4j
+public class PatientDedupeService {
+
+    /** Máximo de resultados por consulta */
+    public static final int MAX_RESULTS = 1000;
+
+    private static final int REINDEX_CHUNK_SIZE = 500;
+    private static final int BLOCKS_PER_CHUNK = 2_000;
+    private static final int PAIRS_PER_WRITE = 1_000;
+
+    /** Comparaciones por debajo de las cuales una tarea no se divide */
+    private static final long SEQUENTIAL_COMPARISONS = 5_000;
+
+    private final PatientDedupeRepository dedupeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ForkJoinPool scanPool;
+    private final double minScore;
+    private final int maxCandidates;
+    private final int maxBlockSize;
+
+    public PatientDedupeService(PatientDedupeRepository dedupeRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${patients.dedupe.min-score:0.85}") double minScore,
+                                @Value("${patients.dedupe.max-candidates:200}") int maxCandidates,
+                                @Value("${patients.dedupe.max-block-size:500}") int maxBlockSize,
+                                @Value("${patients.dedupe.scan-parallelism:0}") int scanParallelism) {
+        this.dedupeRepository = dedupeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.minScore = minScore;
+        this.maxCandidates = Math.max(1, maxCandidates);
+        this.maxBlockSize = Math.max(2, maxBlockSize);
+        this.scanPool = new ForkJoinPool(scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reemplazar las claves de bloqueo del paciente (llamar dentro de la transacción que lo guarda)
+     */
+    public void indexPatient(PatientDomain patient) {
+        PatientFields fields = new PatientFields(patient.getId(), patient.getFirstName(), patient.getLastName(),
+                patient.getBirthDate(), patient.getDocumentNumber());
+        dedupeRepository.replaceKeys(Map.of(patient.getId(), PatientMatcher.blockingKeys(fields)), LocalDateTime.now());
+    }
+
+    /**
+     * Pacientes activos parecidos a los datos de request (excluyendo excludeId), de mayor a menor score
+     */
+    @Transactional(readOnly = true)
+    public List<DuplicateMatch> findMatches(PatientRequest request, Integer excludeId, int limit) {
+        PatientFields fields = new PatientFields(excludeId, request.getFirstName(), request.getLastName(),
+                request.getBirthDate(), request.getDocumentNumber());
+        return match(fields, limit);
+    }
+
+    /**
+     * Pacientes activos parecidos a un paciente existente (vacío si no existe)
+     */
+    @Transactional(readOnly = true)
+    public Optional<List<DuplicateMatch>> findMatches(Integer patientId, int limit) {
+        return dedupeRepository.findPatient(patientId).map(fields -> match(fields, limit));
+    }
+
+    /**
+     * Pares detectados por el último escaneo
+     */
+    @Transactional(readOnly = true)
+    public List<DuplicatePair> getDetectedPairs(Double minimum, int limit) {
+        return dedupeRepository.findPairs(minimum != null ? minimum : minScore, clamp(limit));
+    }
+
+    /**
+     * Escaneo completo del padrón (vacío si otra instancia ya está escaneando)
+     */
+    @Scheduled(cron = "${patients.dedupe.scan-cron:0 30 3 * * *}")
+    public void scheduledScan() {
+        scan();
+    }
+
+    /**
+     * Reindexar los pacientes con claves desactualizadas y comparar todos los bloques
+     */
+    public Optional<DuplicateScanReport> scan() {
+        long started = System.nanoTime();
+        return transactionTemplate.execute(status -> {
+            if (!dedupeRepository.tryScanLock()) {
+                log.info("Patient duplicate scan already running on another instance");
+                return Optional.<DuplicateScanReport>empty();
+            }
+            LocalDateTime scanStart = LocalDateTime.now();
+
+            AtomicInteger reindexed = new AtomicInteger();
+            dedupeRepository.forEachStalePatient(REINDEX_CHUNK_SIZE, chunk -> {
+                Map<Integer, Set<BlockingKey>> keys = new HashMap<>();
+                chunk.forEach(patient -> keys.put(patient.id(), PatientMatcher.blockingKeys(patient)));
+                dedupeRepository.replaceKeys(keys, scanStart);
+                reindexed.addAndGet(chunk.size());
+            });
+
+            Map<Long, Double> pairs = new ConcurrentHashMap<>();
+            LongAdder comparisons = new LongAdder();
+            AtomicLong blocks = new AtomicLong();
+            dedupeRepository.forEachBlock(maxBlockSize, BLOCKS_PER_CHUNK, chunk -> {
+                scanPool.invoke(new CompareBlocksTask(chunk, 0, chunk.size(), pairs, comparisons));
+                blocks.addAndGet(chunk.size());
+            });
+            long oversized = dedupeRepository.countOversizedBlocks(maxBlockSize);
+
+            writePairs(pairs, scanStart);
+            dedupeRepository.deletePairsDetectedBefore(scanStart);
+
+            DuplicateScanReport report = new DuplicateScanReport(reindexed.get(), blocks.get(), oversized,
+                    comparisons.sum(), pairs.size(), (System.nanoTime() - started) / 1_000_000);
+            log.info("Patient duplicate scan finished in {} ms: {} reindexed, {} blocks ({} oversized skipped), " +
+                            "{} comparisons, {} candidate pairs", report.elapsedMs(), report.reindexedPatients(),
+                    report.blocks(), report.oversizedBlocks(), report.comparisons(), report.pairs());
+            return Optional.of(report);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanPool.shutdownNow();
+    }
+
+    private List<DuplicateMatch> match(PatientFields fields, int limit) {
+        List<BlockingKey> keys = List.copyOf(PatientMatcher.blockingKeys(fields));
+        List<DuplicateMatch> matches = new ArrayList<>();
+        for (PatientFields candidate : dedupeRepository.findCandidates(keys, fields.id(), maxCandidates)) {
+            double score = PatientMatcher.score(fields, candidate);
+            if (score >= minScore) {
+                matches.add(new DuplicateMatch(candidate.id(), candidate.firstName(), candidate.lastName(),
+                        candidate.birthDate(), candidate.documentNumber(), score));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(DuplicateMatch::score).reversed()
+                .thenComparing(DuplicateMatch::patientId));
+        return matches.size() > clamp(limit) ? List.copyOf(matches.subList(0, clamp(limit))) : matches;
+    }
+
+    private void writePairs(Map<Long, Double> pairs, LocalDateTime detectedAt) {
+        List<Map.Entry<Long, Double>> entries = new ArrayList<>(pairs.entrySet());
+        for (int from = 0; from < entries.size(); from += PAIRS_PER_WRITE) {
+            List<Map.Entry<Long, Double>> slice = entries.subList(from, Math.min(entries.size(), from + PAIRS_PER_WRITE));
+            dedupeRepository.upsertPairs(
+                    slice.stream().map(e -> (int) (e.getKey() >>> 32)).toArray(Integer[]::new),
+                    slice.stream().map(e -> (int) e.getKey().longValue()).toArray(Integer[]::new),
+                    slice.stream().map(Map.Entry::getValue).toArray(Double[]::new),
+                    detectedAt);
+        }
+    }
+
+    private static int clamp(int limit) {
+        return Math.max(1, Math.min(limit, MAX_RESULTS));
+    }
+
+    private static long comparisons(List<PatientFields> block) {
+        long n = block.size();
+        return n * (n - 1) / 2;
+    }
+
+    /**
+     * Compara todos contra todos dentro de cada bloque de [from, to); divide el rango mientras tenga
+     * más de SEQUENTIAL_COMPARISONS comparaciones. Un par presente en varios bloques se guarda una vez.
+     */
+    private final class CompareBlocksTask extends RecursiveAction {
+
+        private final List<List<PatientFields>> blocks;
+        private final int from;
+        private final int to;
+        private final Map<Long, Double> pairs;
+        private final LongAdder comparisons;
+
+        CompareBlocksTask(List<List<PatientFields>> blocks, int from, int to, Map<Long, Double> pairs,
+                          LongAdder comparisons) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.pairs = pairs;
+            this.comparisons = comparisons;
+        }
+
+        @Override
+        protected void compute() {
+            long work = 0;
+            for (int i = from; i < to; i++) {
+                work += comparisons(blocks.get(i));
+            }
+            if (to - from > 1 && work > SEQUENTIAL_COMPARISONS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CompareBlocksTask(blocks, from, mid, pairs, comparisons),
+                        new CompareBlocksTask(blocks, mid, to, pairs, comparisons));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                compareBlock(blocks.get(i));
+            }
+            comparisons.add(work);
+        }
+
+        private void compareBlock(List<PatientFields> block) {
+            for (int i = 0; i < block.size(); i++) {
+                PatientFields a = block.get(i);
+                for (int j = i + 1; j < block.size(); j++) {
+                    PatientFields b = block.get(j);
+                    if (a.id().equals(b.id())) {
+                        continue;
+                    }
+                    double score = PatientMatcher.score(a, b);
+                    if (score >= minScore) {
+                        int low = Math.min(a.id(), b.id());
+                        int high = Math.max(a.id(), b.id());
+                        pairs.put(((long) low << 32) | (high & 0xFFFFFFFFL), score);
+                    }
+                }
+            }
+        }
+    }
+}
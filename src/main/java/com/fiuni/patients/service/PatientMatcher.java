@@ -0,0 +1,201 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.repository.PatientDedupeRepository.BlockingKey;
+import com.fiuni.patients.repository.PatientDedupeRepository.PatientFields;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Claves de bloqueo y score de similitud entre pacientes.
+ *
+ * Claves (un paciente comparte bloque con otro si coincide alguna):
+ * - LN_DOB: código fonético de cada apellido + fecha de nacimiento
+ * - FN_DOB: código fonético del primer nombre + fecha de nacimiento
+ * - NAME: primer nombre + cada apellido (fonéticos), para fechas de nacimiento mal cargadas
+ * - DOB_INI: fecha de nacimiento + iniciales normalizadas, para errores que cambian el sonido
+ * - DOC: documento normalizado
+ *
+ * Score: Jaro-Winkler de apellidos (0.55) y nombres (0.45) normalizados (o 0.95 si suenan igual), multiplicado
+ * por un factor según la fecha de nacimiento; el mismo documento es coincidencia segura (1.0).
+ */
+public final class PatientMatcher {
+
+    private static final String LAST_NAME_DOB = "LN_DOB";
+    private static final String FIRST_NAME_DOB = "FN_DOB";
+    private static final String NAME = "NAME";
+    private static final String DOB_INITIALS = "DOB_INI";
+    private static final String DOCUMENT = "DOC";
+
+    private static final int MIN_DOCUMENT_LENGTH = 4;
+    private static final double LAST_NAME_WEIGHT = 0.55;
+    private static final double FIRST_NAME_WEIGHT = 0.45;
+    private static final double PHONETIC_MATCH = 0.95;
+    private static final double WINKLER_PREFIX_SCALE = 0.1;
+    private static final int WINKLER_MAX_PREFIX = 4;
+
+    private PatientMatcher() {
+    }
+
+    /**
+     * Claves de bloqueo de un paciente (sin repetidas)
+     */
+    public static Set<BlockingKey> blockingKeys(PatientFields patient) {
+        Set<BlockingKey> keys = new LinkedHashSet<>();
+        String birth = patient.birthDate() != null ? patient.birthDate().format(DateTimeFormatter.BASIC_ISO_DATE) : null;
+        List<String> lastNames = tokens(patient.lastName());
+        List<String> firstNames = tokens(patient.firstName());
+        String firstCode = firstNames.isEmpty() ? "" : SpanishPhoneticEncoder.encode(firstNames.get(0));
+
+        for (String lastName : lastNames) {
+            String lastCode = SpanishPhoneticEncoder.encode(lastName);
+            if (lastCode.isEmpty()) {
+                continue;
+            }
+            if (birth != null) {
+                keys.add(new BlockingKey(LAST_NAME_DOB, lastCode + "|" + birth));
+            }
+            if (!firstCode.isEmpty()) {
+                keys.add(new BlockingKey(NAME, firstCode + "|" + lastCode));
+            }
+        }
+        if (birth != null && !firstCode.isEmpty()) {
+            keys.add(new BlockingKey(FIRST_NAME_DOB, firstCode + "|" + birth));
+        }
+        if (birth != null && !firstNames.isEmpty() && !lastNames.isEmpty()) {
+            keys.add(new BlockingKey(DOB_INITIALS, birth + "|" + firstNames.get(0).charAt(0) + lastNames.get(0).charAt(0)));
+        }
+        String document = normalizeDocument(patient.documentNumber());
+        if (document.length() >= MIN_DOCUMENT_LENGTH) {
+            keys.add(new BlockingKey(DOCUMENT, document));
+        }
+        return keys;
+    }
+
+    /**
+     * Probabilidad (heurística, en [0, 1]) de que dos registros sean el mismo paciente
+     */
+    public static double score(PatientFields a, PatientFields b) {
+        String documentA = normalizeDocument(a.documentNumber());
+        if (documentA.length() >= MIN_DOCUMENT_LENGTH && documentA.equals(normalizeDocument(b.documentNumber()))) {
+            return 1.0;
+        }
+        double lastName = nameSimilarity(a.lastName(), b.lastName());
+        double firstName = nameSimilarity(a.firstName(), b.firstName());
+        return (LAST_NAME_WEIGHT * lastName + FIRST_NAME_WEIGHT * firstName) * birthDateFactor(a.birthDate(), b.birthDate());
+    }
+
+    /**
+     * Similitud de Jaro-Winkler en [0, 1] (1 = iguales)
+     */
+    static double jaroWinkler(String s1, String s2) {
+        if (s1.isEmpty() || s2.isEmpty()) {
+            return s1.equals(s2) ? 1.0 : 0.0;
+        }
+        if (s1.equals(s2)) {
+            return 1.0;
+        }
+        int window = Math.max(0, Math.max(s1.length(), s2.length()) / 2 - 1);
+        boolean[] matched1 = new boolean[s1.length()];
+        boolean[] matched2 = new boolean[s2.length()];
+        int matches = 0;
+        for (int i = 0; i < s1.length(); i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(s2.length() - 1, i + window);
+            for (int j = from; j <= to; j++) {
+                if (!matched2[j] && s1.charAt(i) == s2.charAt(j)) {
+                    matched1[i] = true;
+                    matched2[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0.0;
+        }
+        int transpositions = 0;
+        int k = 0;
+        for (int i = 0; i < s1.length(); i++) {
+            if (matched1[i]) {
+                while (!matched2[k]) {
+                    k++;
+                }
+                if (s1.charAt(i) != s2.charAt(k)) {
+                    transpositions++;
+                }
+                k++;
+            }
+        }
+        double m = matches;
+        double jaro = (m / s1.length() + m / s2.length() + (m - transpositions / 2.0) / m) / 3.0;
+
+        int prefix = 0;
+        int maxPrefix = Math.min(WINKLER_MAX_PREFIX, Math.min(s1.length(), s2.length()));
+        while (prefix < maxPrefix && s1.charAt(prefix) == s2.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * WINKLER_PREFIX_SCALE * (1.0 - jaro);
+    }
+
+    /**
+     * Jaro-Winkler de los nombres normalizados; si suenan igual (mismos códigos fonéticos) al menos
+     * PHONETIC_MATCH, así "Gonsales Venitez" queda tan cerca de "González Benítez" como un error de una letra
+     */
+    private static double nameSimilarity(String a, String b) {
+        List<String> tokensA = tokens(a);
+        List<String> tokensB = tokens(b);
+        double similarity = jaroWinkler(String.join(" ", tokensA), String.join(" ", tokensB));
+        if (similarity < PHONETIC_MATCH && !tokensA.isEmpty() && phonetic(tokensA).equals(phonetic(tokensB))) {
+            return PHONETIC_MATCH;
+        }
+        return similarity;
+    }
+
+    private static List<String> phonetic(List<String> tokens) {
+        return tokens.stream().map(SpanishPhoneticEncoder::encode).toList();
+    }
+
+    /**
+     * Igual = 1; día y mes invertidos o un solo componente distinto (error de tipeo) = 0.92; sin dato = 0.9;
+     * distinta = 0.75 (mismo nombre con otra fecha de nacimiento suele ser otra persona)
+     */
+    private static double birthDateFactor(LocalDate a, LocalDate b) {
+        if (a == null || b == null) {
+            return 0.9;
+        }
+        if (a.equals(b)) {
+            return 1.0;
+        }
+        boolean swapped = a.getYear() == b.getYear() && a.getMonthValue() == b.getDayOfMonth()
+                && a.getDayOfMonth() == b.getMonthValue();
+        int differing = (a.getYear() != b.getYear() ? 1 : 0) + (a.getMonthValue() != b.getMonthValue() ? 1 : 0)
+                + (a.getDayOfMonth() != b.getDayOfMonth() ? 1 : 0);
+        return swapped || differing == 1 ? 0.92 : 0.75;
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        for (String token : SpanishTextAnalyzer.fold(text).split("[^a-z]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalizeDocument(String document) {
+        if (document == null) {
+            return "";
+        }
+        return document.replaceAll("[^0-9A-Za-z]", "").toUpperCase(Locale.ROOT);
+    }
+}
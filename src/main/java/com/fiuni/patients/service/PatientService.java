@@ -3,14 +3,22 @@ package com.fiuni.patients.service;
 import com.fiuni.clinica.domain.patient.PatientDomain;
 import com.fiuni.clinica.dto.generated.PatientRequest;
 import com.fiuni.clinica.dto.generated.PatientResponse;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.dto.PaginationMode;
+import com.fiuni.patients.dto.PatientMergeResult;
 import com.fiuni.patients.mapper.PatientMapper;
+import com.fiuni.patients.repository.PatientMergeRepository;
 import com.fiuni.patients.repository.PatientRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.List;
 
@@ -18,13 +26,26 @@ import java.util.List;
 @Slf4j
 public class PatientService extends AbstractBaseService<PatientDomain, PatientRequest, PatientResponse> {
 
+    /** Eventos estructurados de lectura: logger propio, muestreado con patients.logging.sampling */
+    private static final Logger READ_LOG = LoggerFactory.getLogger("com.fiuni.patients.reads.patients");
+
     private final PatientRepository patientRepository; // keep for specialized queries
     private final PatientMapper patientMapper;
+    private final PatientDedupeService patientDedupeService;
+    private final PatientMergeRepository patientMergeRepository;
 
-    public PatientService(PatientRepository patientRepository, PatientMapper patientMapper) {
-        super(patientRepository, patientMapper);
+    public PatientService(PatientRepository patientRepository, PatientMapper patientMapper,
+                          ChangeEventRecorder changeEventRecorder,
+                          ApproximateCountCache approximateCountCache,
+                          PatientDedupeService patientDedupeService,
+                          PatientMergeRepository patientMergeRepository,
+                          AuditTrail auditTrail) {
+        super(patientRepository, patientMapper, changeEventRecorder, ChangeEntityType.PATIENT, approximateCountCache,
+                auditTrail);
         this.patientRepository = patientRepository;
         this.patientMapper = patientMapper;
+        this.patientDedupeService = patientDedupeService;
+        this.patientMergeRepository = patientMergeRepository;
     }
 
     /**
@@ -32,12 +53,24 @@ public class PatientService extends AbstractBaseService<PatientDomain, PatientRe
      */
     @Transactional(readOnly = true)
     public Page<PatientResponse> getAllPatients(Pageable pageable) {
-        log.info("Getting all patients with pagination: page={}, size={}", pageable.getPageNumber(), pageable.getPageSize());
-        
         Page<PatientDomain> patients = patientRepository.findByIsActiveTrue(pageable);
         
-        log.info("Found {} patients", patients.getTotalElements());
+        READ_LOG.atInfo().addKeyValue("page", pageable.getPageNumber()).addKeyValue("size", pageable.getPageSize())
+                .addKeyValue("returned", patients.getNumberOfElements()).log("patients.page");
+        
+        return patients.map(patientMapper::toDto);
+    }
+
+    /**
+     * Obtener pacientes paginados en el modo indicado (EXACT, SLICE o APPROXIMATE)
+     */
+    @Transactional(readOnly = true)
+    public Page<PatientResponse> getAllPatients(Pageable pageable, PaginationMode mode) {
+        Page<PatientDomain> patients = findPage(pageable, mode, patientRepository::findByIsActiveTrue, patientRepository::findSliceByIsActiveTrue,
+                "patient", patientRepository::countByIsActiveTrue);
         
+        READ_LOG.atInfo().addKeyValue("page", pageable.getPageNumber()).addKeyValue("size", pageable.getPageSize())
+                .addKeyValue("mode", mode).addKeyValue("returned", patients.getNumberOfElements()).log("patients.page");
         return patients.map(patientMapper::toDto);
     }
 
@@ -46,12 +79,10 @@ public class PatientService extends AbstractBaseService<PatientDomain, PatientRe
      */
     @Transactional(readOnly = true)
     public Optional<PatientResponse> getPatientById(Integer id) {
-        log.info("Getting patient by ID: {}", id);
-        
         Optional<PatientDomain> patient = patientRepository.findByIdAndIsActiveTrue(id);
         
         if (patient.isPresent()) {
-            log.info("Patient found with ID: {}", id);
+            READ_LOG.atInfo().addKeyValue("patientId", id).log("patient.read");
             return Optional.of(patientMapper.toDto(patient.get()));
         } else {
             log.warn("Patient not found with ID: {}", id);
@@ -62,20 +93,27 @@ public class PatientService extends AbstractBaseService<PatientDomain, PatientRe
     /**
      * Crear nuevo paciente
      */
+    @Transactional
     public PatientResponse createPatient(PatientRequest request) {
         log.info("Creating new patient: {} {}", request.getFirstName(), request.getLastName());
         
         PatientDomain patient = patientMapper.toEntity(request);
-        PatientDomain savedPatient = patientRepository.save(patient);
+        // flush: las claves de duplicados (JDBC) referencian la fila del paciente
+        PatientDomain savedPatient = patientRepository.saveAndFlush(patient);
+        patientDedupeService.indexPatient(savedPatient);
+        changeEventRecorder.record(ChangeEntityType.PATIENT, savedPatient.getId(), ChangeOperation.CREATE);
+        PatientResponse created = patientMapper.toDto(savedPatient);
+        auditTrail.record(ChangeEntityType.PATIENT, savedPatient.getId(), ChangeOperation.CREATE, null, created);
         
         log.info("Patient created successfully with ID: {}", savedPatient.getId());
         
-        return patientMapper.toDto(savedPatient);
+        return created;
     }
 
     /**
      * Actualizar paciente existente
      */
+    @Transactional
     public Optional<PatientResponse> updatePatient(Integer id, PatientRequest request) {
         log.info("Updating patient with ID: {}", id);
         
@@ -83,12 +121,17 @@ public class PatientService extends AbstractBaseService<PatientDomain, PatientRe
         
         if (existingPatient.isPresent()) {
             PatientDomain patient = existingPatient.get();
+            PatientResponse before = patientMapper.toDto(patient);
             patientMapper.updateEntityFromRequest(patient, request);
             
             PatientDomain updatedPatient = patientRepository.save(patient);
+            patientDedupeService.indexPatient(updatedPatient);
+            changeEventRecorder.record(ChangeEntityType.PATIENT, id, ChangeOperation.UPDATE);
+            PatientResponse after = patientMapper.toDto(updatedPatient);
+            auditTrail.record(ChangeEntityType.PATIENT, id, ChangeOperation.UPDATE, before, after);
             
             log.info("Patient updated successfully with ID: {}", id);
-            return Optional.of(patientMapper.toDto(updatedPatient));
+            return Optional.of(after);
         } else {
             log.warn("Cannot update - Patient not found with ID: {}", id);
             return Optional.empty();
@@ -98,6 +141,7 @@ public class PatientService extends AbstractBaseService<PatientDomain, PatientRe
     /**
      * Eliminar paciente (soft delete)
      */
+    @Transactional
     public boolean deletePatient(Integer id) {
         log.info("Deleting patient with ID: {}", id);
         
@@ -105,8 +149,12 @@ public class PatientService extends AbstractBaseService<PatientDomain, PatientRe
         
         if (patient.isPresent()) {
             PatientDomain patientToDelete = patient.get();
-            patientToDelete.setActive(false);
+            PatientResponse before = patientMapper.toDto(patientToDelete);
+            markDeleted(patientToDelete);
             patientRepository.save(patientToDelete);
+            changeEventRecorder.record(ChangeEntityType.PATIENT, id, ChangeOperation.DELETE);
+            auditTrail.record(ChangeEntityType.PATIENT, id, ChangeOperation.DELETE, before,
+                    patientMapper.toDto(patientToDelete));
             
             log.info("Patient deleted successfully with ID: {}", id);
             return true;
@@ -116,20 +164,78 @@ public class PatientService extends AbstractBaseService<PatientDomain, PatientRe
         }
     }
 
+    /**
+     * Fusionar source en target: mueve todas sus prescripciones (un UPDATE set-based por tabla, sin cargarlas),
+     * completa los datos demográficos faltantes del destino, inactiva el origen y registra la fusión.
+     * Vacío si alguno de los dos no existe o está inactivo.
+     */
+    @Transactional
+    public Optional<PatientMergeResult> mergePatients(Integer targetId, Integer sourceId) {
+        log.info("Merging patient {} into patient {}", sourceId, targetId);
+        if (targetId.equals(sourceId)) {
+            throw new IllegalArgumentException("A patient cannot be merged into itself");
+        }
+        
+        // Ambas filas bloqueadas hasta el commit: nadie agrega prescripciones al origen durante la fusión
+        if (patientMergeRepository.lockActivePatients(targetId, sourceId).size() < 2) {
+            log.warn("Cannot merge - patient {} or {} not found", sourceId, targetId);
+            return Optional.empty();
+        }
+        PatientDomain target = patientRepository.findByIdAndIsActiveTrue(targetId).orElseThrow();
+        PatientDomain source = patientRepository.findByIdAndIsActiveTrue(sourceId).orElseThrow();
+        PatientResponse targetBefore = patientMapper.toDto(target);
+        PatientResponse sourceBefore = patientMapper.toDto(source);
+        
+        LocalDateTime now = LocalDateTime.now();
+        int movedPrescriptions = patientMergeRepository.movePrescriptions(sourceId, targetId, now,
+                auditTrail.currentActor());
+        int movedArchived = patientMergeRepository.moveArchivedPrescriptions(sourceId, targetId);
+        patientMergeRepository.moveDoseSchedules(sourceId, targetId);
+        
+        List<String> mergedFields = patientMapper.mergeMissingFields(target, source);
+        markDeleted(source);
+        patientRepository.save(source);
+        patientRepository.save(target);
+        changeEventRecorder.record(ChangeEntityType.PATIENT, sourceId, ChangeOperation.DELETE);
+        changeEventRecorder.record(ChangeEntityType.PATIENT, targetId, ChangeOperation.UPDATE);
+        auditTrail.record(ChangeEntityType.PATIENT, sourceId, ChangeOperation.DELETE, sourceBefore,
+                patientMapper.toDto(source));
+        auditTrail.record(ChangeEntityType.PATIENT, targetId, ChangeOperation.UPDATE, targetBefore,
+                patientMapper.toDto(target));
+        
+        patientMergeRepository.removeFromDedupe(sourceId);
+        patientDedupeService.indexPatient(target);
+        Long mergeId = patientMergeRepository.insertMerge(sourceId, targetId, movedPrescriptions, movedArchived,
+                mergedFields, now);
+        
+        log.info("Patient {} merged into {}: {} prescriptions ({} archived) moved, fields merged: {}",
+                sourceId, targetId, movedPrescriptions, movedArchived, mergedFields);
+        return Optional.of(new PatientMergeResult(mergeId, targetId, sourceId, movedPrescriptions, movedArchived,
+                mergedFields, now));
+    }
+
+    @Override
+    protected void markDeleted(PatientDomain patient) {
+        patient.setActive(false);
+        patient.setUpdatedAt(java.time.LocalDateTime.now());
+    }
+
     /**
      * Buscar pacientes por criterios
      */
     @Transactional(readOnly = true)
     public List<PatientResponse> searchPatients(String firstName, String lastName, String document, String bloodType) {
-        log.info("Searching patients with term: {}", firstName);
         // Usar el término de búsqueda más relevante
         String searchTerm = firstName != null ? firstName : 
                            lastName != null ? lastName : 
                            document != null ? document : "";
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 1000);
-        org.springframework.data.domain.Page<PatientDomain> patientsPage = patientRepository.searchByTerm(searchTerm, pageable);
-        List<PatientDomain> patients = patientsPage.getContent();
-        log.info("Search found {} patients", patients.size());
+        // Slice: solo se usa el contenido, no hace falta el count(*) de la página
+        org.springframework.data.domain.Slice<PatientDomain> patientsSlice = patientRepository.searchSliceByTerm(searchTerm, pageable);
+        List<PatientDomain> patients = patientsSlice.getContent();
+        // Sin el término (nombres y documentos de pacientes): solo qué criterio se usó
+        String criterion = firstName != null ? "firstName" : lastName != null ? "lastName" : document != null ? "document" : "none";
+        READ_LOG.atInfo().addKeyValue("criterion", criterion).addKeyValue("returned", patients.size()).log("patients.search");
         return patientMapper.toResponseList(patients);
     }
 
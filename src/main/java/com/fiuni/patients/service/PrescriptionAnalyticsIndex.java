@@ -0,0 +1,472 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.clinica.domain.patient.PrescriptionDomain;
+import com.fiuni.clinica.domain.patient.PrescriptionMedicationDomain;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.dto.PrescriptionAnalyticsReport;
+import com.fiuni.patients.dto.PrescriptionAnalyticsReport.DoctorStat;
+import com.fiuni.patients.dto.PrescriptionAnalyticsReport.MedicationStat;
+import com.fiuni.patients.dto.PrescriptionAnalyticsReport.MonthStat;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import com.fiuni.patients.repository.PrescriptionAnalyticsRepository;
+import com.fiuni.patients.repository.PrescriptionAnalyticsRepository.PrescriptionFact;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Agregados en memoria de prescripciones activas para el dashboard de analíticas.
+ *
+ * - Por mes se guardan contadores en arrays primitivos indexados por código de medicamento y de matrícula
+ *   (total y surtidas), así una consulta solo suma los meses del rango sin tocar la base.
+ * - Cada prescripción indexada guarda su mes, matrícula, surtida y medicamentos en columnas por slot,
+ *   para poder restar su aporte anterior cuando cambia o se elimina.
+ * - Se carga al arrancar con un scan por keyset en transacciones readOnly (réplica, si está habilitada);
+ *   mientras tanto {@link #isReady()} es false. Si la carga falla se reintenta desde el job de sincronización,
+ *   con backoff exponencial.
+ * - Escrituras locales: se aplican al confirmar la transacción. Escrituras de otras instancias (surtidos por
+ *   lote y restauraciones del archivo incluidos): se leen del outbox change_event cada sync-interval-ms con
+ *   {@link OutboxTail}, que espera los huecos de ids de transacciones todavía abiertas.
+ */
+@Component
+@Slf4j
+public class PrescriptionAnalyticsIndex {
+
+    private static final int LOAD_BATCH_SIZE = 2000;
+    private static final int OUTBOX_BATCH_SIZE = 500;
+    private static final int[] NO_MEDICATIONS = new int[0];
+    private static final long LOAD_RETRY_INITIAL_MS = 2_000;
+    private static final long LOAD_RETRY_MAX_MS = 60_000;
+
+    private final PrescriptionAnalyticsRepository analyticsRepository;
+    private final OutboxTail outbox;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Diccionarios: id de medicamento / matrícula -> código denso */
+    private final Map<Integer, Integer> medicationCodeById = new HashMap<>();
+    private int[] medicationIdByCode = new int[256];
+    private final Map<String, Integer> doctorCodeByLicense = new HashMap<>();
+    private final List<String> doctorLicenseByCode = new ArrayList<>();
+
+    /** Agregados por mes (año * 12 + mes - 1) */
+    private final TreeMap<Integer, MonthBucket> months = new TreeMap<>();
+
+    /** Columnas por slot de las prescripciones indexadas */
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private int[] monthBySlot = new int[1024];
+    private int[] doctorBySlot = new int[1024];
+    private boolean[] filledBySlot = new boolean[1024];
+    private int[][] medicationsBySlot = new int[1024][];
+    private int slotCount = 0;
+    private int prescriptionCount = 0;
+
+    private volatile boolean ready = false;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile long loadRetryMs = LOAD_RETRY_INITIAL_MS;
+    private volatile long nextLoadAttempt = 0;
+
+    public PrescriptionAnalyticsIndex(PrescriptionAnalyticsRepository analyticsRepository,
+                                      ChangeEventRepository changeEventRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${patients.change-feed.gap-timeout-ms:2000}") long gapTimeoutMs) {
+        this.analyticsRepository = analyticsRepository;
+        this.outbox = new OutboxTail(changeEventRepository, OUTBOX_BATCH_SIZE, gapTimeoutMs);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Carga inicial en segundo plano
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        startLoad();
+    }
+
+    private void startLoad() {
+        Thread.ofVirtual().name("prescription-analytics-loader").start(this::rebuild);
+    }
+
+    /**
+     * Reconstruir los agregados con un scan completo de las prescripciones activas (no hace nada si ya hay
+     * una reconstrucción en curso)
+     */
+    public void rebuild() {
+        if (!loading.compareAndSet(false, true)) {
+            log.debug("Prescription analytics load already running");
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            // Una carga anterior fallida pudo dejar agregados parciales
+            lock.writeLock().lock();
+            try {
+                clearLocked();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // Ubicar el cursor antes de leer: los cambios concurrentes con la carga se reaplican desde el outbox
+            outbox.seekBeforeLoad();
+            int afterId = 0;
+            List<PrescriptionFact> batch;
+            do {
+                int cursor = afterId;
+                batch = readOnlyTransaction.execute(status -> analyticsRepository.findFactsAfter(cursor, LOAD_BATCH_SIZE));
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                lock.writeLock().lock();
+                try {
+                    batch.forEach(this::upsertLocked);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                afterId = batch.get(batch.size() - 1).id();
+            } while (batch.size() == LOAD_BATCH_SIZE);
+            ready = true;
+            loadRetryMs = LOAD_RETRY_INITIAL_MS;
+            log.info("Prescription analytics loaded: {} prescriptions, {} months in {} ms",
+                    prescriptionCount, months.size(), (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            nextLoadAttempt = System.currentTimeMillis() + loadRetryMs;
+            log.error("Prescription analytics load failed, retrying in {} ms", loadRetryMs, e);
+            loadRetryMs = Math.min(loadRetryMs * 2, LOAD_RETRY_MAX_MS);
+        } finally {
+            loading.set(false);
+        }
+    }
+
+    /**
+     * true cuando la carga inicial terminó
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Aplicar el estado de una prescripción (o quitarla, si está inactiva) cuando confirme la transacción actual
+     */
+    public void applyAfterCommit(PrescriptionDomain prescription) {
+        if (prescription == null || prescription.getId() == null) {
+            return;
+        }
+        Integer id = prescription.getId();
+        PrescriptionFact fact = Boolean.TRUE.equals(prescription.getIsActive()) ? toFact(prescription) : null;
+        Runnable apply = () -> {
+            lock.writeLock().lock();
+            try {
+                if (fact != null) {
+                    upsertLocked(fact);
+                } else {
+                    removeLocked(id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    /**
+     * Aplicar cambios de prescripciones registrados en el outbox (incluye los de otras instancias)
+     */
+    @Scheduled(fixedDelayString = "${patients.analytics.sync-interval-ms:2000}")
+    public void syncFromOutbox() {
+        if (!ready) {
+            // Carga fallida: reintentar en segundo plano sin ocupar el hilo del scheduler
+            if (!loading.get() && System.currentTimeMillis() >= nextLoadAttempt) {
+                startLoad();
+            }
+            return;
+        }
+        List<ChangeEvent> events;
+        do {
+            events = outbox.next();
+            Set<Integer> changedIds = new LinkedHashSet<>();
+            for (ChangeEvent event : events) {
+                if (event.entityType() == ChangeEntityType.PRESCRIPTION) {
+                    changedIds.add(event.entityId());
+                }
+            }
+            if (!changedIds.isEmpty()) {
+                reload(changedIds);
+            }
+        } while (outbox.isFull(events));
+    }
+
+    private void reload(Set<Integer> ids) {
+        Map<Integer, PrescriptionFact> active = new HashMap<>();
+        for (PrescriptionFact fact : analyticsRepository.findFactsByIds(ids)) {
+            active.put(fact.id(), fact);
+        }
+        lock.writeLock().lock();
+        try {
+            for (Integer id : ids) {
+                PrescriptionFact fact = active.get(id);
+                if (fact != null) {
+                    upsertLocked(fact);
+                } else {
+                    removeLocked(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Prescription analytics synced {} prescriptions from outbox", ids.size());
+    }
+
+    /**
+     * Analíticas del rango de meses (inclusive; null = sin límite), con los top medicamentos y matrículas
+     */
+    public PrescriptionAnalyticsReport report(YearMonth from, YearMonth to, int top) {
+        lock.readLock().lock();
+        try {
+            if (months.isEmpty()) {
+                return new PrescriptionAnalyticsReport(toString(from), toString(to), 0, 0, 0.0, List.of(), List.of(), List.of());
+            }
+            int fromKey = from != null ? monthKey(from) : months.firstKey();
+            int toKey = to != null ? monthKey(to) : months.lastKey();
+            NavigableMap<Integer, MonthBucket> range = fromKey <= toKey
+                    ? months.subMap(fromKey, true, toKey, true)
+                    : new TreeMap<>();
+
+            long total = 0;
+            long filled = 0;
+            long[] medicationTotal = new long[medicationCodeById.size()];
+            long[] medicationFilled = new long[medicationTotal.length];
+            long[] doctorTotal = new long[doctorLicenseByCode.size()];
+            long[] doctorFilled = new long[doctorTotal.length];
+            List<MonthStat> byMonth = new ArrayList<>(range.size());
+
+            for (Map.Entry<Integer, MonthBucket> entry : range.entrySet()) {
+                MonthBucket bucket = entry.getValue();
+                if (bucket.total == 0) {
+                    continue;
+                }
+                total += bucket.total;
+                filled += bucket.filled;
+                byMonth.add(new MonthStat(toString(monthOf(entry.getKey())), bucket.total, bucket.filled,
+                        rate(bucket.filled, bucket.total)));
+                addInto(medicationTotal, bucket.medicationTotal);
+                addInto(medicationFilled, bucket.medicationFilled);
+                addInto(doctorTotal, bucket.doctorTotal);
+                addInto(doctorFilled, bucket.doctorFilled);
+            }
+
+            List<MedicationStat> byMedication = new ArrayList<>();
+            for (int code : topCodes(medicationTotal, top)) {
+                byMedication.add(new MedicationStat(medicationIdByCode[code], medicationTotal[code], medicationFilled[code],
+                        rate(medicationFilled[code], medicationTotal[code])));
+            }
+            List<DoctorStat> byDoctor = new ArrayList<>();
+            for (int code : topCodes(doctorTotal, top)) {
+                byDoctor.add(new DoctorStat(doctorLicenseByCode.get(code), doctorTotal[code], doctorFilled[code],
+                        rate(doctorFilled[code], doctorTotal[code])));
+            }
+
+            return new PrescriptionAnalyticsReport(toString(monthOf(fromKey)), toString(monthOf(toKey)),
+                    total, filled, rate(filled, total), byMonth, byMedication, byDoctor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void upsertLocked(PrescriptionFact fact) {
+        removeLocked(fact.id());
+        if (fact.prescriptionDate() == null) {
+            return;
+        }
+        int month = monthKey(YearMonth.from(fact.prescriptionDate()));
+        int doctor = doctorCode(fact.doctorLicense());
+        int[] medications = new int[fact.medicationIds().length];
+        for (int i = 0; i < medications.length; i++) {
+            medications[i] = medicationCode(fact.medicationIds()[i]);
+        }
+
+        int slot = freeSlots.isEmpty() ? slotCount++ : freeSlots.pop();
+        if (slot >= monthBySlot.length) {
+            int capacity = monthBySlot.length * 2;
+            monthBySlot = Arrays.copyOf(monthBySlot, capacity);
+            doctorBySlot = Arrays.copyOf(doctorBySlot, capacity);
+            filledBySlot = Arrays.copyOf(filledBySlot, capacity);
+            medicationsBySlot = Arrays.copyOf(medicationsBySlot, capacity);
+        }
+        monthBySlot[slot] = month;
+        doctorBySlot[slot] = doctor;
+        filledBySlot[slot] = fact.filled();
+        medicationsBySlot[slot] = medications.length == 0 ? NO_MEDICATIONS : medications;
+        slotById.put(fact.id(), slot);
+
+        months.computeIfAbsent(month, k -> new MonthBucket()).add(doctor, medicationsBySlot[slot], fact.filled(), 1);
+        prescriptionCount++;
+    }
+
+    private void clearLocked() {
+        months.clear();
+        slotById.clear();
+        freeSlots.clear();
+        slotCount = 0;
+        prescriptionCount = 0;
+    }
+
+    private void removeLocked(Integer id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        MonthBucket bucket = months.get(monthBySlot[slot]);
+        bucket.add(doctorBySlot[slot], medicationsBySlot[slot], filledBySlot[slot], -1);
+        if (bucket.total == 0) {
+            months.remove(monthBySlot[slot]);
+        }
+        medicationsBySlot[slot] = null;
+        freeSlots.push(slot);
+        prescriptionCount--;
+    }
+
+    private int medicationCode(int medicationId) {
+        Integer code = medicationCodeById.get(medicationId);
+        if (code != null) {
+            return code;
+        }
+        int next = medicationCodeById.size();
+        if (next >= medicationIdByCode.length) {
+            medicationIdByCode = Arrays.copyOf(medicationIdByCode, medicationIdByCode.length * 2);
+        }
+        medicationIdByCode[next] = medicationId;
+        medicationCodeById.put(medicationId, next);
+        return next;
+    }
+
+    private int doctorCode(String doctorLicense) {
+        Integer code = doctorCodeByLicense.get(doctorLicense);
+        if (code != null) {
+            return code;
+        }
+        int next = doctorLicenseByCode.size();
+        doctorLicenseByCode.add(doctorLicense);
+        doctorCodeByLicense.put(doctorLicense, next);
+        return next;
+    }
+
+    private static PrescriptionFact toFact(PrescriptionDomain prescription) {
+        int[] medicationIds = NO_MEDICATIONS;
+        if (prescription.getMedications() != null) {
+            medicationIds = prescription.getMedications().stream()
+                    .filter(pm -> Boolean.TRUE.equals(pm.getIsActive()) && pm.getMedication() != null)
+                    .map(PrescriptionMedicationDomain::getMedication)
+                    .mapToInt(medication -> medication.getId())
+                    .distinct()
+                    .toArray();
+        }
+        return new PrescriptionFact(prescription.getId(), prescription.getPrescriptionDate(),
+                prescription.getDoctorLicense(), Boolean.TRUE.equals(prescription.getIsFilled()), medicationIds);
+    }
+
+    /**
+     * Códigos con conteo mayor a cero, de mayor a menor conteo (a igual conteo, menor código primero)
+     */
+    private static int[] topCodes(long[] counts, int top) {
+        return IntStream.range(0, counts.length)
+                .filter(code -> counts[code] > 0)
+                .boxed()
+                .sorted((a, b) -> counts[a] != counts[b] ? Long.compare(counts[b], counts[a]) : Integer.compare(a, b))
+                .limit(top)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static void addInto(long[] target, int[] source) {
+        int length = Math.min(target.length, source.length);
+        for (int i = 0; i < length; i++) {
+            target[i] += source[i];
+        }
+    }
+
+    private static double rate(long filled, long total) {
+        return total == 0 ? 0.0 : (double) filled / total;
+    }
+
+    private static int monthKey(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static YearMonth monthOf(int key) {
+        return YearMonth.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1);
+    }
+
+    private static String toString(YearMonth month) {
+        return month != null ? month.toString() : null;
+    }
+
+    /**
+     * Contadores de un mes; los arrays crecen a medida que aparecen códigos nuevos
+     */
+    private static final class MonthBucket {
+        private int total;
+        private int filled;
+        private int[] medicationTotal = new int[0];
+        private int[] medicationFilled = new int[0];
+        private int[] doctorTotal = new int[0];
+        private int[] doctorFilled = new int[0];
+
+        void add(int doctor, int[] medications, boolean isFilled, int delta) {
+            int filledDelta = isFilled ? delta : 0;
+            total += delta;
+            filled += filledDelta;
+            if (doctor >= doctorTotal.length) {
+                doctorTotal = grow(doctorTotal, doctor);
+                doctorFilled = grow(doctorFilled, doctor);
+            }
+            doctorTotal[doctor] += delta;
+            doctorFilled[doctor] += filledDelta;
+            for (int medication : medications) {
+                if (medication >= medicationTotal.length) {
+                    medicationTotal = grow(medicationTotal, medication);
+                    medicationFilled = grow(medicationFilled, medication);
+                }
+                medicationTotal[medication] += delta;
+                medicationFilled[medication] += filledDelta;
+            }
+        }
+
+        private static int[] grow(int[] array, int index) {
+            return Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+        }
+    }
+}
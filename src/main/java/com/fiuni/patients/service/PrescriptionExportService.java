@@ -0,0 +1,127 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.repository.PrescriptionExportRepository;
+import com.fiuni.patients.service.ArrowBatchWriter.Column;
+import com.fiuni.patients.service.ArrowBatchWriter.Kind;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Exportación columnar (Arrow IPC, formato stream) de prescripciones y de líneas prescripción-medicamento
+ * para el equipo de datos, en lugar de paginar JSON.
+ *
+ * - Una transacción readOnly REPEATABLE READ por exportación: diccionarios y filas salen del mismo snapshot
+ *   (y de la réplica, si está habilitada), con una sola conexión y un cursor del lado del servidor.
+ * - doctor_name, doctor_license y medication_name van codificados con diccionario; los batches se comprimen
+ *   con el codec de patients.export.compression (zstd, lz4 o none).
+ * - since permite exportaciones incrementales por last_modified (inclusive); incluye filas inactivas (bajas).
+ */
+@Service
+@Slf4j
+public class PrescriptionExportService {
+
+    /** Media type del formato stream de Arrow IPC */
+    public static final String ARROW_STREAM_MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    /** Exportación completa cuando no se indica since */
+    public static final LocalDateTime EXPORT_ALL = LocalDateTime.of(1900, 1, 1, 0, 0);
+
+    private static final int BATCH_ROWS = 16_384;
+    private static final long ALLOCATOR_LIMIT_BYTES = 256L * 1024 * 1024;
+
+    private final PrescriptionExportRepository exportRepository;
+    private final TransactionTemplate snapshotTransaction;
+    private final CompressionUtil.CodecType codec;
+
+    public PrescriptionExportService(PrescriptionExportRepository exportRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${patients.export.compression:zstd}") String compression) {
+        this.exportRepository = exportRepository;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.codec = switch (compression.toLowerCase(Locale.ROOT)) {
+            case "zstd" -> CompressionUtil.CodecType.ZSTD;
+            case "lz4" -> CompressionUtil.CodecType.LZ4_FRAME;
+            case "none" -> CompressionUtil.CodecType.NO_COMPRESSION;
+            default -> throw new IllegalArgumentException("Unsupported export compression: " + compression);
+        };
+    }
+
+    /**
+     * Exportar prescripciones modificadas desde since; devuelve las filas escritas
+     */
+    public long exportPrescriptions(LocalDateTime since, OutputStream out) {
+        LocalDateTime from = since != null ? since : EXPORT_ALL;
+        return export("prescriptions", from, out, () -> List.of(
+                Column.of("id", Kind.INT),
+                Column.of("patient_id", Kind.INT),
+                Column.of("prescription_date", Kind.DATE),
+                Column.of("valid_until", Kind.DATE),
+                Column.dictionary("doctor_name", exportRepository.findDistinctDoctorValues("doctor_name", from)),
+                Column.dictionary("doctor_license", exportRepository.findDistinctDoctorValues("doctor_license", from)),
+                Column.of("notes", Kind.TEXT),
+                Column.of("is_filled", Kind.BOOL),
+                Column.of("is_active", Kind.BOOL),
+                Column.of("created_date", Kind.TIMESTAMP),
+                Column.of("last_modified", Kind.TIMESTAMP)),
+                writer -> exportRepository.streamPrescriptions(from, writer::append));
+    }
+
+    /**
+     * Exportar líneas prescripción-medicamento modificadas desde since; devuelve las filas escritas
+     */
+    public long exportPrescriptionMedications(LocalDateTime since, OutputStream out) {
+        LocalDateTime from = since != null ? since : EXPORT_ALL;
+        return export("prescription-medications", from, out, () -> List.of(
+                Column.of("id", Kind.INT),
+                Column.of("prescription_id", Kind.INT),
+                Column.of("medication_id", Kind.INT),
+                Column.dictionary("medication_name", exportRepository.findDistinctMedicationNames(from)),
+                Column.of("dosage", Kind.TEXT),
+                Column.of("frequency", Kind.TEXT),
+                Column.of("duration", Kind.TEXT),
+                Column.of("quantity", Kind.INT),
+                Column.of("instructions", Kind.TEXT),
+                Column.of("is_active", Kind.BOOL),
+                Column.of("created_date", Kind.TIMESTAMP),
+                Column.of("last_modified", Kind.TIMESTAMP)),
+                writer -> exportRepository.streamPrescriptionMedications(from, writer::append));
+    }
+
+    private long export(String name, LocalDateTime since, OutputStream out,
+                        Supplier<List<Column>> columns,
+                        Consumer<ArrowBatchWriter> rows) {
+        long started = System.nanoTime();
+        Long exported = snapshotTransaction.execute(status -> {
+            try (BufferAllocator allocator = new RootAllocator(ALLOCATOR_LIMIT_BYTES);
+                 ArrowBatchWriter writer = new ArrowBatchWriter(allocator, columns.get(), BATCH_ROWS, codec, out)) {
+                rows.accept(writer);
+                long count = writer.finish();
+                if (writer.getUnknownDictionaryValues() > 0) {
+                    log.warn("Export {}: {} values were missing from their dictionary and were written as null",
+                            name, writer.getUnknownDictionaryValues());
+                }
+                return count;
+            }
+        });
+        long count = exported != null ? exported : 0L;
+        log.info("Exported {} {} rows modified since {} in {} ms", count, name, since,
+                (System.nanoTime() - started) / 1_000_000);
+        return count;
+    }
+}
@@ -0,0 +1,235 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.dto.PrescriptionFillEvent;
+import com.fiuni.patients.dto.PrescriptionFillStatus;
+import com.fiuni.patients.repository.PrescriptionFillRepository;
+import com.fiuni.patients.repository.PrescriptionFillRepository.FillState;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind del surtido de prescripciones: los eventos entran a una cola acotada en memoria y un único
+ * escritor los confirma por grupos (group commit).
+ *
+ * - Un lote se cierra al llegar a batch-size eventos o max-delay-ms después del primero.
+ * - Cada lote es una transacción con un SELECT ... FOR UPDATE, un UPDATE set-based (solo de las que cambian)
+ *   y un batch al outbox: una conexión del pool por lote, en lugar de un SELECT + UPDATE + commit por prescripción.
+ * - El future de cada evento se completa después del commit de su lote; si el lote falla, con la excepción.
+ * - Dentro de un lote, el último evento de una misma prescripción es el que se aplica.
+ * - Pasar a surtida reserva el stock de sus líneas (MedicationInventory); sin stock, el evento no se aplica.
+ * - Cola llena: submit lanza IllegalStateException (backpressure hacia el cliente).
+ * - Cada cambio aplicado se audita con el actor del request que encoló el evento.
+ */
+@Component
+@Slf4j
+public class PrescriptionFillBatcher {
+
+    private static final long IDLE_POLL_MS = 200;
+
+    private final PrescriptionFillRepository fillRepository;
+    private final ChangeEventRecorder changeEventRecorder;
+    private final MedicationInventory medicationInventory;
+    private final AuditTrail auditTrail;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<PendingFill> queue;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running = true;
+    private volatile Thread writer;
+
+    public PrescriptionFillBatcher(PrescriptionFillRepository fillRepository,
+                                   ChangeEventRecorder changeEventRecorder,
+                                   MedicationInventory medicationInventory,
+                                   AuditTrail auditTrail,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${patients.prescription-fills.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${patients.prescription-fills.batch-size:500}") int batchSize,
+                                   @Value("${patients.prescription-fills.max-delay-ms:5}") long maxDelayMs) {
+        this.fillRepository = fillRepository;
+        this.changeEventRecorder = changeEventRecorder;
+        this.medicationInventory = medicationInventory;
+        this.auditTrail = auditTrail;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+        this.batchSizes = DistributionSummary.builder("patients.prescription.fill.batch.size")
+                .description("Eventos de surtido confirmados por transacción")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Arrancar el escritor en segundo plano
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        writer = Thread.ofVirtual().name("prescription-fill-writer").start(this::runWriter);
+    }
+
+    /**
+     * Encolar eventos de surtido; cada future se completa con el resultado del evento después del commit
+     * de su lote
+     *
+     * @throws IllegalStateException si la cola está llena
+     */
+    public List<CompletableFuture<PrescriptionFillStatus>> submit(List<PrescriptionFillEvent> events) {
+        if (!running) {
+            throw new IllegalStateException("Prescription fill writer is shutting down");
+        }
+        List<CompletableFuture<PrescriptionFillStatus>> results = new ArrayList<>(events.size());
+        String actor = auditTrail.currentActor();
+        for (PrescriptionFillEvent event : events) {
+            PendingFill pending = new PendingFill(event.prescriptionId(), event.filledOrDefault(), actor,
+                    new CompletableFuture<>());
+            if (!queue.offer(pending)) {
+                // Los eventos ya encolados se confirman igual (son idempotentes); el cliente reintenta el request
+                throw new IllegalStateException("Prescription fill queue is full");
+            }
+            results.add(pending.result());
+        }
+        return results;
+    }
+
+    /**
+     * Eventos esperando su lote
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        Thread current = writer;
+        if (current != null) {
+            current.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        // Lo que quedó en la cola (sin escritor o tras el timeout) se confirma en este hilo
+        List<PendingFill> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    private void runWriter() {
+        List<PendingFill> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                // Sin interrupciones: stop() solo baja running y el escritor sale en el siguiente poll
+                PendingFill first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingFill next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        log.info("Prescription fill writer stopped");
+    }
+
+    private void flush(List<PendingFill> batch) {
+        long started = System.nanoTime();
+        Map<Integer, PendingFill> lastById = new LinkedHashMap<>();
+        for (PendingFill pending : batch) {
+            lastById.put(pending.prescriptionId(), pending);
+        }
+        try {
+            Map<Integer, PrescriptionFillStatus> statuses = transactionTemplate.execute(status -> applyLocked(lastById));
+            batch.forEach(pending -> pending.result().complete(statuses.get(pending.prescriptionId())));
+            batchSizes.record(batch.size());
+            log.debug("Committed {} prescription fills ({} distinct) in {} ms", batch.size(), lastById.size(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Prescription fill batch of {} events failed", batch.size(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Con las prescripciones bloqueadas: reservar stock de las que pasan a surtidas, devolverlo de las que
+     * dejan de estarlo y actualizar solo las que cambian
+     */
+    private Map<Integer, PrescriptionFillStatus> applyLocked(Map<Integer, PendingFill> lastById) {
+        Map<Integer, FillState> states = fillRepository.lockFillStates(lastById.keySet().toArray(new Integer[0]));
+        Map<Integer, PrescriptionFillStatus> statuses = new HashMap<>();
+        List<Integer> changedIds = new ArrayList<>();
+        List<Boolean> changedValues = new ArrayList<>();
+        lastById.forEach((id, pending) -> {
+            boolean filled = pending.filled();
+            FillState state = states.get(id);
+            if (state == null) {
+                statuses.put(id, PrescriptionFillStatus.NOT_FOUND);
+                return;
+            }
+            if (state.filled() != filled) {
+                if (filled) {
+                    if (!medicationInventory.reserve(state.unitsByMedication())) {
+                        statuses.put(id, PrescriptionFillStatus.INSUFFICIENT_STOCK);
+                        return;
+                    }
+                } else {
+                    medicationInventory.restore(state.unitsByMedication());
+                }
+                changedIds.add(id);
+                changedValues.add(filled);
+            }
+            statuses.put(id, PrescriptionFillStatus.APPLIED);
+        });
+        List<Integer> rows = fillRepository.applyFills(changedIds.toArray(new Integer[0]),
+                changedValues.toArray(new Boolean[0]), LocalDateTime.now());
+        for (Integer id : rows) {
+            changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, id, ChangeOperation.UPDATE);
+            PendingFill pending = lastById.get(id);
+            auditTrail.record(ChangeEntityType.PRESCRIPTION, id, ChangeOperation.UPDATE, pending.actor(),
+                    Map.of("isFilled", !pending.filled()), Map.of("isFilled", pending.filled()));
+        }
+        return statuses;
+    }
+
+    private record PendingFill(Integer prescriptionId, boolean filled, String actor,
+                               CompletableFuture<PrescriptionFillStatus> result) {
+    }
+}
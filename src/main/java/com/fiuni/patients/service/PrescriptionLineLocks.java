@@ -0,0 +1,93 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.exception.VersionConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializa las mutaciones de líneas de una misma prescripción dentro de la instancia y reintenta
+ * los conflictos de versión que vienen de otras instancias.
+ *
+ * - Locks por franjas (lock striping): la prescripción se asigna a uno de lock-stripes locks, así la memoria
+ *   es fija y prescripciones distintas casi nunca se bloquean entre sí.
+ * - El lock se toma antes de abrir la transacción: los hilos que esperan no retienen conexiones del pool.
+ * - Un OptimisticLockingFailureException (versión de la prescripción cambiada por otra instancia) se reintenta
+ *   con backoff exponencial y jitter; agotados los intentos se lanza {@link VersionConflictException}.
+ */
+@Component
+@Slf4j
+public class PrescriptionLineLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int maxAttempts;
+    private final long backoffMs;
+
+    public PrescriptionLineLocks(@Value("${patients.prescription-lines.lock-stripes:64}") int lockStripes,
+                                 @Value("${patients.prescription-lines.max-attempts:5}") int maxAttempts,
+                                 @Value("${patients.prescription-lines.backoff-ms:20}") long backoffMs) {
+        this.stripes = new ReentrantLock[Math.max(1, lockStripes)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+    }
+
+    /**
+     * Ejecutar la mutación (que debe abrir y confirmar su propia transacción) con el lock de la prescripción
+     */
+    public <T> T mutate(Integer prescriptionId, Supplier<T> mutation) {
+        ReentrantLock lock = stripeFor(prescriptionId);
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for prescription " + prescriptionId, e);
+        }
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return mutation.get();
+                } catch (OptimisticLockingFailureException e) {
+                    if (attempt >= maxAttempts) {
+                        log.warn("Prescription {} still conflicting after {} attempts", prescriptionId, attempt);
+                        throw new VersionConflictException(prescriptionId, e);
+                    }
+                    log.debug("Version conflict on prescription {} (attempt {}), retrying", prescriptionId, attempt);
+                    backoff(attempt);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripeFor(Integer prescriptionId) {
+        int hash = prescriptionId.hashCode();
+        // Mezclar bits: ids consecutivos no deben caer en franjas consecutivas de forma trivial
+        hash ^= (hash >>> 16);
+        hash *= 0x45d9f3b;
+        hash ^= (hash >>> 16);
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+
+    private void backoff(int attempt) {
+        if (backoffMs <= 0) {
+            return;
+        }
+        long base = backoffMs << Math.min(attempt - 1, 6);
+        long sleep = base + ThreadLocalRandom.current().nextLong(base + 1);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying prescription mutation", e);
+        }
+    }
+}
@@ -11,20 +11,45 @@ import com.fiuni.clinica.dto.generated.PrescriptionMedicationRequest;
 import com.fiuni.clinica.dto.generated.MedicationResponse;
 import com.fiuni.clinica.dto.generated.PrescriptionMedicationRequest;
 import com.fiuni.clinica.dto.generated.PrescriptionMedicationResponse;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.dto.PaginationMode;
+import com.fiuni.patients.dto.PatientPrescriptionSummary;
+import com.fiuni.patients.dto.PrescriptionAnalyticsReport;
+import com.fiuni.patients.dto.PrescriptionFillEvent;
+import com.fiuni.patients.dto.PrescriptionFillResult;
+import com.fiuni.patients.dto.PrescriptionFillStatus;
+import com.fiuni.patients.exception.DuplicatePrescriptionLineException;
+import com.fiuni.patients.exception.InsufficientStockException;
 import com.fiuni.patients.mapper.PrescriptionMapper;
 import com.fiuni.patients.repository.PrescriptionRepository;
 import com.fiuni.patients.repository.PatientRepository;
 import com.fiuni.patients.repository.MedicationRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service para gestión de prescripciones
@@ -34,20 +59,67 @@ import java.util.Optional;
 @Transactional
 public class PrescriptionService extends AbstractBaseService<PrescriptionDomain, PrescriptionRequest, PrescriptionResponse> {
 
+    /** Eventos estructurados de lectura: logger propio, muestreado con patients.logging.sampling */
+    private static final Logger READ_LOG = LoggerFactory.getLogger("com.fiuni.patients.reads.prescriptions");
+
+    /** Tamaño máximo de página para el historial de un paciente */
+    public static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+    /** Máximo de prescripciones del listado sin paginar de un paciente (mismo tope que antes del historial) */
+    public static final int MAX_PATIENT_PRESCRIPTIONS = 1000;
+
+    /** Máximo de medicamentos / matrículas por ranking en las analíticas */
+    public static final int MAX_ANALYTICS_TOP = 100;
+
+    /** Máximo de eventos de surtido por request */
+    public static final int MAX_FILL_EVENTS = 1000;
+
+    /** Límites usados cuando un rango de fechas viene abierto de un lado */
+    private static final java.time.LocalDate MIN_PRESCRIPTION_DATE = java.time.LocalDate.of(1900, 1, 1);
+    private static final java.time.LocalDate MAX_PRESCRIPTION_DATE = java.time.LocalDate.of(9999, 12, 31);
+
+    /** Índice único parcial de líneas activas (changelog 008) */
+    private static final String ACTIVE_LINE_UNIQUE_INDEX = "uq_prescription_medication_active";
+
+    private static final Sort HISTORY_SORT = Sort.by(Sort.Direction.DESC, "prescriptionDate")
+            .and(Sort.by(Sort.Direction.DESC, "id"));
+
     private final PrescriptionRepository prescriptionRepository;
     private final PatientRepository patientRepository;
     private final MedicationRepository medicationRepository;
     private final PrescriptionMapper prescriptionMapper;
+    private final PrescriptionAnalyticsIndex prescriptionAnalyticsIndex;
+    private final PrescriptionLineLocks prescriptionLineLocks;
+    private final PrescriptionFillBatcher prescriptionFillBatcher;
+    private final MedicationInventory medicationInventory;
+    private final TransactionTemplate transactionTemplate;
+    private final long fillAckTimeoutMs;
 
     public PrescriptionService(PrescriptionRepository prescriptionRepository,
                                PatientRepository patientRepository,
                                MedicationRepository medicationRepository,
-                               PrescriptionMapper prescriptionMapper) {
-        super(prescriptionRepository, prescriptionMapper);
+                               PrescriptionMapper prescriptionMapper,
+                               ChangeEventRecorder changeEventRecorder,
+                               ApproximateCountCache approximateCountCache,
+                               PrescriptionAnalyticsIndex prescriptionAnalyticsIndex,
+                               PrescriptionLineLocks prescriptionLineLocks,
+                               PrescriptionFillBatcher prescriptionFillBatcher,
+                               MedicationInventory medicationInventory,
+                               AuditTrail auditTrail,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${patients.prescription-fills.ack-timeout-ms:30000}") long fillAckTimeoutMs) {
+        super(prescriptionRepository, prescriptionMapper, changeEventRecorder, ChangeEntityType.PRESCRIPTION, approximateCountCache,
+                auditTrail);
         this.prescriptionRepository = prescriptionRepository;
         this.patientRepository = patientRepository;
         this.medicationRepository = medicationRepository;
         this.prescriptionMapper = prescriptionMapper;
+        this.prescriptionAnalyticsIndex = prescriptionAnalyticsIndex;
+        this.prescriptionLineLocks = prescriptionLineLocks;
+        this.prescriptionFillBatcher = prescriptionFillBatcher;
+        this.medicationInventory = medicationInventory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.fillAckTimeoutMs = fillAckTimeoutMs;
     }
 
     /**
@@ -55,12 +127,10 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
      */
     @Transactional(readOnly = true)
     public Page<PrescriptionResponse> getAllPrescriptions(Pageable pageable) {
-        log.info("Getting all prescriptions with pagination: page={}, size={}", 
-                pageable.getPageNumber(), pageable.getPageSize());
-        
     Page<PrescriptionDomain> prescriptions = prescriptionRepository.findByIsActiveTrue(pageable);
 
-    log.info("Found {} prescriptions", prescriptions.getTotalElements());
+    READ_LOG.atInfo().addKeyValue("page", pageable.getPageNumber()).addKeyValue("size", pageable.getPageSize())
+            .addKeyValue("returned", prescriptions.getNumberOfElements()).log("prescriptions.page");
 
     // Use toDto (non-deprecated) mapper method
     return prescriptions.map(prescriptionMapper::toDto);
@@ -73,33 +143,82 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
      */
     @Transactional(readOnly = true)
     public Page<PrescriptionResponse> getAllPrescriptions(int page, int size, Integer patientId, Boolean isFilled) {
-        log.info("Getting all prescriptions with pagination: page={}, size={}, patientId={}, isFilled={}", 
-                page, size, patientId, isFilled);
+        return getAllPrescriptions(page, size, patientId, isFilled, PaginationMode.EXACT);
+    }
+
+    /**
+     * Obtener todas las prescripciones con paginación y filtros, en el modo de paginación indicado
+     */
+    @Transactional(readOnly = true)
+    public Page<PrescriptionResponse> getAllPrescriptions(int page, int size, Integer patientId, Boolean isFilled, PaginationMode mode) {
+        return getAllPrescriptions(page, size, patientId, isFilled, mode, null, null);
+    }
+
+    /**
+     * Obtener prescripciones con paginación y filtros, acotadas opcionalmente a un rango de fechas de prescripción.
+     * Con rango, la consulta filtra por prescription_date con un range scan (changelog 005) y por isFilled.
+     */
+    @Transactional(readOnly = true)
+    public Page<PrescriptionResponse> getAllPrescriptions(int page, int size, Integer patientId, Boolean isFilled, PaginationMode mode,
+                                                          java.time.LocalDate fromDate, java.time.LocalDate toDate) {
+        if (fromDate != null || toDate != null) {
+            java.time.LocalDate from = fromDate != null ? fromDate : MIN_PRESCRIPTION_DATE;
+            java.time.LocalDate to = toDate != null ? toDate : MAX_PRESCRIPTION_DATE;
+            Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "id"));
+            Page<PrescriptionDomain> prescriptions = findPage(pageable, mode,
+                    p -> prescriptionRepository.findByDateRange(patientId, isFilled, from, to, p),
+                    p -> prescriptionRepository.findSliceByDateRange(patientId, isFilled, from, to, p),
+                    "prescription:range:" + patientId + ":" + isFilled + ":" + from + ":" + to,
+                    () -> prescriptionRepository.countByDateRange(patientId, isFilled, from, to));
+            
+            READ_LOG.atInfo().addKeyValue("page", page).addKeyValue("size", size).addKeyValue("patientId", patientId)
+                    .addKeyValue("isFilled", isFilled).addKeyValue("fromDate", fromDate).addKeyValue("toDate", toDate).addKeyValue("mode", mode)
+                    .addKeyValue("returned", prescriptions.getNumberOfElements()).log("prescriptions.page");
+            return prescriptions.map(prescriptionMapper::toDto);
+        }
         
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "id"));
         Page<PrescriptionDomain> prescriptions;
         
         if (patientId != null) {
-            prescriptions = prescriptionRepository.findByPatientIdAndIsActiveTrue(patientId, pageable);
+            prescriptions = findPage(pageable, mode,
+                    p -> prescriptionRepository.findByPatientIdAndIsActiveTrue(patientId, p),
+                    p -> prescriptionRepository.findSliceByPatientId(patientId, p),
+                    "prescription:patient:" + patientId,
+                    () -> prescriptionRepository.countActiveByPatientId(patientId));
         } else {
-            prescriptions = prescriptionRepository.findByIsActiveTrue(pageable);
+            prescriptions = findPage(pageable, mode,
+                    prescriptionRepository::findByIsActiveTrue,
+                    prescriptionRepository::findSliceByIsActiveTrue,
+                    "prescription",
+                    prescriptionRepository::countByIsActiveTrue);
         }
         
-        log.info("Found {} prescriptions", prescriptions.getTotalElements());
+        READ_LOG.atInfo().addKeyValue("page", page).addKeyValue("size", size).addKeyValue("patientId", patientId)
+                .addKeyValue("isFilled", isFilled).addKeyValue("mode", mode)
+                .addKeyValue("returned", prescriptions.getNumberOfElements()).log("prescriptions.page");
         return prescriptions.map(prescriptionMapper::toDto);
     }
 
+    /**
+     * Carga por lote con paciente, líneas y medicamentos en un único JOIN FETCH
+     */
+    @Override
+    protected List<PrescriptionDomain> findActiveByIds(List<Integer> ids) {
+        return prescriptionRepository.findAllWithMedicationsByIdIn(ids).stream()
+                .filter(p -> Boolean.TRUE.equals(p.getIsActive()))
+                .collect(java.util.stream.Collectors.toList());
+    }
+
     /**
      * Obtener prescripción por ID
      */
     @Transactional(readOnly = true)
     public Optional<PrescriptionResponse> getPrescriptionById(Integer id) {
-        log.info("Getting prescription by ID: {}", id);
-        
         Optional<PrescriptionDomain> prescription = prescriptionRepository.findByIdAndIsActiveTrue(id);
         
         if (prescription.isPresent()) {
-            log.info("Prescription found with ID: {}", id);
+            READ_LOG.atInfo().addKeyValue("prescriptionId", id).log("prescription.read");
             return Optional.of(prescriptionMapper.toDto(prescription.get()));
         } else {
             log.warn("Prescription not found with ID: {}", id);
@@ -132,10 +251,14 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
         prescription.setPatient(patient.get());
         
         PrescriptionDomain savedPrescription = prescriptionRepository.save(prescription);
+        changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, savedPrescription.getId(), ChangeOperation.CREATE);
+        prescriptionAnalyticsIndex.applyAfterCommit(savedPrescription);
+        PrescriptionResponse created = prescriptionMapper.toDto(savedPrescription);
+        auditTrail.record(ChangeEntityType.PRESCRIPTION, savedPrescription.getId(), ChangeOperation.CREATE, null, created);
         
         log.info("Prescription created successfully with ID: {} for patient ID: {}", 
                 savedPrescription.getId(), request.getPatientId());
-        return prescriptionMapper.toDto(savedPrescription);
+        return created;
     }
 
     /**
@@ -202,9 +325,22 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
         }
 
         PrescriptionDomain saved = prescriptionRepository.save(prescription);
+        applyFillToInventory(saved, false);
+        changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, saved.getId(), ChangeOperation.CREATE);
+        prescriptionAnalyticsIndex.applyAfterCommit(saved);
+        PrescriptionResponse created = prescriptionMapper.toDto(saved);
+        auditTrail.record(ChangeEntityType.PRESCRIPTION, saved.getId(), ChangeOperation.CREATE, null, created);
 
         log.info("Prescription with medications created successfully with ID: {} for patient ID: {}", saved.getId(), request.getPatientId());
-        return prescriptionMapper.toDto(saved);
+        return created;
+    }
+
+    /**
+     * Obtener versión actual de una prescripción (sin cargar la entidad)
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> getPrescriptionVersion(Integer id) {
+        return prescriptionRepository.findVersionById(id);
     }
 
     /**
@@ -212,37 +348,99 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
      */
     @Transactional
     public Optional<PrescriptionResponse> updatePrescription(Integer id, PrescriptionRequest request) {
+        return updatePrescription(id, request, null);
+    }
+
+    /**
+     * Actualizar prescripción existente verificando la versión esperada (If-Match)
+     */
+    @Transactional
+    public Optional<PrescriptionResponse> updatePrescription(Integer id, PrescriptionRequest request, Long expectedVersion) {
         log.info("Updating prescription with ID: {}", id);
         
         Optional<PrescriptionDomain> existingPrescription = prescriptionRepository.findByIdAndIsActiveTrue(id);
         
         if (existingPrescription.isPresent()) {
             PrescriptionDomain prescription = existingPrescription.get();
+            checkVersion(id, prescription.getVersion(), expectedVersion);
+            PrescriptionResponse before = prescriptionMapper.toDto(prescription);
+            boolean wasFilled = Boolean.TRUE.equals(prescription.getIsFilled());
             prescriptionMapper.updateEntity(prescription, request);
+            applyFillToInventory(prescription, wasFilled);
             
-            PrescriptionDomain updatedPrescription = prescriptionRepository.save(prescription);
+            // Flush para que la respuesta (y su ETag) lleve la versión ya incrementada
+            PrescriptionDomain updatedPrescription = prescriptionRepository.saveAndFlush(prescription);
+            changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, id, ChangeOperation.UPDATE);
+            prescriptionAnalyticsIndex.applyAfterCommit(updatedPrescription);
+            PrescriptionResponse after = prescriptionMapper.toDto(updatedPrescription);
+            auditTrail.record(ChangeEntityType.PRESCRIPTION, id, ChangeOperation.UPDATE, before, after);
             
             log.info("Prescription updated successfully with ID: {}", id);
-            return Optional.of(prescriptionMapper.toDto(updatedPrescription));
+            return Optional.of(after);
         } else {
             log.warn("Cannot update - Prescription not found with ID: {}", id);
             return Optional.empty();
         }
     }
 
+    /**
+     * Marcar prescripciones como surtidas (o no) por lotes: los eventos se confirman con group commit y
+     * este método vuelve recién cuando el lote de cada uno confirmó. Sin transacción propia: la espera
+     * no retiene conexiones del pool.
+     *
+     * @throws IllegalStateException si la cola de surtidos está llena o la confirmación no llega a tiempo
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<PrescriptionFillResult> fillPrescriptions(List<PrescriptionFillEvent> events) {
+        log.info("Queueing {} prescription fill events", events.size());
+        
+        List<CompletableFuture<PrescriptionFillStatus>> pending = prescriptionFillBatcher.submit(events);
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).get(fillAckTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Prescription fills not committed within " + fillAckTimeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for prescription fills", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Prescription fill batch failed", e.getCause());
+        }
+        
+        List<PrescriptionFillResult> results = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            PrescriptionFillEvent event = events.get(i);
+            results.add(new PrescriptionFillResult(event.prescriptionId(), event.filledOrDefault(), pending.get(i).join()));
+        }
+        return results;
+    }
+
     /**
      * Eliminar prescripción (soft delete)
      */
     @Transactional
     public boolean deletePrescription(Integer id) {
+        return deletePrescription(id, null);
+    }
+
+    /**
+     * Eliminar prescripción (soft delete) verificando la versión esperada (If-Match)
+     */
+    @Transactional
+    public boolean deletePrescription(Integer id, Long expectedVersion) {
         log.info("Deleting prescription with ID: {}", id);
         
         Optional<PrescriptionDomain> prescription = prescriptionRepository.findByIdAndIsActiveTrue(id);
         
         if (prescription.isPresent()) {
             PrescriptionDomain prescriptionToDelete = prescription.get();
-            prescriptionToDelete.setIsActive(false);
+            checkVersion(id, prescriptionToDelete.getVersion(), expectedVersion);
+            PrescriptionResponse before = prescriptionMapper.toDto(prescriptionToDelete);
+            markDeleted(prescriptionToDelete);
             prescriptionRepository.save(prescriptionToDelete);
+            changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, id, ChangeOperation.DELETE);
+            auditTrail.record(ChangeEntityType.PRESCRIPTION, id, ChangeOperation.DELETE, before,
+                    prescriptionMapper.toDto(prescriptionToDelete));
+            prescriptionAnalyticsIndex.applyAfterCommit(prescriptionToDelete);
             
             log.info("Prescription deleted successfully with ID: {}", id);
             return true;
@@ -253,19 +451,168 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
     }
 
     /**
-     * Obtener prescripciones por paciente
+     * Reservar (o devolver) el stock de las líneas activas si la prescripción cambió de estado de surtido
+     */
+    private void applyFillToInventory(PrescriptionDomain prescription, boolean wasFilled) {
+        boolean filled = Boolean.TRUE.equals(prescription.getIsFilled());
+        if (filled == wasFilled) {
+            return;
+        }
+        Map<Integer, Long> units = new HashMap<>();
+        if (prescription.getMedications() != null) {
+            for (PrescriptionMedicationDomain line : prescription.getMedications()) {
+                if (Boolean.TRUE.equals(line.getIsActive()) && line.getMedication() != null && line.getQuantity() != null) {
+                    units.merge(line.getMedication().getId(), line.getQuantity().longValue(), Long::sum);
+                }
+            }
+        }
+        if (!filled) {
+            medicationInventory.restore(units);
+        } else if (!medicationInventory.reserve(units)) {
+            throw new InsufficientStockException(prescription.getId());
+        }
+    }
+
+    /**
+     * En una prescripción ya surtida, reservar (delta positivo) o devolver (negativo) el stock de una línea
+     * agregada, quitada o con otra cantidad
+     */
+    private void applyLineToInventory(PrescriptionDomain prescription, Integer medicationId, long delta) {
+        if (delta == 0 || !Boolean.TRUE.equals(prescription.getIsFilled())) {
+            return;
+        }
+        if (delta < 0) {
+            medicationInventory.restore(Map.of(medicationId, -delta));
+        } else if (!medicationInventory.reserve(Map.of(medicationId, delta))) {
+            throw new InsufficientStockException(prescription.getId());
+        }
+    }
+
+    private static long units(PrescriptionMedicationDomain line) {
+        return line.getQuantity() != null ? line.getQuantity().longValue() : 0;
+    }
+
+    @Override
+    protected void markDeleted(PrescriptionDomain prescription) {
+        prescription.setIsActive(false);
+        prescription.setLastModified(java.time.LocalDateTime.now());
+    }
+
+    /**
+     * Obtener prescripciones por paciente, las más recientes primero (hasta MAX_PATIENT_PRESCRIPTIONS; para más
+     * usar el historial paginado)
      */
     @Transactional(readOnly = true)
     public List<PrescriptionResponse> getPrescriptionsByPatient(Integer patientId) {
         log.info("Getting prescriptions for patient ID: {}", patientId);
         
-        Pageable pageable = PageRequest.of(0, 1000); // Obtener todas las prescripciones del paciente
-        Page<PrescriptionDomain> prescriptions = prescriptionRepository.findByPatientIdAndIsActiveTrue(patientId, pageable);
+        Pageable pageable = PageRequest.of(0, MAX_PATIENT_PRESCRIPTIONS, HISTORY_SORT);
+        Page<PrescriptionResponse> history = loadPageInOrder(prescriptionRepository.findIdsByPatientId(patientId, pageable), pageable);
+        
+        log.info("Found {} prescriptions for patient ID: {}", history.getTotalElements(), patientId);
+        return history.getContent();
+    }
+
+    /**
+     * Historial paginado de prescripciones de un paciente, ordenado por fecha descendente.
+     * Pagina sobre IDs y luego carga prescripciones, líneas y medicamentos con un único JOIN FETCH,
+     * por lo que cada página cuesta un número fijo de consultas (conteo + IDs + fetch).
+     */
+    @Transactional(readOnly = true)
+    public Page<PrescriptionResponse> getPatientPrescriptionHistory(Integer patientId, int page, int size) {
+        log.info("Getting prescription history for patient ID: {} - page={}, size={}", patientId, page, size);
+        
+        Pageable pageable = PageRequest.of(page, Math.min(size, MAX_HISTORY_PAGE_SIZE), HISTORY_SORT);
+        Page<Integer> idsPage = prescriptionRepository.findIdsByPatientId(patientId, pageable);
+        
+        return loadPageInOrder(idsPage, pageable);
+    }
+
+    /**
+     * Búsqueda full-text en médico, matrícula y notas (columna generada tsvector con índice GIN),
+     * ordenada por relevancia y filtrable por paciente y rango de fechas de prescripción.
+     * Admite los modos de paginación EXACT y SLICE; APPROXIMATE se atiende como SLICE (ver {@link #searchMode}).
+     */
+    @Transactional(readOnly = true)
+    public Page<PrescriptionResponse> searchPrescriptions(String query, Integer patientId,
+                                                          java.time.LocalDate fromDate, java.time.LocalDate toDate,
+                                                          int page, int size, PaginationMode mode) {
+        // Sin Sort: el orden por relevancia está en la consulta nativa
+        Pageable pageable = PageRequest.of(page, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+        java.time.LocalDate from = fromDate != null ? fromDate : MIN_PRESCRIPTION_DATE;
+        java.time.LocalDate to = toDate != null ? toDate : MAX_PRESCRIPTION_DATE;
+        // Sin conteo cacheado: no aplica en SLICE ni EXACT
+        Page<Integer> idsPage = findPage(pageable, searchMode(mode),
+                p -> prescriptionRepository.searchIdsByText(query, patientId, from, to, p),
+                p -> prescriptionRepository.searchIdSliceByText(query, patientId, from, to, p),
+                null, null);
+        
+        READ_LOG.atInfo().addKeyValue("query", query).addKeyValue("patientId", patientId)
+                .addKeyValue("fromDate", fromDate).addKeyValue("toDate", toDate)
+                .addKeyValue("page", page).addKeyValue("size", size).addKeyValue("mode", mode)
+                .addKeyValue("returned", idsPage.getNumberOfElements()).log("prescriptions.search");
+        return loadPageInOrder(idsPage, pageable);
+    }
+
+    /**
+     * Modo de paginación efectivo de la búsqueda full-text: el texto libre no es una clave acotada para el
+     * cache de conteos aproximados, así que APPROXIMATE se atiende como SLICE
+     */
+    public static PaginationMode searchMode(PaginationMode requested) {
+        return requested == PaginationMode.APPROXIMATE ? PaginationMode.SLICE : requested;
+    }
+
+    /**
+     * Cargar con un único JOIN FETCH las prescripciones de una página de IDs, respetando su orden
+     */
+    private Page<PrescriptionResponse> loadPageInOrder(Page<Integer> idsPage, Pageable pageable) {
+        if (idsPage.isEmpty()) {
+            return new PageImpl<>(new java.util.ArrayList<>(), pageable, idsPage.getTotalElements());
+        }
+        
+        java.util.Map<Integer, PrescriptionDomain> byId = new java.util.HashMap<>();
+        for (PrescriptionDomain prescription : prescriptionRepository.findAllWithMedicationsByIdIn(idsPage.getContent())) {
+            byId.put(prescription.getId(), prescription);
+        }
         
-        log.info("Found {} prescriptions for patient ID: {}", prescriptions.getTotalElements(), patientId);
-        return prescriptions.getContent().stream()
+        // Respetar el orden de la página de IDs
+        List<PrescriptionResponse> content = idsPage.getContent().stream()
+                .map(byId::get)
+                .filter(java.util.Objects::nonNull)
                 .map(prescriptionMapper::toDto)
                 .collect(java.util.stream.Collectors.toList());
+        
+        return new PageImpl<>(content, pageable, idsPage.getTotalElements());
+    }
+
+    /**
+     * Resumen de prescripciones de un paciente (solo conteos, una consulta agregada)
+     */
+    @Transactional(readOnly = true)
+    public PatientPrescriptionSummary getPatientPrescriptionSummary(Integer patientId) {
+        log.info("Getting prescription summary for patient ID: {}", patientId);
+        
+        PrescriptionRepository.PrescriptionSummaryView view = prescriptionRepository.summarizeByPatientId(patientId);
+        
+        long total = view != null && view.getTotalPrescriptions() != null ? view.getTotalPrescriptions() : 0L;
+        long filled = view != null && view.getFilledPrescriptions() != null ? view.getFilledPrescriptions() : 0L;
+        long lines = view != null && view.getActiveMedicationLines() != null ? view.getActiveMedicationLines() : 0L;
+        
+        return new PatientPrescriptionSummary(patientId, total, filled, total - filled, lines,
+                view != null ? view.getLastPrescriptionDate() : null);
+    }
+
+    /**
+     * Analíticas de prescripciones por mes, medicamento y matrícula, resueltas en memoria
+     *
+     * @throws IllegalStateException si los agregados todavía se están cargando
+     */
+    public PrescriptionAnalyticsReport getPrescriptionAnalytics(java.time.YearMonth fromMonth, java.time.YearMonth toMonth, int top) {
+        if (!prescriptionAnalyticsIndex.isReady()) {
+            throw new IllegalStateException("Prescription analytics are still loading");
+        }
+        int limit = Math.max(1, Math.min(top, MAX_ANALYTICS_TOP));
+        return prescriptionAnalyticsIndex.report(fromMonth, toMonth, limit);
     }
 
     // ================== PRESCRIPTION-MEDICATION METHODS ==================
@@ -287,10 +634,26 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
     }
 
     /**
-     * Agregar medicamento a prescripción por IDs
+     * Agregar medicamento a prescripción por IDs (serializado por prescripción, con reintento ante conflictos de versión)
+     *
+     * @throws DuplicatePrescriptionLineException si el medicamento ya tiene una línea activa
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public PrescriptionMedicationResponse addMedicationToPrescriptionByIds(Integer prescriptionId, Integer medicationId, PrescriptionMedicationRequest request) {
+        return prescriptionLineLocks.mutate(prescriptionId, () -> {
+            try {
+                return transactionTemplate.execute(status -> doAddMedicationToPrescription(prescriptionId, medicationId, request));
+            } catch (DataIntegrityViolationException e) {
+                // Otra instancia agregó la misma línea en paralelo: lo rechaza el índice único parcial
+                if (isActiveLineUniqueViolation(e)) {
+                    throw new DuplicatePrescriptionLineException(prescriptionId, medicationId);
+                }
+                throw e;
+            }
+        });
+    }
+
+    private PrescriptionMedicationResponse doAddMedicationToPrescription(Integer prescriptionId, Integer medicationId, PrescriptionMedicationRequest request) {
         log.info("Adding medication ID {} to prescription ID {}", medicationId, prescriptionId);
         
         // Buscar prescripción
@@ -308,14 +671,14 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
         PrescriptionDomain prescription = prescriptionOpt.get();
         MedicationDomain medication = medicationOpt.get();
         
-        // Verificar si la relación ya existe
+        // Verificar si la relación ya existe (entre las líneas activas, igual que el índice único)
         if (prescription.getMedications() != null) {
             boolean exists = prescription.getMedications().stream()
-                    .anyMatch(pm -> pm.getMedication().getId().equals(medicationId));
+                    .anyMatch(pm -> Boolean.TRUE.equals(pm.getIsActive()) && pm.getMedication().getId().equals(medicationId));
             
             if (exists) {
                 log.warn("Medication {} is already associated with prescription {}", medicationId, prescriptionId);
-                throw new RuntimeException("Medication is already associated with this prescription");
+                throw new DuplicatePrescriptionLineException(prescriptionId, medicationId);
             }
         }
         
@@ -349,15 +712,22 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
             prescription.setMedications(new java.util.ArrayList<>());
         }
         prescription.getMedications().add(prescriptionMedication);
+        prescription.setLastModified(java.time.LocalDateTime.now());
+        applyLineToInventory(prescription, medicationId, units(prescriptionMedication));
         
-        PrescriptionDomain savedPrescription = prescriptionRepository.save(prescription);
+        // Flush: los conflictos de versión y de índice único aparecen acá, dentro del reintento
+        PrescriptionDomain savedPrescription = prescriptionRepository.saveAndFlush(prescription);
+        changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, prescriptionId, ChangeOperation.UPDATE);
+        prescriptionAnalyticsIndex.applyAfterCommit(savedPrescription);
         
         // Encontrar el medicamento recién agregado para obtener su ID generado
         PrescriptionMedicationDomain savedPrescriptionMedication = savedPrescription.getMedications()
                 .stream()
-                .filter(pm -> pm.getMedication().getId().equals(medicationId))
+                .filter(pm -> Boolean.TRUE.equals(pm.getIsActive()) && pm.getMedication().getId().equals(medicationId))
                 .findFirst()
                 .orElseThrow(() -> new RuntimeException("Error retrieving saved prescription medication"));
+        auditTrail.record(ChangeEntityType.PRESCRIPTION, prescriptionId, ChangeOperation.UPDATE, null,
+                lineSnapshot(savedPrescriptionMedication));
         
         // Crear respuesta
         PrescriptionMedicationResponse response = new PrescriptionMedicationResponse();
@@ -395,10 +765,15 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
     }
 
     /**
-     * Remover medicamento de prescripción por IDs
+     * Remover medicamento de prescripción por IDs (serializado por prescripción, con reintento ante conflictos de versión)
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean removeMedicationFromPrescriptionByIds(Integer prescriptionId, Integer medicationId) {
+        return prescriptionLineLocks.mutate(prescriptionId, () -> Boolean.TRUE.equals(
+                transactionTemplate.execute(status -> doRemoveMedicationFromPrescription(prescriptionId, medicationId))));
+    }
+
+    private boolean doRemoveMedicationFromPrescription(Integer prescriptionId, Integer medicationId) {
         log.info("Removing medication ID {} from prescription ID {}", medicationId, prescriptionId);
         
         // Buscar prescripción
@@ -425,10 +800,16 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
         }
         
         PrescriptionMedicationDomain prescriptionMedication = prescriptionMedicationOpt.get();
+        Map<String, Object> before = lineSnapshot(prescriptionMedication);
         prescriptionMedication.setIsActive(false);
         prescriptionMedication.setLastModified(java.time.LocalDateTime.now());
+        prescription.setLastModified(java.time.LocalDateTime.now());
+        applyLineToInventory(prescription, medicationId, -units(prescriptionMedication));
         
-        prescriptionRepository.save(prescription);
+        prescriptionRepository.saveAndFlush(prescription);
+        changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, prescriptionId, ChangeOperation.UPDATE);
+        auditTrail.record(ChangeEntityType.PRESCRIPTION, prescriptionId, ChangeOperation.UPDATE, before, null);
+        prescriptionAnalyticsIndex.applyAfterCommit(prescription);
         
         log.info("Medication ID {} successfully removed from prescription ID {}", medicationId, prescriptionId);
         return true;
@@ -482,11 +863,17 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
     }
 
     /**
-     * Actualizar relación prescripción-medicamento por IDs
+     * Actualizar relación prescripción-medicamento por IDs (serializado por prescripción, con reintento ante conflictos de versión)
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Optional<PrescriptionMedicationResponse> updatePrescriptionMedicationByIds(
             Integer prescriptionId, Integer medicationId, PrescriptionMedicationRequest request) {
+        return prescriptionLineLocks.mutate(prescriptionId, () ->
+                transactionTemplate.execute(status -> doUpdatePrescriptionMedication(prescriptionId, medicationId, request)));
+    }
+
+    private Optional<PrescriptionMedicationResponse> doUpdatePrescriptionMedication(
+            Integer prescriptionId, Integer medicationId, PrescriptionMedicationRequest request) {
         log.info("Updating prescription-medication relationship: prescription ID: {}, medication ID: {}", 
                 prescriptionId, medicationId);
         
@@ -509,6 +896,8 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
         }
         
         PrescriptionMedicationDomain prescriptionMedication = prescriptionMedicationOpt.get();
+        Map<String, Object> before = lineSnapshot(prescriptionMedication);
+        long unitsBefore = units(prescriptionMedication);
         
         // Actualizar campos
         if (request.getDosage() != null) {
@@ -528,8 +917,13 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
         }
         
         prescriptionMedication.setLastModified(java.time.LocalDateTime.now());
+        prescription.setLastModified(java.time.LocalDateTime.now());
+        applyLineToInventory(prescription, medicationId, units(prescriptionMedication) - unitsBefore);
         
-        prescriptionRepository.save(prescription);
+        prescriptionRepository.saveAndFlush(prescription);
+        changeEventRecorder.record(ChangeEntityType.PRESCRIPTION, prescriptionId, ChangeOperation.UPDATE);
+        auditTrail.record(ChangeEntityType.PRESCRIPTION, prescriptionId, ChangeOperation.UPDATE, before,
+                lineSnapshot(prescriptionMedication));
         
         // Crear respuesta
         PrescriptionMedicationResponse response = new PrescriptionMedicationResponse();
@@ -553,4 +947,23 @@ public class PrescriptionService extends AbstractBaseService<PrescriptionDomain,
                 prescriptionId, medicationId);
         return Optional.of(response);
     }
-}
\ No newline at end of file
+
+    private static boolean isActiveLineUniqueViolation(DataIntegrityViolationException e) {
+        Throwable cause = e.getMostSpecificCause();
+        return cause.getMessage() != null && cause.getMessage().contains(ACTIVE_LINE_UNIQUE_INDEX);
+    }
+
+    /**
+     * Estado de una línea para la auditoría: {medications: {medicationId: {...}}} (diff "medications.12.dosage")
+     */
+    private static Map<String, Object> lineSnapshot(PrescriptionMedicationDomain line) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("lineId", line.getId());
+        fields.put("dosage", line.getDosage());
+        fields.put("frequency", line.getFrequency());
+        fields.put("duration", line.getDuration());
+        fields.put("instructions", line.getInstructions());
+        fields.put("quantity", line.getQuantity());
+        return Map.of("medications", Map.of(String.valueOf(line.getMedication().getId()), fields));
+    }
+}
@@ -0,0 +1,87 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Invalidación de los resultados de {@link ReadCoalescer} a partir de los eventos del outbox change_event,
+ * así cubre cualquier camino de escritura y no solo los controllers.
+ *
+ * - Escrituras de esta instancia: ChangeEventRecorder avisa después del commit (también el surtido por lotes,
+ *   la restauración del archivo y la fusión de pacientes).
+ * - Escrituras de otras instancias: con result-ttl-ms > 0 se lee el outbox cada invalidation-poll-ms con
+ *   {@link OutboxTail}; entre instancias un resultado puede quedar viejo hasta ese intervalo (más la espera
+ *   de huecos de gap-timeout-ms).
+ */
+@Component
+@Slf4j
+public class ReadCacheInvalidator {
+
+    private static final int OUTBOX_BATCH_SIZE = 500;
+
+    private final ReadCoalescer readCoalescer;
+    private final OutboxTail outbox;
+
+    private volatile boolean positioned = false;
+
+    public ReadCacheInvalidator(ReadCoalescer readCoalescer,
+                                ChangeEventRepository changeEventRepository,
+                                @Value("${patients.change-feed.gap-timeout-ms:2000}") long gapTimeoutMs) {
+        this.readCoalescer = readCoalescer;
+        this.outbox = new OutboxTail(changeEventRepository, OUTBOX_BATCH_SIZE, gapTimeoutMs);
+    }
+
+    /**
+     * Descartar los resultados afectados por un cambio confirmado
+     */
+    public void invalidate(ChangeEntityType entityType, Integer entityId, ChangeOperation operation) {
+        switch (entityType) {
+            case PATIENT -> {
+                readCoalescer.invalidate("patient", entityId);
+                readCoalescer.invalidateAll("patient-search");
+                // La baja por fusión mueve sus prescripciones a otro paciente
+                if (operation == ChangeOperation.DELETE) {
+                    readCoalescer.invalidateAll("prescription");
+                }
+            }
+            case MEDICATION -> {
+                readCoalescer.invalidate("medication", entityId);
+                readCoalescer.invalidateAll("medication-search");
+                readCoalescer.invalidateAll("medication-ranked-search");
+                // Las líneas de prescripción muestran datos del medicamento
+                readCoalescer.invalidateAll("prescription");
+            }
+            case PRESCRIPTION -> readCoalescer.invalidate("prescription", entityId);
+        }
+    }
+
+    /**
+     * Aplicar los cambios registrados en el outbox (incluye los de otras instancias)
+     */
+    @Scheduled(fixedDelayString = "${patients.coalescing.invalidation-poll-ms:1000}")
+    public void syncFromOutbox() {
+        if (!readCoalescer.isCachingResults()) {
+            return;
+        }
+        if (!positioned) {
+            // Todavía no hay resultados guardados de antes del arranque
+            outbox.seekBeforeLoad();
+            positioned = true;
+        }
+        List<ChangeEvent> events;
+        do {
+            events = outbox.next();
+            for (ChangeEvent event : events) {
+                invalidate(event.entityType(), event.entityId(), event.operation());
+            }
+        } while (outbox.isFull(events));
+    }
+}
@@ -0,0 +1,192 @@
+package com.fiuni.patients.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight para lecturas calientes: peticiones concurrentes con la misma operación y clave
+ * comparten una única llamada en curso (y su resultado), opcionalmente reutilizado durante un TTL corto.
+ *
+ * Debe invocarse por fuera de la transacción (desde el controller hacia el service transaccional):
+ * así solo el "líder" abre transacción y toma conexión del pool, y la demanda de conexiones
+ * escala con las claves distintas y no con las peticiones concurrentes.
+ *
+ * Un seguidor espera al líder como máximo wait-timeout-ms y después lee por su cuenta. Cada invalidación
+ * avanza una época: un líder que empezó antes no guarda su resultado (ya viejo) en recentResults.
+ * Las invalidaciones llegan desde el outbox de cambios ({@link ReadCacheInvalidator}), no desde los controllers.
+ */
+@Component
+@Slf4j
+public class ReadCoalescer {
+
+    private static final int MAX_CACHED_RESULTS = 10_000;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CachedResult> recentResults = new ConcurrentHashMap<>();
+    private final long resultTtlNanos;
+    private final long waitTimeoutMs;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final LongAdder totalReads = new LongAdder();
+    private final LongAdder coalescedReads = new LongAdder();
+
+    public ReadCoalescer(MeterRegistry meterRegistry,
+                         @Value("${patients.coalescing.result-ttl-ms:0}") long resultTtlMs,
+                         @Value("${patients.coalescing.wait-timeout-ms:5000}") long waitTimeoutMs) {
+        this.meterRegistry = meterRegistry;
+        this.resultTtlNanos = resultTtlMs * 1_000_000L;
+        this.waitTimeoutMs = waitTimeoutMs;
+        Gauge.builder("patients.read.coalesce.ratio", this, ReadCoalescer::getCoalesceRatio)
+                .description("Fracción de lecturas resueltas por una llamada ya en curso o un resultado reciente")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ejecutar una lectura compartiendo la llamada con otras peticiones concurrentes de la misma clave
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, Object key, Supplier<T> loader) {
+        String cacheKey = operation + ":" + key;
+        totalReads.increment();
+        counter(operation, "requests").increment();
+
+        if (resultTtlNanos > 0) {
+            CachedResult cached = recentResults.get(cacheKey);
+            if (cached != null && cached.expiresAt() > System.nanoTime()) {
+                markCoalesced(operation);
+                return (T) cached.value();
+            }
+        }
+
+        long startEpoch = epoch.get();
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(cacheKey, mine);
+        if (existing != null) {
+            try {
+                Object value = await(existing);
+                markCoalesced(operation);
+                return (T) value;
+            } catch (TimeoutException e) {
+                // Líder demorado: leer sin compartir antes que encadenar la espera de todos los seguidores
+                counter(operation, "timeout").increment();
+                log.debug("Coalesced read {} timed out after {} ms, loading directly", cacheKey, waitTimeoutMs);
+                return loader.get();
+            }
+        }
+
+        try {
+            T value = loader.get();
+            if (resultTtlNanos > 0) {
+                cacheResult(cacheKey, value, startEpoch);
+            }
+            mine.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Cualquier falla (también Error) libera a los seguidores
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    /**
+     * Descartar el resultado reciente (y la llamada en curso) de una clave tras una escritura
+     */
+    public void invalidate(String operation, Object key) {
+        String cacheKey = operation + ":" + key;
+        epoch.incrementAndGet();
+        recentResults.remove(cacheKey);
+        inFlight.remove(cacheKey);
+    }
+
+    /**
+     * Descartar todos los resultados recientes de una operación (p. ej. búsquedas tras una escritura)
+     */
+    public void invalidateAll(String operation) {
+        String prefix = operation + ":";
+        epoch.incrementAndGet();
+        recentResults.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    /**
+     * true si los resultados se reutilizan durante result-ttl-ms (y hay que invalidarlos)
+     */
+    public boolean isCachingResults() {
+        return resultTtlNanos > 0;
+    }
+
+    /**
+     * Fracción de lecturas que no ejecutaron su propia consulta
+     */
+    public double getCoalesceRatio() {
+        long total = totalReads.sum();
+        return total == 0 ? 0.0 : (double) coalescedReads.sum() / total;
+    }
+
+    private void markCoalesced(String operation) {
+        coalescedReads.increment();
+        counter(operation, "coalesced").increment();
+    }
+
+    private Counter counter(String operation, String outcome) {
+        return Counter.builder("patients.read.coalescer")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private void cacheResult(String cacheKey, Object value, long startEpoch) {
+        if (epoch.get() != startEpoch) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (recentResults.size() >= MAX_CACHED_RESULTS) {
+            recentResults.values().removeIf(c -> c.expiresAt() <= now);
+        }
+        if (recentResults.size() < MAX_CACHED_RESULTS) {
+            CachedResult cached = new CachedResult(value, now + resultTtlNanos);
+            recentResults.put(cacheKey, cached);
+            // Invalidación concurrente con el put: no dejar el resultado viejo
+            if (epoch.get() != startEpoch) {
+                recentResults.remove(cacheKey, cached);
+            }
+        }
+    }
+
+    private Object await(CompletableFuture<Object> future) throws TimeoutException {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for coalesced read", e);
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Coalesced read failed", cause);
+        }
+    }
+
+    private record CachedResult(Object value, long expiresAt) {
+    }
+}
@@ -0,0 +1,117 @@
+package com.fiuni.patients.service;
+
+/**
+ * Código fonético para nombres en español (variante de metaphone adaptada a la pronunciación del español
+ * rioplatense / paraguayo): dos nombres que suenan igual producen el mismo código.
+ *
+ * - Sin acentos ni h muda; b/v, s/z/c(e,i), y/ll, g(e,i)/j, c/k/qu se unifican.
+ * - Solo se conserva la vocal inicial (como "A"); las demás vocales y las consonantes repetidas se omiten.
+ * - Ejemplos: González / Gonsales -> GNSLS, Giménez / Jiménez -> JMNS, Yolanda / Llolanda -> YLNT.
+ */
+public final class SpanishPhoneticEncoder {
+
+    /** Longitud máxima del código: suficiente para separar apellidos y tolerante a finales mal escritos */
+    static final int MAX_LENGTH = 6;
+
+    private SpanishPhoneticEncoder() {
+    }
+
+    /**
+     * Código fonético de una palabra ("" si no tiene letras)
+     */
+    public static String encode(String word) {
+        if (word == null || word.isBlank()) {
+            return "";
+        }
+        String w = lettersOnly(SpanishTextAnalyzer.fold(word));
+        StringBuilder code = new StringBuilder(MAX_LENGTH);
+        String previous = "";
+        int i = 0;
+        while (i < w.length() && code.length() < MAX_LENGTH) {
+            char c = w.charAt(i);
+            char next = i + 1 < w.length() ? w.charAt(i + 1) : '\0';
+            String sound;
+            int consumed = 1;
+            switch (c) {
+                case 'a', 'e', 'i', 'o', 'u' -> sound = code.isEmpty() && i == firstSounding(w) ? "A" : "";
+                case 'h' -> sound = "";
+                case 'b', 'v', 'w' -> sound = "B";
+                case 'c' -> {
+                    if (next == 'h') {
+                        sound = "X";
+                        consumed = 2;
+                    } else if (next == 'e' || next == 'i') {
+                        sound = "S";
+                    } else {
+                        sound = "K";
+                    }
+                }
+                case 'q' -> {
+                    sound = "K";
+                    consumed = next == 'u' ? 2 : 1;
+                }
+                case 'k' -> sound = "K";
+                case 'g' -> {
+                    char after = i + 2 < w.length() ? w.charAt(i + 2) : '\0';
+                    if (next == 'e' || next == 'i') {
+                        sound = "J";
+                    } else if (next == 'u' && (after == 'e' || after == 'i')) {
+                        sound = "G";
+                        consumed = 2;
+                    } else {
+                        sound = "G";
+                    }
+                }
+                case 'j' -> sound = "J";
+                case 'x' -> sound = i == 0 ? "J" : "KS";
+                case 's', 'z' -> sound = "S";
+                case 'l' -> {
+                    if (next == 'l') {
+                        sound = "Y";
+                        consumed = 2;
+                    } else {
+                        sound = "L";
+                    }
+                }
+                case 'y' -> sound = isVowel(next) ? "Y" : "";
+                case 'p' -> {
+                    if (next == 'h') {
+                        sound = "F";
+                        consumed = 2;
+                    } else {
+                        sound = "P";
+                    }
+                }
+                case 'd', 't' -> sound = "T";
+                default -> sound = String.valueOf(Character.toUpperCase(c));
+            }
+            // Consonantes seguidas con el mismo sonido (rr, ss, nn, "sz"...) cuentan una sola vez
+            if (!sound.isEmpty() && !sound.equals(previous)) {
+                code.append(sound);
+            }
+            previous = isVowel(c) ? "" : sound;
+            i += consumed;
+        }
+        return code.length() > MAX_LENGTH ? code.substring(0, MAX_LENGTH) : code.toString();
+    }
+
+    private static String lettersOnly(String folded) {
+        StringBuilder sb = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Posición de la primera letra que suena (la h inicial es muda: Hernández = Ernández) */
+    private static int firstSounding(String w) {
+        return !w.isEmpty() && w.charAt(0) == 'h' ? 1 : 0;
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+}
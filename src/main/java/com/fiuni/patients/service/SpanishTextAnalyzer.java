@@ -0,0 +1,93 @@
+package com.fiuni.patients.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Análisis de texto en español para la búsqueda de medicamentos:
+ * minúsculas, plegado de acentos (náuseas -> nauseas), tokens alfanuméricos, stopwords y stemming liviano
+ * de plurales y género (algoritmo "light" de Savoy, el mismo que usa Lucene para español).
+ */
+public final class SpanishTextAnalyzer {
+
+    private static final int MIN_STEM_LENGTH = 5;
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "al", "ante", "con", "contra", "de", "del", "desde", "durante", "e", "el", "en", "entre",
+            "es", "esta", "este", "hasta", "la", "las", "le", "les", "lo", "los", "mas", "muy", "o", "para",
+            "pero", "por", "que", "se", "si", "sin", "sobre", "su", "sus", "tras", "u", "un", "una", "unas",
+            "unos", "y");
+
+    private SpanishTextAnalyzer() {
+    }
+
+    /**
+     * Tokens normalizados de un texto (con repeticiones, en orden)
+     */
+    public static List<String> analyze(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean tokenChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                String token = folded.substring(start, i);
+                if (!STOPWORDS.contains(token)) {
+                    tokens.add(stem(token));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Minúsculas y sin diacríticos (la ñ se conserva como n, igual que en la consulta)
+     */
+    static String fold(String text) {
+        String decomposed = Normalizer.normalize(text.toLowerCase(java.util.Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stemming liviano: quita terminaciones de plural y género (-s, -es, -ces -> -z, -o/-a/-e)
+     */
+    static String stem(String token) {
+        int len = token.length();
+        if (len < MIN_STEM_LENGTH || !Character.isLetter(token.charAt(len - 1))) {
+            return token;
+        }
+        char last = token.charAt(len - 1);
+        if (last == 'o' || last == 'a' || last == 'e') {
+            return token.substring(0, len - 1);
+        }
+        if (last == 's') {
+            char c2 = token.charAt(len - 2);
+            char c3 = token.charAt(len - 3);
+            if (c2 == 'e' && c3 == 's' && token.charAt(len - 4) == 'e') {
+                return token.substring(0, len - 2);
+            }
+            if (c2 == 'e' && c3 == 'c') {
+                return token.substring(0, len - 3) + "z";
+            }
+            if (c2 == 'o' || c2 == 'a' || c2 == 'e') {
+                return token.substring(0, len - 2);
+            }
+        }
+        return token;
+    }
+}
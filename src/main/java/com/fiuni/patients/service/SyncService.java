@@ -0,0 +1,170 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.clinica.domain.patient.MedicationDomain;
+import com.fiuni.clinica.domain.patient.PatientDomain;
+import com.fiuni.clinica.domain.patient.PrescriptionDomain;
+import com.fiuni.clinica.dto.generated.MedicationResponse;
+import com.fiuni.clinica.dto.generated.PatientResponse;
+import com.fiuni.clinica.dto.generated.PrescriptionResponse;
+import com.fiuni.patients.dto.SyncResponse;
+import com.fiuni.patients.mapper.MedicationMapper;
+import com.fiuni.patients.mapper.PatientMapper;
+import com.fiuni.patients.mapper.PrescriptionMapper;
+import com.fiuni.patients.repository.MedicationRepository;
+import com.fiuni.patients.repository.PatientRepository;
+import com.fiuni.patients.repository.PrescriptionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service de sincronización incremental (delta sync) por watermark.
+ * Cada recurso se recorre en orden (timestamp, id) con continuación keyset, apoyado en índices sobre esas columnas.
+ * El timestamp de las filas sin watermark (datos anteriores a su mantenimiento) es la fecha de alta.
+ */
+@Service
+@Slf4j
+public class SyncService {
+
+    /** Tamaño máximo de página de sincronización */
+    public static final int MAX_SYNC_PAGE_SIZE = 500;
+
+    /** Watermark usado cuando el cliente no envía uno (sincronización completa) */
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final PatientRepository patientRepository;
+    private final MedicationRepository medicationRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final PatientMapper patientMapper;
+    private final MedicationMapper medicationMapper;
+    private final PrescriptionMapper prescriptionMapper;
+
+    public SyncService(PatientRepository patientRepository,
+                       MedicationRepository medicationRepository,
+                       PrescriptionRepository prescriptionRepository,
+                       PatientMapper patientMapper,
+                       MedicationMapper medicationMapper,
+                       PrescriptionMapper prescriptionMapper) {
+        this.patientRepository = patientRepository;
+        this.medicationRepository = medicationRepository;
+        this.prescriptionRepository = prescriptionRepository;
+        this.patientMapper = patientMapper;
+        this.medicationMapper = medicationMapper;
+        this.prescriptionMapper = prescriptionMapper;
+    }
+
+    /**
+     * Pacientes modificados desde el watermark
+     */
+    @Transactional(readOnly = true)
+    public SyncResponse<PatientResponse> getPatientsChangedSince(LocalDateTime since, Integer afterId, int limit) {
+        log.info("Syncing patients changed since {} (afterId={}, limit={})", since, afterId, limit);
+
+        int pageSize = normalizeLimit(limit);
+        List<PatientDomain> changed = patientRepository.findChangedSince(
+                since != null ? since : EPOCH, afterId != null ? afterId : 0, pageSize);
+
+        List<PatientResponse> upserts = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        for (PatientDomain patient : changed) {
+            if (patient.isActive()) {
+                upserts.add(patientMapper.toDto(patient));
+            } else {
+                deletedIds.add(patient.getId());
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return new SyncResponse<>(upserts, deletedIds, since, afterId, false);
+        }
+        PatientDomain last = changed.get(changed.size() - 1);
+        LocalDateTime watermark = last.getUpdatedAt() != null ? last.getUpdatedAt() : last.getCreatedAt();
+        return new SyncResponse<>(upserts, deletedIds, watermark, last.getId(), changed.size() == pageSize);
+    }
+
+    /**
+     * Medicamentos modificados desde el watermark
+     */
+    @Transactional(readOnly = true)
+    public SyncResponse<MedicationResponse> getMedicationsChangedSince(LocalDateTime since, Integer afterId, int limit) {
+        log.info("Syncing medications changed since {} (afterId={}, limit={})", since, afterId, limit);
+
+        int pageSize = normalizeLimit(limit);
+        List<MedicationDomain> changed = medicationRepository.findChangedSince(
+                since != null ? since : EPOCH, afterId != null ? afterId : 0, pageSize);
+
+        List<MedicationResponse> upserts = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        for (MedicationDomain medication : changed) {
+            if (Boolean.TRUE.equals(medication.getIsActive())) {
+                upserts.add(medicationMapper.toDto(medication));
+            } else {
+                deletedIds.add(medication.getId());
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return new SyncResponse<>(upserts, deletedIds, since, afterId, false);
+        }
+        MedicationDomain last = changed.get(changed.size() - 1);
+        LocalDateTime watermark = last.getLastModified() != null ? last.getLastModified() : last.getCreatedDate();
+        return new SyncResponse<>(upserts, deletedIds, watermark, last.getId(), changed.size() == pageSize);
+    }
+
+    /**
+     * Prescripciones modificadas desde el watermark.
+     * Primero se leen solo los watermarks; las activas se cargan con líneas y medicamentos en un único JOIN FETCH.
+     */
+    @Transactional(readOnly = true)
+    public SyncResponse<PrescriptionResponse> getPrescriptionsChangedSince(LocalDateTime since, Integer afterId, int limit) {
+        log.info("Syncing prescriptions changed since {} (afterId={}, limit={})", since, afterId, limit);
+
+        int pageSize = normalizeLimit(limit);
+        List<PrescriptionRepository.ChangeWatermarkView> changed = prescriptionRepository.findChangedSince(
+                since != null ? since : EPOCH, afterId != null ? afterId : 0, pageSize);
+
+        if (changed.isEmpty()) {
+            return new SyncResponse<>(new ArrayList<>(), new ArrayList<>(), since, afterId, false);
+        }
+
+        List<Integer> activeIds = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        for (PrescriptionRepository.ChangeWatermarkView view : changed) {
+            if (Boolean.TRUE.equals(view.getActive())) {
+                activeIds.add(view.getId());
+            } else {
+                deletedIds.add(view.getId());
+            }
+        }
+
+        List<PrescriptionResponse> upserts = new ArrayList<>();
+        if (!activeIds.isEmpty()) {
+            Map<Integer, PrescriptionDomain> byId = new HashMap<>();
+            for (PrescriptionDomain prescription : prescriptionRepository.findAllWithMedicationsByIdIn(activeIds)) {
+                byId.put(prescription.getId(), prescription);
+            }
+            for (Integer id : activeIds) {
+                PrescriptionDomain prescription = byId.get(id);
+                if (prescription != null) {
+                    upserts.add(prescriptionMapper.toDto(prescription));
+                }
+            }
+        }
+
+        PrescriptionRepository.ChangeWatermarkView last = changed.get(changed.size() - 1);
+        return new SyncResponse<>(upserts, deletedIds, last.getLastModified(), last.getId(), changed.size() == pageSize);
+    }
+
+    private int normalizeLimit(int limit) {
+        if (limit <= 0) {
+            return 100;
+        }
+        return Math.min(limit, MAX_SYNC_PAGE_SIZE);
+    }
+}
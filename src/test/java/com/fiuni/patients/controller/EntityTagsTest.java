@@ -0,0 +1,57 @@
+package com.fiuni.patients.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Versión esperada de If-Match con EntityTags: comparación fuerte, listas de ETags y ETags de otra entidad.
+ */
+class EntityTagsTest {
+
+    private final AtomicInteger versionLookups = new AtomicInteger();
+
+    @Test
+    void missingHeaderOrWildcardHasNoPrecondition() {
+        assertThat(EntityTags.expectedVersion(null, 7, current(3))).isEmpty();
+        assertThat(EntityTags.expectedVersion("  ", 7, current(3))).isEmpty();
+        assertThat(EntityTags.expectedVersion("*", 7, current(3))).isEmpty();
+    }
+
+    @Test
+    void singleStrongTagIsUsedWithoutLookingUpTheVersion() {
+        assertThat(EntityTags.expectedVersion("\"7-3\"", 7, current(5))).contains(3L);
+        assertThat(versionLookups.get()).isZero();
+    }
+
+    @Test
+    void weakTagsNeverMatch() {
+        assertThat(EntityTags.expectedVersion("W/\"7-3\"", 7, current(3))).contains(-1L);
+        assertThat(EntityTags.expectedVersion("W/\"7-3\", \"7-2\"", 7, current(3))).contains(2L);
+    }
+
+    @Test
+    void listPicksTheMemberMatchingTheCurrentVersion() {
+        assertThat(EntityTags.expectedVersion("\"7-2\", \"7-3\"", 7, current(3))).contains(3L);
+        assertThat(EntityTags.expectedVersion("\"7-1\", \"7-2\"", 7, current(3))).contains(-1L);
+        assertThat(versionLookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    void tagsOfOtherEntitiesOrMalformedNeverMatch() {
+        assertThat(EntityTags.expectedVersion("\"8-3\"", 7, current(3))).contains(-1L);
+        assertThat(EntityTags.expectedVersion("\"7-x\"", 7, current(3))).contains(-1L);
+        assertThat(EntityTags.expectedVersion("\"8-3\", \"7-3\"", 7, current(3))).contains(3L);
+    }
+
+    private Supplier<Optional<Long>> current(long version) {
+        return () -> {
+            versionLookups.incrementAndGet();
+            return Optional.of(version);
+        };
+    }
+}
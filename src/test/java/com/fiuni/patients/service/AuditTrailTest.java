@@ -0,0 +1,243 @@
+package com.fiuni.patients.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.AuditLogRepository;
+import com.fiuni.patients.repository.AuditLogRepository.AuditRow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Diff {campo: {before, after}} de AuditTrail (rutas anidadas, nulos como ausentes) y los caminos de commit y
+ * rollback en modo SYNC y ASYNC, sobre un repositorio que captura los lotes y una transacción sin base.
+ */
+class AuditTrailTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CapturingRepository repository = new CapturingRepository();
+    private final RecordingTransactionManager transactionManager = new RecordingTransactionManager(repository);
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+    @Test
+    void diffUsesDottedPathsForNestedFields() throws Exception {
+        JsonNode changes = diffOf(
+                Map.of("name", "Ana", "address", Map.of("city", "Asunción", "street", "Palma")),
+                Map.of("name", "Ana", "address", Map.of("city", "Luque", "street", "Palma")));
+
+        assertThat(changes.size()).isEqualTo(1);
+        assertThat(changes.get("address.city").get("before").asText()).isEqualTo("Asunción");
+        assertThat(changes.get("address.city").get("after").asText()).isEqualTo("Luque");
+    }
+
+    @Test
+    void diffTreatsNullFieldsAsAbsent() throws Exception {
+        Map<String, Object> before = new HashMap<>();
+        before.put("name", "Ana");
+        before.put("phone", null);
+        Map<String, Object> nestedBefore = new HashMap<>();
+        nestedBefore.put("city", null);
+        before.put("address", nestedBefore);
+
+        JsonNode unchanged = diffOf(before, Map.of("name", "Ana", "address", Map.of()));
+        assertThat(unchanged.isEmpty()).isTrue();
+
+        JsonNode changes = diffOf(before, Map.of("name", "Ana", "phone", "0981", "address", Map.of("city", "Luque")));
+        assertThat(changes.size()).isEqualTo(2);
+        assertThat(changes.get("phone").get("before").isNull()).isTrue();
+        assertThat(changes.get("phone").get("after").asText()).isEqualTo("0981");
+        assertThat(changes.get("address.city").get("before").isNull()).isTrue();
+        assertThat(changes.get("address.city").get("after").asText()).isEqualTo("Luque");
+    }
+
+    @Test
+    void diffOfCreationAndDeletionListsEveryLeaf() throws Exception {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("quantity", 2);
+        value.put("dose", Map.of("amount", 500));
+
+        JsonNode created = diffOf(null, value);
+        assertThat(created.size()).isEqualTo(2);
+        assertThat(created.get("quantity").get("before").isNull()).isTrue();
+        assertThat(created.get("quantity").get("after").asInt()).isEqualTo(2);
+        assertThat(created.get("dose.amount").get("after").asInt()).isEqualTo(500);
+
+        JsonNode deleted = diffOf(value, null);
+        assertThat(deleted.get("dose.amount").get("before").asInt()).isEqualTo(500);
+        assertThat(deleted.get("dose.amount").get("after").isNull()).isTrue();
+    }
+
+    @Test
+    void diffComparesListsAndScalarsAsWholeValues() throws Exception {
+        JsonNode lists = diffOf(Map.of("lines", List.of(1, 2)), Map.of("lines", List.of(1, 3)));
+        assertThat(lists.size()).isEqualTo(1);
+        assertThat(lists.get("lines").get("before").toString()).isEqualTo("[1,2]");
+        assertThat(lists.get("lines").get("after").toString()).isEqualTo("[1,3]");
+
+        JsonNode scalar = diffOf(1, 2);
+        assertThat(scalar.get("value").get("before").asInt()).isEqualTo(1);
+        assertThat(scalar.get("value").get("after").asInt()).isEqualTo(2);
+
+        assertThat(diffOf(Map.of("lines", List.of(1, 2)), Map.of("lines", List.of(1, 2))).isEmpty()).isTrue();
+    }
+
+    @Test
+    void syncInsertsBeforeCommitInsideTheTransaction() {
+        AuditTrail trail = auditTrail(AuditTrail.Durability.SYNC);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            trail.record(ChangeEntityType.PATIENT, 1, ChangeOperation.UPDATE, "tester", Map.of("a", 1), Map.of("a", 2));
+            trail.record(ChangeEntityType.PATIENT, 2, ChangeOperation.UPDATE, "tester", Map.of("a", 1), Map.of("a", 3));
+            assertThat(repository.batches).isEmpty();
+        });
+
+        // Un único lote con las dos entradas, ya insertado cuando la transacción confirmó
+        assertThat(repository.batches).hasSize(1);
+        assertThat(repository.batches.get(0)).extracting(AuditRow::entityId).containsExactly(1, 2);
+        assertThat(transactionManager.rowsSeenAtCommit).containsExactly(2);
+    }
+
+    @Test
+    void syncRollbackLeavesNoEntries() {
+        AuditTrail trail = auditTrail(AuditTrail.Durability.SYNC);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            trail.record(ChangeEntityType.PRESCRIPTION, 1, ChangeOperation.CREATE, "tester", null, Map.of("a", 1));
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.batches).isEmpty();
+        assertThat(transactionManager.rollbacks).isEqualTo(1);
+
+        // La siguiente transacción no arrastra las entradas revertidas
+        transactionTemplate.executeWithoutResult(status ->
+                trail.record(ChangeEntityType.PRESCRIPTION, 2, ChangeOperation.CREATE, "tester", null, Map.of("a", 1)));
+        assertThat(repository.batches).hasSize(1);
+        assertThat(repository.batches.get(0)).extracting(AuditRow::entityId).containsExactly(2);
+    }
+
+    @Test
+    void asyncEnqueuesOnlyAfterCommit() throws Exception {
+        AuditTrail trail = auditTrail(AuditTrail.Durability.ASYNC);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            trail.record(ChangeEntityType.MEDICATION, 1, ChangeOperation.UPDATE, "tester", Map.of("a", 1), Map.of("a", 2));
+            assertThat(trail.getPendingCount()).isZero();
+        });
+        assertThat(trail.getPendingCount()).isEqualTo(1);
+        assertThat(transactionManager.rowsSeenAtCommit).containsExactly(0);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            trail.record(ChangeEntityType.MEDICATION, 2, ChangeOperation.UPDATE, "tester", Map.of("a", 1), Map.of("a", 2));
+            status.setRollbackOnly();
+        });
+        assertThat(trail.getPendingCount()).isEqualTo(1);
+
+        // Sin escritor arrancado, stop() inserta lo que quedó en el buffer
+        trail.stop();
+        assertThat(repository.batches).hasSize(1);
+        assertThat(repository.batches.get(0)).extracting(AuditRow::entityId).containsExactly(1);
+        assertThat(repository.batches.get(0).get(0).actor()).isEqualTo("tester");
+    }
+
+    @Test
+    void writerFlushesCommittedEntries() throws Exception {
+        AuditTrail trail = auditTrail(AuditTrail.Durability.ASYNC);
+        trail.start();
+        try {
+            for (int id = 1; id <= 3; id++) {
+                int entityId = id;
+                transactionTemplate.executeWithoutResult(status -> trail.record(ChangeEntityType.PATIENT, entityId,
+                        ChangeOperation.UPDATE, "tester", Map.of("a", 1), Map.of("a", 2)));
+            }
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (repository.rowCount() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            trail.stop();
+        }
+
+        assertThat(repository.rowCount()).isEqualTo(3);
+        assertThat(trail.getPendingCount()).isZero();
+    }
+
+    private AuditTrail auditTrail(AuditTrail.Durability durability) {
+        return new AuditTrail(repository, objectMapper, new SimpleMeterRegistry(), durability, 64, 500, 10, 0);
+    }
+
+    /**
+     * Diff de una escritura SYNC fuera de transacción (se inserta en el momento)
+     */
+    private JsonNode diffOf(Object before, Object after) throws Exception {
+        int batches = repository.batches.size();
+        auditTrail(AuditTrail.Durability.SYNC)
+                .record(ChangeEntityType.PATIENT, 1, ChangeOperation.UPDATE, "tester", before, after);
+        assertThat(repository.batches).hasSize(batches + 1);
+        return objectMapper.readTree(repository.batches.get(batches).get(0).changes());
+    }
+
+    private static final class CapturingRepository extends AuditLogRepository {
+
+        private final List<List<AuditRow>> batches = new ArrayList<>();
+
+        CapturingRepository() {
+            super(null);
+        }
+
+        @Override
+        public synchronized void insertBatch(List<AuditRow> rows) {
+            batches.add(List.copyOf(rows));
+        }
+
+        synchronized int rowCount() {
+            return batches.stream().mapToInt(List::size).sum();
+        }
+    }
+
+    /**
+     * Transacción sin recurso: solo dispara las sincronizaciones y anota cuántas filas había al confirmar
+     */
+    private static final class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+        private final CapturingRepository repository;
+        private final List<Integer> rowsSeenAtCommit = new ArrayList<>();
+        private int rollbacks;
+
+        RecordingTransactionManager(CapturingRepository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            rowsSeenAtCommit.add(repository.rowCount());
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            rollbacks++;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Avance del head del change feed sin suscriptores (sobre un outbox en memoria): sigue a los eventos nuevos y
+ * respeta la espera ante huecos de ids.
+ */
+class ChangeFeedServiceTest {
+
+    private final InMemoryOutbox outbox = new InMemoryOutbox();
+
+    @Test
+    void headKeepsAdvancingWithoutSubscribers() {
+        outbox.append(1, 2, 3);
+        ChangeFeedService feed = changeFeed(60_000);
+
+        feed.poll();
+        assertThat(feed.getSubscriberCount()).isZero();
+        assertThat(feed.getHeadCursor()).isEqualTo(3);
+
+        outbox.append(4, 5);
+        feed.poll();
+        assertThat(feed.getHeadCursor()).isEqualTo(5);
+    }
+
+    @Test
+    void headWaitsOnGapsWithoutSubscribers() {
+        outbox.append(1);
+        ChangeFeedService feed = changeFeed(60_000);
+        feed.poll();
+
+        // El id 2 es de una transacción todavía abierta
+        outbox.append(3);
+        feed.poll();
+        assertThat(feed.getHeadCursor()).isEqualTo(1);
+
+        outbox.append(2);
+        feed.poll();
+        assertThat(feed.getHeadCursor()).isEqualTo(3);
+    }
+
+    @Test
+    void headSkipsGapsAfterTimeoutWithoutSubscribers() {
+        outbox.append(1);
+        ChangeFeedService feed = changeFeed(0);
+        feed.poll();
+
+        outbox.append(3, 4);
+        feed.poll();
+        assertThat(feed.getHeadCursor()).isEqualTo(4);
+    }
+
+    private ChangeFeedService changeFeed(long gapTimeoutMs) {
+        return new ChangeFeedService(outbox, 500, 1000, gapTimeoutMs, 60_000, 15);
+    }
+
+    private static final class InMemoryOutbox extends ChangeEventRepository {
+
+        private final List<ChangeEvent> events = new ArrayList<>();
+
+        InMemoryOutbox() {
+            super(null);
+        }
+
+        void append(long... ids) {
+            for (long id : ids) {
+                events.add(new ChangeEvent(id, ChangeEntityType.PATIENT, (int) id, ChangeOperation.UPDATE,
+                        LocalDateTime.now()));
+            }
+            events.sort((a, b) -> Long.compare(a.id(), b.id()));
+        }
+
+        @Override
+        public List<ChangeEvent> findAfter(long cursor, int limit) {
+            return events.stream().filter(e -> e.id() > cursor).limit(limit).toList();
+        }
+
+        @Override
+        public long findMaxId() {
+            return events.stream().mapToLong(ChangeEvent::id).max().orElse(0);
+        }
+    }
+}
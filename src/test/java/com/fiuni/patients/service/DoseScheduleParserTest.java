@@ -0,0 +1,101 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.service.DoseScheduleParser.DoseSchedule;
+import com.fiuni.patients.service.DoseScheduleParser.Status;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Formas de frequency / duration que DoseScheduleParser reconoce (español, inglés y abreviaturas) y las
+ * que deja AS_NEEDED o UNPARSED.
+ */
+class DoseScheduleParserTest {
+
+    @ParameterizedTest(name = "\"{0}\" -> {1} min")
+    @CsvSource(delimiter = '|', value = {
+            "cada 8 horas          | 480",
+            "Cada 12 hs            | 720",
+            "c/8h                  | 480",
+            "cada hora             | 60",
+            "cada 2 días           | 2880",
+            "3 veces al día        | 480",
+            "dos veces por semana  | 5040",
+            "diario                | 1440",
+            "every 12 hours        | 720",
+            "twice daily           | 720",
+            "once daily            | 1440",
+            "QD                    | 1440",
+            "BID                   | 720",
+            "TID                   | 480",
+            "QID                   | 360",
+            "q6h                   | 360",
+            "semanal               | 10080",
+    })
+    void parsesFrequency(String frequency, long intervalMinutes) {
+        DoseSchedule schedule = DoseScheduleParser.parse(frequency, "");
+
+        assertThat(schedule.status()).isEqualTo(Status.PARSED);
+        assertThat(schedule.interval()).isEqualTo(Duration.ofMinutes(intervalMinutes));
+        assertThat(schedule.course()).isNull();
+        assertThat(schedule.untilFinished()).isFalse();
+    }
+
+    @ParameterizedTest(name = "\"{0}\" -> {1} min, hasta terminar {2}")
+    @CsvSource(delimiter = '|', value = {
+            "7 días          | 10080 | false",
+            "7 dias          | 10080 | false",
+            "2 semanas       | 20160 | false",
+            "1 mes           | 43200 | false",
+            "10 days         | 14400 | false",
+            "dosis única     | 0     | false",
+            "crónico         |       | false",
+            "indefinido      |       | false",
+            "''              |       | false",
+            "hasta terminar  |       | true",
+            "until finished  |       | true",
+    })
+    void parsesCourse(String duration, Long courseMinutes, boolean untilFinished) {
+        DoseSchedule schedule = DoseScheduleParser.parse("cada 8 horas", duration);
+
+        assertThat(schedule.status()).isEqualTo(Status.PARSED);
+        assertThat(schedule.interval()).isEqualTo(Duration.ofHours(8));
+        assertThat(schedule.course()).isEqualTo(courseMinutes != null ? Duration.ofMinutes(courseMinutes) : null);
+        assertThat(schedule.untilFinished()).isEqualTo(untilFinished);
+    }
+
+    @ParameterizedTest(name = "\"{0}\" / \"{1}\" -> {2}")
+    @CsvSource(delimiter = '|', value = {
+            "PRN                    | ''              | AS_NEEDED",
+            "según necesidad        | ''              | AS_NEEDED",
+            "cada 8 horas si dolor  | 5 días          | AS_NEEDED",
+            "as needed              | ''              | AS_NEEDED",
+            "tomar con comida       | ''              | UNPARSED",
+            "''                     | 7 días          | UNPARSED",
+            "cada 10 minutos        | ''              | UNPARSED",
+            "cada 8 horas           | hasta mejorar   | UNPARSED",
+    })
+    void leavesUnschedulableLinesOut(String frequency, String duration, Status status) {
+        DoseSchedule schedule = DoseScheduleParser.parse(frequency, duration);
+
+        assertThat(schedule.status()).isEqualTo(status);
+        assertThat(schedule.interval()).isNull();
+    }
+
+    @ParameterizedTest(name = "\"{0}\" -> dosis única")
+    @CsvSource(delimiter = '|', value = {
+            "dosis única  | ''",
+            "stat         | ''",
+            "single dose  | ''",
+    })
+    void singleDoseDefaultsToOneDailyInterval(String frequency, String duration) {
+        DoseSchedule schedule = DoseScheduleParser.parse(frequency, duration);
+
+        assertThat(schedule.status()).isEqualTo(Status.PARSED);
+        assertThat(schedule.interval()).isEqualTo(Duration.ofHours(24));
+        assertThat(schedule.course()).isEqualTo(Duration.ZERO);
+    }
+}
@@ -0,0 +1,154 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.IdempotentResponse;
+import com.fiuni.patients.repository.IdempotencyRepository;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Toma de claves de IdempotencyStore entre dos instancias que comparten idempotency_record (en memoria): fila
+ * pendiente, espera de la respuesta guardada por la otra instancia y respuestas que no se pisan.
+ */
+class IdempotencyStoreTest {
+
+    private static final String KEY = "key-1";
+    private static final String HASH = "hash-1";
+
+    private final InMemoryIdempotencyRecords records = new InMemoryIdempotencyRecords();
+
+    @Test
+    void duplicateOnAnotherInstanceWaitsForTheStoredResponse() throws Exception {
+        IdempotencyStore first = store(120_000, 5_000);
+        IdempotencyStore second = store(120_000, 5_000);
+        assertThat(first.tryAcquire(KEY, HASH)).isNull();
+
+        CompletableFuture<CompletableFuture<IdempotentResponse>> waiting =
+                CompletableFuture.supplyAsync(() -> second.tryAcquire(KEY, HASH));
+        Thread.sleep(250);
+        assertThat(waiting).isNotDone();
+
+        first.complete(KEY, HASH, 201, "application/json", "/patients/7", null, body("created"));
+
+        IdempotentResponse replayed = waiting.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertThat(replayed.statusCode()).isEqualTo(201);
+        assertThat(replayed.location()).isEqualTo("/patients/7");
+    }
+
+    @Test
+    void duplicateOnAnotherInstanceTimesOutWhileTheClaimIsPending() {
+        IdempotencyStore first = store(120_000, 5_000);
+        IdempotencyStore second = store(120_000, 200);
+        assertThat(first.tryAcquire(KEY, HASH)).isNull();
+
+        CompletableFuture<IdempotentResponse> waiting = second.tryAcquire(KEY, HASH);
+
+        assertThatThrownBy(waiting::get).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+    }
+
+    @Test
+    void abandonedClaimCanBeTakenByAnotherInstance() throws Exception {
+        IdempotencyStore first = store(120_000, 5_000);
+        IdempotencyStore second = store(120_000, 5_000);
+        assertThat(first.tryAcquire(KEY, HASH)).isNull();
+
+        first.abandon(KEY);
+
+        assertThat(second.tryAcquire(KEY, HASH)).isNull();
+    }
+
+    @Test
+    void storedResponseIsNotOverwrittenAfterTheClaimExpired() throws Exception {
+        // Toma sin margen: vence enseguida y otra instancia vuelve a ejecutar
+        IdempotencyStore slow = store(0, 5_000);
+        IdempotencyStore retry = store(120_000, 5_000);
+        assertThat(slow.tryAcquire(KEY, HASH)).isNull();
+        Thread.sleep(5);
+        assertThat(retry.tryAcquire(KEY, HASH)).isNull();
+        retry.complete(KEY, HASH, 201, "application/json", "/patients/8", null, body("second"));
+
+        slow.complete(KEY, HASH, 201, "application/json", "/patients/7", null, body("first"));
+
+        assertThat(records.stored(KEY).location()).isEqualTo("/patients/8");
+        assertThat(slow.find(KEY)).map(IdempotentResponse::location).contains("/patients/8");
+    }
+
+    private IdempotencyStore store(long claimLeaseMs, long waitTimeoutMs) {
+        return new IdempotencyStore(records, 24, 100, claimLeaseMs, waitTimeoutMs);
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * idempotency_record en memoria con la misma semántica que las sentencias SQL del repository
+     */
+    private static final class InMemoryIdempotencyRecords extends IdempotencyRepository {
+
+        private record Row(String requestHash, IdempotentResponse response, LocalDateTime expiresAt) {
+        }
+
+        private final Map<String, Row> rows = new HashMap<>();
+
+        InMemoryIdempotencyRecords() {
+            super(null);
+        }
+
+        synchronized IdempotentResponse stored(String key) {
+            return rows.get(key).response();
+        }
+
+        @Override
+        public synchronized Optional<IdempotentResponse> findValid(String key, LocalDateTime now) {
+            Row row = rows.get(key);
+            return row != null && row.response() != null && row.expiresAt().isAfter(now)
+                    ? Optional.of(row.response()) : Optional.empty();
+        }
+
+        @Override
+        public synchronized boolean claim(String key, String requestHash, LocalDateTime now, LocalDateTime leaseExpiresAt) {
+            Row row = rows.get(key);
+            if (row != null && !row.expiresAt().isAfter(now)) {
+                rows.remove(key);
+            }
+            return rows.putIfAbsent(key, new Row(requestHash, null, leaseExpiresAt)) == null;
+        }
+
+        @Override
+        public synchronized boolean isClaimed(String key, LocalDateTime now) {
+            Row row = rows.get(key);
+            return row != null && row.response() == null && row.expiresAt().isAfter(now);
+        }
+
+        @Override
+        public synchronized boolean save(String key, IdempotentResponse response, LocalDateTime now) {
+            Row row = rows.get(key);
+            if (row != null && row.response() != null) {
+                return false;
+            }
+            rows.put(key, new Row(response.requestHash(), response, response.expiresAt()));
+            return true;
+        }
+
+        @Override
+        public synchronized void release(String key) {
+            Row row = rows.get(key);
+            if (row != null && row.response() == null) {
+                rows.remove(key);
+            }
+        }
+    }
+}
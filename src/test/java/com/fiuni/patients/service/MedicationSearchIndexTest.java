@@ -0,0 +1,104 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.clinica.domain.patient.MedicationDomain;
+import com.fiuni.patients.service.MedicationSearchIndex.Field;
+import com.fiuni.patients.service.MedicationSearchIndex.Hit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ranking BM25 por campo de MedicationSearchIndex sobre un catálogo fijo de cinco medicamentos, con los pesos
+ * por defecto (nombre 3.0, genérico 2.5, descripción 1.0, efectos secundarios y contraindicaciones 1.5).
+ */
+class MedicationSearchIndexTest {
+
+    private MedicationSearchIndex index;
+
+    @BeforeEach
+    void indexCatalog() {
+        index = new MedicationSearchIndex(null, null, 3.0f, 2.5f, 1.0f, 1.5f, 1.5f, 2000);
+        // Fuera de una transacción indexAfterCommit aplica en el momento
+        index.indexAfterCommit(medication(1, "Ibuprofeno", "ibuprofeno",
+                "Antiinflamatorio no esteroideo para el dolor y la fiebre", "Náuseas, dolor de estómago", "Úlcera gástrica"));
+        index.indexAfterCommit(medication(2, "Paracetamol", "acetaminofén",
+                "Analgésico y antipirético para dolor leve y fiebre", "Reacciones alérgicas raras", "Insuficiencia hepática"));
+        index.indexAfterCommit(medication(3, "Amoxicilina", "amoxicilina",
+                "Antibiótico betalactámico para infecciones bacterianas", "Diarrea, náuseas", "Alergia a penicilinas"));
+        index.indexAfterCommit(medication(4, "Omeprazol", "omeprazol",
+                "Protector gástrico, reduce la acidez del estómago", "Dolor de cabeza", null));
+        index.indexAfterCommit(medication(5, "Dolofen Forte", "ibuprofeno", "Dolor muscular intenso", null, null));
+    }
+
+    @Test
+    void nameAndGenericNameOutrankGenericNameOnly() {
+        List<Hit> hits = index.search("ibuprofeno", 10);
+
+        assertThat(hits).extracting(Hit::medicationId).containsExactly(1, 5);
+        assertThat(hits.get(0).matchedFields()).containsExactly(Field.MEDICATION_NAME, Field.GENERIC_NAME);
+        assertThat(hits.get(1).matchedFields()).containsExactly(Field.GENERIC_NAME);
+        assertThat(hits.get(0).score()).isGreaterThan(hits.get(1).score());
+    }
+
+    @Test
+    void ranksByFieldWeightTermFrequencyAndLength() {
+        // Descripción + efectos secundarios, luego efectos secundarios (peso 1.5) en un campo corto,
+        // luego descripciones (peso 1.0), la más corta primero
+        assertThat(index.search("dolor", 10)).extracting(Hit::medicationId).containsExactly(1, 4, 5, 2);
+        // Contraindicaciones (1.5) sobre descripción (1.0); gástrico y gástrica comparten raíz
+        assertThat(index.search("gástrico", 10)).extracting(Hit::medicationId).containsExactly(1, 4);
+        // Mismo campo y peso: gana el campo más corto
+        assertThat(index.search("náuseas", 10)).extracting(Hit::medicationId).containsExactly(3, 1);
+        assertThat(index.search("dolor de estómago", 10)).extracting(Hit::medicationId).containsExactly(1, 4, 5, 2);
+    }
+
+    @Test
+    void equalScoresAreOrderedById() {
+        List<Hit> hits = index.search("fiebre", 10);
+
+        assertThat(hits).extracting(Hit::medicationId).containsExactly(1, 2);
+        assertThat(hits.get(0).score()).isEqualTo(hits.get(1).score());
+    }
+
+    @Test
+    void queriesAreAnalyzedLikeTheDocuments() {
+        assertThat(index.search("Ibuprofenos", 10)).extracting(Hit::medicationId).containsExactly(1, 5);
+        assertThat(index.search("alergias", 10)).extracting(Hit::medicationId).containsExactly(3);
+        assertThat(index.search("antibioticos infecciones", 10)).extracting(Hit::medicationId).containsExactly(3);
+        assertThat(index.search("xyz", 10)).isEmpty();
+        assertThat(index.search("de la", 10)).isEmpty();
+    }
+
+    @Test
+    void limitKeepsTheTopHits() {
+        assertThat(index.search("dolor", 2)).extracting(Hit::medicationId).containsExactly(1, 4);
+        assertThat(index.search("dolor", 0)).isEmpty();
+    }
+
+    @Test
+    void inactiveMedicationLeavesTheIndex() {
+        MedicationDomain removed = medication(1, "Ibuprofeno", "ibuprofeno", null, null, null);
+        removed.setIsActive(false);
+        index.indexAfterCommit(removed);
+
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.search("ibuprofeno", 10)).extracting(Hit::medicationId).containsExactly(5);
+        assertThat(index.search("fiebre", 10)).extracting(Hit::medicationId).containsExactly(2);
+    }
+
+    private static MedicationDomain medication(int id, String name, String genericName, String description,
+                                               String sideEffects, String contraindications) {
+        MedicationDomain medication = new MedicationDomain();
+        medication.setId(id);
+        medication.setMedicationName(name);
+        medication.setGenericName(genericName);
+        medication.setDescription(description);
+        medication.setSideEffects(sideEffects);
+        medication.setContraindications(contraindications);
+        medication.setIsActive(true);
+        return medication;
+    }
+}
@@ -0,0 +1,133 @@
+package com.fiuni.patients.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ring buffer de AuditTrail: capacidad redondeada a potencia de dos (mínimo 4), offer false con el buffer lleno y
+ * muchos productores contra un consumidor sin pérdidas, duplicados ni desorden por productor.
+ */
+class MpscRingBufferTest {
+
+    private static final int PRODUCERS = 16;
+    private static final int ELEMENTS_PER_PRODUCER = 50_000;
+
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource({
+            "0, 4",
+            "1, 4",
+            "2, 4",
+            "3, 4",
+            "4, 4",
+            "5, 8",
+            "1000, 1024",
+            "1024, 1024",
+            "1025, 2048",
+            "16384, 16384",
+    })
+    void roundsCapacityUpToPowerOfTwo(int requested, int expected) {
+        assertThat(new MpscRingBuffer<Integer>(requested).capacity()).isEqualTo(expected);
+    }
+
+    @Test
+    void offerReturnsFalseWhenFullAndAcceptsAgainAfterDrain() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(buffer.drainTo(drained, 2)).isEqualTo(2);
+        assertThat(drained).containsExactly(0, 1);
+        assertThat(buffer.size()).isEqualTo(2);
+
+        // Los slots liberados se reutilizan al dar la vuelta
+        assertThat(buffer.offer(4)).isTrue();
+        assertThat(buffer.offer(5)).isTrue();
+        assertThat(buffer.offer(6)).isFalse();
+
+        drained.clear();
+        assertThat(buffer.drainTo(drained, 10)).isEqualTo(4);
+        assertThat(drained).containsExactly(2, 3, 4, 5);
+        assertThat(buffer.size()).isZero();
+        assertThat(buffer.drainTo(drained, 10)).isZero();
+    }
+
+    @Test
+    void multipleProducersKeepPerProducerOrderWithoutLossOrDuplicates() throws Exception {
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(1024);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean producing = new AtomicBoolean(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch producers = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            long producer = p;
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (long i = 0; i < ELEMENTS_PER_PRODUCER; i++) {
+                        // Con el buffer lleno el productor reintenta hasta que el consumidor libere lugar
+                        long[] element = {producer, i};
+                        while (!buffer.offer(element)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    producers.countDown();
+                }
+            });
+        }
+        Thread.ofPlatform().start(() -> {
+            try {
+                producers.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            producing.set(false);
+        });
+
+        long[] nextExpected = new long[PRODUCERS];
+        long total = 0;
+        List<long[]> batch = new ArrayList<>();
+        start.countDown();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while ((producing.get() || buffer.size() > 0) && System.nanoTime() < deadline) {
+            batch.clear();
+            buffer.drainTo(batch, 256);
+            for (long[] element : batch) {
+                int producer = (int) element[0];
+                assertThat(element[1]).as("order of producer %s", producer).isEqualTo(nextExpected[producer]);
+                nextExpected[producer]++;
+                total++;
+            }
+            assertThat(buffer.size()).isLessThanOrEqualTo(buffer.capacity());
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        assertThat(failures).isEmpty();
+        assertThat(total).isEqualTo((long) PRODUCERS * ELEMENTS_PER_PRODUCER);
+        for (long count : nextExpected) {
+            assertThat(count).isEqualTo(ELEMENTS_PER_PRODUCER);
+        }
+        assertThat(buffer.size()).isZero();
+    }
+}
@@ -0,0 +1,107 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cursor de OutboxTail sobre un outbox en memoria: ubicación antes de una carga, espera ante huecos de ids y
+ * eventos de transacciones que confirman después de eventos con id mayor.
+ */
+class OutboxTailTest {
+
+    private static final LocalDateTime OLD = LocalDateTime.now().minusHours(1);
+
+    private final InMemoryOutbox outbox = new InMemoryOutbox();
+
+    @Test
+    void seekBeforeLoadStepsBackOverRecentEvents() {
+        outbox.append(OLD, 1, 2);
+        outbox.append(LocalDateTime.now(), 3, 4);
+        OutboxTail tail = new OutboxTail(outbox, 500, 60_000);
+
+        tail.seekBeforeLoad();
+
+        // Los eventos recientes pueden ser de transacciones que la carga no vio: se reaplican
+        assertThat(ids(tail.next())).containsExactly(3L, 4L);
+        assertThat(tail.next()).isEmpty();
+    }
+
+    @Test
+    void lateCommitBelowTheLastReadIdIsNotSkipped() {
+        outbox.append(OLD, 1);
+        OutboxTail tail = new OutboxTail(outbox, 500, 60_000);
+        tail.seekBeforeLoad();
+
+        // El id 2 pertenece a una transacción todavía abierta; 3 ya confirmó
+        outbox.append(LocalDateTime.now(), 3);
+        assertThat(tail.next()).isEmpty();
+
+        outbox.append(LocalDateTime.now(), 2);
+        assertThat(ids(tail.next())).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void gapIsSkippedAfterTimeout() {
+        outbox.append(OLD, 1);
+        OutboxTail tail = new OutboxTail(outbox, 500, 0);
+        tail.seekBeforeLoad();
+
+        outbox.append(LocalDateTime.now(), 3, 4);
+        assertThat(ids(tail.next())).containsExactly(3L, 4L);
+    }
+
+    @Test
+    void fullBatchesAreReportedForTheCallerLoop() {
+        outbox.append(OLD, 1);
+        OutboxTail tail = new OutboxTail(outbox, 2, 60_000);
+        tail.seekBeforeLoad();
+        outbox.append(LocalDateTime.now(), 2, 3, 4);
+
+        List<ChangeEvent> first = tail.next();
+        assertThat(ids(first)).containsExactly(2L, 3L);
+        assertThat(tail.isFull(first)).isTrue();
+        List<ChangeEvent> second = tail.next();
+        assertThat(ids(second)).containsExactly(4L);
+        assertThat(tail.isFull(second)).isFalse();
+    }
+
+    private static List<Long> ids(List<ChangeEvent> events) {
+        return events.stream().map(ChangeEvent::id).toList();
+    }
+
+    private static final class InMemoryOutbox extends ChangeEventRepository {
+
+        private final List<ChangeEvent> events = new ArrayList<>();
+
+        InMemoryOutbox() {
+            super(null);
+        }
+
+        void append(LocalDateTime createdAt, long... ids) {
+            for (long id : ids) {
+                events.add(new ChangeEvent(id, ChangeEntityType.PRESCRIPTION, (int) id, ChangeOperation.UPDATE, createdAt));
+            }
+            events.sort(Comparator.comparing(ChangeEvent::id));
+        }
+
+        @Override
+        public List<ChangeEvent> findAfter(long cursor, int limit) {
+            return events.stream().filter(e -> e.id() > cursor).limit(limit).toList();
+        }
+
+        @Override
+        public long findLastIdCreatedBefore(LocalDateTime before) {
+            return events.stream().filter(e -> e.createdAt().isBefore(before)).mapToLong(ChangeEvent::id).max().orElse(0);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.repository.PatientDedupeRepository.BlockingKey;
+import com.fiuni.patients.repository.PatientDedupeRepository.PatientFields;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Jaro-Winkler, score y claves de bloqueo de PatientMatcher.
+ */
+class PatientMatcherTest {
+
+    private static final LocalDate BIRTH = LocalDate.of(1980, 3, 12);
+    private static final PatientFields MARIA = new PatientFields(1, "María", "González Benítez", BIRTH, "1.234.567");
+
+    /** Valores de referencia del paper de Winkler */
+    @ParameterizedTest(name = "{0} / {1} -> {2}")
+    @CsvSource({
+            "martha, marhta,   0.9611",
+            "dwayne, duane,    0.8400",
+            "dixon,  dicksonx, 0.8133",
+            "abc,    xyz,      0.0",
+            "igual,  igual,    1.0",
+    })
+    void jaroWinklerMatchesReferenceValues(String a, String b, double expected) {
+        assertThat(PatientMatcher.jaroWinkler(a, b)).isCloseTo(expected, within(0.0001));
+        assertThat(PatientMatcher.jaroWinkler(b, a)).isCloseTo(expected, within(0.0001));
+    }
+
+    @Test
+    void jaroWinklerOfEmptyStrings() {
+        assertThat(PatientMatcher.jaroWinkler("", "")).isEqualTo(1.0);
+        assertThat(PatientMatcher.jaroWinkler("a", "")).isEqualTo(0.0);
+    }
+
+    @Test
+    void sameDocumentIsACertainMatch() {
+        PatientFields other = new PatientFields(2, "Pedro", "Acosta", null, "1234567");
+
+        assertThat(PatientMatcher.score(MARIA, other)).isEqualTo(1.0);
+    }
+
+    @Test
+    void namesThatSoundAlikeScoreAsPhoneticMatch() {
+        PatientFields misspelled = new PatientFields(2, "Maria", "Gonsales Venitez", BIRTH, null);
+
+        // 0.55 * 0.95 (apellidos fonéticamente iguales) + 0.45 * 1.0 (nombre)
+        assertThat(PatientMatcher.score(MARIA, misspelled)).isCloseTo(0.9725, within(0.0001));
+    }
+
+    @ParameterizedTest(name = "{0} -> x{1}")
+    @CsvSource({
+            "1980-03-12, 1.0",
+            "1980-12-03, 0.92",
+            "1981-03-12, 0.92",
+            "1975-07-01, 0.75",
+    })
+    void birthDateScalesTheNameScore(LocalDate birthDate, double factor) {
+        PatientFields sameName = new PatientFields(2, "María", "González Benítez", birthDate, null);
+
+        assertThat(PatientMatcher.score(MARIA, sameName)).isCloseTo(factor, within(0.0001));
+    }
+
+    @Test
+    void missingBirthDateLowersTheScoreSlightly() {
+        PatientFields sameName = new PatientFields(2, "María", "González Benítez", null, null);
+
+        assertThat(PatientMatcher.score(MARIA, sameName)).isCloseTo(0.9, within(0.0001));
+    }
+
+    @Test
+    void differentPeopleScoreLow() {
+        PatientFields other = new PatientFields(2, "Pedro", "Acosta", BIRTH, null);
+
+        assertThat(PatientMatcher.score(MARIA, other)).isLessThan(0.5);
+    }
+
+    @Test
+    void misspelledNamesShareBlockingKeys() {
+        Set<BlockingKey> keys = PatientMatcher.blockingKeys(MARIA);
+        Set<BlockingKey> misspelled = PatientMatcher.blockingKeys(new PatientFields(2, "Maria", "Gonsales Venitez", BIRTH, null));
+
+        assertThat(keys).contains(
+                new BlockingKey("LN_DOB", "GNSLS|19800312"),
+                new BlockingKey("LN_DOB", "BNTS|19800312"),
+                new BlockingKey("NAME", "MR|GNSLS"),
+                new BlockingKey("FN_DOB", "MR|19800312"),
+                new BlockingKey("DOB_INI", "19800312|mg"),
+                new BlockingKey("DOC", "1234567"));
+        assertThat(misspelled).isSubsetOf(keys);
+    }
+}
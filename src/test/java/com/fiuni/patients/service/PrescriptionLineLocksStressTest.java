@@ -0,0 +1,179 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.clinica.dto.generated.MedicationRequest;
+import com.fiuni.clinica.dto.generated.PatientRequest;
+import com.fiuni.clinica.dto.generated.PrescriptionMedicationRequest;
+import com.fiuni.clinica.dto.generated.PrescriptionRequest;
+import com.fiuni.patients.PatientsMicroserviceApplication;
+import com.fiuni.patients.exception.DuplicatePrescriptionLineException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress de altas y bajas de líneas sobre una única prescripción con addMedicationToPrescriptionByIds y
+ * removeMedicationFromPrescriptionByIds reales, desde dos instancias de la aplicación (dos contextos, cada uno
+ * con su PrescriptionLineLocks y su pool) contra el mismo Postgres de Testcontainers, con la configuración de
+ * application.properties (max-attempts 5, backoff 20 ms, pool de 3 conexiones).
+ *
+ * Las tablas de Clinica las crea Hibernate en un arranque previo sin Liquibase; después cada instancia aplica
+ * los changelogs del servicio (índice único de líneas activas incluido), como contra la base compartida.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class PrescriptionLineLocksStressTest {
+
+    private static final int THREADS = 64;
+    private static final int OPERATIONS_PER_THREAD = 25;
+    private static final int MEDICATIONS = 6;
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final List<ConfigurableApplicationContext> INSTANCES = new ArrayList<>();
+
+    @BeforeAll
+    static void startInstances() {
+        try (ConfigurableApplicationContext schema = start("spring.liquibase.enabled=false",
+                "spring.jpa.hibernate.ddl-auto=create")) {
+            assertThat(schema.isActive()).isTrue();
+        }
+        INSTANCES.add(start());
+        INSTANCES.add(start());
+    }
+
+    @AfterAll
+    static void stopInstances() {
+        INSTANCES.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void concurrentLineMutationsFromTwoInstancesKeepNoDuplicatesAndNoLostLines() throws Exception {
+        ConfigurableApplicationContext first = INSTANCES.get(0);
+        int prescriptionId = createPrescription(first);
+        int[] medicationIds = new int[MEDICATIONS];
+        for (int i = 0; i < MEDICATIONS; i++) {
+            medicationIds[i] = createMedication(first, i);
+        }
+
+        // Altas y bajas que cada hilo vio confirmadas, por medicamento
+        AtomicIntegerArray adds = new AtomicIntegerArray(MEDICATIONS);
+        AtomicIntegerArray removes = new AtomicIntegerArray(MEDICATIONS);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            PrescriptionService service = INSTANCES.get(t % INSTANCES.size()).getBean(PrescriptionService.class);
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        int medication = ThreadLocalRandom.current().nextInt(MEDICATIONS);
+                        if (ThreadLocalRandom.current().nextBoolean()) {
+                            try {
+                                service.addMedicationToPrescriptionByIds(prescriptionId, medicationIds[medication], lineRequest());
+                                adds.incrementAndGet(medication);
+                            } catch (DuplicatePrescriptionLineException e) {
+                                // Esperado: el medicamento ya tenía una línea activa
+                            }
+                        } else if (service.removeMedicationFromPrescriptionByIds(prescriptionId, medicationIds[medication])) {
+                            removes.incrementAndGet(medication);
+                        }
+                    }
+                } catch (Throwable e) {
+                    // VersionConflictException incluida: los 5 intentos por defecto deben alcanzar
+                    failures.add(e);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+
+        assertThat(failures).isEmpty();
+        Map<Integer, Integer> activeLines = activeLinesByMedication(first, prescriptionId);
+        for (int i = 0; i < MEDICATIONS; i++) {
+            int active = activeLines.getOrDefault(medicationIds[i], 0);
+            assertThat(active).as("active lines for medication %s", medicationIds[i]).isLessThanOrEqualTo(1);
+            // Cada alta confirmada sigue activa o tiene su baja confirmada: ninguna escritura pisó a otra
+            assertThat(adds.get(i) - removes.get(i)).as("lost line changes for medication %s", medicationIds[i])
+                    .isEqualTo(active);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String... extraProperties) {
+        List<String> properties = new ArrayList<>(List.of(
+                "spring.datasource.url=" + POSTGRES.getJdbcUrl(),
+                "spring.datasource.username=" + POSTGRES.getUsername(),
+                "spring.datasource.password=" + POSTGRES.getPassword(),
+                "eureka.client.enabled=false",
+                "server.port=0"));
+        properties.addAll(List.of(extraProperties));
+        return new SpringApplicationBuilder(PatientsMicroserviceApplication.class)
+                .properties(properties.toArray(String[]::new))
+                .run();
+    }
+
+    private static int createPrescription(ConfigurableApplicationContext context) {
+        PatientRequest patient = new PatientRequest();
+        patient.setFirstName("Stress");
+        patient.setLastName("Test");
+        patient.setDocumentNumber("STRESS-" + System.nanoTime());
+        patient.setEmail("stress@example.com");
+        patient.setBirthDate(LocalDate.of(1980, 1, 1));
+        int patientId = context.getBean(PatientService.class).createPatient(patient).getId();
+
+        PrescriptionRequest prescription = new PrescriptionRequest();
+        prescription.setPatientId(patientId);
+        prescription.setPrescriptionDate(LocalDate.now());
+        prescription.setDoctorName("Dr. Stress");
+        prescription.setDoctorLicense("MP-0001");
+        return context.getBean(PrescriptionService.class).createPrescription(prescription).getId();
+    }
+
+    private static int createMedication(ConfigurableApplicationContext context, int index) {
+        MedicationRequest medication = new MedicationRequest();
+        medication.setMedicationName("Stress medication " + index);
+        medication.setGenericName("stress-" + index);
+        return context.getBean(MedicationService.class).createMedication(medication).getId();
+    }
+
+    private static PrescriptionMedicationRequest lineRequest() {
+        PrescriptionMedicationRequest request = new PrescriptionMedicationRequest();
+        request.setDosage("500 mg");
+        request.setFrequency("cada 8 horas");
+        return request;
+    }
+
+    private static Map<Integer, Integer> activeLinesByMedication(ConfigurableApplicationContext context, int prescriptionId) {
+        Map<Integer, Integer> lines = new HashMap<>();
+        context.getBean(JdbcTemplate.class).query(
+                "SELECT medication_id, count(*) AS active FROM prescription_medication " +
+                        "WHERE prescription_id = ? AND is_active = true GROUP BY medication_id",
+                rs -> {
+                    lines.put(rs.getInt("medication_id"), rs.getInt("active"));
+                }, prescriptionId);
+        return lines;
+    }
+}
@@ -0,0 +1,97 @@
+package com.fiuni.patients.service;
+
+import com.fiuni.patients.dto.ChangeEntityType;
+import com.fiuni.patients.dto.ChangeEvent;
+import com.fiuni.patients.dto.ChangeOperation;
+import com.fiuni.patients.repository.ChangeEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Invalidación de resultados de ReadCoalescer desde el outbox (en memoria): escrituras que no pasan por un
+ * controller y escrituras de otras instancias.
+ */
+class ReadCacheInvalidatorTest {
+
+    private final InMemoryOutbox outbox = new InMemoryOutbox();
+    private final ReadCoalescer coalescer = new ReadCoalescer(new SimpleMeterRegistry(), 60_000, 5_000);
+    private final ReadCacheInvalidator invalidator = new ReadCacheInvalidator(coalescer, outbox, 60_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void outboxEventFromAnotherInstanceDropsTheCachedResult() {
+        outbox.append(LocalDateTime.now().minusHours(1), ChangeEntityType.PRESCRIPTION, 7);
+        invalidator.syncFromOutbox();
+        read("prescription", 7);
+        read("prescription", 7);
+        assertThat(loads.get()).isEqualTo(1);
+
+        outbox.append(LocalDateTime.now(), ChangeEntityType.PRESCRIPTION, 7);
+        invalidator.syncFromOutbox();
+
+        read("prescription", 7);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void medicationChangeDropsItsSearchesAndPrescriptions() {
+        read("medication", 3);
+        read("medication-search", "ibu");
+        read("prescription", 7);
+        read("patient", 1);
+
+        invalidator.invalidate(ChangeEntityType.MEDICATION, 3, ChangeOperation.UPDATE);
+
+        read("medication", 3);
+        read("medication-search", "ibu");
+        read("prescription", 7);
+        read("patient", 1);
+        assertThat(loads.get()).isEqualTo(7);
+    }
+
+    @Test
+    void mergedPatientDropsPrescriptions() {
+        read("prescription", 7);
+        read("patient-search", "perez");
+
+        invalidator.invalidate(ChangeEntityType.PATIENT, 1, ChangeOperation.DELETE);
+
+        read("prescription", 7);
+        read("patient-search", "perez");
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    private void read(String operation, Object key) {
+        coalescer.execute(operation, key, loads::incrementAndGet);
+    }
+
+    private static final class InMemoryOutbox extends ChangeEventRepository {
+
+        private final List<ChangeEvent> events = new ArrayList<>();
+
+        InMemoryOutbox() {
+            super(null);
+        }
+
+        void append(LocalDateTime createdAt, ChangeEntityType entityType, int entityId) {
+            events.add(new ChangeEvent((long) events.size() + 1, entityType, entityId, ChangeOperation.UPDATE, createdAt));
+        }
+
+        @Override
+        public List<ChangeEvent> findAfter(long cursor, int limit) {
+            return events.stream().filter(e -> e.id() > cursor).limit(limit).toList();
+        }
+
+        @Override
+        public long findLastIdCreatedBefore(LocalDateTime before) {
+            return events.stream().filter(e -> e.createdAt().isBefore(before)).mapToLong(ChangeEvent::id).max().orElse(0);
+        }
+    }
+}
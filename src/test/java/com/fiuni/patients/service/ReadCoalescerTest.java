@@ -0,0 +1,176 @@
+package com.fiuni.patients.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Single-flight de ReadCoalescer: fallas del líder (incluido Error), espera acotada de los seguidores y
+ * resultados de un líder que terminó después de una invalidación.
+ */
+class ReadCoalescerTest {
+
+    private static final String OPERATION = "prescription";
+
+    @Test
+    void concurrentReadsShareOneCall() throws Exception {
+        ReadCoalescer coalescer = new ReadCoalescer(new SimpleMeterRegistry(), 0, 5_000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = startLeader(coalescer, () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        });
+        Thread follower = startFollower(coalescer, loads);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        follower.join(5_000);
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(coalescer.getCoalesceRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    void leaderErrorIsPropagatedToFollowers() throws Exception {
+        ReadCoalescer coalescer = new ReadCoalescer(new SimpleMeterRegistry(), 0, 5_000);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger followerLoads = new AtomicInteger();
+
+        CompletableFuture<String> leader = startLeader(coalescer, () -> {
+            await(release);
+            throw new StackOverflowError("leader failed");
+        });
+        CompletableFuture<Object> follower = new CompletableFuture<>();
+        Thread followerThread = Thread.ofPlatform().start(() -> {
+            try {
+                follower.complete(coalescer.execute(OPERATION, 1, () -> {
+                    followerLoads.incrementAndGet();
+                    return "own";
+                }));
+            } catch (Throwable e) {
+                follower.completeExceptionally(e);
+            }
+        });
+        awaitWaiting(followerThread);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(StackOverflowError.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(StackOverflowError.class);
+        assertThat(followerLoads.get()).isZero();
+        // La llamada fallida no queda registrada como en curso
+        assertThat(coalescer.execute(OPERATION, 1, () -> "next")).isEqualTo("next");
+    }
+
+    @Test
+    void followerLoadsDirectlyWhenLeaderExceedsWaitTimeout() throws Exception {
+        ReadCoalescer coalescer = new ReadCoalescer(new SimpleMeterRegistry(), 0, 100);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = startLeader(coalescer, () -> {
+            await(release);
+            return "leader";
+        });
+        long start = System.nanoTime();
+        String value = coalescer.execute(OPERATION, 1, () -> "own");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+
+        assertThat(value).isEqualTo("own");
+        assertThat(elapsedMs).isLessThan(5_000);
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("leader");
+    }
+
+    @Test
+    void leaderFinishingAfterInvalidateDoesNotCacheItsResult() throws Exception {
+        ReadCoalescer coalescer = new ReadCoalescer(new SimpleMeterRegistry(), 60_000, 5_000);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> leader = startLeader(coalescer, () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "before write";
+        });
+        // Escritura mientras el líder todavía lee
+        coalescer.invalidate(OPERATION, 1);
+        release.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("before write");
+
+        String value = coalescer.execute(OPERATION, 1, () -> {
+            loads.incrementAndGet();
+            return "after write";
+        });
+        assertThat(value).isEqualTo("after write");
+        assertThat(loads.get()).isEqualTo(2);
+
+        // Sin invalidaciones en el medio el resultado sí se reutiliza
+        assertThat(coalescer.execute(OPERATION, 1, () -> "reloaded")).isEqualTo("after write");
+    }
+
+    /**
+     * Líder en otro hilo; vuelve cuando su llamada ya está registrada como en curso
+     */
+    private static CompletableFuture<String> startLeader(ReadCoalescer coalescer, Supplier<String> loader)
+            throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Thread.ofPlatform().start(() -> {
+            try {
+                result.complete(coalescer.execute(OPERATION, 1, () -> {
+                    started.countDown();
+                    return loader.get();
+                }));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        return result;
+    }
+
+    private static Thread startFollower(ReadCoalescer coalescer, AtomicInteger loads) throws InterruptedException {
+        Thread follower = Thread.ofPlatform().start(() -> coalescer.execute(OPERATION, 1, () -> {
+            loads.incrementAndGet();
+            return "own";
+        }));
+        awaitWaiting(follower);
+        return follower;
+    }
+
+    /**
+     * Esperar a que el seguidor quede bloqueado en la llamada del líder
+     */
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(thread.getState()).isEqualTo(Thread.State.TIMED_WAITING);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("latch not released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
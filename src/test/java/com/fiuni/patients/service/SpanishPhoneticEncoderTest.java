@@ -0,0 +1,54 @@
+package com.fiuni.patients.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Códigos fonéticos de SpanishPhoneticEncoder: los ejemplos de su Javadoc y las unificaciones que describe.
+ */
+class SpanishPhoneticEncoderTest {
+
+    @ParameterizedTest(name = "{0} / {1} -> {2}")
+    @CsvSource({
+            "González,  Gonsales,  GNSLS",
+            "Giménez,   Jiménez,   JMNS",
+            "Yolanda,   Llolanda,  YLNT",
+            "Hernández, Ernández,  ARNNTS",
+            "Benítez,   Venitez,   BNTS",
+            "Quiroga,   Kiroga,    KRG",
+            "Rodríguez, Rodrigues, RTRGS",
+            "Guillermo, Guiyermo,  GYRM",
+            "Zelaya,    Celaya,    SLY",
+    })
+    void namesThatSoundAlikeShareTheCode(String name, String variant, String code) {
+        assertThat(SpanishPhoneticEncoder.encode(name)).isEqualTo(code);
+        assertThat(SpanishPhoneticEncoder.encode(variant)).isEqualTo(code);
+    }
+
+    @Test
+    void keepsOnlyTheLeadingVowel() {
+        assertThat(SpanishPhoneticEncoder.encode("Acosta")).isEqualTo("AKST");
+        assertThat(SpanishPhoneticEncoder.encode("María")).isEqualTo("MR");
+    }
+
+    @Test
+    void distinguishesChFromXAtTheStart() {
+        assertThat(SpanishPhoneticEncoder.encode("Chávez")).isEqualTo("XBS");
+        assertThat(SpanishPhoneticEncoder.encode("Xavier")).isEqualTo("JBR");
+    }
+
+    @Test
+    void truncatesToMaxLength() {
+        assertThat(SpanishPhoneticEncoder.encode("Bartolomeo Fernandez")).hasSize(SpanishPhoneticEncoder.MAX_LENGTH);
+    }
+
+    @Test
+    void wordsWithoutLettersHaveNoCode() {
+        assertThat(SpanishPhoneticEncoder.encode(null)).isEmpty();
+        assertThat(SpanishPhoneticEncoder.encode("  ")).isEmpty();
+        assertThat(SpanishPhoneticEncoder.encode("123")).isEmpty();
+    }
+}
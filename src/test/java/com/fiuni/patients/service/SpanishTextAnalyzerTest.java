@@ -0,0 +1,48 @@
+package com.fiuni.patients.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tokens de SpanishTextAnalyzer: plegado de acentos y ñ, separación en tokens alfanuméricos, stopwords y
+ * stemming liviano de plural y género.
+ */
+class SpanishTextAnalyzerTest {
+
+    @ParameterizedTest(name = "\"{0}\" -> [{1}]")
+    @CsvSource(delimiter = '|', value = {
+            "Náuseas y vómitos          | nause vomit",
+            "Dolor de cabeza            | dolor cabez",
+            "Úlcera gástrica            | ulcer gastric",
+            "gástrico                   | gastric",
+            "Alergia a penicilinas      | alergi penicilin",
+            "reacciones alérgicas       | reaccion alergic",
+            "Antiinflamatorios          | antiinflamatori",
+            "Analgésicos                | analgesic",
+            "cicatrices                 | cicatriz",
+            "luces                      | luz",
+            "meses                      | mes",
+            "ÑANDÚ                      | nandu",
+            "Comprimidos de 500 mg      | comprimid 500 mg",
+            "Dosis: 1/2 tableta c/8h    | dosis 1 2 tablet c 8h",
+    })
+    void analyzesText(String text, String expected) {
+        assertThat(String.join(" ", SpanishTextAnalyzer.analyze(text))).isEqualTo(expected);
+    }
+
+    @Test
+    void gendersAndPluralsShareTheStem() {
+        assertThat(SpanishTextAnalyzer.analyze("gástrico gástrica gástricos gástricas"))
+                .containsExactly("gastric", "gastric", "gastric", "gastric");
+    }
+
+    @Test
+    void stopwordsBlankAndNullYieldNoTokens() {
+        assertThat(SpanishTextAnalyzer.analyze("la de los para con")).isEmpty();
+        assertThat(SpanishTextAnalyzer.analyze("   ")).isEmpty();
+        assertThat(SpanishTextAnalyzer.analyze(null)).isEmpty();
+    }
+}
@@ -0,0 +1,137 @@
+package com.fiuni.patients.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Contadores de stock por franjas de MedicationInventory: reservas concurrentes nunca dejan el stock
+ * por debajo de cero y la reconciliación no ve operaciones a medias.
+ */
+class StockCounterTest {
+
+    private static final int THREADS = 32;
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+    private static final long INITIAL_STOCK = 1_000;
+
+    @Test
+    void tryTakeIsAllOrNothing() {
+        MedicationInventory.StockCounter counter = new MedicationInventory.StockCounter(4);
+        counter.reset(10);
+
+        assertThat(counter.tryTake(11)).isFalse();
+        assertThat(counter.available()).isEqualTo(10);
+        assertThat(counter.reserved.get()).isZero();
+
+        assertThat(counter.tryTake(10)).isTrue();
+        assertThat(counter.available()).isZero();
+        assertThat(counter.reserved.get()).isEqualTo(10);
+        assertThat(counter.tryTake(1)).isFalse();
+    }
+
+    @Test
+    void commitAndCancelKeepTheInvariant() {
+        MedicationInventory.StockCounter counter = new MedicationInventory.StockCounter(4);
+        counter.reset(100);
+
+        assertThat(counter.tryTake(30)).isTrue();
+        counter.commitTaken(30);
+        assertThat(counter.tryTake(20)).isTrue();
+        counter.cancelTaken(20);
+        counter.commitReturned(5);
+
+        assertThat(counter.available()).isEqualTo(75);
+        assertThat(counter.reserved.get()).isZero();
+        assertThat(counter.unflushed.get()).isEqualTo(-25);
+        // La base todavía tiene 100 (nada volcado): sin deriva
+        assertThat(counter.reconcile(100)).isZero();
+    }
+
+    @Test
+    void reconcileCorrectsDrift() {
+        MedicationInventory.StockCounter counter = new MedicationInventory.StockCounter(4);
+        counter.reset(100);
+
+        // Otra instancia volcó un surtido de 40 unidades
+        assertThat(counter.reconcile(60)).isEqualTo(-40);
+        assertThat(counter.available()).isEqualTo(60);
+        assertThat(counter.reconcile(60)).isZero();
+    }
+
+    @Test
+    void concurrentTakeAndGiveBackNeverGoBelowZero() throws Exception {
+        MedicationInventory.StockCounter counter = new MedicationInventory.StockCounter(8);
+        counter.reset(INITIAL_STOCK);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lowestSeen = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong driftSeen = new AtomicLong();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch workers = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        long units = 1 + ThreadLocalRandom.current().nextInt(50);
+                        if (!counter.tryTake(units)) {
+                            continue;
+                        }
+                        // Mitad de las transacciones revierte; las confirmadas se devuelven como surtido revertido
+                        if (ThreadLocalRandom.current().nextBoolean()) {
+                            counter.cancelTaken(units);
+                        } else {
+                            counter.commitTaken(units);
+                            counter.commitReturned(units);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    workers.countDown();
+                }
+            });
+        }
+        // Observador de available() y reconciliación concurrente contra una base que no cambia
+        executor.submit(() -> {
+            while (running.get()) {
+                lowestSeen.accumulateAndGet(counter.available(), Math::min);
+            }
+        });
+        executor.submit(() -> {
+            while (running.get()) {
+                long drift = counter.reconcile(INITIAL_STOCK);
+                if (drift != 0) {
+                    driftSeen.compareAndSet(0, drift);
+                }
+            }
+        });
+
+        start.countDown();
+        assertThat(workers.await(2, TimeUnit.MINUTES)).isTrue();
+        running.set(false);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        assertThat(failures).isEmpty();
+        assertThat(lowestSeen.get()).as("stock below zero").isGreaterThanOrEqualTo(0);
+        assertThat(driftSeen.get()).as("reconcile saw a half-applied operation").isZero();
+        assertThat(counter.reserved.get()).isZero();
+        assertThat(counter.unflushed.get()).isZero();
+        assertThat(counter.available()).isEqualTo(INITIAL_STOCK);
+    }
+}